@@ -19,7 +19,8 @@ public class JavaScriptResolver {
 		return readJsonModel(jsFile);
 	}
 	
-    /** Find the metamodel declaration in a js file, parse it as a Map and return it. 
+    /** Find the metamodel declaration in a js file, and return it as a Map
+     * whose packages are parsed lazily. 
      * @throws IOException */
     public static Map<String,Object> readJsonModel(File jsFile) throws IOException {
     	
@@ -34,9 +35,8 @@ public class JavaScriptResolver {
                         || line.startsWith("var $$METAMODEL$$=")
                         || line.startsWith("var $$metamodel$$=")) && line.endsWith("};")) {
                     line = line.substring(line.indexOf("{"), line.length()-1);
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> rv = (Map<String,Object>) JSONValue.parse(line);
-                    return rv;
+                    // only parse the packages that get used
+                    return new LazyJsonMap(line, 1);
                 }
             }
             return null;
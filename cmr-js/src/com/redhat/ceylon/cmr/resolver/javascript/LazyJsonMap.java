@@ -0,0 +1,309 @@
+package com.redhat.ceylon.cmr.resolver.javascript;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.minidev.json.JSONValue;
+
+/**
+ * A JSON object whose members are only parsed when they
+ * are first looked up. Creating it only scans the text to
+ * find where the value of each member starts and ends,
+ * which is much cheaper than building the whole tree, so
+ * that loading the metamodel of a module only costs much
+ * for the packages which are actually used.
+ *
+ * Members which are objects are themselves lazy maps up to
+ * the given number of levels, and fully parsed below that.
+ * Like the maps returned by the JSON parser, this map can
+ * be modified.
+ *
+ * The metamodel of a module is shared by the threads which
+ * compile against it, so the lookups are synchronized: a
+ * member is parsed once, and is always either parsed or
+ * unparsed for the other lookups.
+ */
+public class LazyJsonMap extends AbstractMap<String,Object> {
+
+    private final String json;
+    private final int lazyLevels;
+    // the [start,end) range of the unparsed members
+    private final Map<String,int[]> unparsed;
+    private final Map<String,Object> parsed;
+
+    /**
+     * @param json the text of a JSON object
+     * @param lazyLevels how many levels of nested objects
+     *        are also lazy maps
+     */
+    public LazyJsonMap(String json, int lazyLevels) {
+        this(json, 0, json.length(), lazyLevels);
+    }
+
+    private LazyJsonMap(String json, int start, int end, int lazyLevels) {
+        this.json = json;
+        this.lazyLevels = lazyLevels;
+        this.unparsed = new LinkedHashMap<String,int[]>();
+        this.parsed = new HashMap<String,Object>();
+        index(start, end);
+    }
+
+    private void index(int start, int end) {
+        int i = skipWhitespace(start, end);
+        expect(i++, '{');
+        i = skipWhitespace(i, end);
+        if (i < end && json.charAt(i) == '}') {
+            return;
+        }
+        while (i < end) {
+            int keyEnd = skipKey(i, end);
+            String key = key(i, keyEnd);
+            i = skipWhitespace(keyEnd, end);
+            expect(i++, ':');
+            int valueStart = skipWhitespace(i, end);
+            int valueEnd = skipValue(valueStart, end);
+            unparsed.put(key, new int[] { valueStart, valueEnd });
+            i = skipWhitespace(valueEnd, end);
+            if (i < end && json.charAt(i) == ',') {
+                i = skipWhitespace(i+1, end);
+            }
+            else {
+                expect(i, '}');
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON object");
+    }
+
+    /**
+     * Returns the offset right after the key starting at i,
+     * which like for the JSON parser may be left unquoted
+     */
+    private int skipKey(int i, int end) {
+        char c = json.charAt(i);
+        if (c == '"' || c == '\'') {
+            return skipString(i, end);
+        }
+        int start = i;
+        while (i < end && json.charAt(i) != ':'
+                && !Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        if (i == start) {
+            throw new IllegalArgumentException("Expected a key at offset " + i);
+        }
+        return i;
+    }
+
+    private String key(int start, int end) {
+        char quote = json.charAt(start);
+        if (quote != '"' && quote != '\'') {
+            return json.substring(start, end);
+        }
+        String key = json.substring(start+1, end-1);
+        if (key.indexOf('\\') >= 0) {
+            key = (String) JSONValue.parse(json.substring(start, end));
+        }
+        return key;
+    }
+
+    private void expect(int i, char c) {
+        if (i >= json.length() || json.charAt(i) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at offset " + i);
+        }
+    }
+
+    private int skipWhitespace(int i, int end) {
+        while (i < end && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /** Returns the offset right after the string starting at i */
+    private int skipString(int i, int end) {
+        char quote = json.charAt(i);
+        for (i++; i < end; i++) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i++;
+            }
+            else if (c == quote) {
+                return i+1;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    /** Returns the offset right after the value starting at i */
+    private int skipValue(int i, int end) {
+        int depth = 0;
+        while (i < end) {
+            char c = json.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = skipString(i, end);
+                if (depth == 0) {
+                    return i;
+                }
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            }
+            else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    return i;
+                }
+                if (--depth == 0) {
+                    return i+1;
+                }
+            }
+            else if (c == ',' && depth == 0) {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private Object parse(int[] range) {
+        int start = range[0], end = range[1];
+        if (lazyLevels > 0 && json.charAt(start) == '{') {
+            return new LazyJsonMap(json, start, end, lazyLevels-1);
+        }
+        String text = json.substring(start, end).trim();
+        return JSONValue.parse(text);
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        if (parsed.containsKey(key)) {
+            return parsed.get(key);
+        }
+        int[] range = unparsed.get(key);
+        if (range == null) {
+            return null;
+        }
+        Object value = parse(range);
+        parsed.put((String) key, value);
+        unparsed.remove(key);
+        return value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return parsed.containsKey(key) || unparsed.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        Object old = get(key);
+        parsed.put(key, value);
+        return old;
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        Object old = get(key);
+        parsed.remove(key);
+        return old;
+    }
+
+    @Override
+    public synchronized int size() {
+        return parsed.size() + unparsed.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        parsed.clear();
+        unparsed.clear();
+    }
+
+    /** Iterating the keys does not parse the values */
+    @Override
+    public Set<Map.Entry<String,Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String,Object>>() {
+            @Override
+            public int size() {
+                return LazyJsonMap.this.size();
+            }
+            @Override
+            public Iterator<Map.Entry<String,Object>> iterator() {
+                final Iterator<String> keys =
+                        allKeys().iterator();
+                return new Iterator<Map.Entry<String,Object>>() {
+                    private String current;
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+                    @Override
+                    public Map.Entry<String,Object> next() {
+                        current = keys.next();
+                        return new LazyEntry(current);
+                    }
+                    @Override
+                    public void remove() {
+                        LazyJsonMap.this.remove(current);
+                    }
+                };
+            }
+        };
+    }
+
+    private synchronized Set<String> allKeys() {
+        // a copy, so that iterating is not disturbed by the
+        // parsing of the values
+        Set<String> keys = new LinkedHashSet<String>(parsed.keySet());
+        keys.addAll(unparsed.keySet());
+        return keys;
+    }
+
+    private final class LazyEntry implements Map.Entry<String,Object> {
+        private final String key;
+
+        LazyEntry(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return get(key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?,?> other = (Map.Entry<?,?>) obj;
+            Object value = getValue();
+            return key.equals(other.getKey())
+                    && (value == null ? other.getValue() == null
+                            : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+    }
+}
@@ -251,8 +251,15 @@ public class Overrides {
         }
     }
     
+    /**
+     * Returns the resource the dist overrides are read from.
+     */
+    public static URL getDistOverridesResource() {
+        return Overrides.class.getResource("/com/redhat/ceylon/cmr/api/dist-overrides.xml");
+    }
+    
     public static Overrides parseDistOverrides(boolean upgradeDist) throws FileNotFoundException, Exception{
-        URL resource = Overrides.class.getResource("/com/redhat/ceylon/cmr/api/dist-overrides.xml");
+        URL resource = getDistOverridesResource();
         try(InputStream is = resource.openStream()){
             try {
                 Document document = parseXml(is);
@@ -26,7 +26,17 @@ import java.util.Collections;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.redhat.ceylon.cmr.api.AbstractRepositoryManager;
 import com.redhat.ceylon.cmr.api.ArtifactContext;
@@ -58,11 +68,21 @@ public abstract class AbstractNodeRepositoryManager extends AbstractRepositoryMa
     protected static final String ORIGIN = ".origin";
     protected static final String MISSING = ".missing";
 
+    /**
+     * System property giving the number of repositories which
+     * are probed at the same time when looking up an artifact.
+     * Defaults to 1, which looks them up one after the other.
+     */
+    public static final String LOOKUP_PARALLELISM_PROPERTY = "ceylon.cmr.lookup.parallelism";
+
     private List<CmrRepository> roots = new CopyOnWriteArrayList<>(); // lookup roots - order matters!
     private List<CmrRepository> allRoots;
 
     protected CmrRepository cache; // cache root
     protected boolean addCacheAsRoot; // do we treat cache as repo
+
+    private int lookupParallelism = Integer.getInteger(LOOKUP_PARALLELISM_PROPERTY, 1);
+    private ExecutorService lookupExecutor; // created on first concurrent lookup
     
     public AbstractNodeRepositoryManager(Logger log, Overrides overrides) {
         this(log, overrides, true);
@@ -80,6 +100,33 @@ public abstract class AbstractNodeRepositoryManager extends AbstractRepositoryMa
         }
     }
 
+    /**
+     * Sets the number of repositories which are probed at the
+     * same time when looking up an artifact. With more than one,
+     * a slow repository no longer delays the lookups in the ones
+     * that come after it, but the result is still the one from
+     * the first repository, in lookup order, that has the
+     * artifact.
+     */
+    public synchronized void setLookupParallelism(int lookupParallelism) {
+        if (lookupParallelism < 1)
+            throw new IllegalArgumentException("Lookup parallelism must be at least 1: " + lookupParallelism);
+        if (lookupParallelism == this.lookupParallelism)
+            return;
+        this.lookupParallelism = lookupParallelism;
+        ExecutorService oldExecutor = lookupExecutor;
+        if (oldExecutor != null) {
+            // swap the executor first, so that new lookups never
+            // get the old one, then let its probes finish
+            lookupExecutor = lookupParallelism > 1 ? newLookupExecutor(lookupParallelism) : null;
+            oldExecutor.shutdown();
+        }
+    }
+
+    public synchronized int getLookupParallelism() {
+        return lookupParallelism;
+    }
+
     protected OpenNode getCache() {
         if (cache == null)
             return null;
@@ -429,6 +476,7 @@ public abstract class AbstractNodeRepositoryManager extends AbstractRepositoryMa
     private Node fromRepositories(Iterable<CmrRepository> repositories, ArtifactContext context, boolean addLeaf) {
         log.debug("Looking for " + context);
 
+        List<CmrRepository> candidates = new ArrayList<>();
         for (CmrRepository repository : repositories) {
             if(context.isMaven() && !repository.isMaven()){
                 log.debug("  -> Skipping non-Maven repo for Maven lookup");
@@ -438,6 +486,14 @@ public abstract class AbstractNodeRepositoryManager extends AbstractRepositoryMa
                 log.debug("  -> Skipping Maven repo for non-Maven lookup");
                 continue;
             }
+            candidates.add(repository);
+        }
+
+        ExecutorService executor = candidates.size() > 1 ? getLookupExecutor() : null;
+        if (executor != null)
+            return fromRepositoriesConcurrently(executor, candidates, context, addLeaf);
+
+        for (CmrRepository repository : candidates) {
             Node child = fromRepository(repository, context, addLeaf);
             if (child != null)
                 return child;
@@ -449,6 +505,109 @@ public abstract class AbstractNodeRepositoryManager extends AbstractRepositoryMa
         return null;
     }
 
+    private Node fromRepositoriesConcurrently(ExecutorService executor, List<CmrRepository> repositories,
+            final ArtifactContext context, final boolean addLeaf) {
+        List<Future<Node>> probes = new ArrayList<>(repositories.size());
+        try {
+            for (final CmrRepository repository : repositories) {
+                try {
+                    probes.add(executor.submit(new Callable<Node>() {
+                        @Override
+                        public Node call() throws Exception {
+                            LookupCaching.enable();
+                            try {
+                                return fromRepository(repository, context, addLeaf);
+                            } finally {
+                                LookupCaching.disable();
+                            }
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    // the executor was replaced since we got it, the
+                    // remaining repositories are probed one by one below
+                    break;
+                }
+            }
+            // even if a later repository answers first, we must
+            // wait for the earlier ones which take precedence
+            for (Future<Node> probe : probes) {
+                Node child = getProbeResult(probe);
+                if (child != null)
+                    return child;
+
+                log.debug("  -> Not Found");
+            }
+            for (CmrRepository repository : repositories.subList(probes.size(), repositories.size())) {
+                Node child = fromRepository(repository, context, addLeaf);
+                if (child != null)
+                    return child;
+
+                log.debug("  -> Not Found");
+            }
+        } finally {
+            // the probes still queued are not needed anymore, and
+            // those in flight will just have their result ignored
+            for (Future<Node> probe : probes) {
+                probe.cancel(false);
+            }
+        }
+
+        log.debug(" -> Artifact " + context + " not found in any repository");
+        return null;
+    }
+
+    private static Node getProbeResult(Future<Node> probe) {
+        try {
+            return probe.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while looking up artifact", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RepositoryException(cause);
+        }
+    }
+
+    /**
+     * Returns the executor to probe repositories with, or null
+     * if they should be looked up one after the other.
+     */
+    private synchronized ExecutorService getLookupExecutor() {
+        // lookups made while probing a repository stay on its
+        // thread, so that they cannot wait on each other
+        if (lookupParallelism <= 1 || Thread.currentThread() instanceof LookupThread)
+            return null;
+        if (lookupExecutor == null)
+            lookupExecutor = newLookupExecutor(lookupParallelism);
+        return lookupExecutor;
+    }
+
+    private static ExecutorService newLookupExecutor(int lookupParallelism) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(lookupParallelism, lookupParallelism,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new LookupThread(r, "ceylon-cmr-lookup-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // do not keep idle threads around between compilations
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class LookupThread extends Thread {
+        LookupThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+
     protected Node fromRepository(CmrRepository repository, ArtifactContext context, boolean addLeaf) {
         log.debug(" Trying repository " + repository.getDisplayString());
         Node node = repository.findParent(context);
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2011 Red Hat inc. and third party contributors as noted
+ * by the author tags.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.ceylon.cmr.impl;
+
+import static com.redhat.ceylon.common.IndexFileUtil.readNullableUTF;
+import static com.redhat.ceylon.common.IndexFileUtil.writeNullableUTF;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.common.IndexFileUtil;
+import com.redhat.ceylon.model.cmr.ArtifactResult;
+import com.redhat.ceylon.model.cmr.ArtifactResultType;
+import com.redhat.ceylon.model.cmr.ImportType;
+import com.redhat.ceylon.model.cmr.RepositoryException;
+
+/**
+ * Stores the module graphs resolved by module loaders, so that
+ * the next runs with the same configuration can skip resolving
+ * them again.
+ *
+ * A snapshot records the artifact of every module along with its
+ * size and modification time, and the same for any other input
+ * file the loader depends on, such as an overrides file. It is
+ * only used if none of them changed, which only costs a couple
+ * of {@code stat} calls per module.
+ *
+ * Note that a snapshot is not invalidated when a module gets
+ * published to a repository which comes earlier in the lookup
+ * order than the one it was resolved from, which is why it has
+ * to be enabled with the {@value #SNAPSHOT_DIR_PROPERTY} system
+ * property: {@code true} stores snapshots in
+ * {@code ~/.ceylon/index/graphs}, any other value is the folder
+ * to use. Failing to use a snapshot is never an error.
+ */
+public class ModuleGraphSnapshots {
+
+    public static final String SNAPSHOT_DIR_PROPERTY = "ceylon.run.snapshots";
+
+    private static final String FORMAT = "ceylon-module-graph";
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * A module of a snapshot. Modules which were not found, such
+     * as missing optional modules, have no artifact.
+     */
+    public static class Module extends AbstractArtifactResult {
+        private final ArtifactResultType type;
+        private final File file;
+        private final String repositoryDisplayString;
+        private final List<ArtifactResult> dependencies = new ArrayList<ArtifactResult>();
+        private final List<Module> edges = new ArrayList<Module>();
+        private boolean root;
+        private boolean local;
+
+        public Module(String name, String version, ArtifactResultType type, File file, String repositoryDisplayString) {
+            super(null, name, version);
+            this.type = type;
+            this.file = file;
+            this.repositoryDisplayString = repositoryDisplayString;
+        }
+
+        /**
+         * Adds a dependency, as declared by the module descriptor.
+         */
+        public void addDependency(String name, String version, ImportType importType) {
+            dependencies.add(new Dependency(name, version, importType));
+        }
+
+        /**
+         * Adds an edge of the graph, to the module the loader used
+         * for one of our dependencies.
+         */
+        public void addEdge(Module module) {
+            edges.add(module);
+        }
+
+        public List<Module> getEdges() {
+            return Collections.unmodifiableList(edges);
+        }
+
+        public boolean isRoot() {
+            return root;
+        }
+
+        public void setRoot(boolean root) {
+            this.root = root;
+        }
+
+        /**
+         * Whether the loader did not need its own class loader for
+         * this module.
+         */
+        public boolean isLocal() {
+            return local;
+        }
+
+        public void setLocal(boolean local) {
+            this.local = local;
+        }
+
+        @Override
+        public ArtifactResultType type() {
+            return type;
+        }
+
+        @Override
+        protected File artifactInternal() {
+            return file;
+        }
+
+        @Override
+        public List<ArtifactResult> dependencies() throws RepositoryException {
+            return Collections.unmodifiableList(dependencies);
+        }
+
+        @Override
+        public String repositoryDisplayString() {
+            return repositoryDisplayString;
+        }
+    }
+
+    private static class Dependency extends AbstractArtifactResult {
+        private final ImportType importType;
+
+        Dependency(String name, String version, ImportType importType) {
+            super(null, name, version);
+            this.importType = importType;
+        }
+
+        @Override
+        public ImportType importType() {
+            return importType;
+        }
+
+        @Override
+        public ArtifactResultType type() {
+            return null;
+        }
+
+        @Override
+        protected File artifactInternal() {
+            return null;
+        }
+
+        @Override
+        public List<ArtifactResult> dependencies() throws RepositoryException {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String repositoryDisplayString() {
+            return null;
+        }
+    }
+
+    private final File snapshotDir;
+
+    public ModuleGraphSnapshots(File snapshotDir) {
+        this.snapshotDir = snapshotDir;
+    }
+
+    /**
+     * Returns the snapshots configured by the system properties,
+     * or null if they are disabled.
+     */
+    public static ModuleGraphSnapshots getDefault() {
+        File dir = IndexFileUtil.getIndexDir(SNAPSHOT_DIR_PROPERTY, "graphs");
+        return dir != null ? new ModuleGraphSnapshots(dir) : null;
+    }
+
+    /**
+     * Returns the modules of the snapshot stored for the given
+     * key, in the order they were saved, or null if there is no
+     * such snapshot or if any of its files changed since.
+     *
+     * @param key describes everything the graph was resolved from
+     */
+    public List<Module> load(String key) {
+        File file = getSnapshotFile(key);
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!FORMAT.equals(in.readUTF()) || in.readInt() != FORMAT_VERSION)
+                return null;
+            int inputs = in.readInt();
+            for (int i = 0; i < inputs; i++) {
+                File input = new File(in.readUTF());
+                if (!isUnchanged(input, in.readLong(), in.readLong()))
+                    return null;
+            }
+            int count = in.readInt();
+            List<Module> modules = new ArrayList<Module>(count);
+            int[][] edges = new int[count][];
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String version = readNullableUTF(in);
+                String type = readNullableUTF(in);
+                String path = readNullableUTF(in);
+                Module module = new Module(name, version,
+                        type != null ? ArtifactResultType.valueOf(type) : null,
+                        path != null ? new File(path) : null,
+                        readNullableUTF(in));
+                module.root = in.readBoolean();
+                module.local = in.readBoolean();
+                if (path != null
+                        && !isUnchanged(module.file, in.readLong(), in.readLong()))
+                    return null;
+                int dependencies = in.readInt();
+                for (int j = 0; j < dependencies; j++) {
+                    module.addDependency(in.readUTF(), readNullableUTF(in), ImportType.values()[in.readByte()]);
+                }
+                edges[i] = new int[in.readInt()];
+                for (int j = 0; j < edges[i].length; j++) {
+                    edges[i][j] = in.readInt();
+                }
+                modules.add(module);
+            }
+            for (int i = 0; i < count; i++) {
+                for (int edge : edges[i]) {
+                    modules.get(i).addEdge(modules.get(edge));
+                }
+            }
+            return modules;
+        } catch (IOException | RuntimeException e) {
+            // corrupt or from another version, just resolve again
+            return null;
+        }
+    }
+
+    /**
+     * Stores a snapshot of the given modules for the given key.
+     *
+     * @param key describes everything the graph was resolved from
+     * @param inputs other files the graph was resolved from
+     * @param modules the modules of the graph, all of their edges
+     * must point to modules of that list
+     */
+    public void save(String key, final List<File> inputs, final List<Module> modules) {
+        IndexFileUtil.write(getSnapshotFile(key), new IndexFileUtil.Contents() {
+            @Override
+            public void write(OutputStream stream) throws IOException {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeUTF(FORMAT);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(inputs.size());
+                for (File input : inputs) {
+                    out.writeUTF(input.getAbsolutePath());
+                    out.writeLong(getLength(input));
+                    out.writeLong(input.lastModified());
+                }
+                Map<Module, Integer> indices = new IdentityHashMap<Module, Integer>();
+                for (Module module : modules) {
+                    indices.put(module, indices.size());
+                }
+                out.writeInt(modules.size());
+                for (Module module : modules) {
+                    out.writeUTF(module.name());
+                    writeNullableUTF(out, module.version());
+                    writeNullableUTF(out, module.type != null ? module.type.name() : null);
+                    writeNullableUTF(out, module.file != null ? module.file.getAbsolutePath() : null);
+                    writeNullableUTF(out, module.repositoryDisplayString);
+                    out.writeBoolean(module.root);
+                    out.writeBoolean(module.local);
+                    if (module.file != null) {
+                        out.writeLong(getLength(module.file));
+                        out.writeLong(module.file.lastModified());
+                    }
+                    out.writeInt(module.dependencies.size());
+                    for (ArtifactResult dependency : module.dependencies) {
+                        out.writeUTF(dependency.name());
+                        writeNullableUTF(out, dependency.version());
+                        ImportType importType = dependency.importType();
+                        out.writeByte((importType != null ? importType : ImportType.UNDEFINED).ordinal());
+                    }
+                    out.writeInt(module.edges.size());
+                    for (Module edge : module.edges) {
+                        Integer index = indices.get(edge);
+                        if (index == null)
+                            throw new IllegalArgumentException("Edge to a module which is not part of the snapshot: " + edge);
+                        out.writeInt(index);
+                    }
+                }
+                out.flush();
+            }
+        });
+    }
+
+    File getSnapshotFile(String key) {
+        return IndexFileUtil.getHashedFile(snapshotDir, ShaSigner.sha1(key));
+    }
+
+    private static boolean isUnchanged(File file, long length, long lastModified) {
+        return getLength(file) == length
+                && file.lastModified() == lastModified;
+    }
+
+    private static long getLength(File file) {
+        return file.exists() ? file.length() : -1;
+    }
+}
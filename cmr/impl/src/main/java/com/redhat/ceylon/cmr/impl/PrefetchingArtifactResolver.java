@@ -0,0 +1,278 @@
+/*
+ * Copyright 2011 Red Hat inc. and third party contributors as noted
+ * by the author tags.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.ceylon.cmr.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.redhat.ceylon.cmr.api.ArtifactCallback;
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.model.cmr.ArtifactResult;
+import com.redhat.ceylon.model.cmr.Repository;
+
+/**
+ * Resolves artifacts along with the list of their dependencies,
+ * and starts resolving those dependencies in the background as
+ * soon as they are known, over a work-stealing pool.
+ *
+ * Module loaders still walk their module graph one module at a
+ * time, in the same order as before, so they build the same graph
+ * and apply the same overrides. They just find most artifacts
+ * already resolved by the time they get to them. Every artifact
+ * is only resolved once, even when several modules depend on it
+ * at the same time.
+ *
+ * Errors are only thrown to the caller which asks for the artifact
+ * that failed, so resolving ahead of time never fails a module
+ * graph that would have loaded fine.
+ */
+public class PrefetchingArtifactResolver {
+
+    /**
+     * System property giving the number of threads module loaders
+     * resolve artifacts with. Defaults to 1, which resolves them in
+     * the loading thread and does not resolve anything ahead of time.
+     */
+    public static final String PARALLELISM_PROPERTY = "ceylon.cmr.resolve.parallelism";
+
+    /**
+     * Tells which artifact a dependency should be resolved to.
+     */
+    public interface DependencyMapper {
+        /**
+         * Returns the artifact to resolve for the given dependency,
+         * or null if the module loader will not load it.
+         */
+        ArtifactContext getArtifactContext(ArtifactResult dependency);
+    }
+
+    /**
+     * A resolved artifact, with its dependencies.
+     */
+    public static final class Resolution {
+        private final ArtifactResult artifact;
+        private final List<ArtifactResult> dependencies;
+        private final RuntimeException error;
+
+        private Resolution(ArtifactResult artifact, List<ArtifactResult> dependencies, RuntimeException error) {
+            this.artifact = artifact;
+            this.dependencies = dependencies;
+            this.error = error;
+        }
+
+        /**
+         * The artifact, or null if it was not found.
+         */
+        public ArtifactResult getArtifact() {
+            if (error != null)
+                throw error;
+            return artifact;
+        }
+
+        /**
+         * The dependencies of the artifact, only read once.
+         */
+        public List<ArtifactResult> getDependencies() {
+            if (error != null)
+                throw error;
+            return dependencies;
+        }
+    }
+
+    private static final ForkJoinWorkerThreadFactory THREAD_FACTORY = new ForkJoinWorkerThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ceylon-cmr-resolve-" + count.incrementAndGet());
+            // module loaders which never shut us down must not keep
+            // the program running
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final RepositoryManager repositoryManager;
+    private final DependencyMapper mapper;
+    private final ForkJoinPool pool;
+    private final ConcurrentMap<Key, ForkJoinTask<Resolution>> resolutions = new ConcurrentHashMap<>();
+
+    public PrefetchingArtifactResolver(RepositoryManager repositoryManager, DependencyMapper mapper, int parallelism) {
+        this.repositoryManager = repositoryManager;
+        this.mapper = mapper;
+        this.pool = new ForkJoinPool(parallelism, THREAD_FACTORY, null, false);
+    }
+
+    /**
+     * Returns a resolver using the number of threads configured by
+     * the {@link #PARALLELISM_PROPERTY} system property, or null if
+     * artifacts should be resolved one after the other.
+     */
+    public static PrefetchingArtifactResolver create(RepositoryManager repositoryManager, DependencyMapper mapper) {
+        int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 1);
+        if (parallelism <= 1)
+            return null;
+        return new PrefetchingArtifactResolver(repositoryManager, mapper, parallelism);
+    }
+
+    /**
+     * Starts resolving the given artifact and its dependencies in
+     * the background, unless it already is.
+     */
+    public void prefetch(ArtifactContext context) {
+        getTask(context);
+    }
+
+    /**
+     * Resolves the given artifact, waiting for it if it is already
+     * being resolved in the background.
+     */
+    public Resolution resolve(ArtifactContext context) {
+        return getTask(context).join();
+    }
+
+    /**
+     * Stops the background threads. Resolutions which are still in
+     * flight are finished but do not start new ones. The threads are
+     * daemons, so a resolver which is never shut down does not keep
+     * the program running.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private ForkJoinTask<Resolution> getTask(ArtifactContext context) {
+        Key key = new Key(context);
+        ForkJoinTask<Resolution> task = resolutions.get(key);
+        if (task == null) {
+            final ArtifactContext copy = context.copy();
+            ForkJoinTask<Resolution> newTask = ForkJoinTask.adapt(new Callable<Resolution>() {
+                @Override
+                public Resolution call() {
+                    return resolveNow(copy);
+                }
+            });
+            task = resolutions.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                try {
+                    pool.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // we were shut down, resolve it in this thread instead
+                    task.invoke();
+                }
+            }
+        }
+        return task;
+    }
+
+    private Resolution resolveNow(ArtifactContext context) {
+        ArtifactResult artifact;
+        List<ArtifactResult> dependencies;
+        try {
+            artifact = repositoryManager.getArtifactResult(context);
+            dependencies = artifact != null ? artifact.dependencies() : Collections.<ArtifactResult>emptyList();
+        } catch (RuntimeException e) {
+            return new Resolution(null, null, e);
+        }
+        if (!pool.isShutdown()) {
+            for (ArtifactResult dependency : dependencies) {
+                ArtifactContext dependencyContext;
+                try {
+                    dependencyContext = mapper.getArtifactContext(dependency);
+                } catch (RuntimeException e) {
+                    // the module loader will hit it again if it matters
+                    continue;
+                }
+                if (dependencyContext != null)
+                    prefetch(dependencyContext);
+            }
+        }
+        return new Resolution(artifact, dependencies, null);
+    }
+
+    /**
+     * Everything resolving an artifact depends on, so that two contexts
+     * only share their resolution if they would have been resolved to
+     * the same result.
+     */
+    private static final class Key {
+        private final boolean maven;
+        private final String name;
+        private final String version;
+        private final List<String> suffixes;
+        private final int flags;
+        private final ArtifactCallback callback;
+        private final Repository searchRepository;
+
+        Key(ArtifactContext context) {
+            maven = context.isMaven();
+            name = context.getName();
+            version = context.getVersion();
+            suffixes = Arrays.asList(context.getSuffixes());
+            flags = (context.isLocalOnly() ? 1 : 0)
+                    | (context.isIgnoreSHA() ? 2 : 0)
+                    | (context.isIgnoreCache() ? 4 : 0)
+                    | (context.isThrowErrorIfMissing() ? 8 : 0)
+                    | (context.isForceOperation() ? 16 : 0)
+                    | (context.isForceDescriptorCheck() ? 32 : 0)
+                    | (context.isIgnoreDependencies() ? 64 : 0);
+            callback = context.getCallback();
+            searchRepository = context.getSearchRepository();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (obj instanceof Key == false)
+                return false;
+            Key other = (Key) obj;
+            return maven == other.maven
+                    && flags == other.flags
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(version, other.version)
+                    && suffixes.equals(other.suffixes)
+                    // they are not values, only the same ones are the same
+                    && callback == other.callback
+                    && searchRepository == other.searchRepository;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 17;
+            hash = 37 * hash + (maven ? 1 : 0);
+            hash = 37 * hash + Objects.hashCode(name);
+            hash = 37 * hash + Objects.hashCode(version);
+            hash = 37 * hash + suffixes.hashCode();
+            hash = 37 * hash + flags;
+            return hash;
+        }
+    }
+}
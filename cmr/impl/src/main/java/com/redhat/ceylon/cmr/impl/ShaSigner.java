@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
@@ -34,7 +35,32 @@ public class ShaSigner {
         String sha1 = hash(file, "SHA-1", log);
         if(sha1 == null)
             return null;
-        
+        return signWith(file, sha1, log, verbose);
+    }
+
+    /**
+     * Returns a new SHA-1 digest, to compute the signature of a file 
+     * while writing it rather than reading it again once written.
+     * @see #sign(File, MessageDigest, Logger, boolean)
+     */
+    public static MessageDigest newSha1Digest(){
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // can't happen, specs say SHA-1 must be implemented
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Signs a file whose whole contents already went through the given 
+     * digest, as returned by {@link #newSha1Digest()}.
+     */
+    public static File sign(File file, MessageDigest sha1Digest, Logger log, boolean verbose){
+        return signWith(file, toHexString(sha1Digest.digest()), log, verbose);
+    }
+
+    private static File signWith(File file, String sha1, Logger log, boolean verbose){
         File sha1File = new File(file.getPath()+".sha1");
         if(verbose){
             log.info("[signing jar "+file.getPath()+" into: "+sha1File.getPath()+"]");
@@ -79,6 +105,32 @@ public class ShaSigner {
     public static String md5(File file) {
         return hash(file, "MD5", NULL_LOGGER);
     }
+
+    /**
+     * Returns the SHA-1 of the UTF-8 encoding of the given text.
+     */
+    public static String sha1(String text) {
+        try {
+            return toHexString(newSha1Digest().digest(text.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            // can't happen, specs say UTF-8 must be implemented
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the rest of the given stream, which is
+     * left open.
+     */
+    public static String sha1(InputStream in) throws IOException {
+        MessageDigest digest = newSha1Digest();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHexString(digest.digest());
+    }
     
     private static String hash(File file, String hashAlgo, Logger log) {
         MessageDigest digest;
@@ -122,7 +174,7 @@ public class ShaSigner {
 
     final static char[] Hexadecimal = {'0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f'};
 
-    private static String toHexString(byte[] bytes){
+    public static String toHexString(byte[] bytes){
         char[] chars = new char[bytes.length*2];
         for(int b=0,c=0;b<bytes.length;b++){
             int v = (int)bytes[b] & 0xFF;
@@ -105,6 +105,10 @@ public class AbstractTest {
         FileUtil.deleteQuietly(temp.toFile());
     }
 
+    protected Path getTemp() {
+        return temp;
+    }
+
     protected File getRepositoryRoot() throws URISyntaxException {
         URL url = getClass().getResource("/repo");
         Assert.assertNotNull("RepositoryManager root '/repo' not found", url);
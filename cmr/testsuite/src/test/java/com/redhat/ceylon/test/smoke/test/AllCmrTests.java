@@ -32,6 +32,9 @@ import com.redhat.ceylon.test.maven.test.ResolverTestCase;
         HerdTestCase.class,
         BuilderTestCase.class,
         CallbackTestCase.class,
+        ConcurrentLookupTestCase.class,
+        PrefetchingArtifactResolverTestCase.class,
+        ModuleGraphSnapshotsTestCase.class,
         AetherTestCase.class,
         ResolverTestCase.class
 })
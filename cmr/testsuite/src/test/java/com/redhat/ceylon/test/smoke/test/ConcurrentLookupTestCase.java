@@ -0,0 +1,191 @@
+/*
+ * Copyright 2011 Red Hat inc. and third party contributors as noted
+ * by the author tags.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.ceylon.test.smoke.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.cmr.api.CmrRepository;
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.cmr.api.RepositoryManagerBuilder;
+import com.redhat.ceylon.cmr.impl.AbstractNodeRepositoryManager;
+import com.redhat.ceylon.cmr.impl.DefaultRepository;
+import com.redhat.ceylon.cmr.impl.RemoteContentStore;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Looks artifacts up in several slow local HTTP repositories.
+ */
+public class ConcurrentLookupTestCase extends AbstractTest {
+
+    private static final long LATENCY = 200;
+    private static final String NAME = "com.redhat.slow";
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // only the last one has version 1, and both the first and
+        // the last have version 2
+        server.createContext("/a/", new SlowRepository("a", "2"));
+        server.createContext("/b/", new SlowRepository("b"));
+        server.createContext("/c/", new SlowRepository("c", "1", "2"));
+        // like real servers, answer several requests at once
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentLookupTime() throws Exception {
+        long sequential = lookup(1, "1", "c");
+        long concurrent = lookup(3, "1", "c");
+        log.debug("Sequential lookup: " + sequential + "ms, concurrent lookup: " + concurrent + "ms");
+        // every repository is probed with at least two requests,
+        // and the probes of a and b no longer come before those of c,
+        // so we save at least four times the latency, minus some slack
+        Assert.assertTrue("Sequential lookup took " + sequential + "ms but concurrent lookup took " + concurrent + "ms",
+                concurrent + 3 * LATENCY < sequential);
+    }
+
+    @Test
+    public void testLookupOrder() throws Exception {
+        // c answers as fast as a, but a comes first
+        lookup(3, "2", "a");
+        // with fewer threads than repositories
+        lookup(2, "2", "a");
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        RepositoryManager manager = getManager(3);
+        Assert.assertNull(manager.getArtifact(new ArtifactContext(NAME, "3", ArtifactContext.JS)));
+    }
+
+    @Test
+    public void testChangeParallelismDuringLookups() throws Exception {
+        final AbstractNodeRepositoryManager manager = (AbstractNodeRepositoryManager) getManager(3);
+        List<Future<File>> lookups = new ArrayList<>();
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 8; i++) {
+                lookups.add(clients.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        return manager.getArtifact(new ArtifactContext(NAME, "1", ArtifactContext.JS));
+                    }
+                }));
+            }
+            // the lookups in flight must neither fail nor use a shut down executor
+            for (int i = 0; i < 100 && !lookups.get(lookups.size() - 1).isDone(); i++) {
+                manager.setLookupParallelism(i % 2 == 0 ? 2 : 3);
+                Thread.sleep(10);
+            }
+            for (Future<File> lookup : lookups) {
+                File file = lookup.get();
+                Assert.assertNotNull(file);
+                Assert.assertEquals("c", new String(Files.readAllBytes(file.toPath()), "ASCII"));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private long lookup(int parallelism, String version, String expectedRepository) throws Exception {
+        RepositoryManager manager = getManager(parallelism);
+        long start = System.nanoTime();
+        File file = manager.getArtifact(new ArtifactContext(NAME, version, ArtifactContext.JS));
+        long time = (System.nanoTime() - start) / 1000000;
+        Assert.assertNotNull(file);
+        Assert.assertEquals(expectedRepository, new String(Files.readAllBytes(file.toPath()), "ASCII"));
+        return time;
+    }
+
+    private RepositoryManager getManager(int parallelism) throws Exception {
+        RepositoryManagerBuilder builder = new RepositoryManagerBuilder(
+                Files.createTempDirectory(getTemp(), "cache").toFile(), log, false, 60000, java.net.Proxy.NO_PROXY);
+        for (String repo : new String[]{"a", "b", "c"}) {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/" + repo + "/";
+            RemoteContentStore rcs = new RemoteContentStore(url, log, false, 60000, java.net.Proxy.NO_PROXY);
+            CmrRepository repository = new DefaultRepository(rcs.createRoot());
+            builder.addRepository(repository);
+        }
+        RepositoryManager manager = builder.buildRepository();
+        ((AbstractNodeRepositoryManager) manager).setLookupParallelism(parallelism);
+        return manager;
+    }
+
+    private static class SlowRepository implements HttpHandler {
+        private final String name;
+        private final String[] versions;
+
+        SlowRepository(String name, String... versions) {
+            this.name = name;
+            this.versions = versions;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                Thread.sleep(LATENCY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String path = exchange.getRequestURI().getPath();
+            for (String version : versions) {
+                String artifact = NAME.replace('.', '/') + "/" + version + "/" + NAME + "-" + version + ArtifactContext.JS;
+                if (path.endsWith("/" + artifact)) {
+                    byte[] content = name.getBytes("ASCII");
+                    boolean head = exchange.getRequestMethod().equals("HEAD");
+                    exchange.sendResponseHeaders(200, head ? -1 : content.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        if (!head)
+                            os.write(content);
+                    }
+                    return;
+                }
+            }
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        }
+    }
+}
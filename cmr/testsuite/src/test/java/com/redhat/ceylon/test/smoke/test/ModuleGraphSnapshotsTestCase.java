@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011 Red Hat inc. and third party contributors as noted
+ * by the author tags.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.ceylon.test.smoke.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.ceylon.cmr.impl.ModuleGraphSnapshots;
+import com.redhat.ceylon.model.cmr.ArtifactResult;
+import com.redhat.ceylon.model.cmr.ArtifactResultType;
+import com.redhat.ceylon.model.cmr.ImportType;
+
+public class ModuleGraphSnapshotsTestCase extends AbstractTest {
+
+    private File dir;
+    private File a;
+    private File b;
+    private File overrides;
+
+    @Before
+    public void createFiles() throws Exception {
+        dir = Files.createTempDirectory(getTemp(), "snapshots").toFile();
+        a = new File(dir, "a-1.car");
+        b = new File(dir, "b-2.jar");
+        overrides = new File(dir, "overrides.xml");
+        Files.write(a.toPath(), new byte[]{1});
+        Files.write(b.toPath(), new byte[]{1, 2});
+        Files.write(overrides.toPath(), new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        ModuleGraphSnapshots snapshots = save();
+        List<ModuleGraphSnapshots.Module> modules = snapshots.load("key");
+        Assert.assertNotNull(modules);
+        Assert.assertEquals(3, modules.size());
+
+        ModuleGraphSnapshots.Module restoredA = modules.get(0);
+        Assert.assertEquals("a", restoredA.name());
+        Assert.assertEquals("1", restoredA.version());
+        Assert.assertEquals(ArtifactResultType.CEYLON, restoredA.type());
+        Assert.assertEquals(a.getAbsoluteFile(), restoredA.artifact());
+        Assert.assertEquals("repo", restoredA.repositoryDisplayString());
+        Assert.assertTrue(restoredA.isRoot());
+        Assert.assertFalse(restoredA.isLocal());
+        List<ArtifactResult> dependencies = restoredA.dependencies();
+        Assert.assertEquals(2, dependencies.size());
+        Assert.assertEquals("b", dependencies.get(0).name());
+        Assert.assertEquals("2", dependencies.get(0).version());
+        Assert.assertEquals(ImportType.EXPORT, dependencies.get(0).importType());
+        Assert.assertEquals("c", dependencies.get(1).name());
+        Assert.assertNull(dependencies.get(1).version());
+        Assert.assertEquals(ImportType.OPTIONAL, dependencies.get(1).importType());
+        Assert.assertEquals(Arrays.asList(modules.get(1), modules.get(2)), restoredA.getEdges());
+
+        ModuleGraphSnapshots.Module restoredB = modules.get(1);
+        Assert.assertEquals(ArtifactResultType.MAVEN, restoredB.type());
+        Assert.assertTrue(restoredB.isLocal());
+        Assert.assertFalse(restoredB.isRoot());
+        Assert.assertTrue(restoredB.getEdges().isEmpty());
+
+        ModuleGraphSnapshots.Module missing = modules.get(2);
+        Assert.assertNull(missing.artifact());
+        Assert.assertNull(missing.type());
+
+        Assert.assertNull(snapshots.load("other key"));
+    }
+
+    @Test
+    public void testArtifactChanged() throws Exception {
+        ModuleGraphSnapshots snapshots = save();
+        Files.write(b.toPath(), new byte[]{1, 2, 3});
+        Assert.assertNull(snapshots.load("key"));
+    }
+
+    @Test
+    public void testInputChanged() throws Exception {
+        ModuleGraphSnapshots snapshots = save();
+        Assert.assertTrue(overrides.setLastModified(overrides.lastModified() - 10000));
+        Assert.assertNull(snapshots.load("key"));
+    }
+
+    @Test
+    public void testArtifactRemoved() throws Exception {
+        ModuleGraphSnapshots snapshots = save();
+        Assert.assertTrue(a.delete());
+        Assert.assertNull(snapshots.load("key"));
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        ModuleGraphSnapshots snapshots = save();
+        File[] folders = new File(dir, "graphs").listFiles();
+        Assert.assertEquals(1, folders.length);
+        File[] files = folders[0].listFiles();
+        Assert.assertEquals(1, files.length);
+        Files.write(files[0].toPath(), new byte[]{0, 1});
+        Assert.assertNull(snapshots.load("key"));
+    }
+
+    private ModuleGraphSnapshots save() {
+        ModuleGraphSnapshots snapshots = new ModuleGraphSnapshots(new File(dir, "graphs"));
+        ModuleGraphSnapshots.Module moduleA = new ModuleGraphSnapshots.Module("a", "1", ArtifactResultType.CEYLON, a, "repo");
+        moduleA.setRoot(true);
+        moduleA.addDependency("b", "2", ImportType.EXPORT);
+        moduleA.addDependency("c", null, ImportType.OPTIONAL);
+        ModuleGraphSnapshots.Module moduleB = new ModuleGraphSnapshots.Module("b", "2", ArtifactResultType.MAVEN, b, "repo");
+        moduleB.setLocal(true);
+        ModuleGraphSnapshots.Module moduleC = new ModuleGraphSnapshots.Module("c", "3", null, null, null);
+        moduleA.addEdge(moduleB);
+        moduleA.addEdge(moduleC);
+        snapshots.save("key", Collections.singletonList(overrides), Arrays.asList(moduleA, moduleB, moduleC));
+        return snapshots;
+    }
+}
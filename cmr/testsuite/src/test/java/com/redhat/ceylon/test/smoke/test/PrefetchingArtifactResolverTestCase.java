@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Red Hat inc. and third party contributors as noted
+ * by the author tags.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.redhat.ceylon.test.smoke.test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.cmr.impl.PrefetchingArtifactResolver;
+import com.redhat.ceylon.cmr.impl.PrefetchingArtifactResolver.Resolution;
+import com.redhat.ceylon.model.cmr.ArtifactResult;
+
+public class PrefetchingArtifactResolverTestCase extends AbstractTest {
+
+    @Test
+    public void testResolve() throws Exception {
+        RepositoryManager manager = getRepositoryManager();
+        final AtomicInteger mapped = new AtomicInteger();
+        PrefetchingArtifactResolver resolver = new PrefetchingArtifactResolver(manager,
+                new PrefetchingArtifactResolver.DependencyMapper() {
+                    @Override
+                    public ArtifactContext getArtifactContext(ArtifactResult dependency) {
+                        mapped.incrementAndGet();
+                        return context(dependency.name(), dependency.version());
+                    }
+                }, 4);
+        try {
+            Resolution resolution = resolver.resolve(context("moduletest", "0.1"));
+            ArtifactResult expected = manager.getArtifactResult("moduletest", "0.1");
+            Assert.assertEquals(expected.artifact(), resolution.getArtifact().artifact());
+            List<ArtifactResult> dependencies = resolution.getDependencies();
+            Assert.assertEquals(1, dependencies.size());
+            Assert.assertEquals("hello", dependencies.get(0).name());
+            Assert.assertEquals(1, mapped.get());
+
+            // the dependency was resolved ahead of time, and only once
+            Resolution hello = resolver.resolve(context("hello", "1.0.0"));
+            Assert.assertSame(hello, resolver.resolve(context("hello", "1.0.0")));
+            Assert.assertEquals("hello", hello.getArtifact().name());
+            Assert.assertSame(resolution, resolver.resolve(context("moduletest", "0.1")));
+            Assert.assertEquals(1, mapped.get());
+
+            Assert.assertNull(resolver.resolve(context("missing", "1")).getArtifact());
+        } finally {
+            resolver.shutdown();
+        }
+        // still works, in the calling thread
+        Assert.assertNotNull(resolver.resolve(context("hello2", "1.0.0")));
+    }
+
+    @Test
+    public void testMapperErrors() throws Exception {
+        RepositoryManager manager = getRepositoryManager();
+        PrefetchingArtifactResolver resolver = new PrefetchingArtifactResolver(manager,
+                new PrefetchingArtifactResolver.DependencyMapper() {
+                    @Override
+                    public ArtifactContext getArtifactContext(ArtifactResult dependency) {
+                        throw new IllegalStateException();
+                    }
+                }, 2);
+        try {
+            // errors while resolving ahead of time are not ours
+            Resolution resolution = resolver.resolve(context("moduletest", "0.1"));
+            Assert.assertEquals(1, resolution.getDependencies().size());
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void testContextSettings() throws Exception {
+        RepositoryManager manager = getRepositoryManager();
+        PrefetchingArtifactResolver resolver = new PrefetchingArtifactResolver(manager,
+                new PrefetchingArtifactResolver.DependencyMapper() {
+                    @Override
+                    public ArtifactContext getArtifactContext(ArtifactResult dependency) {
+                        return null;
+                    }
+                }, 2);
+        try {
+            Resolution resolution = resolver.resolve(context("moduletest", "0.1"));
+            Assert.assertSame(resolution, resolver.resolve(context("moduletest", "0.1")));
+            // contexts which can resolve to something else do not share it
+            ArtifactContext ignoreDependencies = context("moduletest", "0.1");
+            ignoreDependencies.setIgnoreDependencies(true);
+            Assert.assertNotSame(resolution, resolver.resolve(ignoreDependencies));
+            ArtifactContext maven = context("maven:moduletest", "0.1");
+            Assert.assertNotSame(resolution, resolver.resolve(maven));
+            ArtifactContext otherSuffixes = new ArtifactContext("moduletest", "0.1", ArtifactContext.CAR);
+            Assert.assertNotSame(resolution, resolver.resolve(otherSuffixes));
+            // the threads never keep the program running
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("ceylon-cmr-resolve-"))
+                    Assert.assertTrue(thread.getName(), thread.isDaemon());
+            }
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    private static ArtifactContext context(String name, String version) {
+        return new ArtifactContext(name, version, ArtifactContext.CAR, ArtifactContext.JAR);
+    }
+}
@@ -0,0 +1,90 @@
+package com.redhat.ceylon.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Helpers for the on-disk indexes and caches which tools keep
+ * under {@code ~/.ceylon/index} to be faster on their next runs.
+ * Those are never required, so failing to read or write one is
+ * never an error.
+ */
+public class IndexFileUtil {
+
+    /**
+     * Writes the contents of an index file.
+     */
+    public interface Contents {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Returns the folder configured by the given system property,
+     * or null if the index is disabled: {@code true} is the given
+     * folder of {@code ~/.ceylon/index}, and any other value but
+     * {@code false} is the folder to use.
+     */
+    public static File getIndexDir(String property, String name) {
+        String dir = System.getProperty(property);
+        if (dir == null || dir.isEmpty() || dir.equalsIgnoreCase("false"))
+            return null;
+        if (dir.equalsIgnoreCase("true"))
+            return new File(FileUtil.getUserDir(), "index" + File.separator + name);
+        return new File(dir);
+    }
+
+    /**
+     * Returns the file for the given hash in the given folder,
+     * in a sub-folder named after its first two characters.
+     */
+    public static File getHashedFile(File dir, String hash) {
+        return new File(new File(dir, hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * Writes the given file aside first and then renames it, so
+     * that concurrent runs never see a partial file.
+     *
+     * @return true if the file was written
+     */
+    public static boolean write(File file, Contents contents) {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !FileUtil.mkdirs(dir))
+            return false;
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                contents.write(out);
+            } finally {
+                out.close();
+            }
+            if (tmp.renameTo(file) || file.isFile()) {
+                tmp = null;
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            // ignore it, we will just not be faster next time
+            return false;
+        } finally {
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    public static String readNullableUTF(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static void writeNullableUTF(DataOutput out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null)
+            out.writeUTF(string);
+    }
+}
@@ -204,6 +204,7 @@ public class Symtab {
     public  Type ceylonUninitializedMethodErrorType;
     public  Type ceylonUnresolvedCompilationErrorType;
     public  Type ceylonAbstractCallableType;
+    public  Type ceylonLambdaCallableType;
     public  Type ceylonAbstractTypeConstructorType;
     public  Type ceylonSerializationProxyType;
     public  Type ceylonVariableBoxType;
@@ -968,6 +969,7 @@ public class Symtab {
         ceylonUninitializedMethodErrorType = enterClass("com.redhat.ceylon.compiler.java.language.UninitializedMethodError");
         ceylonUnresolvedCompilationErrorType = enterClass("com.redhat.ceylon.compiler.java.language.UnresolvedCompilationError");
         ceylonAbstractCallableType = enterClass("com.redhat.ceylon.compiler.java.language.AbstractCallable");
+        ceylonLambdaCallableType = enterClass("com.redhat.ceylon.compiler.java.language.LambdaCallable");
         ceylonAbstractTypeConstructorType = enterClass("com.redhat.ceylon.compiler.java.language.AbstractTypeConstructor");
         ceylonSerializationProxyType = enterClass("com.redhat.ceylon.compiler.java.language.SerializationProxy");
         ceylonVariableBoxType = enterClass("com.redhat.ceylon.compiler.java.language.VariableBox");
@@ -492,6 +492,24 @@ public enum Option {
     CEYLONTIMEOUT("-timeout", "opt.arg.number",       "opt.ceylontimeout", OptionKind.STANDARD, OptionGroup.CEYLON),
     CEYLONCONTINUE("-continue", "opt.ceyloncontinue", OptionKind.STANDARD, OptionGroup.CEYLON),
     CEYLONPROGRESS("-progress", "opt.ceylonprogress", OptionKind.STANDARD, OptionGroup.CEYLON),
+    CEYLONJOBS("-jobs", "opt.arg.number", "opt.ceylonjobs", OptionKind.STANDARD, OptionGroup.CEYLON) {
+        @Override
+        public boolean process(OptionHelper helper, String option, String operand) {
+            int jobs;
+            try {
+                jobs = Integer.parseInt(operand);
+            } catch (NumberFormatException e) {
+                jobs = 0;
+            }
+            if (jobs < 1) {
+                helper.error("err.invalid.jobs", operand);
+                return true;
+            }
+            return super.process(helper, option, operand);
+        }
+    },
+    CEYLONLAMBDAS("-lambdas", "opt.ceylonlambdas", OptionKind.STANDARD, OptionGroup.CEYLON),
+    CEYLONINCREMENTAL("-incremental", "opt.ceylonincremental", OptionKind.STANDARD, OptionGroup.CEYLON),
     // Backwards-compat
     CEYLONMAVENOVERRIDES("-maven-overrides", "opt.arg.url",        "opt.ceylonoverrides", OptionKind.STANDARD, OptionGroup.CEYLON) {
             @Override
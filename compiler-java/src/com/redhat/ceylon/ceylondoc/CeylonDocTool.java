@@ -38,18 +38,25 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 import com.redhat.ceylon.ceylondoc.Util.ReferenceableComparatorByName;
 import com.redhat.ceylon.cmr.api.ArtifactContext;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.cmr.impl.ShaSigner;
 import com.redhat.ceylon.common.Constants;
 import com.redhat.ceylon.common.FileUtil;
 import com.redhat.ceylon.common.ModuleSpec;
+import com.redhat.ceylon.common.Versions;
 import com.redhat.ceylon.common.config.CeylonConfig;
 import com.redhat.ceylon.common.config.DefaultToolOptions;
 import com.redhat.ceylon.common.log.Logger;
@@ -71,6 +78,7 @@ import com.redhat.ceylon.compiler.typechecker.TypeCheckerBuilder;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleValidator;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
+import com.redhat.ceylon.compiler.typechecker.context.PhaseExecutor;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
@@ -93,6 +101,7 @@ import com.redhat.ceylon.model.typechecker.model.Function;
 import com.redhat.ceylon.model.typechecker.model.FunctionOrValue;
 import com.redhat.ceylon.model.typechecker.model.Interface;
 import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.ModuleImport;
 import com.redhat.ceylon.model.typechecker.model.NothingType;
 import com.redhat.ceylon.model.typechecker.model.Package;
 import com.redhat.ceylon.model.typechecker.model.Parameter;
@@ -164,6 +173,8 @@ public class CeylonDocTool extends OutputRepoUsingTool {
     private boolean browse;
     private boolean haltOnError = true;
     private boolean bootstrapCeylon;
+    private boolean incremental;
+    private int jobs = 1;
     private String resourceFolder;
     private List<File> sourceFolders = DefaultToolOptions.getCompilerSourceDirs();
     private List<File> docFolders = DefaultToolOptions.getCompilerDocDirs();
@@ -183,7 +194,10 @@ public class CeylonDocTool extends OutputRepoUsingTool {
     private final Map<Referenceable, Node> modelNodeMap = new IdentityHashMap<Referenceable, Node>();
     private final Map<Parameter, PhasedUnit> parameterUnitMap = new IdentityHashMap<Parameter, PhasedUnit>();
     private final Map<Parameter, Node> parameterNodeMap = new IdentityHashMap<Parameter, Node>();
-    private final Map<String, Boolean> moduleUrlAvailabilityCache = new HashMap<String, Boolean>();
+    private final ConcurrentMap<String, Future<Boolean>> moduleUrlAvailabilityCache = new ConcurrentHashMap<String, Future<Boolean>>();
+    private final Map<PhasedUnit, String> unitHashes = new IdentityHashMap<PhasedUnit, String>();
+    private final Map<Module, String> moduleHashes = new IdentityHashMap<Module, String>();
+    private final Map<Module, PageHashes> pageHashes = new IdentityHashMap<Module, PageHashes>();
     private RepositoryManager outputRepositoryManager;
     protected Logger richLog;
 
@@ -377,6 +391,21 @@ public class CeylonDocTool extends OutputRepoUsingTool {
         this.browse = browse;
     }
     
+    @Option(longName="incremental")
+    @Description("Only generates the pages whose inputs changed since the documentation " +
+            "in the output repository was generated, and copies the other ones from it. " +
+            "Warnings are only reported for the pages which are generated again.")
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    @OptionArgument(longName="jobs", argumentName="n")
+    @Description("Sets the number of threads used to typecheck the source files " +
+            "and to generate the documentation pages, use 1 to do it sequentially (default: 1).")
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
     @OptionArgument(longName="resource-folder", argumentName="dir")
     @Description("A directory name, where the documentation resources (css, js, ...) will be placed (default: .resources)")
     public void setResourceFolder(String resourceFolder) {
@@ -407,6 +436,7 @@ public class CeylonDocTool extends OutputRepoUsingTool {
         RepositoryManager repository = getRepositoryManager();
         
         builder.setRepositoryManager(repository);
+        builder.jobs(jobs);
         
         // make a destination repo
         outputRepositoryManager = getOutputRepositoryManager();
@@ -623,6 +653,9 @@ public class CeylonDocTool extends OutputRepoUsingTool {
     
     private void makeDoc() throws IOException {
         buildNodesMaps();
+        if (incremental) {
+            initPageHashes();
+        }
         if (includeSourceCode) {
             copySourceFiles();
         }
@@ -729,6 +762,10 @@ public class CeylonDocTool extends OutputRepoUsingTool {
             copyResource("resources/ceylondoc-logo.png", new File(resourcesDir, "ceylondoc-logo.png"));
             copyResource("resources/ceylondoc-icons.png", new File(resourcesDir, "ceylondoc-icons.png"));
             copyResource("resources/NOTICE.txt", new File(getApiOutputFolder(module), "NOTICE.txt"));
+
+            if (incremental) {
+                pageHashes.get(module).save();
+            }
         }
         finally {
             currentModule = null;
@@ -799,6 +836,10 @@ public class CeylonDocTool extends OutputRepoUsingTool {
                 }
             }
         }
+        // sort them once rather than on every page which lists them
+        for (List<Function> annotationConstructorList : annotationConstructors.values()) {
+            Collections.sort(annotationConstructorList, ReferenceableComparatorByName.INSTANCE);
+        }
     }
     
     private Writer openWriter(File file) throws IOException {
@@ -862,56 +903,70 @@ public class CeylonDocTool extends OutputRepoUsingTool {
     }
 
     private void copySourceFiles() throws FileNotFoundException, IOException {
-        for (PhasedUnit pu : phasedUnits) {
-            Package pkg = pu.getUnit().getPackage();
-            if (!shouldInclude(pkg)) {
-                continue;
+        List<Callable<Void>> pages = new ArrayList<Callable<Void>>();
+        for (final PhasedUnit pu : phasedUnits) {
+            if (shouldInclude(pu.getUnit().getPackage())) {
+                pages.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        copySourceFile(pu);
+                        return null;
+                    }
+                });
             }
+        }
+        generate(pages);
+    }
 
-            File file = new File(getFolder(pu.getPackage()), pu.getUnitFile().getName()+".html");
-            File dir = file.getParentFile();
-            if (!dir.exists() && !FileUtil.mkdirs(dir)) {
-                throw new IOException(CeylondMessages.msg("error.couldNotCreateDirectory", file));
-            }
-            Writer writer = openWriter(file);
-            try {
-                Markup markup = new Markup(writer);
-                markup.write("<!DOCTYPE html>");
-                markup.open("html xmlns='http://www.w3.org/1999/xhtml'");
-                markup.open("head");
-                markup.tag("meta charset='UTF-8'");
-                markup.around("title", pu.getUnit().getFilename());
-                markup.tag("link href='" + getResourceUrl(pkg, "favicon.ico") + "' rel='shortcut icon'");
-                markup.tag("link href='" + getResourceUrl(pkg, "ceylon.css") + "' rel='stylesheet' type='text/css'");
-                markup.tag("link href='" + getResourceUrl(pkg, "ceylondoc.css") + "' rel='stylesheet' type='text/css'");
-                markup.tag("link href='//fonts.googleapis.com/css?family=Inconsolata' rel='stylesheet' type='text/css'");
-                
-                markup.open("script type='text/javascript'");
-                markup.write("var resourceBaseUrl = '" + getResourceUrl(pkg, "") + "'");
-                markup.close("script");
-                
-                markup.around("script src='" + getResourceUrl(pkg, "jquery-1.8.2.min.js") + "' type='text/javascript'");
-                markup.around("script src='" + getResourceUrl(pkg, "rainbow.min.js") + "' type='text/javascript'");
-                markup.around("script src='" + getResourceUrl(pkg, "rainbow.linenumbers.js") + "' type='text/javascript'");
-                markup.around("script src='" + getResourceUrl(pkg, "ceylon.js") + "' type='text/javascript'");
-                markup.around("script src='" + getResourceUrl(pkg, "ceylondoc.js") + "' type='text/javascript'"); 
-                markup.close("head");
-                markup.open("body", "pre data-language='ceylon' style='font-family: Inconsolata, Monaco, Courier, monospace'");
-                // XXX source char encoding
-                BufferedReader input = new BufferedReader(new InputStreamReader(pu.getUnitFile().getInputStream()));
-                try{
-                    String line = input.readLine();
-                    while (line != null) {
-                        markup.text(line, "\n");
-                        line = input.readLine();
-                    }
-                } finally {
-                    input.close();
+    private void copySourceFile(PhasedUnit pu) throws IOException {
+        Package pkg = pu.getUnit().getPackage();
+        File file = new File(getFolder(pu.getPackage()), pu.getUnitFile().getName()+".html");
+        File dir = file.getParentFile();
+        // another page may be creating it too
+        if (!FileUtil.mkdirs(dir) && !dir.isDirectory()) {
+            throw new IOException(CeylondMessages.msg("error.couldNotCreateDirectory", file));
+        }
+        if (reusePage(file, pu)) {
+            return;
+        }
+        Writer writer = openWriter(file);
+        try {
+            Markup markup = new Markup(writer);
+            markup.write("<!DOCTYPE html>");
+            markup.open("html xmlns='http://www.w3.org/1999/xhtml'");
+            markup.open("head");
+            markup.tag("meta charset='UTF-8'");
+            markup.around("title", pu.getUnit().getFilename());
+            markup.tag("link href='" + getResourceUrl(pkg, "favicon.ico") + "' rel='shortcut icon'");
+            markup.tag("link href='" + getResourceUrl(pkg, "ceylon.css") + "' rel='stylesheet' type='text/css'");
+            markup.tag("link href='" + getResourceUrl(pkg, "ceylondoc.css") + "' rel='stylesheet' type='text/css'");
+            markup.tag("link href='//fonts.googleapis.com/css?family=Inconsolata' rel='stylesheet' type='text/css'");
+            
+            markup.open("script type='text/javascript'");
+            markup.write("var resourceBaseUrl = '" + getResourceUrl(pkg, "") + "'");
+            markup.close("script");
+            
+            markup.around("script src='" + getResourceUrl(pkg, "jquery-1.8.2.min.js") + "' type='text/javascript'");
+            markup.around("script src='" + getResourceUrl(pkg, "rainbow.min.js") + "' type='text/javascript'");
+            markup.around("script src='" + getResourceUrl(pkg, "rainbow.linenumbers.js") + "' type='text/javascript'");
+            markup.around("script src='" + getResourceUrl(pkg, "ceylon.js") + "' type='text/javascript'");
+            markup.around("script src='" + getResourceUrl(pkg, "ceylondoc.js") + "' type='text/javascript'"); 
+            markup.close("head");
+            markup.open("body", "pre data-language='ceylon' style='font-family: Inconsolata, Monaco, Courier, monospace'");
+            // XXX source char encoding
+            BufferedReader input = new BufferedReader(new InputStreamReader(pu.getUnitFile().getInputStream()));
+            try{
+                String line = input.readLine();
+                while (line != null) {
+                    markup.text(line, "\n");
+                    line = input.readLine();
                 }
-                markup.close("pre", "body", "html");
             } finally {
-                writer.close();
+                input.close();
             }
+            markup.close("pre", "body", "html");
+        } finally {
+            writer.close();
         }
     }
 
@@ -920,32 +975,73 @@ public class CeylonDocTool extends OutputRepoUsingTool {
         try {
             ModuleDoc moduleDoc = new ModuleDoc(this, rootWriter, module);
             moduleDoc.generate();
-            for (Package pkg : getPackages(module)) {
-                if(pkg.getMembers().isEmpty()){
-                    continue;
-                }
-                // document the package
-                if (!isRootPackage(module, pkg)) {
-                    Writer packageWriter = openWriter(getObjectFile(pkg));
-                    try {
-                        new PackageDoc(this, packageWriter, pkg).generate();
-                    } finally {
-                        packageWriter.close();
-                    }
-                }
-                // document its members
-                for (Declaration decl : pkg.getMembers()) {
-                    doc(decl);
-                }
-                
-                if (pkg.getNameAsString().equals(AbstractModelLoader.CEYLON_LANGUAGE)) {
-                    docNothingType(pkg);
-                }
-            }
         } finally {
             rootWriter.close();
         }
         
+        // every other page only depends on the model, so we can 
+        // generate them in any order
+        List<Callable<Void>> pages = new ArrayList<Callable<Void>>();
+        for (final Package pkg : getPackages(module)) {
+            if(pkg.getMembers().isEmpty()){
+                continue;
+            }
+            // document the package
+            if (!isRootPackage(module, pkg)) {
+                pages.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        File file = getObjectFile(pkg);
+                        if (reusePage(file, pkg)) {
+                            return null;
+                        }
+                        Writer packageWriter = openWriter(file);
+                        try {
+                            new PackageDoc(CeylonDocTool.this, packageWriter, pkg).generate();
+                        } finally {
+                            packageWriter.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+            // document its members
+            for (final Declaration decl : pkg.getMembers()) {
+                if (decl instanceof TypeDeclaration) {
+                    pages.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            doc(decl);
+                            return null;
+                        }
+                    });
+                }
+            }
+            
+            if (pkg.getNameAsString().equals(AbstractModelLoader.CEYLON_LANGUAGE)) {
+                pages.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        docNothingType(pkg);
+                        return null;
+                    }
+                });
+            }
+        }
+        generate(pages);
+    }
+
+    /**
+     * Generates the given pages, on as many threads as we have jobs.
+     */
+    private void generate(List<Callable<Void>> pages) throws IOException {
+        try {
+            PhaseExecutor.forJobs(jobs).invokeAll(pages);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private void docNothingType(Package pkg) throws IOException {
@@ -1041,7 +1137,13 @@ public class CeylonDocTool extends OutputRepoUsingTool {
     public void doc(Declaration decl) throws IOException {
         if (decl instanceof TypeDeclaration) {
             if (shouldInclude(decl)) {
-                Writer writer = openWriter(getObjectFile(decl));
+                File file = getObjectFile(decl);
+                if (reusePage(file, decl)) {
+                    // so are the pages of its member types
+                    reuseMemberPages((TypeDeclaration) decl);
+                    return;
+                }
+                Writer writer = openWriter(file);
                 try {
                     new ClassDoc(this, writer, (TypeDeclaration) decl).generate();
                 } finally {
@@ -1051,6 +1153,163 @@ public class CeylonDocTool extends OutputRepoUsingTool {
         }
     }
 
+    private void initPageHashes() throws IOException {
+        for (PhasedUnit pu : phasedUnits) {
+            try (InputStream source = pu.getUnitFile().getInputStream()) {
+                unitHashes.put(pu, ShaSigner.sha1(source));
+            }
+        }
+        // links to any other declaration depend on its kind and name
+        Set<String> declarations = new TreeSet<String>();
+        for (Module module : modules) {
+            for (Package pkg : getPackages(module)) {
+                collectDeclarationNames(pkg.getMembers(), declarations);
+            }
+        }
+        StringBuilder declarationNames = new StringBuilder();
+        for (String declaration : declarations) {
+            declarationNames.append(declaration).append('\n');
+        }
+        for (Module module : modules) {
+            pageHashes.put(module, new PageHashes(getOutputFolder(module, null), getPreviousOutputFolder(module)));
+            moduleHashes.put(module, ShaSigner.sha1(getModuleInputs(module) + declarationNames));
+        }
+    }
+
+    private void collectDeclarationNames(List<Declaration> members, Set<String> names) {
+        for (Declaration decl : members) {
+            if (shouldInclude(decl)) {
+                names.add(decl.getClass().getSimpleName() + " " + decl.getQualifiedNameString());
+                collectDeclarationNames(decl.getMembers(), names);
+            }
+        }
+    }
+
+    private File getPreviousOutputFolder(Module module) {
+        ArtifactContext artifactDocs = new ArtifactContext(module.getNameAsString(), module.getVersion(), ArtifactContext.DOCS);
+        try {
+            File folder = outputRepositoryManager.getArtifact(artifactDocs);
+            return folder != null && folder.isDirectory() ? folder : null;
+        } catch (Exception e) {
+            // we will just generate every page again
+            return null;
+        }
+    }
+
+    /**
+     * Returns what every page of the given module depends on.
+     */
+    private String getModuleInputs(Module module) {
+        StringBuilder inputs = new StringBuilder();
+        inputs.append(Versions.CEYLON_VERSION_NUMBER).append('\n');
+        appendModule(inputs, module);
+        appendModule(inputs, module.getLanguageModule());
+        for (ModuleImport imp : module.getImports()) {
+            appendModule(inputs, imp.getModule());
+        }
+        inputs.append(includeNonShared).append(' ').append(includeSourceCode).append('\n');
+        inputs.append(header).append('\n');
+        inputs.append(footer).append('\n');
+        inputs.append(resourceFolder).append('\n');
+        inputs.append(links).append('\n');
+        return inputs.toString();
+    }
+
+    private void appendModule(StringBuilder inputs, Module module) {
+        if (module != null) {
+            inputs.append(module.getNameAsString()).append('/').append(module.getVersion()).append('\n');
+        }
+    }
+
+    /**
+     * In incremental mode, copies the page of the given package, 
+     * declaration or source file from the previous documentation if
+     * its inputs did not change, and returns true.
+     */
+    private boolean reusePage(File file, Object pkgDeclOrUnit) throws IOException {
+        if (!incremental) {
+            return false;
+        }
+        Module module;
+        if (pkgDeclOrUnit instanceof PhasedUnit) {
+            module = ((PhasedUnit) pkgDeclOrUnit).getPackage().getModule();
+        } else {
+            module = getModule(pkgDeclOrUnit);
+        }
+        return pageHashes.get(module).reuse(file, getPageHash(module, pkgDeclOrUnit));
+    }
+
+    private void reuseMemberPages(TypeDeclaration type) throws IOException {
+        Module module = getModule(type);
+        for (Declaration member : type.getMembers()) {
+            if (member instanceof ClassOrInterface && shouldInclude(member)) {
+                // only the ones we generated last time
+                if (pageHashes.get(module).reuseIfPresent(getObjectFile(member), getPageHash(module, member))) {
+                    reuseMemberPages((TypeDeclaration) member);
+                }
+            }
+        }
+    }
+
+    private String getPageHash(Module module, Object pkgDeclOrUnit) {
+        Set<String> inputs = new TreeSet<String>();
+        if (pkgDeclOrUnit instanceof PhasedUnit) {
+            inputs.add(unitHashes.get(pkgDeclOrUnit));
+        } else if (pkgDeclOrUnit instanceof Package) {
+            // the summaries of its declarations
+            for (PhasedUnit pu : phasedUnits) {
+                if (pu.getPackage() == pkgDeclOrUnit) {
+                    inputs.add(pu.getUnitFile().getPath() + " " + unitHashes.get(pu));
+                }
+            }
+        } else if (!(pkgDeclOrUnit instanceof NothingType)) {
+            // the declarations it lists or inherits from, and the ones
+            // of the pages of its member types which we generate with it
+            Set<Declaration> related = Collections.newSetFromMap(new IdentityHashMap<Declaration, Boolean>());
+            collectRelatedDeclarations((TypeDeclaration) pkgDeclOrUnit, related);
+            for (Declaration decl : related) {
+                inputs.add(decl.getQualifiedNameString() + " " + getSourceHash(decl));
+            }
+        }
+        StringBuilder hash = new StringBuilder(moduleHashes.get(module));
+        for (String input : inputs) {
+            hash.append('\n').append(input);
+        }
+        return ShaSigner.sha1(hash.toString());
+    }
+
+    private void collectRelatedDeclarations(TypeDeclaration type, Set<Declaration> related) {
+        if (!related.add(type)) {
+            return;
+        }
+        related.addAll(type.getSupertypeDeclarations());
+        addAll(related, subclasses.get(type));
+        addAll(related, satisfyingClassesOrInterfaces.get(type));
+        addAll(related, annotationConstructors.get(type));
+        for (Declaration member : type.getMembers()) {
+            if (member instanceof TypeDeclaration) {
+                collectRelatedDeclarations((TypeDeclaration) member, related);
+            }
+        }
+    }
+
+    private static void addAll(Set<Declaration> related, List<? extends Declaration> decls) {
+        if (decls != null) {
+            related.addAll(decls);
+        }
+    }
+
+    private String getSourceHash(Declaration decl) {
+        PhasedUnit pu = modelUnitMap.get(decl);
+        if (pu != null) {
+            return unitHashes.get(pu);
+        }
+        // from a module we do not document, which does not change
+        // without changing its version
+        Module module = getModule(decl);
+        return module.getNameAsString() + "/" + module.getVersion();
+    }
+
     protected Package getPackage(Declaration decl) {
         Scope scope = decl.getContainer();
         while (!(scope instanceof Package)) {
@@ -1253,7 +1512,7 @@ public class CeylonDocTool extends OutputRepoUsingTool {
         return subclasses.get(klass);
     }
     
-    protected Map<String, Boolean> getModuleUrlAvailabilityCache() {
+    protected ConcurrentMap<String, Future<Boolean>> getModuleUrlAvailabilityCache() {
         return moduleUrlAvailabilityCache;
     }
     
@@ -19,25 +19,28 @@
  */
 package com.redhat.ceylon.ceylondoc;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.redhat.ceylon.common.OSUtil;
 import com.redhat.ceylon.common.log.Logger;
 
 public class CeylondLogger implements Logger {
     private boolean richFormatting;
     
-    private int errors;
+    // pages can be generated concurrently
+    private final AtomicInteger errors = new AtomicInteger();
     
     public CeylondLogger(boolean richFormatting) {
         this.richFormatting = richFormatting;
     }
 
     public int getErrors(){
-        return errors;
+        return errors.get();
     }
 
     @Override
     public void error(String str) {
-        errors++;
+        errors.incrementAndGet();
         if (richFormatting) {
             System.err.println(OSUtil.color("Error", OSUtil.Color.red) + ": " + str);
         } else {
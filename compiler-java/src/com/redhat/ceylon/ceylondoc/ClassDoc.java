@@ -606,7 +606,6 @@ public class ClassDoc extends ClassOrPackageDoc {
         if( klass.isAnnotation() ) {
             List<Function> annotationConstructors = tool.getAnnotationConstructors(klass);
             if( annotationConstructors != null ) {
-                Collections.sort(annotationConstructors, ReferenceableComparatorByName.INSTANCE);
                 writeListOnSummary("annotationConstructors", "Annotation Constructors: ", annotationConstructors);
             }
         }
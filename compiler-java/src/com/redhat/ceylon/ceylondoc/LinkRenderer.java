@@ -40,6 +40,11 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import com.redhat.ceylon.common.Constants;
 import com.redhat.ceylon.common.config.DefaultToolOptions;
@@ -788,52 +793,81 @@ public class LinkRenderer {
         return url.startsWith("file://");
     }
 
-    private boolean checkHttpUrlExist(String moduleUrl) {
-        Boolean result = ceylonDocTool.getModuleUrlAvailabilityCache().get(moduleUrl);
-        if( result == null ) {
-            try {
-                URL url = new URL(moduleUrl + "index.html");
-                HttpURLConnection con;
-                Proxy proxy = DefaultToolOptions.getDefaultProxy();
-                if (proxy != null) {
-                    con = (HttpURLConnection) url.openConnection(proxy);
-                } else {
-                    con = (HttpURLConnection) url.openConnection();
-                }
-                con.setConnectTimeout((int) DefaultToolOptions.getDefaultTimeout());
-                con.setReadTimeout((int) DefaultToolOptions.getDefaultTimeout() * Constants.READ_TIMEOUT_MULTIPLIER);
-                con.setRequestMethod("HEAD");
-                int responseCode = con.getResponseCode();
-    
-                if( responseCode == HttpURLConnection.HTTP_OK ) {
-                    result = Boolean.TRUE;                
-                } else {
-                    ceylonDocTool.getLogger().warning(msg("info.urlDoesNotExist", moduleUrl));
-                    result = Boolean.FALSE;
-                }
+    private boolean checkHttpUrlExist(final String moduleUrl) {
+        return checkUrlExist(moduleUrl, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return httpUrlExists(moduleUrl);
             }
-            catch (IOException e) {
-                ceylonDocTool.getLogger().warning(msg("info.urlDoesNotExist", moduleUrl));
-                result = Boolean.FALSE;
+        });
+    }
+
+    /**
+     * Checks each url once, even when pages are generated concurrently,
+     * without making the checks of other urls wait for it.
+     */
+    private boolean checkUrlExist(String moduleUrl, Callable<Boolean> check) {
+        ConcurrentMap<String, Future<Boolean>> cache = ceylonDocTool.getModuleUrlAvailabilityCache();
+        Future<Boolean> result = cache.get(moduleUrl);
+        if( result == null ) {
+            FutureTask<Boolean> task = new FutureTask<Boolean>(check);
+            result = cache.putIfAbsent(moduleUrl, task);
+            if( result == null ) {
+                result = task;
+                task.run();
             }
-            ceylonDocTool.getModuleUrlAvailabilityCache().put(moduleUrl, result);
         }
-        return result.booleanValue();
+        try {
+            return result.get().booleanValue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
     }
-    
-    private boolean checkFileUrlExist(String moduleUrl) {
-        Boolean result = ceylonDocTool.getModuleUrlAvailabilityCache().get(moduleUrl);
-        if( result == null ) {
-            File moduleDocDir = new File(moduleUrl.substring("file://".length()));
-            if (moduleDocDir.isDirectory() && moduleDocDir.exists()) {
-                result = Boolean.TRUE;
+
+    private boolean httpUrlExists(String moduleUrl) {
+        try {
+            URL url = new URL(moduleUrl + "index.html");
+            HttpURLConnection con;
+            Proxy proxy = DefaultToolOptions.getDefaultProxy();
+            if (proxy != null) {
+                con = (HttpURLConnection) url.openConnection(proxy);
+            } else {
+                con = (HttpURLConnection) url.openConnection();
+            }
+            con.setConnectTimeout((int) DefaultToolOptions.getDefaultTimeout());
+            con.setReadTimeout((int) DefaultToolOptions.getDefaultTimeout() * Constants.READ_TIMEOUT_MULTIPLIER);
+            con.setRequestMethod("HEAD");
+            int responseCode = con.getResponseCode();
+
+            if( responseCode == HttpURLConnection.HTTP_OK ) {
+                return true;
             } else {
                 ceylonDocTool.getLogger().warning(msg("info.urlDoesNotExist", moduleUrl));
-                result = Boolean.FALSE;
+                return false;
             }
-            ceylonDocTool.getModuleUrlAvailabilityCache().put(moduleUrl, result);
         }
-        return result.booleanValue();
+        catch (IOException e) {
+            ceylonDocTool.getLogger().warning(msg("info.urlDoesNotExist", moduleUrl));
+            return false;
+        }
+    }
+    
+    private boolean checkFileUrlExist(final String moduleUrl) {
+        return checkUrlExist(moduleUrl, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                File moduleDocDir = new File(moduleUrl.substring("file://".length()));
+                if (moduleDocDir.isDirectory() && moduleDocDir.exists()) {
+                    return Boolean.TRUE;
+                } else {
+                    ceylonDocTool.getLogger().warning(msg("info.urlDoesNotExist", moduleUrl));
+                    return Boolean.FALSE;
+                }
+            }
+        });
     }
     
     private static String encodeResult(String text) {
@@ -0,0 +1,160 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.ceylondoc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.redhat.ceylon.common.FileUtil;
+
+/**
+ * Remembers a hash of the inputs of every page of the documentation
+ * of a module, in the module-doc folder, so that the next incremental
+ * run can copy the pages whose inputs did not change from the previous
+ * documentation rather than generating them again.
+ */
+class PageHashes {
+
+    static final String FILE_NAME = ".ceylondoc-pages";
+
+    private static final String FORMAT = "ceylondoc-pages 1";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File outputFolder;
+    private final File previousFolder;
+    private final Map<String, String> previous;
+    // pages can be generated concurrently
+    private final Map<String, String> current = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @param outputFolder the module-doc folder we generate
+     * @param previousFolder the module-doc folder of the previous run,
+     * or null if there is none
+     */
+    PageHashes(File outputFolder, File previousFolder) throws IOException {
+        this.outputFolder = outputFolder.getCanonicalFile();
+        this.previousFolder = previousFolder;
+        this.previous = load(previousFolder);
+    }
+
+    /**
+     * Copies the given page from the previous documentation if it was
+     * generated from the same inputs, and remembers them in any case.
+     * Returns false if the page has to be generated.
+     */
+    boolean reuse(File page, String hash) throws IOException {
+        String path = getPath(page);
+        current.put(path, hash);
+        return copyPrevious(page, path, hash);
+    }
+
+    /**
+     * Copies the given page from the previous documentation if it was
+     * generated from the same inputs, but only remembers them if it
+     * was. This is for pages we only generate as part of another one.
+     */
+    boolean reuseIfPresent(File page, String hash) throws IOException {
+        String path = getPath(page);
+        if (!copyPrevious(page, path, hash)) {
+            return false;
+        }
+        current.put(path, hash);
+        return true;
+    }
+
+    private boolean copyPrevious(File page, String path, String hash) throws IOException {
+        if (!hash.equals(previous.get(path))) {
+            return false;
+        }
+        File previousPage = new File(previousFolder, path);
+        if (!previousPage.isFile()) {
+            return false;
+        }
+        File dir = page.getParentFile();
+        if (!FileUtil.mkdirs(dir) && !dir.isDirectory()) {
+            throw new IOException(CeylondMessages.msg("error.couldNotCreateDirectory", page));
+        }
+        Files.copy(previousPage.toPath(), page.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Writes the hashes of the pages of this run in the module-doc
+     * folder, sorted so that the same inputs give the same file.
+     */
+    void save() throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(new File(outputFolder, FILE_NAME).toPath()), UTF8)) {
+            writer.write(FORMAT);
+            writer.write('\n');
+            for (Map.Entry<String, String> entry : new TreeMap<String, String>(current).entrySet()) {
+                writer.write(entry.getValue());
+                writer.write(' ');
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+        }
+    }
+
+    private String getPath(File page) throws IOException {
+        return outputFolder.toURI().relativize(page.getCanonicalFile().toURI()).getPath();
+    }
+
+    private static Map<String, String> load(File folder) {
+        if (folder == null) {
+            return Collections.emptyMap();
+        }
+        File file = new File(folder, FILE_NAME);
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> hashes = new HashMap<String, String>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            if (!FORMAT.equals(reader.readLine())) {
+                return Collections.emptyMap();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space == -1) {
+                    return Collections.emptyMap();
+                }
+                hashes.put(line.substring(space + 1), line.substring(0, space));
+            }
+        } catch (IOException e) {
+            // we will just generate every page again
+            return Collections.emptyMap();
+        }
+        return hashes;
+    }
+}
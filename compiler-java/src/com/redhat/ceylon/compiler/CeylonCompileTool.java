@@ -21,6 +21,7 @@ package com.redhat.ceylon.compiler;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
@@ -32,9 +33,11 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 
+import com.redhat.ceylon.cmr.api.ModuleVersionDetails;
 import com.redhat.ceylon.common.Backend;
 import com.redhat.ceylon.common.Constants;
 import com.redhat.ceylon.common.ModuleSpec;
+import com.redhat.ceylon.common.ModuleUtil;
 import com.redhat.ceylon.common.config.DefaultToolOptions;
 import com.redhat.ceylon.common.tool.Argument;
 import com.redhat.ceylon.common.tool.Description;
@@ -117,7 +120,24 @@ import com.redhat.ceylon.langtools.tools.javac.util.Options;
         "\n\n" +
         "**Important note**: There is no guarantee that any particular `javac` " +
         "option or combination of options will work, or continue to work in " +
-        "future releases.")
+        "future releases." +
+        "\n\n" +
+        "## Compiling with a daemon" +
+        "\n\n" +
+        "Starting a JVM and loading the compiler takes a large part of " +
+        "compiling a small change. " +
+        "`ceylon compile --daemon=serve` starts a compiler which keeps running " +
+        "in the foreground, and `ceylon compile --daemon` then compiles using it, " +
+        "with the same options it would use for compiling in its own process, " +
+        "or compiles in its own process if no daemon is running. " +
+        "`ceylon compile --daemon=stop` stops the daemon. " +
+        "The daemon only saves starting a JVM: every compilation still loads " +
+        "the language module and JDK models, and builds the models of the " +
+        "compiled modules, from scratch." +
+        "\n\n" +
+        "The daemon resolves relative paths against the directory " +
+        "`ceylon compile --daemon` was run from, except for the arguments " +
+        "of `--javac` options, which should be given as absolute paths.")
 public class CeylonCompileTool extends OutputRepoUsingTool {
 
     private static final class Helper extends com.redhat.ceylon.langtools.tools.javac.main.OptionHelper {
@@ -187,8 +207,11 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
     private List<String> modulesOrFiles = Arrays.asList("*");
     private boolean continueOnErrors;
     private boolean progress = DefaultToolOptions.getCompilerProgress();
+    private int jobs = 1;
     private List<String> javac = Collections.emptyList();
     private String encoding;
+    private String daemon;
+    private boolean incremental;
     private String resourceRoot = DefaultToolOptions.getCompilerResourceRootName();
     private boolean noOsgi = DefaultToolOptions.getCompilerNoOsgi();
     private String osgiProvidedBundles = DefaultToolOptions.getCompilerOsgiProvidedBundles();
@@ -311,6 +334,13 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         this.progress = progress;
     }
 
+    @OptionArgument(longName="jobs", argumentName="n")
+    @Description("Sets the number of threads used to typecheck the Ceylon " +
+            "source files, use 1 to typecheck sequentially (default: 1).")
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
     @OptionArgument(shortName='E', argumentName="encoding")
     @Description("Sets the encoding used for reading source files" +
             "(default: platform-specific).")
@@ -318,6 +348,25 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         this.encoding = encoding;
     }
 
+    @Option(longName="daemon")
+    @OptionArgument(longName="daemon", argumentName="mode")
+    @Description("Compiles using the compile daemon of the current user, " +
+            "if one is running. " +
+            "With the `serve` mode, runs the daemon instead of compiling, " +
+            "and with the `stop` mode, stops it.")
+    public void setDaemon(String daemon) {
+        this.daemon = daemon;
+    }
+
+    @Option(longName="incremental")
+    @Description("Only compiles the source files which changed since the previous " +
+            "incremental compilation of their module, along with the source files " +
+            "which depend on declarations whose signature changed. " +
+            "Only applies when compiling modules rather than files.")
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     @Argument(argumentName="moduleOrFile", multiplicity="*")
     public void setModule(List<String> moduleOrFile) {
         this.modulesOrFiles = moduleOrFile;
@@ -355,8 +404,17 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         this.suppressWarnings = warnings;
     }
 
+    private static final String DAEMON_SERVE = "serve";
+    private static final String DAEMON_STOP = "stop";
+
     private List<String> arguments;
     
+    /** The arguments without the modules and files to compile */
+    private List<String> baseArguments;
+    
+    /** The modules to compile incrementally, if any */
+    private List<String> incrementalModules;
+    
     private Main compiler;
     
     @Override
@@ -381,6 +439,20 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
     
     @Override
     public void initialize(CeylonTool mainTool) throws IOException {
+        if (daemon != null
+                && !daemon.isEmpty()
+                && !DAEMON_SERVE.equals(daemon)
+                && !DAEMON_STOP.equals(daemon)) {
+            throw new IllegalArgumentException(CeylonCompileMessages.msg("option.error.daemon", daemon));
+        }
+        if (DAEMON_SERVE.equals(daemon)
+                || DAEMON_STOP.equals(daemon)) {
+            return;
+        }
+        if (daemon != null && cwd == null) {
+            // the daemon resolves paths against its own directory
+            cwd = new File(".").getAbsoluteFile().getParentFile();
+        }
         compiler = new Main("ceylon compile");
         helper.options.clear();
         Options options = Options.instance(new Context());
@@ -428,6 +500,15 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
             arguments.add("-progress");
         }
 
+        if (incremental) {
+            arguments.add("-incremental");
+        }
+
+        if (jobs > 1) {
+            arguments.add("-jobs");
+            arguments.add(String.valueOf(jobs));
+        }
+
         if (offline) {
             arguments.add("-offline");
         }
@@ -557,7 +638,26 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
         
         validateSourceArguments(expandedModulesOrFiles);
         
-        arguments.addAll(expandedModulesOrFiles);
+        baseArguments = new ArrayList<>(arguments);
+        incrementalModules = null;
+        if (incremental) {
+            incrementalModules = expandedModulesOrFiles;
+            for (String moduleOrFile : expandedModulesOrFiles) {
+                if (applyCwd(new File(moduleOrFile)).isFile()) {
+                    incrementalModules = null;
+                    break;
+                }
+            }
+        }
+        
+        if (daemon != null) {
+            for (String moduleOrFile : expandedModulesOrFiles) {
+                File file = applyCwd(new File(moduleOrFile));
+                arguments.add(file.isFile() ? file.getPath() : moduleOrFile);
+            }
+        } else {
+            arguments.addAll(expandedModulesOrFiles);
+        }
         
         if (verbose != null) {
             System.out.println(arguments);
@@ -588,10 +688,94 @@ public class CeylonCompileTool extends OutputRepoUsingTool {
      */
     @Override
     public void run() throws IOException {
+        if (DAEMON_SERVE.equals(daemon)) {
+            serve();
+            return;
+        }
+        if (DAEMON_STOP.equals(daemon)) {
+            if (!CompileDaemon.stop(CompileDaemon.getDefaultPortFile())) {
+                System.err.println(CeylonCompileMessages.msg("daemon.none"));
+            }
+            return;
+        }
+        if (incrementalModules != null) {
+            compileIncrementally();
+            return;
+        }
+        compile(compiler, arguments);
+    }
+
+    private void compile(Main compiler, List<String> arguments) throws IOException {
+        if (daemon != null) {
+            PrintWriter output = new PrintWriter(System.err);
+            CompileDaemon.Result result = CompileDaemon.compile(CompileDaemon.getDefaultPortFile(), arguments, output);
+            output.flush();
+            if (result != null) {
+                handleDaemonResult(result);
+                return;
+            }
+            System.err.println(CeylonCompileMessages.msg("daemon.fallback"));
+        }
         Result result = compiler.compile(arguments.toArray(new String[arguments.size()]));
         handleExitCode(result.exitCode, compiler.exitState);
     }
 
+    private void compileIncrementally() throws IOException {
+        IncrementalCompilation incrementalCompilation = new IncrementalCompilation(
+                applyCwd(this.sources), applyCwd(this.resources), getOutputRepositoryManager());
+        for (String module : incrementalModules) {
+            String version = null;
+            if (!ModuleUtil.isDefaultModule(module)) {
+                ModuleVersionDetails details = getVersionFromSource(module);
+                version = details != null ? details.getVersion() : null;
+            }
+            incrementalCompilation.addModule(module, version);
+        }
+        incrementalCompilation.compile(new IncrementalCompilation.Compiler() {
+            @Override
+            public void compile(List<String> modulesOrFiles) throws IOException {
+                List<String> roundArguments = new ArrayList<>(baseArguments);
+                roundArguments.addAll(modulesOrFiles);
+                if (verbose != null) {
+                    System.out.println(roundArguments);
+                    System.out.flush();
+                }
+                CeylonCompileTool.this.compile(new Main("ceylon compile"), roundArguments);
+            }
+        });
+    }
+
+    private void serve() throws IOException {
+        File portFile = CompileDaemon.getDefaultPortFile();
+        if (CompileDaemon.isRunning(portFile)) {
+            throw new ToolUsageError(CeylonCompileMessages.msg("daemon.running"));
+        }
+        final CompileDaemon server = new CompileDaemon(portFile);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.close();
+            }
+        });
+        System.err.println(CeylonCompileMessages.msg("daemon.serving", String.valueOf(server.getPort())));
+        server.serve();
+    }
+
+    private void handleDaemonResult(CompileDaemon.Result result) {
+        switch (result.ceylonState) {
+        case OK:
+            break;
+        case ERROR:
+            throw new CompilerErrorException(result.errorCount);
+        case SYS:
+        case BUG:
+            // the daemon already printed the stack trace
+            throw new SystemErrorException(new Exception(result.message));
+        default:
+            throw new IllegalStateException("Unexpected CeylonState " + result.ceylonState);
+        }
+    }
+
     private void handleExitCode(
             int javacExitCode,
             Main.ExitState exitState) {
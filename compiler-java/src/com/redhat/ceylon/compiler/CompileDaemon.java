@@ -0,0 +1,416 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+
+import com.redhat.ceylon.common.FileUtil;
+import com.redhat.ceylon.compiler.java.launcher.Main;
+import com.redhat.ceylon.compiler.java.launcher.Main.ExitState;
+import com.redhat.ceylon.compiler.java.launcher.Main.ExitState.CeylonState;
+
+/**
+ * A long-lived compiler process which compiles on behalf of
+ * {@code ceylon compile --daemon}. This only saves starting
+ * a JVM: every compilation still gets a fresh compiler
+ * context and builds its models from scratch, since the
+ * models built while compiling are mutable, but it runs in
+ * a JVM where the compiler is already loaded and
+ * JIT-compiled, and where process-wide caches such as the
+ * package index of dependency archives are already
+ * populated.
+ * <p>
+ * The daemon listens on a loopback socket and records its
+ * port, along with a random token which every request must
+ * send after the {@link #PROTOCOL_VERSION}, in a file only
+ * readable by the user. Requests are served one at a time,
+ * and a client which does not send its whole request within
+ * {@link #REQUEST_TIMEOUT} is disconnected.
+ */
+public class CompileDaemon {
+
+    /** Sent first by every client, so that a daemon run by another version rejects it */
+    private static final int PROTOCOL_VERSION = 1;
+
+    /** How long the daemon waits for a client to send its request, in milliseconds */
+    private static final int REQUEST_TIMEOUT = 10000;
+
+    private static final String COMMAND_COMPILE = "compile";
+    private static final String COMMAND_PING = "ping";
+    private static final String COMMAND_STOP = "stop";
+
+    private static final byte FRAME_OUTPUT = 'O';
+    private static final byte FRAME_RESULT = 'R';
+    private static final byte FRAME_VERSION = 'V';
+
+    // small enough for writeUTF() even if every char takes three bytes
+    private static final int MAX_CHUNK = 8192;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The outcome of a compilation performed by a daemon.
+     */
+    public static class Result {
+        public final CeylonState ceylonState;
+        public final int errorCount;
+        /** The message of the exception which aborted the compilation, if any */
+        public final String message;
+
+        Result(CeylonState ceylonState, int errorCount, String message) {
+            this.ceylonState = ceylonState;
+            this.errorCount = errorCount;
+            this.message = message;
+        }
+    }
+
+    private final File portFile;
+    private final String token;
+    private final ServerSocket serverSocket;
+    private volatile boolean stopped;
+
+    /**
+     * Starts listening, and records the port in the given file.
+     */
+    public CompileDaemon(File portFile) throws IOException {
+        this.portFile = portFile;
+        this.token = newToken();
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName(null));
+        try {
+            writePortFile(portFile, serverSocket.getLocalPort(), token);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The file where the daemon of the current user records
+     * its port, in the {@code daemon} folder of the user's
+     * Ceylon directory.
+     */
+    public static File getDefaultPortFile() {
+        return new File(new File(FileUtil.getUserDir(), "daemon"), "compile");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves requests until the daemon is stopped, either by
+     * a client or by {@link #close()}.
+     */
+    public void serve() throws IOException {
+        try {
+            while (!stopped) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (stopped)
+                        break;
+                    throw e;
+                }
+                try (Socket s = socket) {
+                    s.setSoTimeout(REQUEST_TIMEOUT);
+                    handle(s);
+                } catch (IOException e) {
+                    // the client went away or was too slow, keep serving the others
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops listening, and removes the port file unless
+     * another daemon has replaced it since.
+     */
+    public void close() {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignore) {
+        }
+        PortRecord record = readPortFile(portFile);
+        if (record != null && record.token.equals(token))
+            portFile.delete();
+    }
+
+    private void handle(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        int version = in.readInt();
+        if (version != PROTOCOL_VERSION) {
+            out.writeByte(FRAME_VERSION);
+            out.writeInt(PROTOCOL_VERSION);
+            out.flush();
+            return;
+        }
+        if (!MessageDigest.isEqual(token.getBytes(UTF8), in.readUTF().getBytes(UTF8)))
+            return;
+        String command = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        switch (command) {
+        case COMMAND_PING:
+            writeResult(out, CeylonState.OK, 0, null);
+            break;
+        case COMMAND_STOP:
+            stopped = true;
+            writeResult(out, CeylonState.OK, 0, null);
+            break;
+        case COMMAND_COMPILE:
+            compile(args, out);
+            break;
+        }
+    }
+
+    private void compile(String[] args, DataOutputStream out) throws IOException {
+        PrintWriter writer = new PrintWriter(new FrameWriter(out), true);
+        ExitState exitState;
+        try {
+            Main compiler = new Main("ceylon compile", writer);
+            compiler.compile(args);
+            exitState = compiler.exitState;
+        } catch (RuntimeException|Error e) {
+            e.printStackTrace(writer);
+            writer.flush();
+            writeResult(out, CeylonState.BUG, 0, e.toString());
+            return;
+        }
+        writer.flush();
+        if (exitState == null) {
+            writeResult(out, CeylonState.BUG, 0, "Missing ExitState");
+            return;
+        }
+        Throwable aborting = exitState.abortingException;
+        if (aborting != null) {
+            aborting.printStackTrace(writer);
+            writer.flush();
+        }
+        writeResult(out, exitState.ceylonState, exitState.errorCount,
+                aborting != null ? aborting.toString() : null);
+    }
+
+    private static void writeResult(DataOutputStream out, CeylonState state, int errorCount, String message) throws IOException {
+        out.writeByte(FRAME_RESULT);
+        out.writeUTF(state.name());
+        out.writeInt(errorCount);
+        out.writeUTF(message != null ? truncate(message) : "");
+        out.flush();
+    }
+
+    private static String truncate(String message) {
+        return message.length() > MAX_CHUNK ? message.substring(0, MAX_CHUNK) : message;
+    }
+
+    /**
+     * Sends the output of the compiler to the client as a
+     * sequence of frames.
+     */
+    private static class FrameWriter extends Writer {
+        private final DataOutputStream out;
+
+        FrameWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, MAX_CHUNK);
+                out.writeByte(FRAME_OUTPUT);
+                out.writeUTF(new String(cbuf, off, chunk));
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Asks the daemon recorded in the given port file to
+     * compile with the given compiler arguments, copying its
+     * output to the given writer. Relative paths among the
+     * arguments are resolved by the daemon, so callers should
+     * make them absolute.
+     * @return the result, or null if no daemon is running
+     */
+    public static Result compile(File portFile, List<String> args, Writer output) throws IOException {
+        return request(portFile, COMMAND_COMPILE, args, output);
+    }
+
+    /**
+     * Whether a daemon answers at the port recorded in the
+     * given port file.
+     */
+    public static boolean isRunning(File portFile) throws IOException {
+        return request(portFile, COMMAND_PING, null, null) != null;
+    }
+
+    /**
+     * Stops the daemon recorded in the given port file.
+     * @return false if no daemon was running
+     */
+    public static boolean stop(File portFile) throws IOException {
+        return request(portFile, COMMAND_STOP, null, null) != null;
+    }
+
+    private static Result request(File portFile, String command, List<String> args, Writer output) throws IOException {
+        PortRecord record = readPortFile(portFile);
+        if (record == null)
+            return null;
+        Socket socket = new Socket();
+        try {
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getByName(null), record.port));
+            } catch (IOException e) {
+                // a stale port file, left by a daemon which died
+                return null;
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(PROTOCOL_VERSION);
+            out.writeUTF(record.token);
+            out.writeUTF(command);
+            if (args == null) {
+                out.writeInt(0);
+            } else {
+                out.writeInt(args.size());
+                for (String arg : args) {
+                    out.writeUTF(arg);
+                }
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+                byte frame = in.readByte();
+                if (frame == FRAME_OUTPUT) {
+                    String text = in.readUTF();
+                    if (output != null) {
+                        output.write(text);
+                        output.flush();
+                    }
+                } else if (frame == FRAME_RESULT) {
+                    CeylonState state = CeylonState.valueOf(in.readUTF());
+                    int errorCount = in.readInt();
+                    String message = in.readUTF();
+                    return new Result(state, errorCount, message.isEmpty() ? null : message);
+                } else if (frame == FRAME_VERSION) {
+                    throw new IOException("The compile daemon uses protocol version " + in.readInt()
+                            + " instead of " + PROTOCOL_VERSION + ", it should be restarted");
+                } else {
+                    throw new IOException("Unexpected response from the compile daemon");
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static class PortRecord {
+        final int port;
+        final String token;
+
+        PortRecord(int port, String token) {
+            this.port = port;
+            this.token = token;
+        }
+    }
+
+    private static PortRecord readPortFile(File portFile) {
+        if (!portFile.isFile())
+            return null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(portFile), UTF8))) {
+            String port = reader.readLine();
+            String token = reader.readLine();
+            if (port == null || token == null)
+                return null;
+            return new PortRecord(Integer.parseInt(port.trim()), token.trim());
+        } catch (IOException|NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writePortFile(File portFile, int port, String token) throws IOException {
+        File dir = portFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !FileUtil.mkdirs(dir))
+            throw new IOException("Could not create " + dir);
+        // restrict it to the user before the token gets written to it
+        portFile.delete();
+        if (!portFile.createNewFile())
+            throw new IOException("Could not create " + portFile);
+        portFile.setReadable(false, false);
+        portFile.setReadable(true, true);
+        portFile.setWritable(false, false);
+        portFile.setWritable(true, true);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(portFile), UTF8)) {
+            writer.write(String.valueOf(port));
+            writer.write('\n');
+            writer.write(token);
+            writer.write('\n');
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
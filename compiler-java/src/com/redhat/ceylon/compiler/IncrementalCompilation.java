@@ -0,0 +1,256 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.cmr.impl.ShaSigner;
+import com.redhat.ceylon.cmr.util.JarUtils;
+import com.redhat.ceylon.common.Constants;
+import com.redhat.ceylon.common.tools.SourceArgumentsResolver;
+import com.redhat.ceylon.compiler.java.tools.IncrementalUnit;
+
+/**
+ * Plans the compilation of {@code ceylon compile --incremental}.
+ * <p>
+ * The {@link IncrementalUnit}s recorded in the archive of each
+ * module tell which source files changed since it was compiled.
+ * Only those are compiled, and then, in further rounds, the
+ * source files which refer to a declaration whose signature
+ * changed, until no signature changes any more. Every round
+ * updates the archive, which keeps the classes of all the other
+ * source files.
+ * <p>
+ * A module is compiled as a whole when its archive records no
+ * units, when its descriptor, a package descriptor or a Java
+ * source file changed, or when a source file was removed.
+ */
+class IncrementalCompilation {
+
+    private static final String PACKAGE_DESCRIPTOR = "package" + Constants.CEYLON_SUFFIX;
+
+    /**
+     * Compiles the given module names and source or resource files.
+     */
+    interface Compiler {
+        void compile(List<String> modulesOrFiles) throws IOException;
+    }
+
+    private static class ModuleSources {
+        final String name;
+        final String version;
+        /** The source files, by path relative to their source directory */
+        final Map<String,File> sources = new LinkedHashMap<String,File>();
+        final List<File> resources = new ArrayList<File>();
+        /** The source files recorded in the module archive */
+        final Set<String> recorded = new HashSet<String>();
+
+        ModuleSources(String name, String version) {
+            this.name = name;
+            this.version = version;
+        }
+    }
+
+    private final List<File> sourceDirs;
+    private final List<File> resourceDirs;
+    private final RepositoryManager outputRepositoryManager;
+    private final Map<String,ModuleSources> modules = new LinkedHashMap<String,ModuleSources>();
+    /** The units recorded for all the source files of all the modules */
+    private final Map<String,IncrementalUnit> units = new HashMap<String,IncrementalUnit>();
+
+    IncrementalCompilation(List<File> sourceDirs, List<File> resourceDirs, RepositoryManager outputRepositoryManager) {
+        this.sourceDirs = sourceDirs;
+        this.resourceDirs = resourceDirs;
+        this.outputRepositoryManager = outputRepositoryManager;
+    }
+
+    /**
+     * Adds a module to compile.
+     * @param version The version of the module, or null for the default module
+     */
+    void addModule(String name, String version) throws IOException {
+        ModuleSources module = new ModuleSources(name, version);
+        SourceArgumentsResolver resolver = new SourceArgumentsResolver(sourceDirs, resourceDirs,
+                Constants.CEYLON_SUFFIX, Constants.JAVA_SUFFIX);
+        resolver.parse(Collections.singletonList(name));
+        for (File file : resolver.getSourceFiles()) {
+            module.sources.put(JarUtils.toPlatformIndependentPath(sourceDirs, file.getPath()), file);
+        }
+        module.resources.addAll(resolver.getResourceFiles());
+        modules.put(name, module);
+    }
+
+    /**
+     * Compiles what changed since the previous compilation,
+     * if anything.
+     */
+    void compile(Compiler compiler) throws IOException {
+        List<String> wholeModules = new ArrayList<String>();
+        Set<String> changedSources = new HashSet<String>();
+        List<File> changedResources = new ArrayList<File>();
+        for (ModuleSources module : modules.values()) {
+            File car = getCar(module);
+            Map<String,IncrementalUnit> previousUnits = IncrementalUnit.read(car);
+            if (previousUnits == null) {
+                wholeModules.add(module.name);
+                continue;
+            }
+            units.putAll(previousUnits);
+            module.recorded.addAll(previousUnits.keySet());
+            boolean whole = false;
+            for (Map.Entry<String,File> source : module.sources.entrySet()) {
+                String path = source.getKey();
+                IncrementalUnit unit = previousUnits.get(path);
+                if (unit != null && unit.sha1.equals(ShaSigner.sha1(source.getValue())))
+                    continue;
+                changedSources.add(path);
+                if (isDescriptor(path)
+                        || path.endsWith(Constants.JAVA_SUFFIX)) {
+                    whole = true;
+                }
+            }
+            for (String path : previousUnits.keySet()) {
+                if (!module.sources.containsKey(path)) {
+                    // removed source file
+                    whole = true;
+                }
+            }
+            if (whole) {
+                wholeModules.add(module.name);
+                changedSources.removeAll(module.sources.keySet());
+            } else {
+                for (File resource : module.resources) {
+                    if (resource.lastModified() > car.lastModified()) {
+                        changedResources.add(resource);
+                    }
+                }
+            }
+        }
+
+        while (!wholeModules.isEmpty()
+                || !changedSources.isEmpty()
+                || !changedResources.isEmpty()) {
+            List<String> modulesOrFiles = new ArrayList<String>(wholeModules);
+            Set<String> roundSources = new HashSet<String>(changedSources);
+            Set<ModuleSources> roundModules = new HashSet<ModuleSources>();
+            for (String name : wholeModules) {
+                ModuleSources module = modules.get(name);
+                roundSources.addAll(module.sources.keySet());
+                roundModules.add(module);
+            }
+            for (String path : changedSources) {
+                modulesOrFiles.add(getSourceFile(path).getPath());
+                roundModules.add(getModule(path));
+            }
+            for (File resource : changedResources) {
+                modulesOrFiles.add(resource.getPath());
+            }
+            compiler.compile(modulesOrFiles);
+
+            Set<String> changedDeclarations = new HashSet<String>();
+            for (ModuleSources module : roundModules) {
+                Map<String,IncrementalUnit> newUnits = IncrementalUnit.read(getCar(module));
+                if (newUnits == null) {
+                    newUnits = Collections.emptyMap();
+                }
+                for (String path : module.sources.keySet()) {
+                    if (!roundSources.contains(path))
+                        continue;
+                    IncrementalUnit previous = units.get(path);
+                    IncrementalUnit unit = newUnits.get(path);
+                    if (previous == null
+                            || unit == null
+                            || previous.signature == null
+                            || !previous.signature.equals(unit.signature)) {
+                        if (previous != null)
+                            changedDeclarations.addAll(previous.declarations);
+                        if (unit != null)
+                            changedDeclarations.addAll(unit.declarations);
+                    }
+                    if (unit != null) {
+                        units.put(path, unit);
+                    } else {
+                        units.remove(path);
+                    }
+                }
+                // the declarations of removed source files changed too
+                for (String path : module.recorded) {
+                    if (!module.sources.containsKey(path)) {
+                        IncrementalUnit removed = units.remove(path);
+                        if (removed != null)
+                            changedDeclarations.addAll(removed.declarations);
+                    }
+                }
+            }
+
+            wholeModules.clear();
+            changedSources.clear();
+            changedResources.clear();
+            if (changedDeclarations.isEmpty())
+                break;
+            // the sources compiled in this round already saw the
+            // changes, but those compiled in a previous round did not
+            for (ModuleSources module : modules.values()) {
+                for (String path : module.sources.keySet()) {
+                    IncrementalUnit unit = units.get(path);
+                    if (unit != null
+                            && !roundSources.contains(path)
+                            && !Collections.disjoint(unit.references, changedDeclarations)) {
+                        changedSources.add(path);
+                    }
+                }
+            }
+        }
+    }
+
+    private File getCar(ModuleSources module) {
+        return outputRepositoryManager.getArtifact(
+                new ArtifactContext(module.name, module.version, ArtifactContext.CAR));
+    }
+
+    private ModuleSources getModule(String path) {
+        for (ModuleSources module : modules.values()) {
+            if (module.sources.containsKey(path))
+                return module;
+        }
+        throw new IllegalArgumentException(path);
+    }
+
+    private File getSourceFile(String path) {
+        return getModule(path).sources.get(path);
+    }
+
+    private static boolean isDescriptor(String path) {
+        String name = new File(path).getName();
+        return name.equals(Constants.MODULE_DESCRIPTOR)
+                || name.equals(PACKAGE_DESCRIPTOR);
+    }
+}
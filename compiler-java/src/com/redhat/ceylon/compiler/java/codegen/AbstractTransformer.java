@@ -62,6 +62,7 @@ import com.redhat.ceylon.compiler.typechecker.tree.Tree.ModuleDescriptor;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.PositionalArgument;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.Term;
 import com.redhat.ceylon.langtools.tools.javac.code.BoundKind;
+import com.redhat.ceylon.langtools.tools.javac.code.Source;
 import com.redhat.ceylon.langtools.tools.javac.code.Symtab;
 import com.redhat.ceylon.langtools.tools.javac.code.TypeTag;
 import com.redhat.ceylon.langtools.tools.javac.jvm.Target;
@@ -157,6 +158,8 @@ public abstract class AbstractTransformer implements Transformation {
 
     private final Target target;
 
+    private final boolean lambdas;
+
     public AbstractTransformer(Context context) {
         this.context = context;
         make = TreeMaker.instance(context);
@@ -168,6 +171,8 @@ public abstract class AbstractTransformer implements Transformation {
         naming = Naming.instance(context);
         simpleAnnotationModels = Options.instance(context).get(Option.BOOTSTRAPCEYLON) != null;
         target = Target.instance(context);
+        lambdas = Options.instance(context).isSet(Option.CEYLONLAMBDAS)
+                && Source.instance(context).allowLambda();
     }
 
     Context getContext() {
@@ -190,6 +195,14 @@ public abstract class AbstractTransformer implements Transformation {
         return target;
     }
 
+    /**
+     * Whether we may generate Java lambdas rather than classes for 
+     * callables
+     */
+    boolean useLambdas() {
+        return lambdas;
+    }
+
     private static JavaPositionsRetriever javaPositionsRetriever = null;
     public static void trackNodePositions(JavaPositionsRetriever positionsRetriever) {
         javaPositionsRetriever = positionsRetriever;
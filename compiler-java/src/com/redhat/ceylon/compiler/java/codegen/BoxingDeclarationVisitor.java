@@ -393,6 +393,55 @@ public abstract class BoxingDeclarationVisitor extends Visitor {
         }
     }
     
+    @Override
+    public void visit(Tree.ForStatement that) {
+        super.visit(that);
+        // A for over a comprehension like {for (i in first..last) if (c) e}
+        // iterates the Range directly (see Optimization.ComprehensionIteration)
+        // so like in a for over a Range its variable can be unboxed.
+        // The implementation of comprehensions copes with that too.
+        ForComprehensionClause clause = getRangeComprehensionClause(that);
+        if (clause != null) {
+            ((ValueIterator)clause.getForIterator()).getVariable().getDeclarationModel().setUnboxed(true);
+        }
+    }
+
+    private ForComprehensionClause getRangeComprehensionClause(Tree.ForStatement that) {
+        Tree.ForIterator forIterator = that.getForClause().getForIterator();
+        if (!(forIterator instanceof ValueIterator)
+                || forIterator.getSpecifierExpression() == null) {
+            return null;
+        }
+        Tree.Term term = ExpressionTransformer.eliminateParens(forIterator.getSpecifierExpression().getExpression().getTerm());
+        if (!(term instanceof Tree.SequenceEnumeration)
+                || ((Tree.SequenceEnumeration)term).getSequencedArgument() == null) {
+            return null;
+        }
+        java.util.List<Tree.PositionalArgument> args = ((Tree.SequenceEnumeration)term).getSequencedArgument().getPositionalArguments();
+        if (args.size() != 1
+                || !(args.get(0) instanceof Tree.Comprehension)
+                || !(((Tree.Comprehension)args.get(0)).getInitialComprehensionClause() instanceof ForComprehensionClause)) {
+            return null;
+        }
+        ForComprehensionClause forClause = (ForComprehensionClause)((Tree.Comprehension)args.get(0)).getInitialComprehensionClause();
+        if (!(forClause.getForIterator() instanceof ValueIterator)
+                || !(ExpressionTransformer.eliminateParens(forClause.getForIterator().getSpecifierExpression().getExpression().getTerm()) instanceof Tree.RangeOp)
+                || !forClause.getForIterator().getSpecifierExpression().getExpression().getTypeModel().isExactly(
+                        forClause.getUnit().getSpanType(forClause.getUnit().getIntegerType()))) {
+            return null;
+        }
+        Tree.ComprehensionClause clause = forClause.getComprehensionClause();
+        while (clause instanceof Tree.IfComprehensionClause) {
+            for (Tree.Condition condition : ((Tree.IfComprehensionClause)clause).getConditionList().getConditions()) {
+                if (!(condition instanceof Tree.BooleanCondition)) {
+                    return null;
+                }
+            }
+            clause = ((Tree.IfComprehensionClause)clause).getComprehensionClause();
+        }
+        return clause instanceof Tree.ExpressionComprehensionClause ? forClause : null;
+    }
+
     private void boxPattern(Tree.Pattern pattern) {
         if (pattern instanceof Tree.KeyValuePattern) {
             boxPattern(((Tree.KeyValuePattern)pattern).getKey());
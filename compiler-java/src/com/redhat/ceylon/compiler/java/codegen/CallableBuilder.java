@@ -25,7 +25,10 @@ import static com.redhat.ceylon.compiler.java.codegen.AbstractTransformer.JT_EXT
 import static com.redhat.ceylon.compiler.java.codegen.AbstractTransformer.JT_NO_PRIMITIVES;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import com.redhat.ceylon.compiler.java.codegen.AbstractTransformer.BoxingStrategy;
 import com.redhat.ceylon.compiler.java.codegen.Naming.SyntheticName;
@@ -37,12 +40,15 @@ import com.redhat.ceylon.langtools.tools.javac.tree.JCTree;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCAnnotation;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCClassDecl;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCExpression;
+import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCIdent;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCMethodDecl;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCMethodInvocation;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCNewClass;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCStatement;
+import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCTypeApply;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCTypeParameter;
 import com.redhat.ceylon.langtools.tools.javac.tree.JCTree.JCVariableDecl;
+import com.redhat.ceylon.langtools.tools.javac.tree.TreeScanner;
 import com.redhat.ceylon.langtools.tools.javac.util.List;
 import com.redhat.ceylon.langtools.tools.javac.util.ListBuffer;
 import com.redhat.ceylon.langtools.tools.javac.util.Name;
@@ -1537,7 +1543,6 @@ public class CallableBuilder {
         
         transformation.appendMethods(classBody);
         gen.at(node);
-        JCClassDecl classDef = gen.make().AnonymousClassDef(gen.make().Modifiers(0, annotations != null ? annotations : List.<JCAnnotation>nil()), classBody.toList());
         
         int variadicIndex = isVariadic ? numParams - 1 : -1;
         
@@ -1548,14 +1553,21 @@ public class CallableBuilder {
             callableType = typeModel;
         }
         
-        JCNewClass callableInstance = gen.at(node).NewClass(null, 
-                null, 
-                gen.makeJavaType(callableType, JT_EXTENDS | JT_CLASS_NEW), 
-                List.<JCExpression>of(gen.makeReifiedTypeArgument(callableType.getTypeArgumentList().get(0)),
-                        gen.makeReifiedTypeArgument(callableType.getTypeArgumentList().get(1)),
-                                      gen.make().Literal(callableType.asString(true)),
-                                      gen.make().TypeCast(gen.syms().shortType, gen.makeInteger(variadicIndex))),
-                classDef);
+        List<JCExpression> callableArgs = List.<JCExpression>of(gen.makeReifiedTypeArgument(callableType.getTypeArgumentList().get(0)),
+                gen.makeReifiedTypeArgument(callableType.getTypeArgumentList().get(1)),
+                              gen.make().Literal(callableType.asString(true)),
+                              gen.make().TypeCast(gen.syms().shortType, gen.makeInteger(variadicIndex)));
+        JCNewClass callableInstance;
+        if (canUseLambda(classBody)) {
+            callableInstance = makeLambdaCallable(callableType, callableArgs, (JCMethodDecl)classBody.first());
+        } else {
+            JCClassDecl classDef = gen.make().AnonymousClassDef(gen.make().Modifiers(0, annotations != null ? annotations : List.<JCAnnotation>nil()), classBody.toList());
+            callableInstance = gen.at(node).NewClass(null, 
+                    null, 
+                    gen.makeJavaType(callableType, JT_EXTENDS | JT_CLASS_NEW), 
+                    callableArgs,
+                    classDef);
+        }
         
         JCExpression result;
         if (typeModel.isTypeConstructor()) {
@@ -1571,6 +1583,87 @@ public class CallableBuilder {
         return result;
     }
 
+    /**
+     * Whether we can turn the given body of our {@code AbstractCallable} 
+     * subclass into a Java lambda given to a {@code LambdaCallable}: it
+     * must consist of a single {@code $call$()} method with a fixed
+     * arity, which does not refer to the callable itself. 
+     */
+    private boolean canUseLambda(ListBuffer<JCTree> classBody) {
+        if (!gen.useLambdas()
+                || typeModel.isTypeConstructor()
+                || annotations != null
+                || classBody.size() != 1
+                || !(classBody.first() instanceof JCMethodDecl)) {
+            return false;
+        }
+        JCMethodDecl method = (JCMethodDecl)classBody.first();
+        if (!method.name.toString().equals(Naming.getCallableMethodName())
+                || method.params.size() > CALLABLE_MAX_FIZED_ARITY
+                || !method.typarams.isEmpty()
+                || method.body == null) {
+            return false;
+        }
+        for (JCVariableDecl param : method.params) {
+            if ((param.mods.flags & Flags.VARARGS) != 0) {
+                return false;
+            }
+        }
+        CallableSelfReferenceScanner scanner = new CallableSelfReferenceScanner();
+        scanner.scan(method.body);
+        return !scanner.found;
+    }
+    
+    /**
+     * Finds unqualified references which would mean something else 
+     * within a lambda than within an {@code AbstractCallable} subclass.
+     * It also finds the ones of local classes, which is fine since we 
+     * can always use a subclass. 
+     */
+    private static class CallableSelfReferenceScanner extends TreeScanner {
+        private static final Set<String> CALLABLE_MEMBERS = new HashSet<String>(Arrays.asList(
+                "this", "super", 
+                "$call$", "$callvariadic$", "$spreadVarargs$", 
+                "$getType$", "$getVariadicParameterIndex$",
+                "toString", "hashCode", "equals", "getClass", "clone", "finalize",
+                "notify", "notifyAll", "wait"));
+        
+        boolean found;
+        
+        @Override
+        public void visitIdent(JCIdent tree) {
+            if (CALLABLE_MEMBERS.contains(tree.name.toString())) {
+                found = true;
+            }
+        }
+    }
+    
+    /**
+     * Makes a {@code LambdaCallable} whose lambda has the parameters 
+     * and body of the given {@code $call$()} method.
+     */
+    private JCNewClass makeLambdaCallable(Type callableType, List<JCExpression> callableArgs, JCMethodDecl method) {
+        ListBuffer<JCVariableDecl> params = new ListBuffer<JCVariableDecl>();
+        for (JCVariableDecl param : method.params) {
+            params.append(gen.make().VarDef(gen.make().Modifiers(Flags.FINAL | Flags.PARAMETER), 
+                    param.name, param.vartype, null));
+        }
+        // the cast picks the constructor for the arity, without the 
+        // speculative attribution of the body an overloaded call needs
+        JCExpression lambda = gen.make().TypeCast(
+                gen.make().Select(gen.makeIdent(gen.syms().ceylonLambdaCallableType), 
+                        gen.names().fromString("Call" + method.params.size())),
+                gen.make().Lambda(params.toList(), method.body));
+        JCExpression callableClass = gen.makeJavaType(callableType, JT_EXTENDS | JT_CLASS_NEW);
+        if (callableClass instanceof JCTypeApply) {
+            callableClass = gen.make().TypeApply(gen.makeIdent(gen.syms().ceylonLambdaCallableType), 
+                    ((JCTypeApply)callableClass).arguments);
+        } else {
+            callableClass = gen.makeIdent(gen.syms().ceylonLambdaCallableType);
+        }
+        return gen.at(node).NewClass(null, null, callableClass, callableArgs.append(lambda), null);
+    }
+
     protected JCExpression buildTypeConstructor(Type callableType,
             JCNewClass callableInstance) {
         JCExpression result;
@@ -13,6 +13,7 @@ public enum Optimization {
     TupleIterationStatic,
     ArrayIterationDynamic,
     TupleIterationDynamic,
+    ComprehensionIteration,
     
     PowerUnroll
 }
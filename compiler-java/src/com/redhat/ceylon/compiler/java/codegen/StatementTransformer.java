@@ -1567,7 +1567,10 @@ public class StatementTransformer extends AbstractTransformer {
         
         ForStatementTransformation transformation;
         
-        transformation = stringIteration(stmt, baseIterable, step);
+        transformation = comprehensionIteration(stmt, baseIterable, step);
+        if (transformation == null) {
+            transformation = stringIteration(stmt, baseIterable, step);
+        }
         if (transformation == null) {
             transformation = arrayIteration(stmt, baseIterable, step);
         }
@@ -2451,7 +2454,222 @@ public class StatementTransformer extends AbstractTransformer {
         
         return new SegmentOpIteration(stmt, op, step, start, length);
     }
-    
+
+    /**
+     * Returns a {@link ComprehensionIterationOptimization} if that optimization
+     * applies to the given {@code for} statement, otherwise null.
+     */
+    private ForStatementTransformation comprehensionIteration(Tree.ForStatement stmt,
+            Tree.Term baseIterable, Tree.Term step) {
+        if (step != null
+                || !(baseIterable instanceof Tree.SequenceEnumeration)
+                || ((Tree.SequenceEnumeration)baseIterable).getSequencedArgument() == null) {
+            return optimizationFailed(stmt, Optimization.ComprehensionIteration,
+                    "iterable expression is not a comprehension");
+        }
+        java.util.List<Tree.PositionalArgument> args = ((Tree.SequenceEnumeration)baseIterable).getSequencedArgument().getPositionalArguments();
+        if (args.size() != 1
+                || !(args.get(0) instanceof Tree.Comprehension)) {
+            return optimizationFailed(stmt, Optimization.ComprehensionIteration,
+                    "iterable expression is not a comprehension");
+        }
+        if (!(stmt.getForClause().getForIterator() instanceof Tree.ValueIterator)) {
+            return optimizationFailed(stmt, Optimization.ComprehensionIteration,
+                    "optimization applies only to ValueIterators");
+        }
+        Tree.Comprehension comp = (Tree.Comprehension)args.get(0);
+        if (!(comp.getInitialComprehensionClause() instanceof Tree.ForComprehensionClause)) {
+            return optimizationFailed(stmt, Optimization.ComprehensionIteration,
+                    "comprehension does not start with a for clause");
+        }
+        Tree.ForComprehensionClause forClause = (Tree.ForComprehensionClause)comp.getInitialComprehensionClause();
+        if (!(forClause.getForIterator() instanceof Tree.ValueIterator)
+                || typeFact().getIteratedType(forClause.getForIterator().getSpecifierExpression().getExpression().getTypeModel()) == null) {
+            return optimizationFailed(stmt, Optimization.ComprehensionIteration,
+                    "comprehension for clause does not iterate a Ceylon Iterable with a ValueIterator");
+        }
+        ListBuffer<Tree.Condition> conditions = new ListBuffer<Tree.Condition>();
+        Tree.ComprehensionClause clause = forClause.getComprehensionClause();
+        while (clause instanceof Tree.IfComprehensionClause) {
+            for (Tree.Condition condition : ((Tree.IfComprehensionClause)clause).getConditionList().getConditions()) {
+                if (!(condition instanceof Tree.BooleanCondition)) {
+                    return optimizationFailed(stmt, Optimization.ComprehensionIteration,
+                            "comprehension if clause has conditions which are not boolean conditions");
+                }
+                conditions.append(condition);
+            }
+            clause = ((Tree.IfComprehensionClause)clause).getComprehensionClause();
+        }
+        if (!(clause instanceof Tree.ExpressionComprehensionClause)) {
+            return optimizationFailed(stmt, Optimization.ComprehensionIteration,
+                    "comprehension has more than one for clause");
+        }
+        if (isOptimizationDisabled(stmt, Optimization.ComprehensionIteration)) {
+            return optimizationDisabled(stmt, Optimization.ComprehensionIteration);
+        }
+        return new ComprehensionIterationOptimization(stmt, forClause,
+                conditions.toList(), (Tree.ExpressionComprehensionClause)clause);
+    }
+
+    /**
+     * <p>Transformation of {@code for} loops over a comprehension with a
+     * single {@code for} clause, like
+     * {@code for (y in {for (x in xs) if (p(x)) f(x)}) ... }, which
+     * doesn't allocate an {@code Iterable} and {@code Iterator} for
+     * the comprehension but iterates {@code xs} directly:</p>
+     * <pre>
+     *     loop: ITERATE xs {
+     *         final X x = ELEMENT;
+     *         if (!(p(x))) continue loop;
+     *         final Y y = f(x);
+     *         BODY
+     *     }
+     * </pre>
+     * <p>When {@code xs} is a {@code first..last} span of {@code Integer}s
+     * it is iterated with a {@code long} counter, otherwise like any other
+     * {@code Iterable}.</p>
+     */
+    class ComprehensionIterationOptimization extends ForStatementTransformation {
+
+        private final Tree.ForComprehensionClause forClause;
+        private final List<Tree.Condition> conditions;
+        private final Tree.ExpressionComprehensionClause expressionClause;
+
+        ComprehensionIterationOptimization(Tree.ForStatement stmt,
+                Tree.ForComprehensionClause forClause,
+                List<Tree.Condition> conditions,
+                Tree.ExpressionComprehensionClause expressionClause) {
+            super(stmt);
+            this.forClause = forClause;
+            this.conditions = conditions;
+            this.expressionClause = expressionClause;
+        }
+
+        private Tree.Variable getComprehensionVariable() {
+            return ((Tree.ValueIterator)forClause.getForIterator()).getVariable();
+        }
+
+        @Override
+        protected ListBuffer<JCStatement> transformForClause() {
+            Tree.Term iterable = ExpressionTransformer.eliminateParens(
+                    forClause.getForIterator().getSpecifierExpression().getExpression().getTerm());
+            if (iterable instanceof Tree.RangeOp
+                    && isSpanOf((Tree.RangeOp)iterable, typeFact().getIntegerType())) {
+                return transformSpanIteration((Tree.RangeOp)iterable);
+            }
+            return transformIteration();
+        }
+
+        /**
+         * The statements which start the loop body: the tests of the
+         * {@code if} clauses, then the declaration of the iteration
+         * variable of the {@code for} statement, then its block.
+         */
+        private List<JCStatement> transformBody() {
+            ListBuffer<JCStatement> body = new ListBuffer<JCStatement>();
+            for (Tree.Condition condition : conditions) {
+                at(condition);
+                JCExpression test = expressionGen().transformExpression(
+                        ((Tree.BooleanCondition)condition).getExpression(),
+                        BoxingStrategy.UNBOXED, typeFact().getBooleanType());
+                body.append(make().If(make().Unary(JCTree.Tag.NOT, test),
+                        make().Continue(label), null));
+            }
+            Tree.Variable variable = ((Tree.ValueIterator)getForIterator()).getVariable();
+            Tree.Expression expr = expressionClause.getExpression();
+            BoxingStrategy boxing = CodegenUtil.getBoxingStrategy(variable.getDeclarationModel());
+            at(expressionClause);
+            JCExpression element = expressionGen().transformExpression(expr, boxing,
+                    variable.getType().getTypeModel());
+            body.append(transformVariable(variable, element, expr.getTypeModel(),
+                    boxing == BoxingStrategy.BOXED).build());
+
+            Tree.ControlClause prevControlClause = currentForClause;
+            currentForClause = stmt.getForClause();
+            body.appendList(transformBlock(getBlock()));
+            currentForClause = prevControlClause;
+            return body.toList();
+        }
+
+        /**
+         * <pre>
+         *     final long $first = FIRST;
+         *     final long $last = LAST;
+         *     final long $incr = $first <= $last ? 1L : -1L;
+         *     boolean $more = true;
+         *     loop: for (long $i = $first; $more; $i += $incr) {
+         *         $more = $i != $last;
+         *         final long x = $i;
+         *         ...
+         *     }
+         * </pre>
+         */
+        private ListBuffer<JCStatement> transformSpanIteration(Tree.RangeOp span) {
+            ListBuffer<JCStatement> result = new ListBuffer<JCStatement>();
+            Type integerType = typeFact().getIntegerType();
+            SyntheticName firstName = naming.temp("first");
+            SyntheticName lastName = naming.temp("last");
+            SyntheticName incrementName = naming.temp("incr");
+            SyntheticName moreName = naming.temp("more");
+            SyntheticName indexName = naming.temp("i");
+            // Note: Must invoke lhs and rhs in the correct order!
+            at(span.getLeftTerm());
+            result.append(makeVar(FINAL, firstName, make().Type(syms().longType),
+                    expressionGen().transformExpression(span.getLeftTerm(), BoxingStrategy.UNBOXED, integerType)));
+            at(span.getRightTerm());
+            result.append(makeVar(FINAL, lastName, make().Type(syms().longType),
+                    expressionGen().transformExpression(span.getRightTerm(), BoxingStrategy.UNBOXED, integerType)));
+            at(span);
+            result.append(makeVar(FINAL, incrementName, make().Type(syms().longType),
+                    make().Conditional(make().Binary(JCTree.Tag.LE, firstName.makeIdent(), lastName.makeIdent()),
+                            make().Literal(1L), make().Literal(-1L))));
+            result.append(makeVar(moreName, make().Type(syms().booleanType), makeBoolean(true)));
+
+            ListBuffer<JCStatement> body = new ListBuffer<JCStatement>();
+            body.append(make().Exec(make().Assign(moreName.makeIdent(),
+                    make().Binary(JCTree.Tag.NE, indexName.makeIdent(), lastName.makeIdent()))));
+            body.append(transformVariable(getComprehensionVariable(), indexName.makeIdent(), integerType, false).build());
+            body.appendList(transformBody());
+
+            at(stmt);
+            result.append(make().Labelled(label, make().ForLoop(
+                    List.<JCStatement>of(makeVar(indexName, make().Type(syms().longType), firstName.makeIdent())),
+                    moreName.makeIdent(),
+                    List.<JCExpressionStatement>of(make().Exec(make().Assignop(JCTree.Tag.PLUS_ASG,
+                            indexName.makeIdent(), incrementName.makeIdent()))),
+                    make().Block(0, body.toList()))));
+            return result;
+        }
+
+        private ListBuffer<JCStatement> transformIteration() {
+            Naming.SyntheticName elem_name = naming.alias("elem");
+            Tree.Variable variable = getComprehensionVariable();
+            List<JCStatement> itemDecls = List.<JCStatement>of(
+                    transformVariable(variable, elem_name.makeIdent()).build());
+            Naming.SyntheticName iteratorVarName = naming.synthetic(variable.getDeclarationModel()).suffixedBy(Suffix.$iterator$).alias();
+
+            Tree.Expression specifierExpression = forClause.getForIterator().getSpecifierExpression().getExpression();
+            Type sequenceElementType = typeFact().getIteratedType(specifierExpression.getTypeModel());
+            Type sequenceType = specifierExpression.getTypeModel().getSupertype(typeFact().getIterableDeclaration());
+            Type expectedIterableType = typeFact().isNonemptyIterableType(sequenceType)
+                    ? typeFact().getNonemptyIterableType(sequenceElementType)
+                    : typeFact().getIterableType(sequenceElementType);
+            JCExpression containment = expressionGen().transformExpression(specifierExpression, BoxingStrategy.BOXED, expectedIterableType);
+
+            return new ListBuffer<JCStatement>().appendList(transformIterableIteration(stmt,
+                    this.label,
+                    elem_name,
+                    iteratorVarName,
+                    specifierExpression.getTypeModel(),
+                    sequenceElementType,
+                    containment,
+                    itemDecls,
+                    transformBody(),
+                    !isOptimizationDisabled(stmt, Optimization.ArrayIterationDynamic),
+                    !isOptimizationDisabled(stmt, Optimization.TupleIterationDynamic)));
+        }
+    }
+
     private Tree.ControlClause currentForClause = null;
     
     class ForStatementTransformation {
@@ -55,6 +55,7 @@ import com.redhat.ceylon.compiler.java.codegen.UnsupportedVisitor;
 import com.redhat.ceylon.compiler.java.tools.CeylonLog;
 import com.redhat.ceylon.compiler.java.tools.CeylonPhasedUnit;
 import com.redhat.ceylon.compiler.java.tools.CeyloncFileManager;
+import com.redhat.ceylon.compiler.java.tools.IncrementalUnitRecorder;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler;
 import com.redhat.ceylon.compiler.java.tools.LanguageCompiler.CompilerDelegate;
 import com.redhat.ceylon.compiler.java.util.Util;
@@ -113,6 +114,7 @@ import com.redhat.ceylon.model.cmr.ArtifactResult;
 import com.redhat.ceylon.model.loader.AbstractModelLoader;
 import com.redhat.ceylon.model.loader.Timer;
 import com.redhat.ceylon.model.loader.model.LazyModule;
+import com.redhat.ceylon.model.typechecker.context.CacheStats;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.ModelUtil;
 import com.redhat.ceylon.model.typechecker.model.Module;
@@ -135,6 +137,7 @@ public class CeylonEnter extends Enter {
     private CeylonTransformer gen;
     private boolean hasRun = false;
     private PhasedUnits phasedUnits;
+    private com.redhat.ceylon.compiler.typechecker.context.Context ceylonContext;
     private CompilerDelegate compilerDelegate;
     private Log log;
     private AbstractModelLoader modelLoader;
@@ -152,6 +155,7 @@ public class CeylonEnter extends Enter {
     private TaskListener taskListener;
     private SourceLanguage sourceLanguage;
     private StatusPrinter sp;
+    private IncrementalUnitRecorder incrementalUnitRecorder;
 
     
     protected CeylonEnter(Context context) {
@@ -166,6 +170,7 @@ public class CeylonEnter extends Enter {
         }
         
         phasedUnits = LanguageCompiler.getPhasedUnitsInstance(context);
+        ceylonContext = LanguageCompiler.getCeylonContextInstance(context);
         compilerDelegate = LanguageCompiler.getCompilerDelegate(context);
         log = CeylonLog.instance(context);
         modelLoader = CeylonModelLoader.instance(context);
@@ -181,6 +186,9 @@ public class CeylonEnter extends Enter {
         annotate = Annotate.instance(context);
         taskListener = context.get(TaskListener.class);
         sourceLanguage = SourceLanguage.instance(context);
+        if (options.isSet(Option.CEYLONINCREMENTAL)) {
+            incrementalUnitRecorder = IncrementalUnitRecorder.instance(context);
+        }
 
         // now superclass init
         init(context);
@@ -364,6 +372,11 @@ public class CeylonEnter extends Enter {
         // run the type checker
         timer.startTask("Ceylon type checking");
         typeCheck();
+        printCacheStats();
+        if (incrementalUnitRecorder != null) {
+            timer.startTask("Recording incremental units");
+            recordIncrementalUnits();
+        }
         // some debugging
         //printModules();
         timer.startTask("Ceylon code generation");
@@ -418,6 +431,19 @@ public class CeylonEnter extends Enter {
             modelLoader.printStats();
     }
 
+    private void printCacheStats() {
+        CacheStats supertypes = CacheStats.EMPTY;
+        CacheStats subtypes = CacheStats.EMPTY;
+        for(Module module : ceylonContext.getModules().getListOfModules()){
+            if(module.getCache() != null)
+                supertypes = supertypes.plus(module.getCache().getStats());
+            if(module.getSubtypeCache() != null)
+                subtypes = subtypes.plus(module.getSubtypeCache().getStats());
+        }
+        timer.print("Supertype cache: "+supertypes);
+        timer.print("Subtype cache: "+subtypes);
+    }
+
     private boolean isVerbose(String key) {
         return verbose || options.get(Option.VERBOSE.text + ":" + key) != null;
     }
@@ -489,6 +515,14 @@ public class CeylonEnter extends Enter {
         }
     }
 
+    private void recordIncrementalUnits() {
+        for (PhasedUnit pu : phasedUnits.getPhasedUnits()) {
+            if (pu instanceof CeylonPhasedUnit) {
+                incrementalUnitRecorder.record((CeylonPhasedUnit) pu);
+            }
+        }
+    }
+
     private void typeCheck() {
         final java.util.List<PhasedUnit> listOfUnits = phasedUnits.getPhasedUnits();
         // Delegate to an external typechecker (e.g. the IDE build)
@@ -8,6 +8,8 @@ import com.redhat.ceylon.compiler.java.tools.LanguageCompiler.CompilerDelegate;
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleValidator;
+import com.redhat.ceylon.compiler.typechecker.context.PhaseExecutor;
+import com.redhat.ceylon.compiler.typechecker.context.PhaseExecutor.Phase;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
@@ -57,6 +59,11 @@ public final class CeyloncCompilerDelegate implements
     
     @Override
     public void typeCheck(java.util.List<PhasedUnit> listOfUnits) {
+        PhaseExecutor executor = PhaseExecutor.forJobs(LanguageCompiler.getJobs(Options.instance(context)));
+        if (executor.isParallel()) {
+            typeCheckInParallel(executor, listOfUnits);
+            return;
+        }
         StatusPrinter sp = getStatusPrinter();
 
         int size = listOfUnits.size();
@@ -110,6 +117,33 @@ public final class CeyloncCompilerDelegate implements
         }
     }
 
+    /**
+     * Same phases as the sequential typeCheck, but each one is run
+     * over all the units on the shared pool before moving to the next.
+     * Progress is only reported per phase since units complete out of
+     * order.
+     */
+    private void typeCheckInParallel(PhaseExecutor executor, java.util.List<PhasedUnit> listOfUnits) {
+        StatusPrinter sp = getStatusPrinter();
+        int size = listOfUnits.size();
+
+        int phase = 1;
+        for (Phase typecheckingPhase : PhaseExecutor.TYPECHECKING_PHASES) {
+            if(sp != null)
+                progress(sp, phase++, size);
+            executor.executePhase(listOfUnits, typecheckingPhase);
+        }
+
+        // unknown types are shared between units and each one must only
+        // report its errors once, and in the same order as sequentially
+        if(sp != null)
+            progress(sp, phase, size);
+        UnknownTypeCollector utc = new UnknownTypeCollector();
+        for (PhasedUnit pu : listOfUnits) { 
+            pu.getCompilationUnit().visit(utc);
+        }
+    }
+
     private StatusPrinter getStatusPrinter() {
         Options options = Options.instance(context);
         boolean isProgressPrinted = options.get(Option.CEYLONPROGRESS) != null && StatusPrinter.canPrint();
@@ -120,6 +154,11 @@ public final class CeyloncCompilerDelegate implements
         }
     }
 
+    private void progress(StatusPrinter sp, int phase, int size) {
+        sp.clearLine();
+        sp.log("Typechecking "+phase+"/7 ["+size+" units] ");
+    }
+
     private void progress(StatusPrinter sp, int phase, int i, int size, PhasedUnit pu) {
         sp.clearLine();
         sp.log("Typechecking "+phase+"/7 ["+i+"/"+size+"] ");
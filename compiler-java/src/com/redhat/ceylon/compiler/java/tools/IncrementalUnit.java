@@ -0,0 +1,153 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * What an incremental compilation records about a source
+ * file in the {@code META-INF/units.txt} entry of the module
+ * archive: the SHA-1 of its contents, a hash of the signature
+ * of its toplevel declarations, the toplevel declarations it
+ * declares, and the toplevel declarations of other units it
+ * refers to.
+ * <p>
+ * For Java source files only the SHA-1 is recorded.
+ */
+public class IncrementalUnit {
+
+    public static final String UNITS_FILE = "META-INF/units.txt";
+
+    private static final String NONE = "-";
+
+    /** The SHA-1 of the source file */
+    public final String sha1;
+    /** A hash of the signature of the toplevel declarations, or null for Java source files */
+    public final String signature;
+    /** The qualified names of the toplevel declarations of the unit */
+    public final Set<String> declarations;
+    /** The qualified names of the toplevel declarations the unit refers to */
+    public final Set<String> references;
+
+    public IncrementalUnit(String sha1, String signature, Set<String> declarations, Set<String> references) {
+        this.sha1 = sha1;
+        this.signature = signature;
+        this.declarations = declarations;
+        this.references = references;
+    }
+
+    /**
+     * The record of a Java source file.
+     */
+    public static IncrementalUnit javaSource(String sha1) {
+        Set<String> none = Collections.emptySet();
+        return new IncrementalUnit(sha1, null, none, none);
+    }
+
+    /**
+     * Formats this record as the value of its entry in
+     * {@code META-INF/units.txt}.
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sha1).append(' ');
+        sb.append(signature != null ? signature : NONE).append(' ');
+        formatNames(sb, declarations);
+        sb.append(' ');
+        formatNames(sb, references);
+        return sb.toString();
+    }
+
+    private static void formatNames(StringBuilder sb, Set<String> names) {
+        if (names.isEmpty()) {
+            sb.append(NONE);
+            return;
+        }
+        boolean first = true;
+        for (String name : new TreeSet<String>(names)) {
+            if (!first)
+                sb.append(',');
+            sb.append(name);
+            first = false;
+        }
+    }
+
+    /**
+     * Parses a value written by {@link #format()}.
+     * @return the record, or null if the value is malformed
+     */
+    public static IncrementalUnit parse(String value) {
+        String[] parts = value.trim().split(" ");
+        if (parts.length != 4)
+            return null;
+        return new IncrementalUnit(parts[0],
+                NONE.equals(parts[1]) ? null : parts[1],
+                parseNames(parts[2]),
+                parseNames(parts[3]));
+    }
+
+    private static Set<String> parseNames(String names) {
+        Set<String> result = new TreeSet<String>();
+        if (!NONE.equals(names)) {
+            Collections.addAll(result, names.split(","));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the records of the given module archive, indexed by
+     * the path of their source file relative to its source
+     * directory.
+     * @return the records, or null if the archive was not
+     * compiled incrementally or any record is malformed
+     */
+    public static Map<String,IncrementalUnit> read(File car) throws IOException {
+        if (car == null || !car.isFile())
+            return null;
+        Properties units = new Properties();
+        try (JarFile jarFile = new JarFile(car)) {
+            JarEntry entry = jarFile.getJarEntry(UNITS_FILE);
+            if (entry == null)
+                return null;
+            try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                units.load(inputStream);
+            }
+        }
+        Map<String,IncrementalUnit> result = new HashMap<String,IncrementalUnit>();
+        for (String path : units.stringPropertyNames()) {
+            IncrementalUnit unit = parse(units.getProperty(path));
+            if (unit == null)
+                return null;
+            result.put(path, unit);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package com.redhat.ceylon.compiler.java.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.redhat.ceylon.cmr.impl.ShaSigner;
+import com.redhat.ceylon.compiler.java.codegen.CeylonFileObject;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+import com.redhat.ceylon.javax.tools.JavaFileObject;
+import com.redhat.ceylon.langtools.tools.javac.file.RegularFileObject;
+import com.redhat.ceylon.langtools.tools.javac.util.Context;
+import com.redhat.ceylon.model.typechecker.model.Annotation;
+import com.redhat.ceylon.model.typechecker.model.Class;
+import com.redhat.ceylon.model.typechecker.model.Declaration;
+import com.redhat.ceylon.model.typechecker.model.Functional;
+import com.redhat.ceylon.model.typechecker.model.Generic;
+import com.redhat.ceylon.model.typechecker.model.ModelUtil;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.Parameter;
+import com.redhat.ceylon.model.typechecker.model.ParameterList;
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.TypeParameter;
+import com.redhat.ceylon.model.typechecker.model.TypedDeclaration;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+import com.redhat.ceylon.model.typechecker.model.Value;
+
+/**
+ * Records an {@link IncrementalUnit} for every typechecked
+ * compilation unit when compiling with {@code -incremental},
+ * for {@link JarOutputRepositoryManager} to store in the
+ * module archive.
+ * <p>
+ * The signature of a unit only covers what other units can
+ * depend on: its toplevel declarations and their shared
+ * members, with their types, parameters, type parameters,
+ * supertypes and annotations with their arguments, but not
+ * their documentation nor anything within their bodies.
+ */
+public class IncrementalUnitRecorder {
+
+    private static final Context.Key<IncrementalUnitRecorder> recorderKey = new Context.Key<IncrementalUnitRecorder>();
+
+    /** Annotations which make no difference to other units */
+    private static final Set<String> DOCUMENTATION_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+            "doc", "by", "see", "throws", "tagged", "license", "suppressWarnings"));
+
+    public static IncrementalUnitRecorder instance(Context context) {
+        IncrementalUnitRecorder instance = context.get(recorderKey);
+        if (instance == null) {
+            instance = new IncrementalUnitRecorder();
+            context.put(recorderKey, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * A recorded unit, along with its source file.
+     */
+    public static class RecordedUnit {
+        public final File sourceFile;
+        public final IncrementalUnit unit;
+        private final JavaFileObject fileObject;
+
+        RecordedUnit(File sourceFile, IncrementalUnit unit, JavaFileObject fileObject) {
+            this.sourceFile = sourceFile;
+            this.unit = unit;
+            this.fileObject = fileObject;
+        }
+
+        /**
+         * Whether errors were reported for the unit, in which
+         * case it must not be recorded in the module archive.
+         */
+        public boolean hasErrors() {
+            return !(fileObject instanceof CeylonFileObject)
+                    || ((CeylonFileObject) fileObject).hasError();
+        }
+    }
+
+    private final Map<Module,List<RecordedUnit>> units = new HashMap<Module,List<RecordedUnit>>();
+
+    private IncrementalUnitRecorder() {
+    }
+
+    /**
+     * Records the given typechecked unit.
+     */
+    public void record(CeylonPhasedUnit phasedUnit) {
+        File sourceFile = getSourceFile(phasedUnit.getFileObject());
+        if (sourceFile == null)
+            return;
+        String sha1 = ShaSigner.sha1(sourceFile);
+        if (sha1 == null)
+            return;
+        Unit unit = phasedUnit.getUnit();
+        Set<String> declarations = new TreeSet<String>();
+        List<String> signatures = new ArrayList<String>();
+        for (Declaration declaration : unit.getDeclarations()) {
+            if (declaration.isToplevel()) {
+                declarations.add(declaration.getQualifiedNameString());
+                StringBuilder sb = new StringBuilder();
+                appendDeclaration(sb, declaration);
+                signatures.add(sb.toString());
+            }
+        }
+        // the order of declarations makes no difference
+        Collections.sort(signatures);
+        StringBuilder signature = new StringBuilder();
+        for (String s : signatures) {
+            signature.append(s).append('\n');
+        }
+        ReferenceVisitor visitor = new ReferenceVisitor(unit);
+        phasedUnit.getCompilationUnit().visit(visitor);
+        visitor.references.removeAll(declarations);
+        IncrementalUnit incrementalUnit = new IncrementalUnit(sha1,
+                ShaSigner.sha1(signature.toString()), declarations, visitor.references);
+        Module module = phasedUnit.getPackage().getModule();
+        List<RecordedUnit> moduleUnits = units.get(module);
+        if (moduleUnits == null) {
+            moduleUnits = new ArrayList<RecordedUnit>();
+            units.put(module, moduleUnits);
+        }
+        moduleUnits.add(new RecordedUnit(sourceFile, incrementalUnit, phasedUnit.getFileObject()));
+    }
+
+    /**
+     * The units recorded for the given module.
+     */
+    public List<RecordedUnit> getRecordedUnits(Module module) {
+        List<RecordedUnit> moduleUnits = units.get(module);
+        if (moduleUnits == null)
+            return Collections.emptyList();
+        return moduleUnits;
+    }
+
+    private static File getSourceFile(JavaFileObject fileObject) {
+        if (fileObject instanceof CeylonFileObject) {
+            fileObject = ((CeylonFileObject) fileObject).getFile();
+        }
+        if (fileObject instanceof RegularFileObject) {
+            return ((RegularFileObject) fileObject).getUnderlyingFile();
+        }
+        return null;
+    }
+
+    private static void appendDeclaration(StringBuilder sb, Declaration declaration) {
+        sb.append(declaration.getClass().getSimpleName()).append(' ').append(declaration.getName());
+        if (declaration.isShared())
+            sb.append(" shared");
+        if (declaration.isFormal())
+            sb.append(" formal");
+        if (declaration.isDefault())
+            sb.append(" default");
+        if (declaration.isActual())
+            sb.append(" actual");
+        for (Annotation annotation : declaration.getAnnotations()) {
+            if (!DOCUMENTATION_ANNOTATIONS.contains(annotation.getName()))
+                appendAnnotation(sb, annotation);
+        }
+        if (declaration instanceof Value) {
+            Value value = (Value) declaration;
+            if (value.isVariable())
+                sb.append(" variable");
+            if (value.isTransient())
+                sb.append(" transient");
+        }
+        if (declaration instanceof Generic) {
+            appendTypeParameters(sb, ((Generic) declaration).getTypeParameters());
+        }
+        if (declaration instanceof TypedDeclaration) {
+            sb.append(" : ");
+            appendType(sb, ((TypedDeclaration) declaration).getType());
+        }
+        if (declaration instanceof Class) {
+            Class c = (Class) declaration;
+            if (c.getParameterList() != null) {
+                appendParameterList(sb, c.getParameterList());
+            }
+        } else if (declaration instanceof Functional) {
+            List<ParameterList> parameterLists = ((Functional) declaration).getParameterLists();
+            if (parameterLists != null) {
+                for (ParameterList parameterList : parameterLists) {
+                    appendParameterList(sb, parameterList);
+                }
+            }
+        }
+        if (declaration instanceof TypeDeclaration) {
+            TypeDeclaration type = (TypeDeclaration) declaration;
+            sb.append(" extends ");
+            appendType(sb, type.getExtendedType());
+            appendTypes(sb, " satisfies ", type.getSatisfiedTypes());
+            appendTypes(sb, " of ", type.getCaseTypes());
+        }
+        List<String> members = new ArrayList<String>();
+        for (Declaration member : declaration.getMembers()) {
+            if (member.isShared()) {
+                StringBuilder msb = new StringBuilder();
+                appendDeclaration(msb, member);
+                members.add(msb.toString());
+            }
+        }
+        if (!members.isEmpty()) {
+            Collections.sort(members);
+            sb.append(" {");
+            for (String member : members) {
+                sb.append(member).append(';');
+            }
+            sb.append('}');
+        }
+    }
+
+    private static void appendAnnotation(StringBuilder sb, Annotation annotation) {
+        sb.append(" @").append(annotation.getName()).append('(');
+        for (String argument : annotation.getPositionalArguments()) {
+            sb.append(argument).append(',');
+        }
+        // the order of named arguments makes no difference
+        for (Map.Entry<String,String> argument : new TreeMap<String,String>(annotation.getNamedArguments()).entrySet()) {
+            sb.append(argument.getKey()).append('=').append(argument.getValue()).append(',');
+        }
+        sb.append(')');
+    }
+
+    private static void appendTypeParameters(StringBuilder sb, List<TypeParameter> typeParameters) {
+        if (typeParameters == null || typeParameters.isEmpty())
+            return;
+        sb.append('<');
+        for (TypeParameter typeParameter : typeParameters) {
+            if (typeParameter.isCovariant())
+                sb.append("out ");
+            if (typeParameter.isContravariant())
+                sb.append("in ");
+            sb.append(typeParameter.getName());
+            appendTypes(sb, " satisfies ", typeParameter.getSatisfiedTypes());
+            appendTypes(sb, " of ", typeParameter.getCaseTypes());
+            if (typeParameter.isDefaulted()) {
+                sb.append('=');
+                appendType(sb, typeParameter.getDefaultTypeArgument());
+            }
+            sb.append(',');
+        }
+        sb.append('>');
+    }
+
+    private static void appendParameterList(StringBuilder sb, ParameterList parameterList) {
+        sb.append('(');
+        for (Parameter parameter : parameterList.getParameters()) {
+            appendType(sb, parameter.getType());
+            if (parameter.isSequenced())
+                sb.append(parameter.isAtLeastOne() ? '+' : '*');
+            sb.append(' ').append(parameter.getName());
+            if (parameter.isDefaulted())
+                sb.append('=');
+            if (parameter.getModel() instanceof Functional) {
+                List<ParameterList> parameterLists = ((Functional) parameter.getModel()).getParameterLists();
+                if (parameterLists != null) {
+                    for (ParameterList nested : parameterLists) {
+                        appendParameterList(sb, nested);
+                    }
+                }
+            }
+            sb.append(',');
+        }
+        sb.append(')');
+    }
+
+    private static void appendTypes(StringBuilder sb, String keyword, List<Type> types) {
+        if (types == null || types.isEmpty())
+            return;
+        sb.append(keyword);
+        for (Type type : types) {
+            appendType(sb, type);
+            sb.append('&');
+        }
+    }
+
+    private static void appendType(StringBuilder sb, Type type) {
+        sb.append(type != null ? type.asQualifiedString() : "?");
+    }
+
+    /**
+     * Collects the toplevel declarations of other units a unit
+     * refers to, leaving out those of the language module and
+     * of Java modules, which are never compiled along with it.
+     */
+    private static class ReferenceVisitor extends Visitor {
+        private final Unit unit;
+        final Set<String> references = new TreeSet<String>();
+
+        ReferenceVisitor(Unit unit) {
+            this.unit = unit;
+        }
+
+        private void addReference(Declaration declaration) {
+            while (declaration != null && !declaration.isToplevel()) {
+                declaration = ModelUtil.getContainingDeclaration(declaration);
+            }
+            if (declaration == null
+                    || declaration.getUnit() == unit)
+                return;
+            Module module = ModelUtil.getModule(declaration);
+            if (module == null
+                    || module.isLanguageModule()
+                    || module.isJava())
+                return;
+            references.add(declaration.getQualifiedNameString());
+        }
+
+        @Override
+        public void visit(Tree.MemberOrTypeExpression that) {
+            super.visit(that);
+            addReference(that.getDeclaration());
+        }
+
+        @Override
+        public void visit(Tree.SimpleType that) {
+            super.visit(that);
+            TypeDeclaration type = that.getDeclarationModel();
+            if (type != null) {
+                addReference(type);
+                // the code generated for subtypes depends on
+                // the members of all their supertypes
+                for (TypeDeclaration supertype : type.getSupertypeDeclarations()) {
+                    addReference(supertype);
+                }
+            }
+        }
+
+        @Override
+        public void visit(Tree.ImportMemberOrType that) {
+            super.visit(that);
+            addReference(that.getDeclarationModel());
+        }
+
+        @Override
+        public void visit(Tree.MetaLiteral that) {
+            super.visit(that);
+            addReference(that.getDeclaration());
+        }
+    }
+}
@@ -1,82 +1,473 @@
 package com.redhat.ceylon.compiler.java.tools;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 
-import com.redhat.ceylon.cmr.util.JarUtils;
 import com.redhat.ceylon.cmr.util.JarUtils.JarEntryFilter;
 
 /**
- * Concatenate Jars. First-in wins policy for duplicates. 
- * Does not treat MANIFEST as special, so it's up to the caller to add it 
+ * Concatenate Jars. First-in wins policy for duplicates.
+ * Does not treat MANIFEST as special, so it's up to the caller to add it
  * first if that's where the need it to be.
+ *
+ * Entries are copied as they are stored in the source jars, without
+ * decompressing and compressing them again. The entries of jars we
+ * cannot copy like that (ZIP64 or encrypted ones) are compressed again.
+ *
+ * The jars we write are limited to 4GB, since we never write ZIP64
+ * sizes or offsets, but can have more than 65535 entries, in which
+ * case we only add a ZIP64 end record for their count.
  */
 public class JarCat implements Closeable {
 
+    private static final long LOCAL_HEADER = 0x04034b50L;
+    private static final long CENTRAL_HEADER = 0x02014b50L;
+    private static final long END_HEADER = 0x06054b50L;
+    private static final long ZIP64_END_HEADER = 0x06064b50L;
+    private static final long ZIP64_LOCATOR = 0x07064b50L;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_END_HEADER_SIZE = 56;
+    private static final int FLAG_ENCRYPTED = 0x1;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final long MAX_INT = 0xFFFFFFFFL;
+    private static final int MAX_SHORT = 0xFFFF;
+    private static final byte[] NONE = new byte[0];
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // names without the UTF-8 flag use the original IBM PC code page
+    private static final Charset CP437 = Charset.isSupported("IBM437") ? Charset.forName("IBM437") : UTF8;
+
+    /** Where we read the entries of a jar from */
+    private interface Source extends Closeable {
+        long length() throws IOException;
+        void read(long position, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private static class FileSource implements Source {
+        private final RandomAccessFile file;
+
+        FileSource(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+        }
+
+        @Override
+        public long length() throws IOException {
+            return file.length();
+        }
+
+        @Override
+        public void read(long position, byte[] buffer, int offset, int length) throws IOException {
+            file.seek(position);
+            file.readFully(buffer, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    private static class ArraySource implements Source {
+        private final byte[] bytes;
+
+        ArraySource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long length() {
+            return bytes.length;
+        }
+
+        @Override
+        public void read(long position, byte[] buffer, int offset, int length) throws IOException {
+            if (position < 0 || position + length > bytes.length)
+                throw new EOFException();
+            System.arraycopy(bytes, (int) position, buffer, offset, length);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** An entry of a source jar, as its central directory describes it */
+    private static class Entry {
+        final byte[] header;
+        final byte[] name;
+        final byte[] extra;
+        final byte[] comment;
+        final String fullName;
+
+        Entry(byte[] central, int position) throws ZipException {
+            if (position + CENTRAL_HEADER_SIZE > central.length
+                    || getInt(central, position) != CENTRAL_HEADER)
+                throw new ZipException("Invalid central directory");
+            header = Arrays.copyOfRange(central, position, position + CENTRAL_HEADER_SIZE);
+            int nameStart = position + CENTRAL_HEADER_SIZE;
+            int extraStart = nameStart + getShort(header, 28);
+            int commentStart = extraStart + getShort(header, 30);
+            int end = commentStart + getShort(header, 32);
+            if (end > central.length)
+                throw new ZipException("Invalid central directory");
+            name = Arrays.copyOfRange(central, nameStart, extraStart);
+            extra = Arrays.copyOfRange(central, extraStart, commentStart);
+            comment = Arrays.copyOfRange(central, commentStart, end);
+            if ((getShort(header, 8) & FLAG_ENCRYPTED) != 0
+                    || getCompressedSize() == MAX_INT
+                    || getInt(header, 24) == MAX_INT
+                    || getOffset() == MAX_INT
+                    || getShort(header, 34) != 0)
+                throw new ZipException("Unsupported entry");
+            fullName = new String(name, (getShort(header, 8) & FLAG_UTF8) != 0 ? UTF8 : CP437);
+        }
+
+        int length() {
+            return CENTRAL_HEADER_SIZE + name.length + extra.length + comment.length;
+        }
+
+        long getCompressedSize() {
+            return getInt(header, 20);
+        }
+
+        long getOffset() {
+            return getInt(header, 42);
+        }
+    }
+
     private final HashSet<String> entries;
-    private final JarOutputStream jout;
-    
+    private final OutputStream out;
+    private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+    private final byte[] buffer = new byte[64 * 1024];
+    private long offset;
+    private long count;
+
     public JarCat(File out) throws IOException {
-        jout = new JarOutputStream(new FileOutputStream(out));
+        this(new FileOutputStream(out));
+    }
+
+    /**
+     * Writes the concatenated jar to the given stream, which gets
+     * closed along with us.
+     */
+    public JarCat(OutputStream out) {
+        this.out = new BufferedOutputStream(out, buffer.length);
         entries = new HashSet<>();
     }
-    
+
     public void cat(File file) throws IOException {
         cat(file, null);
     }
-    
+
     public void cat(File file, JarEntryFilter filter) throws IOException {
         if (file != null) {
-            try (JarFile j = new JarFile(file)) {
-                Enumeration<JarEntry> inEntries = j.entries();
-                while (inEntries.hasMoreElements()) {
-                    JarEntry entry = inEntries.nextElement();
-                    String name = entry.getName();
-                    if (filter != null && filter.avoid(name)) {
-                        continue;
-                    }
-                    if (!entries.contains(name)) {// first in wins
-                        makeParentDirs(name);
-                        ZipEntry ze = new ZipEntry(name);
-                        jout.putNextEntry(ze);
-                        entries.add(name);
-                        if (!entry.isDirectory()) {
-                            try (InputStream in = j.getInputStream(entry)) {
-                                JarUtils.copy(in, jout);
-                            }
-                        }
-                        jout.closeEntry();
+            try (FileSource source = new FileSource(file)) {
+                List<Entry> sourceEntries;
+                try {
+                    sourceEntries = readEntries(source);
+                } catch (ZipException e) {
+                    // leave it to JarFile
+                    catRecompressing(file, filter);
+                    return;
+                }
+                cat(source, sourceEntries, filter);
+            }
+        }
+    }
+
+    /**
+     * Adds the entries of the given jar, such as one written to memory
+     * with a {@link java.util.jar.JarOutputStream}.
+     */
+    public void cat(byte[] jar) throws IOException {
+        try (ArraySource source = new ArraySource(jar)) {
+            cat(source, readEntries(source), null);
+        }
+    }
+
+    private void cat(Source source, List<Entry> sourceEntries, JarEntryFilter filter) throws IOException {
+        byte[] local = new byte[LOCAL_HEADER_SIZE];
+        for (Entry entry : sourceEntries) {
+            if (!accept(entry.fullName, filter)) {
+                continue;
+            }
+            // the local header can have its own extra field
+            source.read(entry.getOffset(), local, 0, LOCAL_HEADER_SIZE);
+            if (getInt(local, 0) != LOCAL_HEADER)
+                throw new ZipException("Invalid local header for "+entry.fullName);
+            long position = entry.getOffset() + LOCAL_HEADER_SIZE + getShort(local, 26) + getShort(local, 28);
+            writeHeaders(entry.header, entry.name, entry.extra, entry.comment);
+            for (long left = entry.getCompressedSize(); left > 0; ) {
+                int length = (int) Math.min(buffer.length, left);
+                source.read(position, buffer, 0, length);
+                out.write(buffer, 0, length);
+                position += length;
+                left -= length;
+                offset += length;
+            }
+        }
+    }
+
+    private void catRecompressing(File file, JarEntryFilter filter) throws IOException {
+        try (JarFile j = new JarFile(file)) {
+            Enumeration<JarEntry> inEntries = j.entries();
+            while (inEntries.hasMoreElements()) {
+                JarEntry entry = inEntries.nextElement();
+                String name = entry.getName();
+                if (!accept(name, filter)) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    writeDirectory(name, entry.getTime());
+                    continue;
+                }
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                CRC32 crc = new CRC32();
+                long size = 0;
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                try (InputStream in = j.getInputStream(entry);
+                        DeflaterOutputStream deflated = new DeflaterOutputStream(compressed, deflater)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, read);
+                        deflated.write(buffer, 0, read);
+                        size += read;
                     }
+                } finally {
+                    deflater.end();
                 }
+                byte[] nameBytes = name.getBytes(UTF8);
+                writeHeaders(newHeader(nameBytes, entry.getTime(), ZipEntry.DEFLATED, crc.getValue(), compressed.size(), size),
+                        nameBytes, NONE, NONE);
+                compressed.writeTo(out);
+                offset += compressed.size();
             }
         }
     }
 
+    private boolean accept(String name, JarEntryFilter filter) throws IOException {
+        if (filter != null && filter.avoid(name)) {
+            return false;
+        }
+        if (entries.contains(name)) {// first in wins
+            return false;
+        }
+        makeParentDirs(name);
+        entries.add(name);
+        return true;
+    }
+
     private void makeParentDirs(String name) throws IOException {
         int index = name.lastIndexOf('/', name.endsWith("/") ? name.length()-2 : name.length()-1);
         if (index != -1) {
             String pname = name.substring(0, index+1);
             if (!entries.contains(pname)) {
-                ZipEntry ze = new ZipEntry(pname);
-                jout.putNextEntry(ze);
+                writeDirectory(pname, System.currentTimeMillis());
                 entries.add(pname);
-                jout.closeEntry();
             }
         }
     }
 
+    private void writeDirectory(String name, long time) throws IOException {
+        byte[] nameBytes = name.getBytes(UTF8);
+        writeHeaders(newHeader(nameBytes, time, ZipEntry.STORED, 0, 0, 0), nameBytes, NONE, NONE);
+    }
+
+    /**
+     * Writes the local header of an entry, whose data must follow, and
+     * records its central directory header.
+     */
+    private void writeHeaders(byte[] header, byte[] name, byte[] extra, byte[] comment) throws IOException {
+        if (offset >= MAX_INT)
+            throw new ZipException("Jar too large");
+        // we always know the sizes before writing the data
+        int flags = getShort(header, 8) & ~FLAG_DATA_DESCRIPTOR;
+        byte[] local = new byte[LOCAL_HEADER_SIZE];
+        putInt(local, 0, LOCAL_HEADER);
+        // version needed to extract
+        System.arraycopy(header, 6, local, 4, 2);
+        putShort(local, 6, flags);
+        // method, time, date, crc and sizes
+        System.arraycopy(header, 10, local, 8, 18);
+        putShort(local, 26, name.length);
+        putShort(local, 28, extra.length);
+        out.write(local);
+        out.write(name);
+        out.write(extra);
+
+        byte[] centralHeader = header.clone();
+        putShort(centralHeader, 8, flags);
+        putInt(centralHeader, 42, offset);
+        central.write(centralHeader);
+        central.write(name);
+        central.write(extra);
+        central.write(comment);
+
+        offset += LOCAL_HEADER_SIZE + name.length + extra.length;
+        count++;
+    }
+
+    private static byte[] newHeader(byte[] name, long time, int method, long crc, long compressedSize, long size) {
+        byte[] header = new byte[CENTRAL_HEADER_SIZE];
+        int version = method == ZipEntry.DEFLATED ? 20 : 10;
+        int flags = 0;
+        for (byte b : name) {
+            if (b < 0) {
+                flags |= FLAG_UTF8;
+                break;
+            }
+        }
+        putInt(header, 0, CENTRAL_HEADER);
+        putShort(header, 4, version);
+        putShort(header, 6, version);
+        putShort(header, 8, flags);
+        putShort(header, 10, method);
+        putInt(header, 12, dosTime(time));
+        putInt(header, 16, crc);
+        putInt(header, 20, compressedSize);
+        putInt(header, 24, size);
+        putShort(header, 28, name.length);
+        return header;
+    }
+
+    private static List<Entry> readEntries(Source source) throws IOException {
+        long length = source.length();
+        int tailLength = (int) Math.min(length, END_HEADER_SIZE + MAX_SHORT);
+        byte[] tail = new byte[tailLength];
+        source.read(length - tailLength, tail, 0, tailLength);
+        int end = tailLength - END_HEADER_SIZE;
+        while (end >= 0 && getInt(tail, end) != END_HEADER) {
+            end--;
+        }
+        if (end < 0)
+            throw new ZipException("No central directory");
+        int total = getShort(tail, end + 10);
+        long centralSize = getInt(tail, end + 12);
+        long centralOffset = getInt(tail, end + 16);
+        if (getShort(tail, end + 4) != 0
+                || getShort(tail, end + 6) != 0
+                || total == MAX_SHORT
+                || centralSize == MAX_INT
+                || centralOffset == MAX_INT)
+            throw new ZipException("Unsupported jar");
+        if (centralOffset + centralSize > length)
+            throw new ZipException("Invalid central directory");
+        byte[] centralDirectory = new byte[(int) centralSize];
+        source.read(centralOffset, centralDirectory, 0, centralDirectory.length);
+        List<Entry> result = new ArrayList<Entry>(total);
+        int position = 0;
+        for (int i = 0; i < total; i++) {
+            Entry entry = new Entry(centralDirectory, position);
+            result.add(entry);
+            position += entry.length();
+        }
+        return result;
+    }
+
     @Override
     public void close() throws IOException {
-        jout.close();
+        try {
+            long centralOffset = offset;
+            long centralSize = central.size();
+            if (centralOffset >= MAX_INT)
+                throw new ZipException("Jar too large");
+            central.writeTo(out);
+            byte[] end = new byte[END_HEADER_SIZE];
+            putInt(end, 0, END_HEADER);
+            if (count >= MAX_SHORT) {
+                writeZip64End(centralOffset, centralSize);
+                putShort(end, 8, MAX_SHORT);
+                putShort(end, 10, MAX_SHORT);
+            } else {
+                putShort(end, 8, (int) count);
+                putShort(end, 10, (int) count);
+            }
+            putInt(end, 12, centralSize);
+            putInt(end, 16, centralOffset);
+            out.write(end);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeZip64End(long centralOffset, long centralSize) throws IOException {
+        long endOffset = centralOffset + centralSize;
+        byte[] end = new byte[ZIP64_END_HEADER_SIZE];
+        putInt(end, 0, ZIP64_END_HEADER);
+        putLong(end, 4, ZIP64_END_HEADER_SIZE - 12);
+        putShort(end, 12, 45);
+        putShort(end, 14, 45);
+        putLong(end, 24, count);
+        putLong(end, 32, count);
+        putLong(end, 40, centralSize);
+        putLong(end, 48, centralOffset);
+        out.write(end);
+        byte[] locator = new byte[20];
+        putInt(locator, 0, ZIP64_LOCATOR);
+        putLong(locator, 8, endOffset);
+        putInt(locator, 16, 1);
+        out.write(locator);
+    }
+
+    private static long dosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long)(year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static int getShort(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) | (bytes[index + 1] & 0xFF) << 8;
+    }
+
+    private static long getInt(byte[] bytes, int index) {
+        return getShort(bytes, index) | (long)getShort(bytes, index + 2) << 16;
+    }
+
+    private static void putShort(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) value;
+        bytes[index + 1] = (byte) (value >> 8);
+    }
+
+    private static void putInt(byte[] bytes, int index, long value) {
+        putShort(bytes, index, (int) value);
+        putShort(bytes, index + 2, (int) (value >> 16));
+    }
+
+    private static void putLong(byte[] bytes, int index, long value) {
+        putInt(bytes, index, value);
+        putInt(bytes, index + 4, value >> 32);
     }
-    
 }
@@ -20,10 +20,13 @@
 
 package com.redhat.ceylon.compiler.java.tools;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -53,6 +56,7 @@ import com.redhat.ceylon.javax.tools.StandardLocation;
 import com.redhat.ceylon.langtools.source.util.TaskListener;
 import com.redhat.ceylon.langtools.tools.javac.api.MultiTaskListener;
 import com.redhat.ceylon.langtools.tools.javac.main.Option;
+import com.redhat.ceylon.langtools.tools.javac.util.Context;
 import com.redhat.ceylon.langtools.tools.javac.util.Log;
 import com.redhat.ceylon.langtools.tools.javac.util.Options;
 import com.redhat.ceylon.model.loader.AbstractModelLoader;
@@ -120,12 +124,13 @@ public class JarOutputRepositoryManager {
         * Since this can be added at any point via a call to
         * getJavaFileObject() we have to:
         * 
-        * * Write manifest.jar to hold just the manifest as and when it gets added
-        * * Write the rest of the generated files to rest.jar
-        * * Then on close() we generate a final.jar by copying the entries from
-        *   - manifest.jar and then
+        * * Write the generated files to rest.jar as they come
+        * * Then on close() we buffer the MANIFEST.MF and the other META-INF
+        *   entries in memory, and write final.jar by copying the entries from
+        *   - the buffered ones and then
         *   - rest.jar
         *   - and then stuff from original.car
+        *   without compressing them again, computing its SHA-1 as we go
         * * And finally rename final.jar to original.car
         */
         private static final String META_INF = "META-INF";
@@ -162,6 +167,10 @@ public class JarOutputRepositoryManager {
         private JarEntryManifestFileObject manifest;
         private Log log;
 		private JdkProvider jdkProvider;
+        /** Whether to record the {@link IncrementalUnit} of the compiled source files */
+        private boolean incremental;
+        private Context context;
+        final private Map<String,Boolean> existingSourceFiles = new HashMap<String,Boolean>();
 
         public ProgressiveJar(RepositoryManager repoManager, Module module, Log log, 
         		Options options, CeyloncFileManager ceyloncFileManager, MultiTaskListener taskListener) throws IOException{
@@ -189,6 +198,8 @@ public class JarOutputRepositoryManager {
             this.osgiProvidedBundles = options.get(Option.CEYLONOSGIPROVIDEDBUNDLES);
             this.writeMavenManifest = !options.isSet(Option.CEYLONNOPOM) && !module.isDefaultModule();
             this.writeJava9Module= options.isSet(Option.CEYLONJIGSAW) && !module.isDefaultModule();
+            this.incremental = options.isSet(Option.CEYLONINCREMENTAL);
+            this.context = ceyloncFileManager.getContext();
             
             // Determine the special path that signals that the files it contains
             // should be moved to the root of the output JAR/CAR
@@ -208,18 +219,18 @@ public class JarOutputRepositoryManager {
             this.jarOutputStream = new JarOutputStream(new FileOutputStream(outputJarFile));
         }
 
-        private Properties getPreviousMapping() throws IOException {
+        private Properties getPreviousProperties(String entryName) throws IOException {
             if (originalJarFile != null) {
                 JarFile jarFile = null;
                 jarFile = new JarFile(originalJarFile);
                 try {
-                    JarEntry entry = jarFile.getJarEntry(MAPPING_FILE);
+                    JarEntry entry = jarFile.getJarEntry(entryName);
                     if (entry != null) {
                         InputStream inputStream = jarFile.getInputStream(entry);
                         try {
-                            Properties previousMapping = new Properties();
-                            previousMapping.load(inputStream);
-                            return previousMapping;
+                            Properties previousProperties = new Properties();
+                            previousProperties.load(inputStream);
+                            return previousProperties;
                         } finally {
                             inputStream.close();
                         }
@@ -254,8 +265,8 @@ public class JarOutputRepositoryManager {
                 jarOutputStream.close();
                 
                 // Create a jar with the MANIFEST.MF first
-                File metaFirstFile = File.createTempFile("compile", "car");
-                JarOutputStream manifestFirst = new JarOutputStream(new FileOutputStream(metaFirstFile));
+                ByteArrayOutputStream metaFirst = new ByteArrayOutputStream();
+                JarOutputStream manifestFirst = new JarOutputStream(metaFirst);
                 
                 // Add META-INF/
                 Set<String> foldersAdded = new HashSet<String>();
@@ -285,24 +296,36 @@ public class JarOutputRepositoryManager {
                 }
 
                 // Add META-INF/mapping.txt
-                Properties previousMapping = getPreviousMapping();
+                Properties previousMapping = getPreviousProperties(MAPPING_FILE);
                 JarEntryFilter jarFilter = getJarFilter(previousMapping, copiedSourceFiles);
                 writeMappingJarEntry(manifestFirst, foldersAdded, previousMapping, jarFilter);
                 
+                // Add META-INF/units.txt
+                Properties previousUnits = getPreviousProperties(IncrementalUnit.UNITS_FILE);
+                writeUnitsJarEntry(manifestFirst, foldersAdded, previousUnits, copiedSourceFiles);
+                
                 manifestFirst.close();
                 
                 File finalCarFile = File.createTempFile("ceylon-compiler-", ".car");
-                JarCat jc = new JarCat(finalCarFile);
-                jc.cat(metaFirstFile);
-                jc.cat(outputJarFile);
-                jc.cat(originalJarFile, jarFilter);
-                jc.close();
-                FileUtil.deleteQuietly(metaFirstFile);
+                MessageDigest sha1Digest = ShaSigner.newSha1Digest();
+                JarCat jc = new JarCat(new DigestOutputStream(new FileOutputStream(finalCarFile), sha1Digest));
+                try {
+                    jc.cat(metaFirst.toByteArray());
+                    jc.cat(outputJarFile);
+                    jc.cat(originalJarFile, jarFilter);
+                } finally {
+                    jc.close();
+                }
             
+                boolean verbose = options.get(Option.VERBOSE) != null;
+                File sha1File;
                 if (options.isSet(Option.CEYLONPACK200)) {
+                    // repacking rewrites the car, so we have to read it again
                     JarUtils.repack(finalCarFile, cmrLog);
+                    sha1File = ShaSigner.sign(finalCarFile, cmrLog, verbose);
+                } else {
+                    sha1File = ShaSigner.sign(finalCarFile, sha1Digest, cmrLog, verbose);
                 }
-                File sha1File = ShaSigner.sign(finalCarFile, cmrLog, options.get(Option.VERBOSE) != null);
                 JarUtils.publish(finalCarFile, sha1File, carContext, repoManager, cmrLog);
                 
                 String info;
@@ -336,11 +359,17 @@ public class JarOutputRepositoryManager {
                         if (previousMapping != null) {
                             String sourceFileForClass = previousMapping.getProperty(entryFullName);
                             classWasUpdated = classWasUpdated || copiedSourceFiles.contains(sourceFileForClass);
+                            // incremental compilations only compile what changed, so they 
+                            // have to drop the classes of the source files which were removed
+                            if (incremental && sourceFileForClass != null) {
+                                classWasUpdated = classWasUpdated || !isSourceFile(sourceFileForClass);
+                            }
                         }
                         return classWasUpdated;
                     } else {
                         return modifiedResourceFilesRel.contains(entryFullName)
                                 || entryFullName.equals(MAPPING_FILE)
+                                || entryFullName.equals(IncrementalUnit.UNITS_FILE)
                                 || (writeOsgiManifest && OsgiUtil.OsgiManifest.isManifestFileName(entryFullName))
                                 || (writeMavenManifest && MavenPomUtil.isMavenDescriptor(entryFullName, module));
                     }
@@ -414,6 +443,83 @@ public class JarOutputRepositoryManager {
             }
         }
         
+        /** 
+         * Add a {@code META-INF/units.txt} entry which records the 
+         * {@link IncrementalUnit} of every source file compiled
+         * with {@code -incremental} without errors, and which
+         * was not compiled again since
+         */
+        private void writeUnitsJarEntry(JarOutputStream outputStream, Set<String> foldersAlreadyAdded, Properties previousUnits, Set<String> copiedSourceFiles) {
+            Properties newUnits = new Properties();
+            Set<String> compiledSourceFiles = new HashSet<String>(copiedSourceFiles);
+            if (incremental) {
+                IncrementalUnitRecorder recorder = IncrementalUnitRecorder.instance(context);
+                for (IncrementalUnitRecorder.RecordedUnit recorded : recorder.getRecordedUnits(module)) {
+                    String sourceFile = JarUtils.toPlatformIndependentPath(srcCreator.getPaths(), recorded.sourceFile.getPath());
+                    compiledSourceFiles.add(sourceFile);
+                    if (!recorded.hasErrors()) {
+                        newUnits.setProperty(sourceFile, recorded.unit.format());
+                    }
+                }
+                if (log.nerrors == 0) {
+                    for (String modifiedSourceFile : modifiedSourceFiles) {
+                        if (modifiedSourceFile.endsWith(".java")) {
+                            String sha1 = ShaSigner.sha1(new File(modifiedSourceFile));
+                            if (sha1 != null) {
+                                String sourceFile = JarUtils.toPlatformIndependentPath(srcCreator.getPaths(), modifiedSourceFile);
+                                newUnits.setProperty(sourceFile, IncrementalUnit.javaSource(sha1).format());
+                            }
+                        }
+                    }
+                }
+            }
+            if (previousUnits != null) {
+                // Keep the previous entries of the source files which were not compiled again
+                for (String sourceFile : previousUnits.stringPropertyNames()) {
+                    if (!compiledSourceFiles.contains(sourceFile)
+                            && isSourceFile(sourceFile)) {
+                        newUnits.setProperty(sourceFile, previousUnits.getProperty(sourceFile));
+                    }
+                }
+            }
+            if (newUnits.isEmpty()) {
+                return;
+            }
+            try {
+                JarUtils.makeFolder(foldersAlreadyAdded, outputStream, META_INF+"/");
+                outputStream.putNextEntry(new ZipEntry(IncrementalUnit.UNITS_FILE));
+                newUnits.store(outputStream, "");
+            }
+            catch(IOException e) {
+                // TODO : log to the right place
+            }
+            finally {
+                try {
+                    outputStream.closeEntry();
+                } catch (IOException e) {
+                }
+            }
+        }
+        
+        /**
+         * Whether the given source file, relative to the source
+         * path, still exists
+         */
+        private boolean isSourceFile(String sourceFile) {
+            Boolean exists = existingSourceFiles.get(sourceFile);
+            if (exists == null) {
+                exists = false;
+                for (File path : srcCreator.getPaths()) {
+                    if (new File(path, sourceFile).isFile()) {
+                        exists = true;
+                        break;
+                    }
+                }
+                existingSourceFiles.put(sourceFile, exists);
+            }
+            return exists;
+        }
+        
         public JavaFileObject getJavaFileObject(String fileName, File sourceFile) {
             String quotedFileName = JVMModuleUtil.quoteJavaKeywordsInFilename(fileName);
             String entryName = quotedFileName.replace(File.separatorChar, '/');
@@ -44,9 +44,7 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-
-import org.antlr.runtime.ANTLRStringStream;
-import org.antlr.runtime.CommonTokenStream;
+import java.util.concurrent.Callable;
 
 import com.redhat.ceylon.cmr.util.JarUtils;
 import com.redhat.ceylon.common.FileUtil;
@@ -60,14 +58,14 @@ import com.redhat.ceylon.compiler.java.loader.CeylonModelLoader;
 import com.redhat.ceylon.compiler.java.util.Timer;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
 import com.redhat.ceylon.compiler.typechecker.analyzer.Warning;
+import com.redhat.ceylon.compiler.typechecker.context.PhaseExecutor;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.io.VFS;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
-import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
-import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
 import com.redhat.ceylon.compiler.typechecker.parser.LexError;
 import com.redhat.ceylon.compiler.typechecker.parser.ParseError;
+import com.redhat.ceylon.compiler.typechecker.parser.ParsedSource;
 import com.redhat.ceylon.compiler.typechecker.parser.RecognitionError;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.CompilationUnit;
@@ -145,6 +143,9 @@ public class LanguageCompiler extends JavaCompiler {
     private List<JavaFileObject> resourceFileObjects;
     private Map<String,CeylonFileObject> moduleNamesToFileObjects = new HashMap<String,CeylonFileObject>();
     private SourceLanguage sourceLanguage;
+    private EnumSet<Warning> suppressedWarnings;
+    private Map<JavaFileObject,String> preParsedContents = new HashMap<JavaFileObject,String>();
+    private Map<JavaFileObject,ParsedSource> preParsedSources = new HashMap<JavaFileObject,ParsedSource>();
 
     /** Get the PhasedUnits instance for this context. */
     public static PhasedUnits getPhasedUnitsInstance(final Context context) {
@@ -358,7 +359,13 @@ public class LanguageCompiler extends JavaCompiler {
 
                 t = parse(filename, readSource(filename));
             } else {
-                t = ceylonParse(filename, readSource(filename));
+                CharSequence source = preParsedContents.remove(filename);
+                if (source != null) {
+                    inputFiles.add(filename);
+                } else {
+                    source = readSource(filename);
+                }
+                t = ceylonParse(filename, source);
                 t.endPositions = new JavacParser.EmptyEndPosTable(null);
             }
             if (t.endPositions != null)
@@ -418,20 +425,7 @@ public class LanguageCompiler extends JavaCompiler {
             
             PhasedUnit externalPhasedUnit = compilerDelegate.getExternalSourcePhasedUnit(srcDir, file);
             
-            String suppressWarnings = options.get(Option.CEYLONSUPPRESSWARNINGS);
-            final EnumSet<Warning> suppressedWarnings;
-            if (suppressWarnings != null) {
-                if (suppressWarnings.trim().isEmpty()) {
-                    suppressedWarnings = EnumSet.allOf(Warning.class);
-                } else {
-                    suppressedWarnings = EnumSet.noneOf(Warning.class);
-                    for (String name : suppressWarnings.trim().split(" *, *")) {
-                        suppressedWarnings.add(Warning.valueOf(name));
-                    }
-                }
-            } else {
-                suppressedWarnings = EnumSet.noneOf(Warning.class);
-            }
+            EnumSet<Warning> suppressedWarnings = getSuppressedWarnings();
             
             if (externalPhasedUnit != null) {
                 phasedUnit = new CeylonPhasedUnit(externalPhasedUnit, filename, map);
@@ -446,20 +440,18 @@ public class LanguageCompiler extends JavaCompiler {
                 return gen.makeJCCompilationUnitPlaceholder(phasedUnit.getCompilationUnit(), filename, pkgName, phasedUnit);
             }
             if (phasedUnit == null) {
-                ANTLRStringStream input = new NewlineFixingStringStream(source);
-                CeylonLexer lexer = new CeylonLexer(input);
-
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-                CeylonParser parser = new CeylonParser(tokens);
-                CompilationUnit cu = parser.compilationUnit();
+                ParsedSource parsed = preParsedSources.remove(filename);
+                if (parsed == null) {
+                    parsed = ParsedSource.parse(new NewlineFixingStringStream(source));
+                }
+                CompilationUnit cu = parsed.getCompilationUnit();
 
-                java.util.List<LexError> lexerErrors = lexer.getErrors();
+                java.util.List<LexError> lexerErrors = parsed.getLexErrors();
                 for (LexError le : lexerErrors) {
                     printError(le, le.getMessage(), "ceylon.lexer", map);
                 }
 
-                java.util.List<ParseError> parserErrors = parser.getErrors();
+                java.util.List<ParseError> parserErrors = parsed.getParseErrors();
                 for (ParseError pe : parserErrors) {
                     printError(pe, pe.getMessage(), "ceylon.parser", map);
                 }
@@ -497,6 +489,25 @@ public class LanguageCompiler extends JavaCompiler {
         return result;
     }
 
+    private EnumSet<Warning> getSuppressedWarnings() {
+        if (suppressedWarnings == null) {
+            String suppressWarnings = options.get(Option.CEYLONSUPPRESSWARNINGS);
+            if (suppressWarnings != null) {
+                if (suppressWarnings.trim().isEmpty()) {
+                    suppressedWarnings = EnumSet.allOf(Warning.class);
+                } else {
+                    suppressedWarnings = EnumSet.noneOf(Warning.class);
+                    for (String name : suppressWarnings.trim().split(" *, *")) {
+                        suppressedWarnings.add(Warning.valueOf(name));
+                    }
+                }
+            } else {
+                suppressedWarnings = EnumSet.noneOf(Warning.class);
+            }
+        }
+        return suppressedWarnings;
+    }
+
     @Override
     public List<JCCompilationUnit> parseFiles(Iterable<JavaFileObject> fileObjects) {
         timer.startTask("parse");
@@ -504,7 +515,14 @@ public class LanguageCompiler extends JavaCompiler {
          * Stef: see javadoc for fixDefaultPackage() for why this is here.
          */
         modelLoader.fixDefaultPackage();
-        List<JCCompilationUnit> trees = super.parseFiles(fileObjects);
+        List<JCCompilationUnit> trees;
+        try {
+            preParseCeylonFiles(fileObjects);
+            trees = super.parseFiles(fileObjects);
+        } finally {
+            preParsedContents.clear();
+            preParsedSources.clear();
+        }
         timer.startTask("loadCompiledModules");
         LinkedList<JCCompilationUnit> moduleTrees = new LinkedList<JCCompilationUnit>();
         // now load modules and associate their moduleless packages with the corresponding modules
@@ -517,6 +535,87 @@ public class LanguageCompiler extends JavaCompiler {
         return trees;
     }
 
+    /**
+     * When running with several jobs, reads, lexes and parses all the Ceylon
+     * files up front, on the shared pool. The javac parse loop then picks up
+     * the results in its own order, so the units are still registered, and
+     * their errors reported, deterministically. Files which fail to be read
+     * here are left to the regular path, which reports the error.
+     */
+    private void preParseCeylonFiles(Iterable<JavaFileObject> fileObjects) {
+        PhaseExecutor executor = PhaseExecutor.forJobs(getJobs(options));
+        if (!executor.isParallel() || ceylonEnter.hasRun())
+            return;
+        final java.util.List<JavaFileObject> files = new java.util.ArrayList<JavaFileObject>();
+        java.util.List<Callable<PreParsedSource>> tasks = new java.util.ArrayList<Callable<PreParsedSource>>();
+        for (final JavaFileObject fileObject : fileObjects) {
+            if (fileObject instanceof CeylonFileObject
+                    && fileObject.getName().endsWith(".ceylon")
+                    && !files.contains(fileObject)) {
+                files.add(fileObject);
+                tasks.add(new Callable<PreParsedSource>() {
+                    @Override
+                    public PreParsedSource call() throws Exception {
+                        CharSequence content;
+                        try {
+                            content = fileObject.getCharContent(false);
+                        } catch (IOException e) {
+                            return null;
+                        }
+                        String source = content.toString();
+                        return new PreParsedSource(source, 
+                                ParsedSource.parse(new NewlineFixingStringStream(source)));
+                    }
+                });
+            }
+        }
+        java.util.List<PreParsedSource> results;
+        try {
+            results = executor.invokeAll(tasks);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        for (int i = 0; i < results.size(); i++) {
+            PreParsedSource result = results.get(i);
+            if (result != null) {
+                preParsedContents.put(files.get(i), result.source);
+                preParsedSources.put(files.get(i), result.parsed);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of jobs requested with <code>-jobs</code>, 1 by default.
+     */
+    /**
+     * The number of jobs, which the -jobs option checks when
+     * it is given on the command line. Invalid values set
+     * through the API mean a sequential compilation.
+     */
+    static int getJobs(Options options) {
+        String jobs = options.get(Option.CEYLONJOBS);
+        if (jobs != null) {
+            try {
+                return Math.max(1, Integer.parseInt(jobs));
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+        return 1;
+    }
+
+    private static class PreParsedSource {
+        final String source;
+        final ParsedSource parsed;
+
+        PreParsedSource(String source, ParsedSource parsed) {
+            this.source = source;
+            this.parsed = parsed;
+        }
+    }
+
     private List<JCCompilationUnit> loadCompiledModules(List<JCCompilationUnit> trees, LinkedList<JCCompilationUnit> moduleTrees) {
         compilerDelegate.visitModules(phasedUnits);
         Modules modules = ceylonContext.getModules();
@@ -220,6 +220,91 @@ public class CeylonDocToolTests {
         moduleA(true);
     }
 
+    @Test
+    public void moduleAWithJobs() throws Exception {
+        String pathname = "test/ceylondoc";
+        String docname = "test/ceylondoc-doc";
+        String moduleName = "com.redhat.ceylon.ceylondoc.test.modules.single";
+
+        CeylonDocTool tool = tool(pathname, docname, moduleName, true, false);
+        tool.setIncludeNonShared(true);
+        tool.setIncludeSourceCode(true);
+        tool.run();
+        File sequentialDir = getOutputDir(tool, moduleName, "3.1.4");
+        File expectedDir = new File("build", "CeylonDocToolTest/" + name.getMethodName() + "-sequential");
+        if (expectedDir.exists()) {
+            FileUtil.delete(expectedDir);
+        }
+        FileUtil.mkdirs(expectedDir.getParentFile());
+        Assert.assertTrue(sequentialDir.renameTo(expectedDir));
+
+        tool = tool(pathname, docname, moduleName, true, false);
+        tool.setIncludeNonShared(true);
+        tool.setIncludeSourceCode(true);
+        tool.setJobs(4);
+        tool.run();
+        assertSameFiles(expectedDir, getOutputDir(tool, moduleName, "3.1.4"));
+    }
+
+    @Test
+    public void moduleAIncremental() throws Exception {
+        String moduleName = "com.redhat.ceylon.ceylondoc.test.modules.single";
+
+        CeylonDocTool tool = incrementalTool(moduleName, true);
+        tool.run();
+        File destDir = getOutputDir(tool, moduleName, "3.1.4");
+        // so that we can tell which pages get copied from the previous run
+        String reused = "reused";
+        Files.write(new File(destDir, "StubClass.type.html").toPath(), reused.getBytes("UTF-8"));
+        Files.write(new File(destDir, "StubClass.StubInnerClass.type.html").toPath(), reused.getBytes("UTF-8"));
+        File expectedDir = new File("build", "CeylonDocToolTest/" + name.getMethodName() + "-expected");
+        if (expectedDir.exists()) {
+            FileUtil.delete(expectedDir);
+        }
+        FileUtil.mkdirs(expectedDir);
+        FileUtil.copyAll(destDir, expectedDir);
+
+        tool = incrementalTool(moduleName, false);
+        tool.run();
+        assertSameFiles(expectedDir, destDir);
+
+        // the pages depend on the footer
+        tool = incrementalTool(moduleName, false);
+        tool.setFooter("<p>changed</p>");
+        tool.run();
+        assertMatchInFile(destDir, "StubClass.type.html", Pattern.compile("<p>changed</p>"));
+        assertMatchInFile(destDir, "StubClass.StubInnerClass.type.html", Pattern.compile("<p>changed</p>"));
+    }
+
+    private CeylonDocTool incrementalTool(String moduleName, boolean deleteDestDir) throws Exception {
+        CeylonDocTool tool = tool(Arrays.asList(new File("test/ceylondoc")),
+                Arrays.asList(new File("test/ceylondoc-doc")),
+                Arrays.asList(moduleName),
+                true, deleteDestDir, false);
+        tool.setIncludeNonShared(true);
+        tool.setIncludeSourceCode(true);
+        tool.setIncremental(true);
+        return tool;
+    }
+
+    private void assertSameFiles(File expectedDir, File actualDir) throws IOException {
+        String[] expected = expectedDir.list();
+        String[] actual = actualDir.list();
+        Arrays.sort(expected);
+        Arrays.sort(actual);
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+        for (String file : expected) {
+            File expectedFile = new File(expectedDir, file);
+            File actualFile = new File(actualDir, file);
+            if (expectedFile.isDirectory()) {
+                assertSameFiles(expectedFile, actualFile);
+            } else {
+                Assert.assertArrayEquals(actualFile.getPath(),
+                        Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(actualFile.toPath()));
+            }
+        }
+    }
+
     private void moduleA(boolean includeNonShared) throws Exception {
         String pathname = "test/ceylondoc";
         String docname = "test/ceylondoc-doc";
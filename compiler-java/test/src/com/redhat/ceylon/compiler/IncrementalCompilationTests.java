@@ -0,0 +1,173 @@
+/*
+ * Copyright Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the authors tag. All rights reserved.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License version 2.
+ *
+ * This particular file is subject to the "Classpath" exception as provided in the
+ * LICENSE file that accompanied this code.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License,
+ * along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package com.redhat.ceylon.compiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.cmr.ceylon.CeylonUtils;
+import com.redhat.ceylon.cmr.impl.ShaSigner;
+import com.redhat.ceylon.common.FileUtil;
+import com.redhat.ceylon.compiler.java.tools.IncrementalUnit;
+
+/**
+ * Tests the rounds planned by {@link IncrementalCompilation}, with
+ * a compiler which records the units it is given to compile with
+ * the signatures and references set up by each test.
+ */
+public class IncrementalCompilationTests {
+
+    private final File srcDir = new File("build/test-cars/incremental-compilation/source");
+    private final File outDir = new File("build/test-cars/incremental-compilation/modules");
+    private final Map<String,String> signatures = new HashMap<String,String>();
+    private final Map<String,Set<String>> references = new HashMap<String,Set<String>>();
+
+    /**
+     * Records the units of the files it compiles in the module
+     * archive, and the files it compiled in every round.
+     */
+    private class RecordingCompiler implements IncrementalCompilation.Compiler {
+        final List<List<String>> rounds = new ArrayList<List<String>>();
+
+        @Override
+        public void compile(List<String> modulesOrFiles) throws IOException {
+            List<String> round = new ArrayList<String>();
+            for (String moduleOrFile : modulesOrFiles) {
+                if (moduleOrFile.equals("inctest")) {
+                    round.addAll(Arrays.asList(new File(srcDir, "inctest").list()));
+                } else {
+                    round.add(new File(moduleOrFile).getName());
+                }
+            }
+            Collections.sort(round);
+            rounds.add(round);
+            File car = getCar();
+            Map<String,IncrementalUnit> units = IncrementalUnit.read(car);
+            if (units == null)
+                units = new HashMap<String,IncrementalUnit>();
+            for (String name : round) {
+                Set<String> declarations = new TreeSet<String>();
+                if (!name.equals("module.ceylon"))
+                    declarations.add("inctest::" + name.substring(0, name.indexOf('.')));
+                Set<String> unitReferences = references.get(name);
+                units.put("inctest/" + name, new IncrementalUnit(
+                        ShaSigner.sha1(new File(srcDir, "inctest/" + name)),
+                        signatures.containsKey(name) ? signatures.get(name) : "1",
+                        declarations,
+                        unitReferences != null ? unitReferences : Collections.<String>emptySet()));
+            }
+            writeCar(car, units);
+        }
+    }
+
+    @Before
+    public void setup() {
+        FileUtil.delete(srcDir.getParentFile());
+    }
+
+    private RepositoryManager getOutputRepositoryManager() {
+        return CeylonUtils.repoManager()
+                .offline(true)
+                .outRepo(outDir.getPath())
+                .buildOutputManager();
+    }
+
+    private File getCar() {
+        return new File(outDir, "inctest/1/inctest-1.car");
+    }
+
+    private static void writeCar(File car, Map<String,IncrementalUnit> units) throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String,IncrementalUnit> unit : units.entrySet()) {
+            properties.setProperty(unit.getKey(), unit.getValue().format());
+        }
+        car.getParentFile().mkdirs();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(car))) {
+            out.putNextEntry(new ZipEntry(IncrementalUnit.UNITS_FILE));
+            properties.store(out, null);
+            out.closeEntry();
+        }
+    }
+
+    private void writeSource(String name, String code) throws IOException {
+        File file = new File(srcDir, "inctest/" + name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), code.getBytes("UTF-8"));
+    }
+
+    private List<List<String>> compile() throws IOException {
+        IncrementalCompilation incrementalCompilation = new IncrementalCompilation(
+                Arrays.asList(srcDir), Collections.<File>emptyList(), getOutputRepositoryManager());
+        incrementalCompilation.addModule("inctest", "1");
+        RecordingCompiler compiler = new RecordingCompiler();
+        incrementalCompilation.compile(compiler);
+        return compiler.rounds;
+    }
+
+    private static List<String> round(String... files) {
+        return Arrays.asList(files);
+    }
+
+    @Test
+    public void testDependentReachedTwice() throws IOException {
+        writeSource("module.ceylon", "module inctest \"1\" {}");
+        writeSource("a.ceylon", "a");
+        writeSource("b.ceylon", "b");
+        writeSource("c.ceylon", "c");
+        references.put("b.ceylon", Collections.singleton("inctest::a"));
+        references.put("c.ceylon", Collections.singleton("inctest::b"));
+        Assert.assertEquals(Arrays.asList(round("a.ceylon", "b.ceylon", "c.ceylon", "module.ceylon")),
+                compile());
+
+        // c is compiled along with a, but the signature of b only
+        // changes once it gets compiled after a, so c must be
+        // compiled again after b
+        writeSource("a.ceylon", "a2");
+        writeSource("c.ceylon", "c2");
+        signatures.put("a.ceylon", "2");
+        signatures.put("b.ceylon", "2");
+        Assert.assertEquals(Arrays.asList(
+                round("a.ceylon", "c.ceylon"),
+                round("b.ceylon"),
+                round("c.ceylon")),
+                compile());
+
+        // and nothing changed since
+        Assert.assertEquals(Collections.emptyList(), compile());
+    }
+}
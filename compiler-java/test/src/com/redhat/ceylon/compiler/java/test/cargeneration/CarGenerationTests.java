@@ -24,23 +24,34 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 
+import com.redhat.ceylon.cmr.impl.ShaSigner;
 import com.redhat.ceylon.compiler.java.test.CompilerError;
 import com.redhat.ceylon.compiler.java.test.CompilerTests;
 import com.redhat.ceylon.compiler.java.test.ErrorCollector;
 import com.redhat.ceylon.compiler.java.tools.CeyloncTaskImpl;
+import com.redhat.ceylon.compiler.java.tools.JarCat;
 import com.redhat.ceylon.javax.tools.Diagnostic;
 
 public class CarGenerationTests extends CompilerTests {
@@ -361,4 +372,92 @@ public class CarGenerationTests extends CompilerTests {
         }
     }
     
+    /*
+     * The car is written in a single pass, copying the entries from the
+     * previous car as they are, and signed while it is written.
+     */
+    @Test
+    public void testCarSignedAndMergedIncrementally() throws IOException{
+        ErrorCollector ec = new ErrorCollector();
+        List<String> options = new LinkedList<String>();
+        options.add("-src");
+        options.add(getPackagePath() + "meta/generatedmanifest/source");
+        options.addAll(defaultOptions);
+        CeyloncTaskImpl task = getCompilerTask(options, 
+                ec,
+                Arrays.asList("test.generatedmanifest"));
+        assertTrue(task.call());
+        File carFile = getModuleArchive("test.generatedmanifest", "1.0");
+        assertTrue(carFile.exists());
+        assertSha1(carFile);
+        Map<String, Long> classes = readClassCrcs(carFile);
+        assertTrue(classes.containsKey("test/generatedmanifest/$module_.class"));
+        assertTrue(classes.containsKey("test/generatedmanifest/run_.class"));
+        
+        // Now test incremental compilation
+        task = getCompilerTask(options,
+                ec,
+                "meta/generatedmanifest/source/test/generatedmanifest/run.ceylon");
+        assertTrue(task.call());
+        assertTrue(ec.get(Diagnostic.Kind.ERROR, Diagnostic.Kind.WARNING).isEmpty());
+        assertSha1(carFile);
+        assertEquals(classes, readClassCrcs(carFile));
+    }
+
+    /*
+     * Entry names without the UTF-8 flag are in CP437, so these
+     * two are the same entry.
+     */
+    @Test
+    public void testJarCatEntryNameEncodings() throws IOException{
+        String name = "caf\u00e9.txt";
+        File jar = File.createTempFile("ceylon-jarcat-", ".jar");
+        try{
+            try(JarCat cat = new JarCat(jar)){
+                cat.cat(zip(name, Charset.forName("IBM437")));
+                cat.cat(zip(name, Charset.forName("UTF-8")));
+            }
+            try(ZipFile zip = new ZipFile(jar, Charset.forName("IBM437"))){
+                assertEquals(1, zip.size());
+                assertNotNull(zip.getEntry(name));
+            }
+        }finally{
+            jar.delete();
+        }
+    }
+
+    private byte[] zip(String name, Charset charset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ZipOutputStream zip = new ZipOutputStream(bytes, charset)){
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(charset.name().getBytes("ASCII"));
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private void assertSha1(File carFile) throws IOException {
+        File sha1File = new File(carFile.getPath()+".sha1");
+        assertTrue(sha1File.exists());
+        assertEquals(ShaSigner.sha1(carFile), new String(Files.readAllBytes(sha1File.toPath()), "ASCII"));
+    }
+
+    private Map<String, Long> readClassCrcs(File carFile) throws IOException {
+        Map<String, Long> classes = new HashMap<String, Long>();
+        // reading the entries checks their CRC
+        try (JarInputStream car = new JarInputStream(new FileInputStream(carFile))) {
+            assertNotNull(car.getManifest());
+            byte[] buffer = new byte[4096];
+            JarEntry entry;
+            while ((entry = car.getNextJarEntry()) != null) {
+                while (car.read(buffer) != -1) {
+                }
+                if (entry.getName().endsWith(".class")) {
+                    classes.put(entry.getName(), entry.getCrc());
+                }
+            }
+        }
+        return classes;
+    }
+    
 }
@@ -19,7 +19,11 @@
  */
 package com.redhat.ceylon.compiler.java.test.expression;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 
 import org.junit.Test;
 
@@ -534,6 +538,26 @@ public class ExpressionTests extends CompilerTests {
     public void testLmdAnonMemberQual(){
         compareWithJavaSource("lambda/AnonMemberQual");
     }
+
+    @Test
+    public void testLmdJavaLambdas(){
+        ArrayList<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-source");
+        options.add("8");
+        options.add("-target");
+        options.add("8");
+        options.add("-lambdas");
+        String main = "com.redhat.ceylon.compiler.java.test.expression.lambda.javaLambdas";
+        compileAndRun(options, main, "lambda/JavaLambdas.ceylon");
+        // the fixed arity callables must be Java lambdas rather than anonymous classes
+        int lambdas = 0;
+        for (Method method : loadClass(main + "_", getDestModuleWithArtifact(main)).getDeclaredMethods()) {
+            if (method.getName().startsWith("lambda$")) {
+                lambdas++;
+            }
+        }
+        assertEquals(4, lambdas);
+    }
     
     //
     // Optimisations
@@ -69,6 +69,14 @@ public class MiscTests extends CompilerTests {
         compileAndRun("com.redhat.ceylon.compiler.java.test.misc.twoclasses.main", "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
     }
 
+    @Test
+    public void testCompileTwoClassesWithJobs() throws Exception{
+        List<String> options = new ArrayList<String>(defaultOptions);
+        options.add("-jobs");
+        options.add("4");
+        compileAndRun(options, "com.redhat.ceylon.compiler.java.test.misc.twoclasses.main", "twoclasses/One.ceylon", "twoclasses/Two.ceylon", "twoclasses/main.ceylon");
+    }
+
     @Test
     public void testEqualsHashOverriding(){
         compareWithJavaSource("equalshashoverriding/EqualsHashOverriding");
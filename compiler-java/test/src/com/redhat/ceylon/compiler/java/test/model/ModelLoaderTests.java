@@ -83,6 +83,7 @@ import com.redhat.ceylon.model.loader.AbstractModelLoader;
 import com.redhat.ceylon.model.loader.ModelLoader;
 import com.redhat.ceylon.model.loader.ModelLoader.DeclarationType;
 import com.redhat.ceylon.model.loader.impl.reflect.mirror.ReflectionUtils;
+import com.redhat.ceylon.model.loader.mirror.ClassMirror;
 import com.redhat.ceylon.model.loader.model.LazyElement;
 import com.redhat.ceylon.model.typechecker.model.Annotation;
 import com.redhat.ceylon.model.typechecker.model.Class;
@@ -1267,6 +1268,137 @@ public class ModelLoaderTests extends CompilerTests {
         }, Arrays.asList("-verbose:loader"));
     }
 
+    @Test
+    public void parallelConcurrentClassMirrorLookups(){
+        verifyRuntimeClassLoading(new RunnableTest(){
+            @Override
+            public void test(final ModelLoader loader) {
+                final AbstractModelLoader modelLoader = (AbstractModelLoader) loader;
+                modelLoader.setConcurrent(true);
+                try{
+                    final Module languageModule = loader.getLoadedModule(AbstractModelLoader.CEYLON_LANGUAGE, Versions.CEYLON_VERSION_NUMBER);
+                    final String[] names = {"ceylon.language.String", "ceylon.language.Integer", "ceylon.language.print_", 
+                            "ceylon.language.Sequential", "ceylon.language.DoesNotExist"};
+                    // these do not take the loader lock, and must agree on the mirrors
+                    Callable<ClassMirror[]> task = new Callable<ClassMirror[]>(){
+                        @Override
+                        public ClassMirror[] call() throws Exception {
+                            ClassMirror[] mirrors = new ClassMirror[names.length];
+                            for(int i=0;i<names.length;i++){
+                                mirrors[i] = modelLoader.lookupClassMirror(languageModule, names[i]);
+                            }
+                            return mirrors;
+                        }
+                    };
+                    int threads = 8;
+                    List<Callable<ClassMirror[]>> tasks = new ArrayList<Callable<ClassMirror[]>>(threads);
+                    for(int i=0;i<threads;i++){
+                        tasks.add(task);
+                    }
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<Runnable>(threads));
+                    try {
+                        List<Future<ClassMirror[]>> results = executor.invokeAll(tasks, 1, TimeUnit.MINUTES);
+                        ClassMirror[] expected = results.get(0).get();
+                        Assert.assertNotNull(expected[0]);
+                        Assert.assertEquals("ceylon.language.String", expected[0].getQualifiedName());
+                        Assert.assertNull(expected[4]);
+                        for(Future<ClassMirror[]> f : results){
+                            Assert.assertFalse("Class mirror lookup timed out", f.isCancelled());
+                            ClassMirror[] mirrors = f.get();
+                            for(int i=0;i<names.length;i++){
+                                Assert.assertSame(names[i], expected[i], mirrors[i]);
+                            }
+                        }
+                        Assert.assertSame(expected[0], task.call()[0]);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        executor.shutdownNow();
+                    }
+                }finally{
+                    modelLoader.setConcurrent(false);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void parallelConcurrentRuntimeLoader(){
+        verifyRuntimeClassLoading(new RunnableTest(){
+            @Override
+            public void test(final ModelLoader loader) {
+                final AbstractModelLoader modelLoader = (AbstractModelLoader) loader;
+                modelLoader.setConcurrent(true);
+                try{
+                    // make a task that walks the language module and the JDK base module
+                    final Callable<Set<String>> task = new Callable<Set<String>>(){
+                        @Override
+                        public Set<String> call() throws Exception {
+                            Set<String> names = new TreeSet<String>();
+                            Module languageModule = loader.getLoadedModule(AbstractModelLoader.CEYLON_LANGUAGE, Versions.CEYLON_VERSION_NUMBER);
+                            Assert.assertNotNull(languageModule);
+                            walkPackage(languageModule, AbstractModelLoader.CEYLON_LANGUAGE, names);
+                            Module jdkModule = loader.getLoadedModule(AbstractModelLoader.JAVA_BASE_MODULE_NAME, JDKUtils.jdk.version);
+                            Assert.assertNotNull(jdkModule);
+                            for (String pkgName : JDKUtils.getJDKPackagesByModule(AbstractModelLoader.JAVA_BASE_MODULE_NAME)) {
+                                if(pkgName.startsWith("java."))
+                                    walkPackage(jdkModule, pkgName, names);
+                            }
+                            return names;
+                        }
+                    };
+                    int threads = 8;
+                    List<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>(threads);
+                    for(int i=0;i<threads;i++){
+                        tasks.add(task);
+                    }
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<Runnable>(threads));
+                    try {
+                        List<Set<String>> results = new ArrayList<Set<String>>(threads);
+                        for(Future<Set<String>> f : executor.invokeAll(tasks, 10, TimeUnit.MINUTES)){
+                            // a timeout here means a deadlock
+                            Assert.assertFalse("Model loading timed out", f.isCancelled());
+                            results.add(f.get());
+                        }
+                        // which members a package has depends on what else got loaded first, so we can 
+                        // only check that every thread saw a subset of the final model
+                        Set<String> all = task.call();
+                        Assert.assertTrue(all.contains("ceylon.language::String"));
+                        for(Set<String> names : results){
+                            Set<String> unknown = new TreeSet<String>(names);
+                            unknown.removeAll(all);
+                            Assert.assertTrue("Unknown declarations: "+unknown, unknown.isEmpty());
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        executor.shutdownNow();
+                    }
+                }finally{
+                    modelLoader.setConcurrent(false);
+                }
+            }
+
+            private void walkPackage(Module module, String pkgName, Set<String> names) {
+                Package p = module.getDirectPackage(pkgName);
+                Assert.assertNotNull(pkgName, p);
+                for(Declaration decl : p.getMembers()){
+                    // unshared declarations only show up when something else loads them
+                    if(!decl.isShared())
+                        continue;
+                    // that causes model loading
+                    names.add(decl.getQualifiedNameString());
+                    if(decl instanceof TypeDeclaration){
+                        for(Declaration member : decl.getMembers()){
+                            if(member.isShared())
+                                names.add(member.getQualifiedNameString());
+                        }
+                    }
+                }
+            }
+        });
+    }
+
     @Ignore("This is the single-threaded version of parallelLoader that loads the JDK entirely to benchmark the model loader")
     @Test
     public void jdkModelLoaderSpeedTest(){
@@ -215,6 +215,26 @@ public class OptimizationTests extends CompilerTests {
         compareWithJavaSource("loop/optim/StringIterationStatic");
     }
     
+    @Test
+    public void testLopOptimComprehensionIteration() {
+        compareWithJavaSource("loop/optim/ComprehensionIteration");
+    }
+
+    @Test
+    public void testLopOptimComprehensionIterationCorrect() {
+        compileAndRun("com.redhat.ceylon.compiler.java.test.statement.loop.optim.comprehensionIterationCorrect",
+                "loop/optim/ComprehensionIterationCorrect.ceylon",
+                "loop/optim/ArrayBuilder.ceylon");
+    }
+
+    @Test
+    public void testLopOptimComprehensionIterationRequired() {
+        assertErrors("loop/optim/ComprehensionIterationRequired",
+                new CompilerError(23, "@requireOptimization[\"ComprehensionIteration\"] assertion failed: comprehension if clause has conditions which are not boolean conditions"),
+                new CompilerError(26, "@requireOptimization[\"ComprehensionIteration\"] assertion failed: comprehension has more than one for clause"),
+                new CompilerError(29, "@requireOptimization[\"ComprehensionIteration\"] assertion failed: iterable expression is not a comprehension"));
+    }
+
     @Ignore("For benchmarking only")
     @Test
     public void testLopOptimDynamicIterationBench() {
@@ -19,13 +19,26 @@
  */
 package com.redhat.ceylon.tools.test;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -37,8 +50,11 @@ import com.redhat.ceylon.common.tool.OptionArgumentException;
 import com.redhat.ceylon.common.tool.ToolModel;
 import com.redhat.ceylon.common.tool.ToolUsageError;
 import com.redhat.ceylon.compiler.CeylonCompileTool;
+import com.redhat.ceylon.compiler.CompileDaemon;
 import com.redhat.ceylon.compiler.CompilerErrorException;
 import com.redhat.ceylon.compiler.SystemErrorException;
+import com.redhat.ceylon.compiler.java.launcher.Main.ExitState.CeylonState;
+import com.redhat.ceylon.compiler.java.tools.IncrementalUnit;
 
 public class CompilerToolTests extends AbstractToolTests {
     
@@ -122,6 +138,213 @@ public class CompilerToolTests extends AbstractToolTests {
         car.close();
     }
     
+    private List<String> daemonArgs(String module) {
+        return Arrays.asList(
+                "-src", new File("test/src").getAbsolutePath(),
+                "-out", new File(destDir).getAbsolutePath(),
+                "-sysrep", getSysRepPath(),
+                "-cp", getClassPathAsPath(),
+                module);
+    }
+    
+    @Test
+    public void testCompileDaemon()  throws Exception {
+        File portFile = destFile("daemontest/compile");
+        final CompileDaemon daemon = new CompileDaemon(portFile);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        try {
+            assertTrue(CompileDaemon.isRunning(portFile));
+            // a second compilation in the same daemon gets fresh models
+            for (int i = 0; i < 2; i++) {
+                CompileDaemon.Result result = CompileDaemon.compile(portFile, 
+                        daemonArgs("com.redhat.ceylon.tools.test.ceylon"), new StringWriter());
+                assertNotNull(result);
+                Assert.assertEquals(CeylonState.OK, result.ceylonState);
+            }
+            
+            StringWriter output = new StringWriter();
+            CompileDaemon.Result result = CompileDaemon.compile(portFile, 
+                    daemonArgs("com.redhat.ceylon.tools.test.erroneous"), output);
+            assertNotNull(result);
+            Assert.assertEquals(CeylonState.ERROR, result.ceylonState);
+            Assert.assertEquals(1, result.errorCount);
+            assertTrue(output.toString().contains("Erroneous.ceylon"));
+            
+            assertTrue(CompileDaemon.stop(portFile));
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+            assertFalse(portFile.exists());
+            assertFalse(CompileDaemon.isRunning(portFile));
+            Assert.assertNull(CompileDaemon.compile(portFile, 
+                    daemonArgs("com.redhat.ceylon.tools.test.ceylon"), new StringWriter()));
+        } finally {
+            daemon.close();
+        }
+    }
+    
+    @Test
+    public void testCompileDaemonProtocolVersion()  throws Exception {
+        File portFile = destFile("daemontest/compile");
+        final CompileDaemon daemon = new CompileDaemon(portFile);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        try {
+            // a client of another version gets told the version of the daemon
+            try (Socket socket = new Socket(InetAddress.getByName(null), daemon.getPort())) {
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(0);
+                out.flush();
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                Assert.assertEquals('V', in.readByte());
+                Assert.assertEquals(1, in.readInt());
+            }
+            // and the daemon keeps serving the others
+            assertTrue(CompileDaemon.isRunning(portFile));
+            assertTrue(CompileDaemon.stop(portFile));
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        } finally {
+            daemon.close();
+        }
+    }
+    
+    @Test
+    public void testCompileDaemonInvalidMode()  throws Exception {
+        ToolModel<CeylonCompileTool> model = pluginLoader.loadToolModel("compile");
+        Assert.assertNotNull(model);
+        try {
+            pluginFactory.bindArguments(model, getMainTool(),
+                    options("--daemon=restart", "--src=test/src", "com.redhat.ceylon.tools.test.ceylon"));
+            Assert.fail("Tool should have thrown an exception");
+        } catch (OptionArgumentException e) {
+            Assert.assertEquals("Invalid --daemon mode: restart (should be serve or stop)", e.getMessage());
+        }
+    }
+    
+    private void writeSource(File srcDir, String name, String code) throws IOException {
+        File file = new File(srcDir, "inctest/" + name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), code.getBytes("UTF-8"));
+    }
+    
+    private void compileIncrementally(File srcDir) throws Exception {
+        ToolModel<CeylonCompileTool> model = pluginLoader.loadToolModel("compile");
+        CeylonCompileTool tool = pluginFactory.bindArguments(model, getMainTool(),
+                options("--incremental", "--src=" + srcDir.getPath(), "inctest"));
+        tool.run();
+    }
+    
+    private Map<String,Long> classTimes(File car) throws IOException {
+        Map<String,Long> times = new HashMap<String,Long>();
+        try (JarFile jar = new JarFile(car)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class"))
+                    times.put(entry.getName(), entry.getTime());
+            }
+        }
+        return times;
+    }
+    
+    @Test
+    public void testCompileIncremental()  throws Exception {
+        File srcDir = destFile("incrementaltest");
+        FileUtil.delete(srcDir);
+        writeSource(srcDir, "module.ceylon", "module inctest \"1\" {}");
+        writeSource(srcDir, "greet.ceylon", "shared String greeting(String s) => \"hi \" + s;");
+        writeSource(srcDir, "run.ceylon", "shared void run() { print(greeting(\"you\")); }");
+        writeSource(srcDir, "other.ceylon", "shared String other() => \"other\";");
+        compileIncrementally(srcDir);
+        
+        File carFile = getModuleArchive("inctest", "1");
+        Map<String,IncrementalUnit> units = IncrementalUnit.read(carFile);
+        assertNotNull(units);
+        Assert.assertEquals(4, units.size());
+        IncrementalUnit run = units.get("inctest/run.ceylon");
+        Assert.assertEquals(Collections.singleton("inctest::run"), run.declarations);
+        Assert.assertEquals(Collections.singleton("inctest::greeting"), run.references);
+        
+        // zip entry times only have a two seconds precision
+        Thread.sleep(2100);
+        // a change within a body only compiles that file
+        writeSource(srcDir, "greet.ceylon", "shared String greeting(String s) => \"hello \" + s;");
+        Map<String,Long> times = classTimes(carFile);
+        compileIncrementally(srcDir);
+        Map<String,Long> newTimes = classTimes(carFile);
+        Assert.assertNotEquals(times.get("inctest/greeting_.class"), newTimes.get("inctest/greeting_.class"));
+        Assert.assertEquals(times.get("inctest/run_.class"), newTimes.get("inctest/run_.class"));
+        Assert.assertEquals(times.get("inctest/other_.class"), newTimes.get("inctest/other_.class"));
+        Assert.assertEquals(units.get("inctest/greet.ceylon").signature, 
+                IncrementalUnit.read(carFile).get("inctest/greet.ceylon").signature);
+        
+        Thread.sleep(2100);
+        // a change to a signature also compiles the files which refer to it
+        writeSource(srcDir, "greet.ceylon", "shared String greeting(String s, Integer n = 1) => \"hello \" + s;");
+        times = newTimes;
+        compileIncrementally(srcDir);
+        newTimes = classTimes(carFile);
+        Assert.assertNotEquals(times.get("inctest/greeting_.class"), newTimes.get("inctest/greeting_.class"));
+        Assert.assertNotEquals(times.get("inctest/run_.class"), newTimes.get("inctest/run_.class"));
+        Assert.assertEquals(times.get("inctest/other_.class"), newTimes.get("inctest/other_.class"));
+        
+        // nothing changed, so nothing gets compiled
+        long lastModified = carFile.lastModified();
+        compileIncrementally(srcDir);
+        Assert.assertEquals(lastModified, carFile.lastModified());
+        
+        // a change to the arguments of an annotation changes the signature
+        writeSource(srcDir, "greet.ceylon", "deprecated(\"old\") shared String greeting(String s, Integer n = 1) => \"hello \" + s;");
+        compileIncrementally(srcDir);
+        String signature = IncrementalUnit.read(carFile).get("inctest/greet.ceylon").signature;
+        writeSource(srcDir, "greet.ceylon", "deprecated(\"older\") shared String greeting(String s, Integer n = 1) => \"hello \" + s;");
+        compileIncrementally(srcDir);
+        Assert.assertNotEquals(signature, IncrementalUnit.read(carFile).get("inctest/greet.ceylon").signature);
+        
+        // removing a file removes its classes
+        new File(srcDir, "inctest/other.ceylon").delete();
+        compileIncrementally(srcDir);
+        assertFalse(classTimes(carFile).containsKey("inctest/other_.class"));
+        Assert.assertEquals(3, IncrementalUnit.read(carFile).size());
+        
+        // an incompatible change breaks the files which refer to it
+        writeSource(srcDir, "greet.ceylon", "shared String greeting() => \"hello\";");
+        try {
+            compileIncrementally(srcDir);
+            Assert.fail("Compilation should have failed");
+        } catch (CompilerErrorException e) {
+            // expected
+        }
+        // and they are compiled again until they are fixed
+        try {
+            compileIncrementally(srcDir);
+            Assert.fail("Compilation should have failed");
+        } catch (CompilerErrorException e) {
+            // expected
+        }
+        writeSource(srcDir, "run.ceylon", "shared void run() { print(greeting()); }");
+        compileIncrementally(srcDir);
+    }
+    
     @Test
     public void testCompileVerbose()  throws Exception {
         ToolModel<CeylonCompileTool> model = pluginLoader.loadToolModel("compile");
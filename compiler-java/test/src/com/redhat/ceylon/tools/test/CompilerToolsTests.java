@@ -23,6 +23,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.redhat.ceylon.compiler.IncrementalCompilationTests;
 import com.redhat.ceylon.tools.bashcompletion.BashCompletionToolTests;
 import com.redhat.ceylon.tools.help.DocToolToolTests;
 import com.redhat.ceylon.tools.help.HelpToolTests;
@@ -43,6 +44,7 @@ import com.redhat.ceylon.tools.version.VersionToolTests;
     FatJarToolTests.class,
     HelpToolTests.class,
     ImportJarToolTests.class,
+    IncrementalCompilationTests.class,
     InfoToolTests.class,
     JigsawToolTests.class,
     MarkdownTests.class,
@@ -74,6 +74,7 @@ public class CeylonCompileJsTool extends OutputRepoUsingTool {
     private boolean modulify = true;
     private boolean comments = false;
     private boolean skipSrc = false;
+    private int jobs = 1;
 
     private String encoding = DefaultToolOptions.getDefaultEncoding();
 
@@ -205,6 +206,13 @@ public class CeylonCompileJsTool extends OutputRepoUsingTool {
         return skipSrc;
     }
 
+    @OptionArgument(longName="jobs", argumentName="n")
+    @Description("Sets the number of threads used to typecheck the source files " +
+            "and to generate the code of the modules, use 1 to do it sequentially (default: 1).")
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
     @Argument(argumentName="moduleOrFile", multiplicity="*")
     public void setModule(List<String> moduleOrFile) {
         this.files = moduleOrFile;
@@ -239,6 +247,7 @@ public class CeylonCompileJsTool extends OutputRepoUsingTool {
                 .profile(profile)
                 .stdin(false)
                 .generateSourceArchive(!skipSrc)
+                .jobs(jobs)
                 .encoding(encoding)
                 .diagnosticListener(diagnosticListener)
                 .outWriter(writer)
@@ -330,7 +339,7 @@ public class CeylonCompileJsTool extends OutputRepoUsingTool {
         }
         //getting the type checker does process all types in the source directory
         tcb.verbose(opts.hasVerboseFlag("ast")).setRepositoryManager(repoman);
-        tcb.usageWarnings(false).encoding(encoding);
+        tcb.usageWarnings(false).encoding(encoding).jobs(jobs);
 
         typeChecker = tcb.getTypeChecker();
         t1=System.nanoTime();
@@ -0,0 +1,188 @@
+package com.redhat.ceylon.compiler.js;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.cmr.api.ArtifactContext;
+import com.redhat.ceylon.cmr.api.ModuleQuery;
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.common.ModuleUtil;
+import com.redhat.ceylon.common.Versions;
+import com.redhat.ceylon.common.tool.Argument;
+import com.redhat.ceylon.common.tool.Description;
+import com.redhat.ceylon.common.tool.OptionArgument;
+import com.redhat.ceylon.common.tool.RemainingSections;
+import com.redhat.ceylon.common.tool.Summary;
+import com.redhat.ceylon.common.tools.CeylonTool;
+import com.redhat.ceylon.common.tools.RepoUsingTool;
+import com.redhat.ceylon.compiler.js.loader.JsModuleSourceMapper;
+import com.redhat.ceylon.model.cmr.ArtifactResult;
+
+@Summary("Links a compiled JavaScript module into a single file")
+@Description(
+        "Writes the JavaScript code of the module specified as the `<module>` argument, " +
+        "and of all the modules it depends on, to a single file which can be loaded by " +
+        "node.js or a browser without a module loader. " +
+        "Only the declarations which can be reached from the function given with `--run`, " +
+        "or from the shared declarations of the `<module>` if there's none, are included. " +
+        "If the metamodel is used, every declaration of every module is included. " +
+        "The `<module>` may optionally include a version."
+)
+@RemainingSections(
+        "## EXAMPLE" +
+        "\n\n" +
+        "The following would write the `com.example.foobar` module and its dependencies to `foobar.js`, " +
+        "to run its `run` function when loaded:" +
+         "\n\n" +
+         "    ceylon link-js --run=run --out=foobar.js com.example.foobar/1.0.0"
+)
+public class CeylonLinkJsTool extends RepoUsingTool {
+
+    private String module;
+    private String func;
+    private File out;
+
+    public CeylonLinkJsTool() {
+        super(CeylonRunJsMessages.RESOURCE_BUNDLE);
+    }
+
+    @Argument(argumentName="module", multiplicity="1")
+    public void setModuleVersion(String moduleVersion) {
+        this.module = moduleVersion;
+    }
+
+    @OptionArgument(argumentName="func")
+    @Description("The function to run when the linked file is loaded, which must be exported " +
+            "from the given `<module>`. If not specified, the linked file just exports " +
+            "the shared declarations of the `<module>`.")
+    public void setRun(String func) {
+        this.func = func;
+    }
+
+    @OptionArgument(shortName='o', argumentName="file")
+    @Description("The file to write the linked code to " +
+            "(default: `<module>-<version>.bundle.js` in the current directory).")
+    public void setOut(File out) {
+        this.out = out;
+    }
+
+    @Override
+    public void initialize(CeylonTool mainTool) {
+    }
+
+    @Override
+    public void run() throws Exception {
+        final boolean isDefault = ModuleUtil.isDefaultModule(module);
+        final String modname;
+        String version;
+        if (isDefault) {
+            modname = module;
+            version = null;
+        } else {
+            modname = ModuleUtil.moduleName(module);
+            version = ModuleUtil.moduleVersion(module);
+            version = checkModuleVersionsOrShowSuggestions(
+                    getRepositoryManager(), modname, version, ModuleQuery.Type.JS,
+                    null, null,
+                    Versions.JS_BINARY_MAJOR_VERSION, Versions.JS_BINARY_MINOR_VERSION, COMPILE_NEVER);
+            if (version == null) {
+                return;
+            }
+        }
+        final Map<String,File> files = new LinkedHashMap<>();
+        addModule(files, getRepositoryManager(), modname, version, false);
+        final JsLinker linker = new JsLinker();
+        for (Map.Entry<String,File> e : files.entrySet()) {
+            linker.addModule(e.getKey(), e.getValue());
+        }
+        final File outFile = applyCwd(out != null ? out
+                : new File(isDefault ? modname + ".bundle.js" : modname + "-" + version + ".bundle.js"));
+        final File dir = outFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8)) {
+            linker.link(getPath(modname, version), func == null ? null
+                    : CeylonRunJsTool.getFunctionName(modname, func), writer);
+        } catch (CompilerErrorException e) {
+            // don't leave a truncated bundle behind
+            outFile.delete();
+            throw e;
+        }
+        if (isVerbose()) {
+            append("Linked ").append(linker.getLiveStatementCount()).append(" of ")
+                .append(linker.getStatementCount()).append(" toplevel statements into ")
+                .append(outFile).append(" (").append(outFile.length()).append(" bytes)");
+            newline();
+            if (linker.usesMetamodel()) {
+                append("The metamodel is used, so all declarations were kept");
+                newline();
+            }
+            flush();
+        }
+    }
+
+    /** Returns the path under which the code of a module is required. */
+    private static String getPath(String modname, String version) {
+        final String dir = modname.replace('.', '/');
+        return version == null ? dir + "/" + modname : dir + "/" + version + "/" + modname + "-" + version;
+    }
+
+    /** Adds the code and the model of a module, and of its dependencies. */
+    private void addModule(Map<String,File> files, RepositoryManager repoman,
+            String modname, String version, boolean optional) throws IOException {
+        final String path = getPath(modname, version);
+        if (files.containsKey(path)) {
+            return;
+        }
+        ArtifactContext ac = new ArtifactContext(modname, version, ArtifactContext.JS, ArtifactContext.JS_MODEL);
+        ac.setIgnoreDependencies(true);
+        ac.setThrowErrorIfMissing(false);
+        List<ArtifactResult> results = repoman.getArtifactResults(ac);
+        File code = null;
+        File model = null;
+        for (ArtifactResult r : results) {
+            String suffix = ArtifactContext.getSuffixFromFilename(r.artifact().getName());
+            if (suffix.equals(ArtifactContext.JS)) {
+                code = r.artifact();
+            } else if (suffix.equals(ArtifactContext.JS_MODEL)) {
+                model = r.artifact();
+            }
+        }
+        if (code == null || model == null) {
+            if (optional) {
+                return;
+            }
+            throw new CeylonRunJsException("Cannot find module " + ModuleUtil.makeModuleName(modname, version)
+                    + " in specified module repositories");
+        }
+        files.put(path, code);
+        files.put(path + "-model", model);
+        @SuppressWarnings("unchecked")
+        List<Object> deps = (List<Object>)JsModuleSourceMapper.loadJsonModel(model).get("$mod-deps");
+        if (deps == null) {
+            return;
+        }
+        for (Object dep : deps) {
+            final String depname;
+            boolean depOptional = false;
+            if (dep instanceof String) {
+                depname = (String)dep;
+            } else {
+                @SuppressWarnings("unchecked")
+                final Map<String,Object> depmap = (Map<String,Object>)dep;
+                depname = depmap.get("path").toString();
+                depOptional = new Integer(1).equals(depmap.get("opt"));
+            }
+            int idx = depname.indexOf('/');
+            addModule(files, repoman, depname.substring(0, idx), depname.substring(idx+1), depOptional);
+        }
+    }
+}
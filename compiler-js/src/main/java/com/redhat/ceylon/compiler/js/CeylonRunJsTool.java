@@ -270,29 +270,7 @@ public class CeylonRunJsTool extends RepoUsingTool {
             }
         }
 
-        //Rename func
-        if (func.startsWith("::")) {
-            func = func.substring(2);
-        } else if (func.indexOf('.') > 0 || func.indexOf("::") > 0) {
-            //Given a fully qualified name such as a.b.c.run, remove the module path first
-            //then change what remains to run$subpackages i.e. module a.b then run$c
-            if (func.contains("::")) {
-                func = func.replace("::", ".");
-            }
-            if (func.startsWith(module)) {
-                func = func.substring(module.length()+1);
-            }
-            if (func.indexOf('.') > 0) {
-                final StringBuilder fsb = new StringBuilder();
-                final int lastDot = func.lastIndexOf('.');
-                fsb.append(func.substring(lastDot+1)).append('$');
-                fsb.append(func.substring(0,lastDot).replaceAll("\\.", "\\$"));
-                func = fsb.toString();
-            }
-        }
-        if (JsIdentifierNames.isReservedWord(func)) {
-            func = "$_" + func;
-        }
+        func = getFunctionName(module, func);
         final boolean isDefault = ModuleUtil.isDefaultModule(module);
         String moduleString = isDefault ? module : module +"/"+version;
         //The timeout is to have enough time to start reading on the process streams
@@ -351,6 +329,34 @@ public class CeylonRunJsTool extends RepoUsingTool {
         return proc;
     }
 
+    /** Returns the name under which the given toplevel function of the given
+     * module is exported by its JavaScript code. */
+    static String getFunctionName(String module, String func) {
+        if (func.startsWith("::")) {
+            func = func.substring(2);
+        } else if (func.indexOf('.') > 0 || func.indexOf("::") > 0) {
+            //Given a fully qualified name such as a.b.c.run, remove the module path first
+            //then change what remains to run$subpackages i.e. module a.b then run$c
+            if (func.contains("::")) {
+                func = func.replace("::", ".");
+            }
+            if (func.startsWith(module)) {
+                func = func.substring(module.length()+1);
+            }
+            if (func.indexOf('.') > 0) {
+                final StringBuilder fsb = new StringBuilder();
+                final int lastDot = func.lastIndexOf('.');
+                fsb.append(func.substring(lastDot+1)).append('$');
+                fsb.append(func.substring(0,lastDot).replaceAll("\\.", "\\$"));
+                func = fsb.toString();
+            }
+        }
+        if (JsIdentifierNames.isReservedWord(func)) {
+            func = "$_" + func;
+        }
+        return func;
+    }
+
     private static String appendToNodePath(StringBuilder nodePath, String repo) {
         if (repo == null || repo.isEmpty()) return "";
         if (nodePath.length() > 0) {
@@ -462,7 +468,8 @@ public class CeylonRunJsTool extends RepoUsingTool {
         final ProcessBuilder proc = buildProcess(modname, version, func, args, exepath, localRepos, output);
         final Process nodeProcess = proc.start();
         //All this shit because inheritIO doesn't work on fucking Windows
-        new ReadStream(nodeProcess.getInputStream(), output == null ? System.out : output).start();
+        final ReadStream outReader = new ReadStream(nodeProcess.getInputStream(), output == null ? System.out : output);
+        outReader.start();
         if (output == null) {
             new ReadErrorStream(nodeProcess.getErrorStream(), System.err, debug).start();
         }
@@ -478,6 +485,8 @@ public class CeylonRunJsTool extends RepoUsingTool {
                 Runtime.getRuntime().addShutdownHook(stopThread);
             } catch(Throwable t) {}
             int exitCode = nodeProcess.waitFor();
+            // so that all the output was written when we return
+            outReader.join();
             if (exitCode != 0) {
                 if(exitCode == 11)
                     exitCode = 2;
@@ -1,6 +1,6 @@
 package com.redhat.ceylon.compiler.js;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
@@ -14,7 +14,7 @@ import com.redhat.ceylon.model.typechecker.model.Declaration;
  */
 public class ClosureHelper extends Visitor {
 
-    private final Set<Declaration> caps = new HashSet<>();
+    private final Set<Declaration> caps = new LinkedHashSet<>();
 
     public static Set<Declaration> declarationsInExpression(final Tree.Expression that) {
         final ClosureHelper ch = new ClosureHelper();
@@ -1,7 +1,7 @@
 package com.redhat.ceylon.compiler.js;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -152,7 +152,7 @@ class ComprehensionGenerator {
             // value or key/value variables
             gen.out(",", loop.valueVarName, "=", finished);
             if (loop.pattern != null) {
-                HashSet<Declaration> decs = new HashSet<>();
+                LinkedHashSet<Declaration> decs = new LinkedHashSet<>();
                 new Destructurer(loop.pattern, null, decs, "", true);
                 for (Declaration d : decs) {
                     gen.out(",", names.name(d));
@@ -348,7 +348,7 @@ class ComprehensionGenerator {
 
         public Set<ConditionGenerator.VarHolder> containedVars(Tree.Expression that) {
             final Set<Declaration> expdecs = ClosureHelper.declarationsInExpression(that);
-            treeVars = new HashSet<>(expdecs.size());
+            treeVars = new LinkedHashSet<>(expdecs.size());
             for (List<ConditionGenerator.VarHolder> lvh : conditionVars) {
                 for (ConditionGenerator.VarHolder vh : lvh) {
                     if (vh.var != null && expdecs.contains(vh.var)) {
@@ -2,8 +2,8 @@ package com.redhat.ceylon.compiler.js;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -502,7 +502,7 @@ public class ConditionGenerator {
 
     /** Get all the captured variables from the set of VarHolders. */
     Set<Value> getCaptured(List<VarHolder> vars) {
-        Set<Value> caps = new HashSet<>(3);
+        Set<Value> caps = new LinkedHashSet<>(3);
         for (VarHolder vh : vars) {
             Set<Value> c2 = vh.getCaptured();
             if (c2 != null && !c2.isEmpty()) {
@@ -1,6 +1,6 @@
 package com.redhat.ceylon.compiler.js;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import com.redhat.ceylon.compiler.js.util.JsIdentifierNames;
@@ -24,9 +24,9 @@ public class Destructurer extends Visitor {
     private final String expvar;
     private final Set<Declaration> directAccess;
     private boolean first;
-    private final Set<Tree.Variable> added = new HashSet<>();
-    private final Set<Value> attribs = new HashSet<>();
-    private final Set<Value> caps = new HashSet<>();
+    private final Set<Tree.Variable> added = new LinkedHashSet<>();
+    private final Set<Value> attribs = new LinkedHashSet<>();
+    private final Set<Value> caps = new LinkedHashSet<>();
 
     /** Generate the code for the specified pattern. If null is passed instead of a
      * generator, no code is output but the patterns are still visited and their
@@ -117,7 +117,7 @@ public class Destructurer extends Visitor {
 
     /** Returns the declarations gathered by this Destructurer. */
     public Set<Value> getDeclarations() {
-        final HashSet<Value> decs = new HashSet<>(added.size());
+        final LinkedHashSet<Value> decs = new LinkedHashSet<>(added.size());
         for (Tree.Variable v : added) {
             decs.add(v.getDeclarationModel());
         }
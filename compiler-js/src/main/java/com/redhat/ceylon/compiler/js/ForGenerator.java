@@ -1,6 +1,6 @@
 package com.redhat.ceylon.compiler.js;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
@@ -28,7 +28,7 @@ public class ForGenerator {
         }
         final Tree.ForIterator foriter = that.getForClause().getForIterator();
         boolean hasElse = that.getElseClause() != null && !that.getElseClause().getBlock().getStatements().isEmpty();
-        final Set<Value> caps = new HashSet<>();
+        final Set<Value> caps = new LinkedHashSet<>();
         final String itemVar = generateForLoop(foriter, hasElse, caps);
         gen.encloseBlockInFunction(that.getForClause().getBlock(), false, caps);
         //If there's an else block, check for normal termination
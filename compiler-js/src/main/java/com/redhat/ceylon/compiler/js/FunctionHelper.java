@@ -1,7 +1,7 @@
 package com.redhat.ceylon.compiler.js;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -364,7 +364,7 @@ public class FunctionHelper {
     static void generateLet(final Tree.LetExpression that, final Set<Declaration> directs, final GenerateJsVisitor gen) {
         gen.out("function(){var ");
         boolean first=true;
-        HashSet<Declaration> decs2 = new HashSet<>();
+        LinkedHashSet<Declaration> decs2 = new LinkedHashSet<>();
         for (Tree.Statement st : that.getLetClause().getVariables()) {
             if (!first)gen.out(",");
             if (st instanceof Tree.Variable) {
@@ -465,7 +465,7 @@ public class FunctionHelper {
                 end |= copyMissingTypeParameters(m, sm, i, true, gen);
                 //We still need to find intermediate declarations
                 if (m.isClassOrInterfaceMember()) {
-                    final Set<Declaration> decs = new HashSet<Declaration>();
+                    final Set<Declaration> decs = new LinkedHashSet<Declaration>();
                     decs.add(sm);
                     decs.add(m);
                     //This gives us the containing type
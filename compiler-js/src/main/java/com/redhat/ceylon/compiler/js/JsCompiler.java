@@ -12,9 +12,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import com.redhat.ceylon.cmr.api.ArtifactContext;
@@ -35,6 +37,7 @@ import com.redhat.ceylon.compiler.js.util.Options;
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.analyzer.MissingNativeVisitor;
 import com.redhat.ceylon.compiler.typechecker.analyzer.Warning;
+import com.redhat.ceylon.compiler.typechecker.context.PhaseExecutor;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.tree.Message;
@@ -70,7 +73,24 @@ public class JsCompiler {
     private boolean compilingLanguageModule;
     private int exitCode = 0;
     private Logger logger;
-    private JsIdentifierNames names;
+    /** The identifier names of each module, so that the code of a module does not depend
+     * on the other modules or on the number of jobs */
+    private final Map<Module, JsIdentifierNames> moduleNames = new HashMap<Module, JsIdentifierNames>();
+    private PhaseExecutor executor;
+
+    /** A source file to output: a unit to compile, or a JS file to copy into the output of a module. */
+    private static class Source {
+        final File path;
+        /** The unit to compile, or null for a JS file */
+        final PhasedUnit unit;
+        final Module module;
+
+        Source(File path, PhasedUnit unit, Module module) {
+            this.path = path;
+            this.unit = unit;
+            this.module = module;
+        }
+    }
 
     private class JsMissingNativeVisitor extends MissingNativeVisitor {
         
@@ -163,16 +183,23 @@ public class JsCompiler {
     }
 
     /** Compile one phased unit. */
-    private int compileUnit(PhasedUnit pu, JsIdentifierNames names) throws IOException {
+    private int compileUnit(PhasedUnit pu) throws IOException {
         if (opts.isVerbose()) {
             logger.debug("Compiling "+pu.getUnitFile().getPath()+" to JS");
         }
+        int exitCode = generateUnit(pu);
+        pu.getCompilationUnit().visit(errorVisitor);
+        return exitCode;
+    }
+
+    /** Generate the code of one phased unit, without collecting its errors. */
+    private int generateUnit(PhasedUnit pu) throws IOException {
         JsOutput jsout = getOutput(pu);
         MissingNativeVisitor mnv = new JsMissingNativeVisitor(opts.getCwd());
         pu.getCompilationUnit().visit(mnv);
-        GenerateJsVisitor jsv = new GenerateJsVisitor(this, jsout, opts, names, pu.getTokens());
+        GenerateJsVisitor jsv = new GenerateJsVisitor(this, jsout, opts,
+                getNames(pu.getPackage().getModule()), pu.getTokens());
         pu.getCompilationUnit().visit(jsv);
-        pu.getCompilationUnit().visit(errorVisitor);
         return jsv.getExitCode();
     }
 
@@ -189,6 +216,8 @@ public class JsCompiler {
         errorVisitor.clear();
         errCount = 0;
         output.clear();
+        moduleNames.clear();
+        executor = getExecutor();
         try {
             if (opts.isVerbose()) {
                 logger.debug("Generating metamodel...");
@@ -219,19 +248,27 @@ public class JsCompiler {
                         pkg.setModule(defmod);
                     }
                 }
-                EnumSet<Warning> suppressedWarnings = opts.getSuppressWarnings();
-                if (suppressedWarnings == null)
-                    suppressedWarnings = EnumSet.noneOf(Warning.class);
-                pu.getCompilationUnit().visit(
-                            new WarningSuppressionVisitor<Warning>(Warning.class, suppressedWarnings));
-                //Perform capture analysis
-                for (com.redhat.ceylon.model.typechecker.model.Declaration d : pu.getDeclarations()) {
-                    if (d instanceof TypedDeclaration && d instanceof com.redhat.ceylon.model.typechecker.model.Setter == false) {
-                        pu.getCompilationUnit().visit(new ValueVisitor((TypedDeclaration)d));
+                getOutput(pu);
+            }
+            EnumSet<Warning> suppressed = opts.getSuppressWarnings();
+            final EnumSet<Warning> suppressedWarnings = suppressed == null ?
+                    EnumSet.noneOf(Warning.class) : suppressed;
+            executeByModule(phasedUnits, new PhaseExecutor.Phase() {
+                @Override
+                public void run(PhasedUnit pu) {
+                    pu.getCompilationUnit().visit(
+                                new WarningSuppressionVisitor<Warning>(Warning.class, suppressedWarnings));
+                    //Perform capture analysis
+                    for (com.redhat.ceylon.model.typechecker.model.Declaration d : pu.getDeclarations()) {
+                        if (d instanceof TypedDeclaration && d instanceof com.redhat.ceylon.model.typechecker.model.Setter == false) {
+                            pu.getCompilationUnit().visit(new ValueVisitor((TypedDeclaration)d));
+                        }
                     }
+                    pu.getCompilationUnit().visit(getOutputForModule(pu.getPackage().getModule()).mmg);
                 }
-                pu.getCompilationUnit().visit(getOutput(pu).mmg);
-                if (opts.hasVerboseFlag("ast")) {
+            });
+            if (opts.hasVerboseFlag("ast")) {
+                for (PhasedUnit pu: phasedUnits) {
                     if (opts.getOutWriter() == null) {
                         logger.debug(pu.getCompilationUnit().toString());
                     } else {
@@ -241,11 +278,18 @@ public class JsCompiler {
                 }
             }
             //Then write it out and output the reference in the module file
-            names = new JsIdentifierNames(this);
             if (!compilingLanguageModule) {
-                for (Map.Entry<Module,JsOutput> e : output.entrySet()) {
-                    e.getValue().encodeModel(names);
+                List<Callable<Void>> models = new ArrayList<>(output.size());
+                for (final Map.Entry<Module,JsOutput> e : output.entrySet()) {
+                    models.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            e.getValue().encodeModel(getNames(e.getKey()));
+                            return null;
+                        }
+                    });
                 }
+                invokeAll(models);
             }
             
             //Output all the require calls for any imports
@@ -260,7 +304,7 @@ public class JsCompiler {
                         Module om = pkg.getModule();
                         if (!om.equals(_m) && (!om.isNative() ||
                                 om.getNativeBackends().supports(Backend.JavaScript))) {
-                            output.get(_m).require(((Package) scope).getModule(), names);
+                            output.get(_m).require(((Package) scope).getModule(), getNames(_m));
                         }
                     }
                 }
@@ -313,20 +357,12 @@ public class JsCompiler {
             }
 
             //Then generate the JS code
-            if (srcFiles == null && !phasedUnits.isEmpty()) {
+            List<Source> sources = new ArrayList<>();
+            if (srcFiles == null) {
                 for (PhasedUnit pu: phasedUnits) {
-                    exitCode = compileUnit(pu, names);
-                    generatedCode = true;
-                    if (exitCode != 0) {
-                        return false;
-                    }
-                    if (stopOnError()) {
-                        logger.error("Errors found. Compilation stopped.");
-                        break;
-                    }
-                    getOutput(pu).addSource(getFullPath(pu));
+                    sources.add(new Source(getFullPath(pu), pu, pu.getPackage().getModule()));
                 }
-            } else if(srcFiles != null && !srcFiles.isEmpty()
+            } else if (!srcFiles.isEmpty()
                          // For the specific case of the Stitcher
                          && !typecheckerPhasedUnits.isEmpty() ){
                 PhasedUnit lastUnit;
@@ -340,48 +376,41 @@ public class JsCompiler {
                 for (File path : srcFiles) {
                     if (path.getPath().endsWith(ArtifactContext.JS)) {
                         //Just output the file
-                        final JsOutput lastOut = getOutput(lastUnit);
-                        VirtualFile vpath = findFile(path);
-                        try (BufferedReader reader = new BufferedReader(new InputStreamReader(vpath.getInputStream(), opts.getEncoding()))) {
-                            String line = null;
-                            while ((line = reader.readLine()) != null) {
-                                if (opts.isMinify()) {
-                                    line = line.trim();
-                                    if (!opts.isComment() && line.startsWith("//") && !line.contains("*/")) {
-                                        continue;
-                                    }
-                                }
-                                if (line.length()==0) {
-                                    continue;
-                                }
-                                lastOut.getWriter().write(line);
-                                lastOut.getWriter().write('\n');
-                            }
-                        } finally {
-                            lastOut.addSource(path);
-                        }
-                        generatedCode = true;
+                        getOutput(lastUnit);
+                        sources.add(new Source(path, null, lastUnit.getPackage().getModule()));
                     } else {
                         //Find the corresponding compilation unit
                         for (PhasedUnit pu : phasedUnits) {
-                            File unitFile = getFullPath(pu);
-                            if (path.equals(unitFile)) {
-                                exitCode = compileUnit(pu, names);
-                                generatedCode = true;
-                                if (exitCode != 0) {
-                                    return false;
-                                }
-                                if (stopOnError()) {
-                                    logger.error("Errors found. Compilation stopped.");
-                                    return false;
-                                }
-                                getOutput(pu).addSource(unitFile);
+                            if (path.equals(getFullPath(pu))) {
+                                sources.add(new Source(path, pu, pu.getPackage().getModule()));
                                 lastUnit = pu;
                             }
                         }
                     }
                 }
             }
+            generatedCode = !sources.isEmpty();
+            if (executor.isParallel()) {
+                if (!generateConcurrently(sources)) {
+                    return false;
+                }
+            } else {
+                for (Source src : sources) {
+                    if (src.unit == null) {
+                        outputJsFile(src);
+                        continue;
+                    }
+                    exitCode = compileUnit(src.unit);
+                    if (exitCode != 0) {
+                        return false;
+                    }
+                    if (stopOnError()) {
+                        logger.error("Errors found. Compilation stopped.");
+                        return false;
+                    }
+                    getOutput(src.unit).addSource(src.path);
+                }
+            }
             if(!generatedCode){
                 logger.error("No source units found to compile");
                 exitCode = 2;
@@ -394,6 +423,145 @@ public class JsCompiler {
         return errCount == 0 && exitCode == 0;
     }
 
+    /**
+     * Generates the code of the modules concurrently. The sources of
+     * each module are still output in order, so the code of a module
+     * does not depend on the number of jobs. The errors are then
+     * collected in the order of all the sources, and compilation stops
+     * at the same point as it would when compiling them sequentially.
+     */
+    private boolean generateConcurrently(final List<Source> sources) throws IOException {
+        final int[] exitCodes = new int[sources.size()];
+        Map<Module, List<Integer>> byModule = new LinkedHashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            Module mod = sources.get(i).module;
+            List<Integer> indexes = byModule.get(mod);
+            if (indexes == null) {
+                indexes = new ArrayList<>();
+                byModule.put(mod, indexes);
+            }
+            indexes.add(i);
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(byModule.size());
+        for (final List<Integer> indexes : byModule.values()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    for (int i : indexes) {
+                        Source src = sources.get(i);
+                        if (src.unit == null) {
+                            outputJsFile(src);
+                        } else {
+                            exitCodes[i] = generateUnit(src.unit);
+                            if (exitCodes[i] != 0) {
+                                break;
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        for (int i = 0; i < sources.size(); i++) {
+            Source src = sources.get(i);
+            if (src.unit == null) {
+                continue;
+            }
+            src.unit.getCompilationUnit().visit(errorVisitor);
+            exitCode = exitCodes[i];
+            if (exitCode != 0) {
+                return false;
+            }
+            if (stopOnError()) {
+                logger.error("Errors found. Compilation stopped.");
+                return false;
+            }
+            getOutput(src.unit).addSource(src.path);
+        }
+        return true;
+    }
+
+    /** Copies a JS source file to the output of its module. */
+    private void outputJsFile(Source src) throws IOException {
+        final JsOutput out = getOutputForModule(src.module);
+        VirtualFile vpath = findFile(src.path);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(vpath.getInputStream(), opts.getEncoding()))) {
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                if (opts.isMinify()) {
+                    line = line.trim();
+                    if (!opts.isComment() && line.startsWith("//") && !line.contains("*/")) {
+                        continue;
+                    }
+                }
+                if (line.length()==0) {
+                    continue;
+                }
+                out.getWriter().write(line);
+                out.getWriter().write('\n');
+            }
+        } finally {
+            out.addSource(src.path);
+        }
+    }
+
+    /** The executor for the passes over the modules. Verbose output of the
+     * trees or of the code, and the language module, are always generated
+     * sequentially. */
+    private PhaseExecutor getExecutor() {
+        if (compilingLanguageModule
+                || opts.hasVerboseFlag("ast")
+                || opts.hasVerboseFlag("code")) {
+            return PhaseExecutor.forJobs(1);
+        }
+        return PhaseExecutor.forJobs(opts.getJobs());
+    }
+
+    /** Runs a phase over the given units: the units of each module in
+     * order, and the modules concurrently if there are several jobs. */
+    private void executeByModule(List<PhasedUnit> units, final PhaseExecutor.Phase phase) throws IOException {
+        if (!executor.isParallel()) {
+            for (PhasedUnit pu : units) {
+                phase.run(pu);
+            }
+            return;
+        }
+        Map<Module, List<PhasedUnit>> byModule = new LinkedHashMap<>();
+        for (PhasedUnit pu : units) {
+            Module mod = pu.getPackage().getModule();
+            List<PhasedUnit> moduleUnits = byModule.get(mod);
+            if (moduleUnits == null) {
+                moduleUnits = new ArrayList<>();
+                byModule.put(mod, moduleUnits);
+            }
+            moduleUnits.add(pu);
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(byModule.size());
+        for (final List<PhasedUnit> moduleUnits : byModule.values()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (PhasedUnit pu : moduleUnits) {
+                        phase.run(pu);
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) throws IOException {
+        try {
+            executor.invokeAll(tasks);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     VirtualFile findFile(File path) {
         for (VirtualFile root : srcDirectories) {
             String p = path.getPath().replace(File.separator, "/");
@@ -438,6 +606,9 @@ public class JsCompiler {
         if (jsout==null) {
             jsout = newJsOutput(mod);
             output.put(mod, jsout);
+            // the language module is stitched together from several
+            // compilations, so it keeps the shared numbering
+            moduleNames.put(mod, new JsIdentifierNames(this, !compilingLanguageModule));
             if (opts.isModulify()) {
                 jsout.openWrapper();
             }
@@ -453,8 +624,13 @@ public class JsCompiler {
     JsOutput getOutputForModule(Module m) {
         return output.get(m);
     }
+    /** The identifier names used in the code of the language module, when compiling it. */
     JsIdentifierNames getNames() {
-        return names;
+        return getNames(tc.getContext().getModules().getLanguageModule());
+    }
+    /** The identifier names used in the code of the given module. */
+    JsIdentifierNames getNames(Module m) {
+        return moduleNames.get(m);
     }
 
     /** Closes all output writers and puts resulting artifacts in the output repo. */
@@ -479,7 +655,7 @@ public class JsCompiler {
             JsOutput jsout = entry.getValue();
 
             if (!compilingLanguageModule) {
-                jsout.publishUnsharedDeclarations(names);
+                jsout.publishUnsharedDeclarations(getNames(entry.getKey()));
             }
             if (opts.isModulify()) {
                 jsout.closeWrapper();
@@ -650,7 +826,7 @@ public class JsCompiler {
             f = getStitchedFile(d, suffix + ArtifactContext.JS);
         } else {
             f = findFile(new File(new File(d.getUnit().getFullPath()).getParentFile(),
-                    String.format("%s%s.js", names.name(d), suffix)));
+                    String.format("%s%s.js", getNames(d.getUnit().getPackage().getModule()).name(d), suffix)));
         }
         return f;
     }
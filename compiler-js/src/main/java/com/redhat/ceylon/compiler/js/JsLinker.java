@@ -0,0 +1,874 @@
+package com.redhat.ceylon.compiler.js;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Links compiled JavaScript modules into a single bundle, leaving out the
+ * toplevel declarations which can't be reached from its entry point.
+ * <p>
+ * The linker works on the code of the modules as found in the module
+ * repositories, so it handles the language module built by the {@link Stitcher}
+ * just like the modules built by the {@link JsCompiler}. The body of every module
+ * is split into its toplevel statements: function declarations, variables,
+ * exports (<code>ex$.name=...</code>) and the statements which initialize them,
+ * such as <code>name.$crtmm$=...</code> or <code>$init$name()</code>, which are
+ * kept only if the declaration they belong to is. Any other statement is kept
+ * unconditionally, and so is everything it refers to.
+ * <p>
+ * Declarations can only be found by name through the registry of loaded modules
+ * the metamodel uses. If any code using that registry is reachable, every
+ * declaration exported by every module is kept, along with the models.
+ */
+public class JsLinker {
+
+    private static final String HEADER = "define(function(require, ex$, module) {";
+    private static final String TRAILER = "});\n}(typeof define==='function' && define.amd ? define";
+    private static final String EXPORTS = "ex$";
+    private static final String REQUIRE = "require";
+    private static final String ADDMOD = "$addmod$";
+    private static final String REGISTRY = "$loadedModules$";
+    private static final String INIT = "$init$";
+    /** The properties holding metadata which is only read by the metamodel:
+     * annotations, and the references and accessors of serializable classes */
+    private static final Set<String> METADATA = new HashSet<>(Arrays.asList("an",
+            "ser$refs$", "ser$get$", "ser$set$"));
+
+    private static final int IDENT = 0;
+    private static final int NUMBER = 1;
+    private static final int STRING = 2;
+    private static final int REGEX = 3;
+    private static final int PUNCT = 4;
+
+    private static final String[] PUNCTUATORS = {
+        ">>>=", "...", "===", "!==", "<<=", ">>=", ">>>", "**=",
+        "=>", "==", "!=", "<=", ">=", "&&", "||", "++", "--", "+=", "-=", "*=", "/=", "%=",
+        "&=", "|=", "^=", "<<", ">>", "**"
+    };
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "break", "case", "catch", "class", "const", "continue", "debugger", "default",
+            "delete", "do", "else", "export", "extends", "finally", "for", "function", "if",
+            "import", "in", "instanceof", "let", "new", "return", "super", "switch", "this",
+            "throw", "try", "typeof", "var", "void", "while", "with", "yield"));
+    /** Keywords after which a slash starts a regular expression */
+    private static final Set<String> BEFORE_REGEX = new HashSet<>(Arrays.asList(
+            "return", "typeof", "instanceof", "in", "of", "new", "delete", "void", "throw",
+            "case", "do", "else", "yield"));
+    /** Identifiers which can continue the statement on the previous line */
+    private static final Set<String> CONTINUATIONS = new HashSet<>(Arrays.asList(
+            "in", "instanceof", "else", "catch", "finally", "while"));
+    /** The JavaScript types the language module adds the members of Ceylon types to */
+    private static final Set<String> NATIVES = new HashSet<>(Arrays.asList(
+            "Object", "Function", "Array", "String", "Number", "Boolean", "Error", "RegExp", "Date"));
+    /** Keywords which can end an expression */
+    private static final Set<String> VALUES = new HashSet<>(Arrays.asList(
+            "this", "null", "true", "false"));
+
+    private static class Token {
+        final int type;
+        final String text;
+        final int start;
+        final int end;
+        /** Whether there's a line break between this token and the previous one */
+        final boolean newline;
+        Token(int type, String text, int start, int end, boolean newline) {
+            this.type = type;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.newline = newline;
+        }
+        boolean is(String s) {
+            return type != STRING && type != REGEX && text.equals(s);
+        }
+    }
+
+    /** What some code refers to. */
+    private static class Uses {
+        /** The toplevel names of the module */
+        final Set<String> refs = new HashSet<>();
+        /** The exports of modules, by module path */
+        final Map<String,Set<String>> exportRefs = new HashMap<>();
+        /** The modules required */
+        final Set<String> deps = new HashSet<>();
+        /** The modules whose exports object is handed out */
+        final Set<String> escapes = new HashSet<>();
+        /** The names which aren't declared by the module */
+        final Set<String> globals = new HashSet<>();
+        /** The metadata properties read */
+        final Set<String> metadataReads = new HashSet<>();
+    }
+
+    private static class Statement {
+        /** The range of tokens of the statement */
+        final int first;
+        final int last;
+        final Set<String> defs = new HashSet<>();
+        final Set<String> exportDefs = new HashSet<>();
+        final Set<String> owners = new HashSet<>();
+        final Set<String> exportOwners = new HashSet<>();
+        final Uses uses = new Uses();
+        /** What the values of metadata properties refer to, by property */
+        final Map<String,Uses> metadataUses = new HashMap<>();
+        boolean root;
+        /** Whether the statement changes the JavaScript types, which any code may depend on */
+        boolean augmentsNatives;
+        /** Whether the statement defines an alias for a part of what it owns */
+        boolean derived;
+        boolean usesRegistry;
+        boolean live;
+        Statement(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private static class LinkedModule {
+        final String path;
+        final String body;
+        final List<Token> tokens;
+        final List<Statement> statements;
+        /** The local names of required modules */
+        final Map<String,String> aliases = new HashMap<>();
+        final Map<String,List<Statement>> definers = new HashMap<>();
+        final Map<String,List<Statement>> owned = new HashMap<>();
+        final Map<String,List<Statement>> exportDefiners = new HashMap<>();
+        final Map<String,List<Statement>> exportOwned = new HashMap<>();
+        final Set<String> liveLocals = new HashSet<>();
+        final Set<String> liveExports = new HashSet<>();
+        boolean included;
+        boolean allExports;
+        LinkedModule(String path, String body) {
+            this.path = path;
+            this.body = body;
+            this.tokens = tokenize(body);
+            this.statements = split(tokens);
+        }
+    }
+
+    private final Map<String,LinkedModule> modules = new LinkedHashMap<>();
+    private final Deque<Statement> pending = new ArrayDeque<>();
+    private final Map<Statement,LinkedModule> statementModules = new HashMap<>();
+    /** The modules assigning global variables, by name */
+    private final Map<String,List<LinkedModule>> globals = new HashMap<>();
+    /** The live statements with metadata no code has read yet, by property */
+    private final Map<String,List<Statement>> unreadMetadata = new HashMap<>();
+    private final Set<String> readMetadata = new HashSet<>();
+    private boolean metamodel;
+    private int statementCount;
+    private int liveStatementCount;
+
+    /** Adds the code of a module, as emitted by the compiler.
+     * @param path The path other modules use to require it, such as
+     * <code>com/example/1.0/com.example-1.0</code>. */
+    public void addModule(String path, File file) throws IOException {
+        String code = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        int start = code.indexOf(HEADER);
+        int end = code.lastIndexOf(TRAILER);
+        if (start < 0 || end < start) {
+            throw new CompilerErrorException("Not a CommonJS module: " + file);
+        }
+        LinkedModule mod = new LinkedModule(path, code.substring(start + HEADER.length(), end));
+        analyze(mod);
+        modules.put(path, mod);
+    }
+
+    /** Whether the metamodel was found to be used by the last bundle written. */
+    public boolean usesMetamodel() {
+        return metamodel;
+    }
+
+    /** The number of toplevel statements of the modules in the last bundle written. */
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    /** The number of toplevel statements kept in the last bundle written. */
+    public int getLiveStatementCount() {
+        return liveStatementCount;
+    }
+
+    /** Writes a bundle with the code of the given module that can be reached
+     * from the given function, and of the modules it depends on.
+     * @param mainPath The path of the main module
+     * @param entry The JavaScript name of the function to run when the bundle is
+     * loaded, or null to just export the declarations of the main module. */
+    public void link(String mainPath, String entry, Writer out) throws IOException {
+        final LinkedModule main = modules.get(mainPath);
+        if (main == null) {
+            throw new CompilerErrorException("Module to link not found: " + mainPath);
+        }
+        if (entry != null && !main.exportDefiners.containsKey(entry)
+                && !main.exportOwned.containsKey(entry)) {
+            throw new CompilerErrorException("Function to run is not exported by " + mainPath + ": " + entry);
+        }
+        reset();
+        if (entry == null) {
+            markAllExports(main);
+        } else {
+            markExport(main, entry);
+        }
+        while (!pending.isEmpty()) {
+            process(pending.poll());
+        }
+        out.write("(function(root){\n");
+        out.write("var $$bundle$m={},$$bundle$c={};\n");
+        out.write("function $$bundle$r(p){\n");
+        out.write("var m=$$bundle$c[p];\n");
+        out.write("if(m===undefined){\n");
+        out.write("var f=$$bundle$m[p];\n");
+        out.write("if(f===undefined){\n");
+        out.write("if(typeof require==='function')return require(p);\n");
+        out.write("throw new Error('Cannot find module '+p);\n");
+        out.write("}\n");
+        out.write("m=$$bundle$c[p]={exports:{}};\n");
+        out.write("f($$bundle$r,m.exports,m);\n");
+        out.write("}\n");
+        out.write("return m.exports;\n");
+        out.write("}\n");
+        for (LinkedModule mod : modules.values()) {
+            if (!mod.included) {
+                continue;
+            }
+            out.write("$$bundle$m['");
+            out.write(mod.path);
+            out.write("']=function(require,ex$,module){\n");
+            for (Statement s : mod.statements) {
+                statementCount++;
+                if (s.live) {
+                    liveStatementCount++;
+                    String code = mod.body.substring(mod.tokens.get(s.first).start,
+                            mod.tokens.get(s.last).end);
+                    out.write(code);
+                    out.write(code.endsWith(";") ? "\n" : ";\n");
+                }
+            }
+            out.write("};\n");
+        }
+        if (entry == null) {
+            out.write("var $$bundle$main=$$bundle$r('" + mainPath + "');\n");
+            out.write("if(typeof module==='object'&&module.exports){module.exports=$$bundle$main;}\n");
+            out.write("else if(typeof define==='function'&&define.amd){define(function(){return $$bundle$main;});}\n");
+            out.write("else{root['" + mainPath + "']=$$bundle$main;}\n");
+        } else {
+            out.write("$$bundle$r('" + mainPath + "')." + entry + "();\n");
+        }
+        out.write("}(this));\n");
+        out.flush();
+    }
+
+    private void reset() {
+        pending.clear();
+        unreadMetadata.clear();
+        readMetadata.clear();
+        metamodel = false;
+        statementCount = 0;
+        liveStatementCount = 0;
+        for (LinkedModule mod : modules.values()) {
+            mod.included = false;
+            mod.allExports = false;
+            mod.liveLocals.clear();
+            mod.liveExports.clear();
+            for (Statement s : mod.statements) {
+                s.live = false;
+            }
+        }
+    }
+
+    private void include(LinkedModule mod) {
+        if (mod.included) {
+            return;
+        }
+        mod.included = true;
+        for (Statement s : mod.statements) {
+            if (s.root) {
+                mark(s);
+            }
+        }
+        if (metamodel) {
+            markAllExports(mod);
+        }
+    }
+
+    private void mark(Statement s) {
+        if (!s.live) {
+            s.live = true;
+            pending.add(s);
+        }
+    }
+
+    private void markAll(List<Statement> statements) {
+        if (statements != null) {
+            for (Statement s : statements) {
+                mark(s);
+            }
+        }
+    }
+
+    private void markLocal(LinkedModule mod, String name) {
+        if (mod.liveLocals.add(name)) {
+            markAll(mod.definers.get(name));
+            markAll(mod.owned.get(name));
+        }
+    }
+
+    private void markExport(LinkedModule mod, String name) {
+        include(mod);
+        if (mod.liveExports.add(name)) {
+            markAll(mod.exportDefiners.get(name));
+            markAll(mod.exportOwned.get(name));
+        }
+    }
+
+    private void markAllExports(LinkedModule mod) {
+        include(mod);
+        if (!mod.allExports) {
+            mod.allExports = true;
+            for (String name : new ArrayList<>(mod.exportDefiners.keySet())) {
+                markExport(mod, name);
+            }
+            for (String name : new ArrayList<>(mod.exportOwned.keySet())) {
+                markExport(mod, name);
+            }
+        }
+    }
+
+    private void process(Statement s) {
+        final LinkedModule mod = statementModules.get(s);
+        markUses(mod, s.uses);
+        if (s.augmentsNatives || s.derived) {
+            //Whatever initializes the native types, or changes what the
+            //statement owns through its aliases, must run too
+            for (String name : s.defs) {
+                markLocal(mod, name);
+            }
+            for (String name : s.exportDefs) {
+                markExport(mod, name);
+            }
+        }
+        for (Map.Entry<String,Uses> e : s.metadataUses.entrySet()) {
+            if (readMetadata.contains(e.getKey())) {
+                markUses(mod, e.getValue());
+            } else {
+                add(unreadMetadata, e.getKey(), s);
+            }
+        }
+        if (s.usesRegistry && !metamodel) {
+            //From now on, anything can be looked up by name
+            metamodel = true;
+            for (LinkedModule other : modules.values()) {
+                if (other.included) {
+                    markAllExports(other);
+                }
+            }
+        }
+    }
+
+    private void markUses(LinkedModule mod, Uses s) {
+        for (String name : s.refs) {
+            markLocal(mod, name);
+        }
+        for (String property : s.metadataReads) {
+            if (readMetadata.add(property)) {
+                List<Statement> unread = unreadMetadata.remove(property);
+                if (unread != null) {
+                    for (Statement other : unread) {
+                        markUses(statementModules.get(other), other.metadataUses.get(property));
+                    }
+                }
+            }
+        }
+        for (String name : s.globals) {
+            List<LinkedModule> assigning = globals.get(name);
+            if (assigning != null) {
+                for (LinkedModule other : assigning) {
+                    markLocal(other, name);
+                }
+            }
+        }
+        for (Map.Entry<String,Set<String>> e : s.exportRefs.entrySet()) {
+            LinkedModule other = modules.get(e.getKey());
+            if (other != null) {
+                for (String name : e.getValue()) {
+                    markExport(other, name);
+                }
+            }
+        }
+        for (String path : s.deps) {
+            LinkedModule other = modules.get(path);
+            if (other != null) {
+                include(other);
+            }
+        }
+        for (String path : s.escapes) {
+            LinkedModule other = modules.get(path);
+            if (other != null) {
+                markAllExports(other);
+            }
+        }
+    }
+
+    /** Finds out what every statement of the module declares and refers to. */
+    private void analyze(LinkedModule mod) {
+        final List<Token> tokens = mod.tokens;
+        final Set<String> locals = new HashSet<>();
+        for (Statement s : mod.statements) {
+            statementModules.put(s, mod);
+            collectDefinitions(tokens, s);
+            locals.addAll(s.defs);
+        }
+        for (Statement s : mod.statements) {
+            //A global variable, name=...
+            final Token first = tokens.get(s.first);
+            if (s.defs.isEmpty() && s.first < s.last && first.type == IDENT && tokens.get(s.first+1).is("=")
+                    && !locals.contains(first.text) && !KEYWORDS.contains(first.text)
+                    && !first.is(REQUIRE) && !first.is(EXPORTS) && !first.is("module")) {
+                s.defs.add(first.text);
+                List<LinkedModule> assigning = globals.get(first.text);
+                if (assigning == null) {
+                    assigning = new ArrayList<>(1);
+                    globals.put(first.text, assigning);
+                }
+                assigning.add(mod);
+            }
+        }
+        locals.clear();
+        for (Statement s : mod.statements) {
+            locals.addAll(s.defs);
+            //var m$1=require('path');
+            if (s.last - s.first >= 6 && tokens.get(s.first).is("var")
+                    && tokens.get(s.first+2).is("=") && tokens.get(s.first+3).is(REQUIRE)
+                    && tokens.get(s.first+4).is("(") && tokens.get(s.first+5).type == STRING
+                    && tokens.get(s.first+6).is(")")) {
+                mod.aliases.put(tokens.get(s.first+1).text, unquote(tokens.get(s.first+5).text));
+            }
+        }
+        for (Statement s : mod.statements) {
+            collectOwners(tokens, s, locals);
+            collectReferences(mod, s, locals);
+            for (String name : s.defs) {
+                add(mod.definers, name, s);
+            }
+            for (String name : s.owners) {
+                add(mod.owned, name, s);
+            }
+            for (String name : s.exportDefs) {
+                add(mod.exportDefiners, name, s);
+            }
+            for (String name : s.exportOwners) {
+                add(mod.exportOwned, name, s);
+            }
+            s.root = s.augmentsNatives || (s.defs.isEmpty() && s.exportDefs.isEmpty()
+                    && s.owners.isEmpty() && s.exportOwners.isEmpty());
+            boolean registry = references(s.uses, REGISTRY);
+            for (Uses uses : s.metadataUses.values()) {
+                registry |= references(uses, REGISTRY);
+            }
+            if (registry) {
+                s.usesRegistry = !s.defs.contains(ADDMOD) && !s.defs.contains(REGISTRY)
+                        && !s.exportDefs.contains(REGISTRY);
+            }
+        }
+    }
+
+    private static boolean references(Uses s, String name) {
+        if (s.refs.contains(name)) {
+            return true;
+        }
+        for (Set<String> names : s.exportRefs.values()) {
+            if (names.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void add(Map<String,List<Statement>> map, String name, Statement s) {
+        List<Statement> list = map.get(name);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(name, list);
+        }
+        list.add(s);
+    }
+
+    /** Collects the toplevel names declared by a statement, and the exports it assigns. */
+    private static void collectDefinitions(List<Token> tokens, Statement s) {
+        final Token first = tokens.get(s.first);
+        if (first.is("function") && s.first < s.last && tokens.get(s.first+1).type == IDENT) {
+            s.defs.add(tokens.get(s.first+1).text);
+        } else if (first.is("var") || first.is("let") || first.is("const")) {
+            int depth = 0;
+            boolean expectName = true;
+            for (int i = s.first+1; i <= s.last; i++) {
+                Token t = tokens.get(i);
+                if (depth == 0 && expectName && t.type == IDENT) {
+                    s.defs.add(t.text);
+                    expectName = false;
+                } else if (depth == 0 && t.is(",")) {
+                    expectName = true;
+                }
+                depth += depthChange(t);
+            }
+        }
+        //ex$.name=... anywhere in the statement
+        for (int i = s.first; i + 3 <= s.last; i++) {
+            if (tokens.get(i).is(EXPORTS) && tokens.get(i+1).is(".") && tokens.get(i+2).type == IDENT
+                    && tokens.get(i+3).is("=") && (i == 0 || !tokens.get(i-1).is("."))) {
+                s.exportDefs.add(tokens.get(i+2).text);
+            }
+        }
+    }
+
+    /** Finds the declaration a statement belongs to, if it doesn't declare anything itself. */
+    private static void collectOwners(List<Token> tokens, Statement s, Set<String> locals) {
+        if (s.defs.size() == 1 && s.last - s.first >= 4 && tokens.get(s.first).is("var")
+                && tokens.get(s.first+2).is("=") && tokens.get(s.first+4).is(".")) {
+            //var proto=name.$$.prototype; the statements using proto change name
+            Token name = tokens.get(s.first+3);
+            if (name.type == IDENT && locals.contains(name.text) && !s.defs.contains(name.text)) {
+                s.owners.add(name.text);
+                s.derived = true;
+            }
+        }
+        if (!s.defs.isEmpty() || s.last - s.first < 2) {
+            return;
+        }
+        final Token first = tokens.get(s.first);
+        final Token second = tokens.get(s.first+1);
+        if (first.is(EXPORTS) && second.is(".") && s.last - s.first >= 3) {
+            //ex$.name.member=...
+            Token name = tokens.get(s.first+2);
+            Token next = tokens.get(s.first+3);
+            if (name.type == IDENT && (next.is(".") || next.is("["))) {
+                s.exportOwners.add(name.text);
+            }
+        } else if (first.type == IDENT && locals.contains(first.text)) {
+            if (second.is(".") || second.is("[") || second.is("=")) {
+                //name.member=..., name=...
+                s.owners.add(first.text);
+            } else if (second.is("(")) {
+                //$init$name(), or a helper initializing its first argument,
+                //such as atr$(name.$$.prototype,...)
+                Token arg = tokens.get(s.first+2);
+                Token next = s.first+3 <= s.last ? tokens.get(s.first+3) : null;
+                if (arg.type == IDENT && locals.contains(arg.text)
+                        && next != null && (next.is(",") || next.is(")") || next.is("."))) {
+                    s.owners.add(arg.text);
+                } else {
+                    s.owners.add(first.text);
+                    //Native types rely on being initialized when the module is loaded
+                    if (first.text.startsWith(INIT) && locals.contains(first.text.substring(INIT.length()))) {
+                        s.owners.add(first.text.substring(INIT.length()));
+                    }
+                }
+            }
+        }
+    }
+
+    private void collectReferences(LinkedModule mod, Statement s, Set<String> locals) {
+        final List<Token> tokens = mod.tokens;
+        //The value of a metadata property, such as an:function(){...}
+        Uses metadata = null;
+        int metadataEnd = -1;
+        for (int i = s.first; i <= s.last; i++) {
+            final Token t = tokens.get(i);
+            if (t.type != IDENT) {
+                continue;
+            }
+            final boolean member = i > 0 && tokens.get(i-1).is(".");
+            if (i > metadataEnd && METADATA.contains(t.text)
+                    && (member ? i < s.last && tokens.get(i+1).is("=") : isPropertyName(tokens, i, s))) {
+                metadata = s.metadataUses.get(t.text);
+                if (metadata == null) {
+                    metadata = new Uses();
+                    s.metadataUses.put(t.text, metadata);
+                }
+                metadataEnd = findValueEnd(tokens, i+2, s.last);
+                continue;
+            }
+            final Uses uses = i < metadataEnd ? metadata : s.uses;
+            if (member) {
+                if (METADATA.contains(t.text)) {
+                    uses.metadataReads.add(t.text);
+                }
+                continue;
+            }
+            final Token next = i < s.last ? tokens.get(i+1) : null;
+            final String path = t.text.equals(EXPORTS) ? mod.path : mod.aliases.get(t.text);
+            if (path != null && locals.contains(t.text) && !t.text.equals(EXPORTS)) {
+                uses.refs.add(t.text);
+            }
+            if (path != null) {
+                if (next != null && next.is(".") && i + 2 <= s.last && tokens.get(i+2).type == IDENT) {
+                    exportRef(uses, path, tokens.get(i+2).text);
+                } else if (next != null && next.is("[") && i + 3 <= s.last
+                        && tokens.get(i+2).type == STRING && tokens.get(i+3).is("]")) {
+                    exportRef(uses, path, unquote(tokens.get(i+2).text));
+                } else if (!(i >= s.first + 2 && tokens.get(i-1).is("(") && tokens.get(i-2).is(ADDMOD))
+                        && !(i == s.first + 1 && tokens.get(s.first).is("var"))) {
+                    uses.escapes.add(path);
+                }
+            } else if (t.is(REQUIRE) && next != null && next.is("(") && i + 3 <= s.last
+                    && tokens.get(i+2).type == STRING && tokens.get(i+3).is(")")) {
+                final String dep = unquote(tokens.get(i+2).text);
+                uses.deps.add(dep);
+                final boolean aliased = i == s.first + 3 && dep.equals(mod.aliases.get(tokens.get(s.first+1).text));
+                if (i + 5 <= s.last && tokens.get(i+4).is(".") && tokens.get(i+5).type == IDENT) {
+                    exportRef(uses, dep, tokens.get(i+5).text);
+                } else if (!aliased) {
+                    uses.escapes.add(dep);
+                }
+            } else if (!isPropertyName(tokens, i, s)) {
+                if (NATIVES.contains(t.text) && !locals.contains(t.text) && next != null) {
+                    //String.prototype, or initExistingType($_String,String,...)
+                    final Token prev = tokens.get(i-1);
+                    s.augmentsNatives |= (next.is(".") && i + 2 <= s.last && tokens.get(i+2).is("prototype"))
+                            || ((prev.is("(") || prev.is(",")) && (next.is(",") || next.is(")")));
+                }
+                if (locals.contains(t.text)) {
+                    uses.refs.add(t.text);
+                } else if (!KEYWORDS.contains(t.text)) {
+                    uses.globals.add(t.text);
+                }
+            }
+        }
+    }
+
+    /** Returns the index of the token after the value of a property in an object literal. */
+    private static int findValueEnd(List<Token> tokens, int i, int last) {
+        int depth = 0;
+        for (; i <= last; i++) {
+            Token t = tokens.get(i);
+            if (depth == 0 && (t.is(",") || t.is("}"))) {
+                break;
+            }
+            depth += depthChange(t);
+            if (depth < 0) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static void exportRef(Uses s, String path, String name) {
+        Set<String> names = s.exportRefs.get(path);
+        if (names == null) {
+            names = new HashSet<>();
+            s.exportRefs.put(path, names);
+        }
+        names.add(name);
+    }
+
+    /** Tells if the identifier is the name of a property in an object literal */
+    private static boolean isPropertyName(List<Token> tokens, int i, Statement s) {
+        if (i == s.first || i == s.last) {
+            return false;
+        }
+        Token prev = tokens.get(i-1);
+        return tokens.get(i+1).is(":") && (prev.is("{") || prev.is(","));
+    }
+
+    private static int depthChange(Token t) {
+        if (t.type == PUNCT) {
+            switch (t.text) {
+            case "(": case "[": case "{":
+                return 1;
+            case ")": case "]": case "}":
+                return -1;
+            }
+        }
+        return 0;
+    }
+
+    /** Splits a module body into its toplevel statements, inserting semicolons the
+     * way JavaScript does where a line break can't continue the statement. */
+    private static List<Statement> split(List<Token> tokens) {
+        final List<Statement> statements = new ArrayList<>();
+        int depth = 0;
+        int first = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            final Token t = tokens.get(i);
+            if (i > first && depth == 0 && t.newline && endsStatement(tokens.get(i-1), t)) {
+                statements.add(new Statement(first, i-1));
+                first = i;
+            }
+            depth += depthChange(t);
+            if (depth == 0 && (t.is(";")
+                    || (t.is("}") && tokens.get(first).is("function")))) {
+                statements.add(new Statement(first, i));
+                first = i+1;
+            } else if (depth < 0) {
+                //Unbalanced code; keep the rest as it is
+                depth = 0;
+            }
+        }
+        if (first < tokens.size()) {
+            statements.add(new Statement(first, tokens.size()-1));
+        }
+        return statements;
+    }
+
+    private static boolean endsStatement(Token prev, Token next) {
+        final boolean prevEnds;
+        if (prev.type == IDENT) {
+            prevEnds = !KEYWORDS.contains(prev.text) || VALUES.contains(prev.text);
+        } else {
+            prevEnds = prev.type != PUNCT || prev.is("]") || prev.is("}");
+        }
+        if (!prevEnds) {
+            return false;
+        }
+        if (next.type == IDENT) {
+            return !CONTINUATIONS.contains(next.text);
+        }
+        return next.type == NUMBER || next.type == STRING;
+    }
+
+    private static String unquote(String s) {
+        return s.substring(1, s.length()-1);
+    }
+
+    private static List<Token> tokenize(String src) {
+        final List<Token> tokens = new ArrayList<>();
+        final int n = src.length();
+        int i = 0;
+        boolean newline = false;
+        Token last = null;
+        while (i < n) {
+            final char c = src.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029') {
+                newline = true;
+                i++;
+                continue;
+            }
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c) || c == '\ufeff') {
+                i++;
+                continue;
+            }
+            if (c == '/' && i+1 < n && src.charAt(i+1) == '/') {
+                while (i < n && src.charAt(i) != '\n' && src.charAt(i) != '\r') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '/' && i+1 < n && src.charAt(i+1) == '*') {
+                int end = src.indexOf("*/", i+2);
+                end = end < 0 ? n : end + 2;
+                if (src.substring(i, end).indexOf('\n') >= 0) {
+                    newline = true;
+                }
+                i = end;
+                continue;
+            }
+            final int start = i;
+            final int type;
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipString(src, i);
+                type = STRING;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                i++;
+                while (i < n && Character.isJavaIdentifierPart(src.charAt(i))) {
+                    i++;
+                }
+                type = IDENT;
+            } else if (Character.isDigit(c) || (c == '.' && i+1 < n && Character.isDigit(src.charAt(i+1)))) {
+                final boolean hex = c == '0' && i+1 < n && (src.charAt(i+1) == 'x' || src.charAt(i+1) == 'X');
+                i++;
+                while (i < n) {
+                    char d = src.charAt(i);
+                    if (Character.isLetterOrDigit(d) || d == '.'
+                            || (!hex && (d == '+' || d == '-') && (src.charAt(i-1) == 'e' || src.charAt(i-1) == 'E'))) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                type = NUMBER;
+            } else if (c == '/' && regexAllowed(last) && skipRegex(src, i) > 0) {
+                i = skipRegex(src, i);
+                type = REGEX;
+            } else {
+                i = skipPunctuator(src, i);
+                type = PUNCT;
+            }
+            last = new Token(type, src.substring(start, i), start, i, newline);
+            tokens.add(last);
+            newline = false;
+        }
+        return tokens;
+    }
+
+    private static int skipString(String src, int i) {
+        final char quote = src.charAt(i++);
+        while (i < src.length()) {
+            char c = src.charAt(i++);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                break;
+            }
+        }
+        return Math.min(i, src.length());
+    }
+
+    /** Returns the end of the regular expression starting at the given position,
+     * or -1 if there's none. */
+    private static int skipRegex(String src, int i) {
+        boolean inClass = false;
+        i++;
+        while (i < src.length()) {
+            char c = src.charAt(i++);
+            if (c == '\\') {
+                i++;
+            } else if (c == '\n' || c == '\r') {
+                return -1;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                while (i < src.length() && Character.isJavaIdentifierPart(src.charAt(i))) {
+                    i++;
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regexAllowed(Token last) {
+        if (last == null) {
+            return true;
+        }
+        switch (last.type) {
+        case IDENT:
+            return BEFORE_REGEX.contains(last.text);
+        case PUNCT:
+            return !last.is(")") && !last.is("]");
+        default:
+            return false;
+        }
+    }
+
+    private static int skipPunctuator(String src, int i) {
+        for (String p : PUNCTUATORS) {
+            if (src.startsWith(p, i)) {
+                return i + p.length();
+            }
+        }
+        return i + 1;
+    }
+}
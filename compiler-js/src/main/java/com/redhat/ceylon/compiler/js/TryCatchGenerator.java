@@ -2,7 +2,7 @@ package com.redhat.ceylon.compiler.js;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -61,7 +61,7 @@ public class TryCatchGenerator {
                 gen.endLine(true);
                 if (resourceVar.captured != null) {
                     if (caps == null) {
-                        caps = new HashSet<>(resourceVars.size());
+                        caps = new LinkedHashSet<>(resourceVars.size());
                     }
                     caps.add(resourceVar.captured);
                 }
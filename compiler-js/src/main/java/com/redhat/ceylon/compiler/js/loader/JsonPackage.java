@@ -45,6 +45,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.redhat.ceylon.common.Backend;
 import com.redhat.ceylon.common.Backends;
@@ -87,6 +89,20 @@ public class JsonPackage extends LazyPackage {
     private Map<String,Object> model;
     private final String pkgname;
     private boolean loaded = false;
+    /** Set once the declarations are loaded, so other threads can skip the lock */
+    private volatile boolean complete = false;
+    /** Loading the declarations of a package can load those of any other
+     * package, so they are all loaded under the same lock. */
+    private static final Object LOAD_LOCK = new Object();
+    /** How many loads are running on the thread holding the lock */
+    private static int loadDepth = 0;
+    /** Types loaded by the running loads, whose members are refined when they are done */
+    private static final List<ClassOrInterface> unrefined = new ArrayList<>();
+    /** The members loaded on their own, before the whole package was */
+    private final Set<String> loadedMembers = Collections.newSetFromMap(
+            new ConcurrentHashMap<String,Boolean>());
+    /** The members being loaded on their own, guarded by the lock */
+    private final Set<String> loadingMembers = new HashSet<>();
     private final Unit u2 = new Unit();
     private NothingType nothing = new NothingType(u2);
     private UnknownType unknown = new UnknownType(u2);
@@ -110,10 +126,64 @@ public class JsonPackage extends LazyPackage {
     boolean inLoadIfNecessary = false;
     protected void loadIfNecessary() {
         // model will be null if this is a module that we are currently compiling
-        if (!inLoadIfNecessary && !loaded && null != model) {
-            inLoadIfNecessary = true;
-            loadDeclarations();
-            inLoadIfNecessary = false;
+        if (complete || null == model) {
+            return;
+        }
+        synchronized (LOAD_LOCK) {
+            if (!inLoadIfNecessary && !loaded) {
+                inLoadIfNecessary = true;
+                loadDepth++;
+                try {
+                    loadDeclarations();
+                } finally {
+                    loadDone();
+                }
+                inLoadIfNecessary = false;
+                complete = true;
+            }
+        }
+    }
+
+    /** Only parses the model of the given member, so that a lookup doesn't
+     * load all the other members of the package. */
+    @Override
+    protected void loadMemberIfNecessary(String name) {
+        if (complete || null == model || loadedMembers.contains(name)) {
+            return;
+        }
+        synchronized (LOAD_LOCK) {
+            // the member can refer to itself, and then it's found half loaded
+            if (loaded || loadedMembers.contains(name) || !loadingMembers.add(name)) {
+                return;
+            }
+            loadDepth++;
+            try {
+                if (!name.startsWith("$pkg-") && model.containsKey(name)) {
+                    load(name, null);
+                }
+            } finally {
+                loadDone();
+                loadingMembers.remove(name);
+            }
+            loadedMembers.add(name);
+        }
+    }
+
+    /** Refines the members of the types loaded so far once the outermost load is done,
+     * when their supertypes are loaded. */
+    private static void loadDone() {
+        try {
+            if (loadDepth == 1) {
+                //Refining can load more types, which are added to the list
+                for (int i = 0; i < unrefined.size(); i++) {
+                    ClassOrInterface coi = unrefined.get(i);
+                    ((JsonPackage)coi.getUnit().getPackage()).refineMembers(coi);
+                }
+            }
+        } finally {
+            if (--loadDepth == 0) {
+                unrefined.clear();
+            }
         }
     }
 
@@ -127,10 +197,16 @@ public class JsonPackage extends LazyPackage {
             addUnit(u2);
             //Annotations
             if (model != null) {
+                //Ugly ass hack - add Nothing to the model
+                nothing.setContainer(this);
+                nothing.setUnit(u2);
                 if (model.get("$pkg-pa") != null) {
                     int bits = (int)model.remove("$pkg-pa");
                     setShared(hasAnnotationBit(bits, "shared"));
                 }
+                if (!isShared()) {
+                    setShared(model.remove("$pkg-shared") != null);
+                }
                 @SuppressWarnings("unchecked")
                 Map<String,Object> pkgAnns = (Map<String,Object>)model.remove("$pkg-anns");
                 if (pkgAnns != null) {
@@ -162,15 +238,9 @@ public class JsonPackage extends LazyPackage {
     private void loadDeclarations() {
         if (loaded) return;
         loaded = true;
-        //Ugly ass hack - add Nothing to the model
-        nothing.setContainer(this);
-        nothing.setUnit(u2);
-        if (!isShared()) {
-            setShared(model.remove("$pkg-shared") != null);
-        }
         for (Map.Entry<String,Object> e : model.entrySet()) {
             String k = e.getKey();
-            if (!k.startsWith("$pkg-")) {
+            if (!k.startsWith("$pkg-") && !loadedMembers.contains(k)) {
                 @SuppressWarnings("unchecked")
                 Map<String,Object> m = (Map<String,Object>)e.getValue();
                 if (m.get(KEY_METATYPE) instanceof String) {
@@ -951,9 +1021,6 @@ public class JsonPackage extends LazyPackage {
                 if (rp == null) {
                     throw new CompilerErrorException("Package not found: " + pname);
                 }
-                if (rp != this && rp instanceof JsonPackage && !((JsonPackage)rp).loaded) {
-                    ((JsonPackage) rp).loadIfNecessary();
-                }
                 final boolean nested = tname.indexOf('.') > 0;
                 final String level1 = nested ? tname.substring(0, tname.indexOf('.')) : tname;
                 if (rp != null && !nested) {
@@ -1143,13 +1210,13 @@ public class JsonPackage extends LazyPackage {
                 || metatype.equals(METATYPE_GETTER)) {
             return loadAttribute(name, map, this, null);
         } else if (metatype.equals(METATYPE_CLASS) || metatype instanceof com.redhat.ceylon.model.typechecker.model.Class) {
-            return loadClass(name, map, this, existing);
+            return toRefine(loadClass(name, map, this, existing));
         } else if (metatype.equals(METATYPE_INTERFACE) || metatype instanceof com.redhat.ceylon.model.typechecker.model.Interface) {
-            return loadInterface(name, map, this, existing);
+            return toRefine(loadInterface(name, map, this, existing));
         } else if (metatype.equals(METATYPE_METHOD)) {
             return loadMethod(name, map, this, existing);
         } else if (metatype.equals(METATYPE_OBJECT) || metatype instanceof Value) {
-            return loadObject(name, map, this, existing);
+            return toRefine(loadObject(name, map, this, existing));
         } else if (metatype.equals(METATYPE_ALIAS)) {
             return loadTypeAlias(name, map, this, existing);
         }
@@ -1157,6 +1224,13 @@ public class JsonPackage extends LazyPackage {
         return null;
     }
 
+    private <T extends TypeDeclaration> T toRefine(T td) {
+        if (td instanceof ClassOrInterface) {
+            unrefined.add((ClassOrInterface)td);
+        }
+        return td;
+    }
+
     public static boolean hasAnnotationBit(int bits, String annotationName) {
         final int idx = annotationBits.indexOf(annotationName);
         if (idx < 0) return false;
@@ -9,6 +9,7 @@ import com.redhat.ceylon.model.typechecker.model.Cancellable;
 import com.redhat.ceylon.model.typechecker.model.Declaration;
 import com.redhat.ceylon.model.typechecker.model.DeclarationWithProximity;
 import com.redhat.ceylon.model.typechecker.model.Import;
+import com.redhat.ceylon.model.typechecker.model.ModelUtil;
 import com.redhat.ceylon.model.typechecker.model.Module;
 import com.redhat.ceylon.model.typechecker.model.Package;
 import com.redhat.ceylon.model.typechecker.model.Scope;
@@ -18,11 +19,18 @@ import com.redhat.ceylon.model.typechecker.model.Unit;
 
 public abstract class LazyPackage extends Package {
 
+    /** Loads all the members of the package. */
     protected abstract void loadIfNecessary();
 
+    /** Loads the member with the given name, if there is one,
+     * for the lookups which only need that member. */
+    protected void loadMemberIfNecessary(String name) {
+        loadIfNecessary();
+    }
+
     @Override
     public boolean isToplevel() {
-        loadIfNecessary();
+        // not lazy
         return super.isToplevel();
     }
 
@@ -56,7 +64,7 @@ public abstract class LazyPackage extends Package {
 
     @Override
     public boolean isShared() {
-        loadIfNecessary();
+        // not lazy
         return super.isShared();
     }
 
@@ -73,13 +81,13 @@ public abstract class LazyPackage extends Package {
 
     @Override
     public Scope getContainer() {
-        loadIfNecessary();
+        // not lazy
         return super.getContainer();
     }
 
     @Override
     public Scope getScope() {
-        loadIfNecessary();
+        // not lazy
         return super.getScope();
     }
 
@@ -91,7 +99,7 @@ public abstract class LazyPackage extends Package {
 
     @Override
     public String toString() {
-        loadIfNecessary();
+        // not lazy
         return super.toString();
     }
 
@@ -103,43 +111,43 @@ public abstract class LazyPackage extends Package {
 
     @Override
     public Declaration getMember(String name, List<Type> signature, boolean variadic) {
-        loadIfNecessary();
-        return super.getMember(name, signature, variadic);
+        return getDirectMember(name, signature, variadic);
     }
 
     @Override
     public Declaration getDirectMember(String name, List<Type> signature, boolean variadic) {
-        loadIfNecessary();
-        return super.getDirectMember(name, signature, variadic);
+        loadMemberIfNecessary(name);
+        // super.getMembers(), so that the other members are not loaded
+        return ModelUtil.lookupMember(super.getMembers(), name, signature, variadic);
     }
 
     @Override
     public Declaration getDirectMemberForBackend(String name, Backends backends) {
-        loadIfNecessary();
-        return super.getDirectMemberForBackend(name, backends);
+        loadMemberIfNecessary(name);
+        return ModelUtil.lookupMemberForBackend(super.getMembers(), name, backends);
     }
 
     @Override
     public Type getDeclaringType(Declaration d) {
-        loadIfNecessary();
+        // not lazy
         return super.getDeclaringType(d);
     }
 
     @Override
     public Declaration getMemberOrParameter(Unit unit, String name, List<Type> signature, boolean variadic) {
-        loadIfNecessary();
+        // looks the member up with getDirectMember()
         return super.getMemberOrParameter(unit, name, signature, variadic);
     }
 
     @Override
     public boolean isInherited(Declaration d) {
-        loadIfNecessary();
+        // not lazy
         return super.isInherited(d);
     }
 
     @Override
     public TypeDeclaration getInheritingDeclaration(Declaration d) {
-        loadIfNecessary();
+        // not lazy
         return super.getInheritingDeclaration(d);
     }
 
@@ -172,19 +180,19 @@ public abstract class LazyPackage extends Package {
 
     @Override
     public int hashCode() {
-        loadIfNecessary();
+        // not lazy
         return super.hashCode();
     }
 
     @Override
     public boolean equals(Object obj) {
-        loadIfNecessary();
+        // not lazy
         return super.equals(obj);
     }
 
     @Override
     public Unit getUnit() {
-        loadIfNecessary();
+        // not lazy
         return super.getUnit();
     }
 
@@ -195,7 +203,7 @@ public abstract class LazyPackage extends Package {
 
     @Override
     public Backends getScopedBackends() {
-        loadIfNecessary();
+        // not lazy
         return super.getScopedBackends();
     }
 }
@@ -29,14 +29,26 @@ import com.redhat.ceylon.model.typechecker.model.TypeParameter;
  */
 public class JsIdentifierNames {
     private final JsCompiler compiler;
+    /** Whether this instance numbers its identifiers on its own rather than with the shared counter */
+    private final boolean ownIDs;
+    private long ownUniqueID = 0;
     
     private static long uniqueID = 0;
-    private static long nextUID() {
+    private static synchronized long nextSharedUID() {
         if (++uniqueID <= 0) {
             uniqueID = 1;
         }
         return uniqueID;
     }
+    private long nextUID() {
+        if (!ownIDs) {
+            return nextSharedUID();
+        }
+        if (++ownUniqueID <= 0) {
+            ownUniqueID = 1;
+        }
+        return ownUniqueID;
+    }
 
     private static Set<String> reservedWords = new HashSet<String>();
 
@@ -88,7 +100,19 @@ public class JsIdentifierNames {
     }
 
     public JsIdentifierNames(JsCompiler compiler) {
+        this(compiler, false);
+    }
+    
+    /**
+     * @param ownIDs If true, the unique identifiers are numbered by this
+     * instance alone, so the names it hands out only depend on the order
+     * in which it is asked for them. They are then only unique among the
+     * names of this instance, which is enough for the code of a single
+     * module generated on its own thread.
+     */
+    public JsIdentifierNames(JsCompiler compiler, boolean ownIDs) {
         this.compiler = compiler;
+        this.ownIDs = ownIDs;
     }
     
     /**
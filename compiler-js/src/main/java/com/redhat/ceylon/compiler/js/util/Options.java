@@ -40,6 +40,7 @@ public class Options {
     private boolean offline;
     private boolean srcmap;
     private boolean minify;
+    private int jobs = 1;
     private String encoding = System.getProperty("file.encoding");
     private Logger logger;
     private Writer outWriter;
@@ -317,6 +318,18 @@ public class Options {
     public boolean isGenerateSourceArchive() {
         return gensrc;
     }
+
+    /** Sets the number of threads used to generate the code of
+     * the modules; 1 (the default) generates them sequentially. */
+    public Options jobs(int jobs) {
+        this.jobs = jobs;
+        return this;
+    }
+
+    /** The number of threads used to generate the code of the modules (default 1). */
+    public int getJobs() {
+        return jobs;
+    }
     
     // Returns true if --verbose or --verbose=all has been passed on the command line
     public boolean isVerbose() {
@@ -1,7 +1,9 @@
 package com.redhat.ceylon.compiler.js;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.ProcessBuilder.Redirect;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -322,6 +324,127 @@ public class CompileJsToolTest {
                 "test.txt", "another_test.txt", "subdir/third.txt", "ALTROOT/altroot.txt", "ROOT/inroot.txt");
     }
 
+    @Test
+    public void testModulesWithJobs() throws Exception {
+        ToolModel<CeylonCompileJsTool> tool = pluginLoader.loadToolModel("compile-js");
+        Assert.assertNotNull(tool);
+        List<byte[]> outputs = new ArrayList<byte[]>();
+        for (String jobs : new String[]{"--jobs=1", "--jobs=2", "--jobs=4"}) {
+            FileUtil.delete(new File("build/test-modules"));
+            CeylonCompileJsTool jsc = pluginFactory.bindArguments(tool, getMainTool(), args(
+                    "--source=src/test/resources/multi/pass1",
+                    "--source=src/test/resources/multi/pass2",
+                    jobs,
+                    "multi", "usemulti"));
+            jsc.run();
+            checkCompilerResult("build/test-modules/multi/1.0.0", "multi-1.0.0");
+            checkCompilerResult("build/test-modules/usemulti/1.0.0", "usemulti-1.0.0");
+            outputs.add(Files.readAllBytes(new File("build/test-modules/multi/1.0.0/multi-1.0.0.js").toPath()));
+            outputs.add(Files.readAllBytes(new File("build/test-modules/usemulti/1.0.0/usemulti-1.0.0.js").toPath()));
+        }
+        // the code of each module does not depend on the number of jobs
+        for (int i = 2; i < outputs.size(); i++) {
+            Assert.assertArrayEquals(outputs.get(i % 2), outputs.get(i));
+        }
+    }
+
+    @Test
+    public void testLinkModule() throws Exception {
+        compileMulti();
+        File bundle = new File("build/test-modules/usemulti.bundle.js");
+        linkMulti("run", bundle);
+        Assert.assertTrue("Missing linked file", bundle.isFile());
+        String code = new String(Files.readAllBytes(bundle.toPath()), "UTF-8");
+        Assert.assertTrue(code.contains("$$bundle$m['multi/1.0.0/multi-1.0.0']"));
+        Assert.assertTrue(code.contains("$$bundle$m['ceylon/language/" + Versions.CEYLON_VERSION_NUMBER + "/ceylon.language-"
+                + Versions.CEYLON_VERSION_NUMBER + "']"));
+        Assert.assertTrue(code.endsWith("$$bundle$r('usemulti/1.0.0/usemulti-1.0.0').run();\n}(this));\n"));
+        // the unused declarations of the language module are left out
+        long size = new File("build/runtime/ceylon/language/" + Versions.CEYLON_VERSION_NUMBER + "/ceylon.language-"
+                + Versions.CEYLON_VERSION_NUMBER + ".js").length();
+        Assert.assertTrue(bundle.length() < size);
+        // and it still runs like the module
+        Assert.assertEquals(runMulti("run"), runNode(bundle));
+    }
+
+    @Test
+    public void testLinkModuleWithMetamodel() throws Exception {
+        compileMulti();
+        File bundle = new File("build/test-modules/usemulti-meta.bundle.js");
+        linkMulti("runMeta", bundle);
+        String output = runMulti("runMeta");
+        Assert.assertTrue(output, output.contains("multi::Child"));
+        Assert.assertEquals(output, runNode(bundle));
+    }
+
+    @Test
+    public void testLinkModuleNotExported() throws Exception {
+        compileMulti();
+        File bundle = new File("build/test-modules/usemulti-missing.bundle.js");
+        try {
+            linkMulti("missing", bundle);
+            Assert.fail("Linked a function which does not exist");
+        } catch (CompilerErrorException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+        }
+        Assert.assertFalse(bundle.exists());
+    }
+
+    private void compileMulti() throws Exception {
+        ToolModel<CeylonCompileJsTool> tool = pluginLoader.loadToolModel("compile-js");
+        Assert.assertNotNull(tool);
+        FileUtil.delete(new File("build/test-modules"));
+        CeylonCompileJsTool jsc = pluginFactory.bindArguments(tool, getMainTool(), args(
+                "--source=src/test/resources/multi/pass1",
+                "--source=src/test/resources/multi/pass2",
+                "multi", "usemulti"));
+        jsc.run();
+    }
+
+    private void linkMulti(String run, File bundle) throws Exception {
+        ToolModel<CeylonLinkJsTool> linkTool = pluginLoader.loadToolModel("link-js");
+        Assert.assertNotNull(linkTool);
+        CeylonLinkJsTool linker = pluginFactory.bindArguments(linkTool, getMainTool(), Arrays.asList(
+                "--rep=build/runtime",
+                "--rep=build/test-modules",
+                "--out=" + bundle.getPath(),
+                "--run=" + run,
+                "usemulti/1.0.0"));
+        linker.run();
+    }
+
+    /** Runs the given function of usemulti with run-js, and returns its output. */
+    private String runMulti(String run) throws Exception {
+        ToolModel<CeylonRunJsTool> runTool = pluginLoader.loadToolModel("run-js");
+        Assert.assertNotNull(runTool);
+        CeylonRunJsTool runner = pluginFactory.bindArguments(runTool, getMainTool(), Arrays.asList(
+                "--rep=build/runtime",
+                "--rep=build/test-modules",
+                "--run=" + run,
+                "usemulti/1.0.0"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        runner.setOutput(new PrintStream(out, true, "UTF-8"));
+        runner.run();
+        return out.toString("UTF-8");
+    }
+
+    /** Runs a linked file with node.js on its own, and returns its output. */
+    private String runNode(File bundle) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(CeylonRunJsTool.findNode(), bundle.getAbsolutePath())
+                .redirectErrorStream(true);
+        // everything must come from the linked file
+        pb.environment().remove("NODE_PATH");
+        Process proc = pb.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CeylonRunJsTool.ReadStream reader = new CeylonRunJsTool.ReadStream(proc.getInputStream(),
+                new PrintStream(out, true, "UTF-8"));
+        reader.start();
+        int exitCode = proc.waitFor();
+        reader.join();
+        Assert.assertEquals(out.toString("UTF-8"), 0, exitCode);
+        return out.toString("UTF-8");
+    }
+
     void checkCompilerResult(String path, String modVerName) throws IOException {
         String[] names = {
                 modVerName + ".js",
@@ -0,0 +1,111 @@
+package com.redhat.ceylon.compiler.loader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.minidev.json.JSONValue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.cmr.resolver.javascript.LazyJsonMap;
+
+public class TestLazyJsonMap {
+
+    private static final String JSON = "{\"$mod-name\":\"a.b\",\"$mod-deps\":[\"c/1\",{\"path\":\"d/2\",\"opt\":1}],"
+            + "\"a.b\":{\"$pkg-pa\":1,\"f\":{\"$t\":{\"$nm\":\"String\",\"$pk\":\"$\"},\"$mt\":\"m\",\"doc\":[\"a \\\"quoted\\\" {brace]\"]}},"
+            + " \"a.b.c\" : { } , n:null,\"x\\\"y\":-1.5e3,\"t\":true}";
+
+    @Test @SuppressWarnings("unchecked")
+    public void testSameAsParser() {
+        Map<String,Object> expected = (Map<String,Object>)JSONValue.parse(JSON);
+        LazyJsonMap lazy = new LazyJsonMap(JSON, 1);
+        Assert.assertEquals(expected.keySet(), lazy.keySet());
+        Assert.assertEquals(expected, lazy);
+        Assert.assertEquals(expected.size(), lazy.size());
+    }
+
+    @Test @SuppressWarnings("unchecked")
+    public void testLazyLevels() {
+        LazyJsonMap lazy = new LazyJsonMap(JSON, 1);
+        Assert.assertEquals("a.b", lazy.get("$mod-name"));
+        Assert.assertEquals(2, ((List<Object>)lazy.get("$mod-deps")).size());
+        Map<String,Object> pkg = (Map<String,Object>)lazy.get("a.b");
+        Assert.assertTrue(pkg instanceof LazyJsonMap);
+        Map<String,Object> f = (Map<String,Object>)pkg.get("f");
+        Assert.assertFalse(f instanceof LazyJsonMap);
+        Assert.assertEquals("m", f.get("$mt"));
+        Assert.assertTrue(((Map<String,Object>)lazy.get("a.b.c")).isEmpty());
+        Assert.assertTrue(lazy.containsKey("n"));
+        Assert.assertNull(lazy.get("n"));
+        Assert.assertEquals(Boolean.TRUE, lazy.get("t"));
+        Assert.assertNotNull(lazy.get("x\"y"));
+    }
+
+    @Test
+    public void testModification() {
+        LazyJsonMap lazy = new LazyJsonMap(JSON, 1);
+        Assert.assertEquals(Integer.valueOf(1), ((Map<?,?>)lazy.get("a.b")).get("$pkg-pa"));
+        Assert.assertEquals("a.b", lazy.remove("$mod-name"));
+        Assert.assertFalse(lazy.containsKey("$mod-name"));
+        Assert.assertNull(lazy.put("z", "zz"));
+        Assert.assertEquals("zz", lazy.get("z"));
+        Assert.assertEquals(7, lazy.size());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws InterruptedException {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 500; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"m").append(i).append("\":{\"$mt\":\"c\",\"n\":").append(i).append('}');
+        }
+        json.append('}');
+        final LazyJsonMap lazy = new LazyJsonMap(json.toString(), 1);
+        final ConcurrentHashMap<String,Object> seen = new ConcurrentHashMap<String,Object>();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int offset = t * 61;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 500; i++) {
+                        String key = "m" + (i + offset) % 500;
+                        if (!lazy.containsKey(key)) {
+                            failure.compareAndSet(null, "missing " + key);
+                        }
+                        Object value = lazy.get(key);
+                        Object previous = seen.putIfAbsent(key, value);
+                        if (previous != null && previous != value) {
+                            failure.compareAndSet(null, "parsed twice " + key);
+                        }
+                        if (lazy.size() != 500) {
+                            failure.compareAndSet(null, "size " + lazy.size());
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(500, seen.size());
+    }
+}
@@ -0,0 +1,267 @@
+package com.redhat.ceylon.compiler.java.runtime;
+
+import static com.redhat.ceylon.common.IndexFileUtil.readNullableUTF;
+import static com.redhat.ceylon.common.IndexFileUtil.writeNullableUTF;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.redhat.ceylon.cmr.api.Overrides;
+import com.redhat.ceylon.cmr.impl.ShaSigner;
+import com.redhat.ceylon.common.IndexFileUtil;
+import com.redhat.ceylon.compiler.java.runtime.Main.ClassPath;
+import com.redhat.ceylon.compiler.java.runtime.Main.ClassPath.Module;
+
+/**
+ * Remembers which module every jar of the class path contains, so
+ * that the next runs with the same class path do not have to open
+ * them again. Jars are only looked at again once the size or
+ * modification time of the jar, or of one of the descriptors next
+ * to it, changes.
+ *
+ * Enabled with the {@value #INDEX_DIR_PROPERTY} system property:
+ * {@code true} stores the indexes in {@code ~/.ceylon/index/classpath},
+ * any other value is the folder to use. Failing to use the index is
+ * never an error.
+ */
+class ClassPathIndex {
+
+    static final String INDEX_DIR_PROPERTY = "ceylon.classpath.index";
+
+    private static final String FORMAT = "ceylon-classpath-index";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte NO_MODULE = 1;
+    private static final byte MODULE = 2;
+
+    private static class Entry {
+        final long[] stamp;
+        final Module module;
+
+        Entry(long[] stamp, Module module) {
+            this.stamp = stamp;
+            this.module = module;
+        }
+    }
+
+    private final File file;
+    private final File overrides;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile boolean changed;
+
+    /**
+     * Loads the index stored in the given file, which is only valid
+     * for the given overrides file, since we store the module
+     * dependencies once overrides are applied.
+     */
+    ClassPathIndex(File file, File overrides) {
+        this.file = file;
+        this.overrides = overrides;
+        load();
+    }
+
+    /**
+     * Returns the index configured by the system properties for the
+     * given class path, or null if it is disabled.
+     */
+    static ClassPathIndex getDefault(List<File> jars, String overrides) {
+        File indexDir = IndexFileUtil.getIndexDir(INDEX_DIR_PROPERTY, "classpath");
+        if (indexDir == null)
+            return null;
+        File overridesFile = overrides != null ? new File(overrides).getAbsoluteFile() : null;
+        StringBuilder key = new StringBuilder();
+        key.append(overridesFile);
+        // the dist overrides are applied too, and change with the distribution
+        key.append(File.pathSeparatorChar).append(getDistOverridesSha1());
+        for (File jar : jars) {
+            key.append(File.pathSeparatorChar).append(jar.getAbsolutePath());
+        }
+        return new ClassPathIndex(new File(indexDir, ShaSigner.sha1(key.toString())), overridesFile);
+    }
+
+    private static String getDistOverridesSha1() {
+        URL resource = Overrides.getDistOverridesResource();
+        if (resource == null)
+            return null;
+        try (InputStream in = resource.openStream()) {
+            return ShaSigner.sha1(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if we know what the given jar contains, in which
+     * case {@link #get(File)} tells us.
+     */
+    boolean contains(File jar) {
+        Entry entry = entries.get(jar.getAbsolutePath());
+        return entry != null
+                && Arrays.equals(entry.stamp, stamp(jar));
+    }
+
+    /**
+     * Returns the module the given jar contains, null if we could
+     * not tell which one, or {@link ClassPath#NO_MODULE}
+     * if it does not contain any module.
+     */
+    Module get(File jar) {
+        Entry entry = entries.get(jar.getAbsolutePath());
+        return entry != null ? entry.module : null;
+    }
+
+    void put(File jar, Module module) {
+        entries.put(jar.getAbsolutePath(), new Entry(stamp(jar), module));
+        changed = true;
+    }
+
+    // The size and modification time of the jar and of its external descriptors
+    private static long[] stamp(File jar) {
+        List<File> descriptors = ClassPath.getExternalDescriptors(jar);
+        long[] stamp = new long[2 + descriptors.size() * 2];
+        stamp[0] = jar.length();
+        stamp[1] = jar.lastModified();
+        int i = 2;
+        for (File descriptor : descriptors) {
+            stamp[i++] = descriptor.exists() ? descriptor.length() : -1;
+            stamp[i++] = descriptor.lastModified();
+        }
+        return stamp;
+    }
+
+    /**
+     * Stores the index, if it changed, with only the entries of the
+     * given jars.
+     */
+    void save(final List<File> jars) {
+        if (!changed)
+            return;
+        boolean saved = IndexFileUtil.write(file, new IndexFileUtil.Contents() {
+            @Override
+            public void write(OutputStream stream) throws IOException {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeUTF(FORMAT);
+                out.writeInt(FORMAT_VERSION);
+                writeOverrides(out);
+                int count = 0;
+                for (File jar : jars) {
+                    if (entries.containsKey(jar.getAbsolutePath()))
+                        count++;
+                }
+                out.writeInt(count);
+                for (File jar : jars) {
+                    String path = jar.getAbsolutePath();
+                    Entry entry = entries.get(path);
+                    if (entry == null)
+                        continue;
+                    out.writeUTF(path);
+                    out.writeInt(entry.stamp.length);
+                    for (long stamp : entry.stamp) {
+                        out.writeLong(stamp);
+                    }
+                    writeModule(out, entry.module);
+                }
+                out.flush();
+            }
+        });
+        if (saved)
+            changed = false;
+    }
+
+    private void load() {
+        if (!file.isFile())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!FORMAT.equals(in.readUTF())
+                    || in.readInt() != FORMAT_VERSION
+                    || !readOverrides(in))
+                return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long[] stamp = new long[in.readInt()];
+                for (int j = 0; j < stamp.length; j++) {
+                    stamp[j] = in.readLong();
+                }
+                entries.put(path, new Entry(stamp, readModule(in, new File(path))));
+            }
+        } catch (IOException | RuntimeException e) {
+            // corrupt or from another version, start over
+            entries.clear();
+        }
+    }
+
+    private void writeOverrides(DataOutputStream out) throws IOException {
+        out.writeBoolean(overrides != null);
+        if (overrides != null) {
+            out.writeLong(overrides.length());
+            out.writeLong(overrides.lastModified());
+        }
+    }
+
+    private boolean readOverrides(DataInputStream in) throws IOException {
+        if (!in.readBoolean())
+            return overrides == null;
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        return overrides != null
+                && overrides.length() == length
+                && overrides.lastModified() == lastModified;
+    }
+
+    private static void writeModule(DataOutputStream out, Module module) throws IOException {
+        if (module == null) {
+            out.writeByte(UNKNOWN);
+        } else if (module == ClassPath.NO_MODULE) {
+            out.writeByte(NO_MODULE);
+        } else {
+            out.writeByte(MODULE);
+            writeNullableUTF(out, module.name());
+            writeNullableUTF(out, module.version());
+            out.writeUTF(module.type.name());
+            writeNullableUTF(out, module.filterSource);
+            out.writeInt(module.dependencies.size());
+            for (ClassPath.Dependency dep : module.dependencies) {
+                writeNullableUTF(out, dep.name());
+                writeNullableUTF(out, dep.version());
+                out.writeBoolean(dep.optional);
+                out.writeBoolean(dep.shared);
+            }
+        }
+    }
+
+    private static Module readModule(DataInputStream in, File jar) throws IOException {
+        switch (in.readByte()) {
+        case UNKNOWN:
+            return null;
+        case NO_MODULE:
+            return ClassPath.NO_MODULE;
+        case MODULE:
+            Module module = new Module(readNullableUTF(in), readNullableUTF(in),
+                    ClassPath.Type.valueOf(in.readUTF()), jar);
+            String filter = readNullableUTF(in);
+            if (filter != null)
+                module.setFilter(filter);
+            int dependencies = in.readInt();
+            for (int i = 0; i < dependencies; i++) {
+                module.addDependency(readNullableUTF(in), readNullableUTF(in), in.readBoolean(), in.readBoolean());
+            }
+            return module;
+        default:
+            throw new IOException("Invalid entry");
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -17,6 +18,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -34,6 +41,7 @@ import com.redhat.ceylon.cmr.api.OverridesRuntimeResolver;
 import com.redhat.ceylon.cmr.api.PathFilterParser;
 import com.redhat.ceylon.cmr.impl.AbstractArtifactResult;
 import com.redhat.ceylon.cmr.impl.Configuration;
+import com.redhat.ceylon.cmr.impl.ModuleGraphSnapshots;
 import com.redhat.ceylon.cmr.impl.OSGiDependencyResolver;
 import com.redhat.ceylon.cmr.impl.PropertiesDependencyResolver;
 import com.redhat.ceylon.cmr.impl.XmlDependencyResolver;
@@ -52,7 +60,6 @@ import com.redhat.ceylon.model.cmr.ArtifactResult;
 import com.redhat.ceylon.model.cmr.ArtifactResultType;
 import com.redhat.ceylon.model.cmr.JDKUtils;
 import com.redhat.ceylon.model.cmr.JDKUtils.JDK;
-import com.redhat.ceylon.model.cmr.PathFilter;
 import com.redhat.ceylon.model.cmr.RepositoryException;
 import com.redhat.ceylon.model.loader.ClassFileUtil;
 import com.redhat.ceylon.model.loader.Java9ModuleReader;
@@ -93,8 +100,13 @@ public class Main {
     private boolean allowMissingSystem;
     private String overrides;
     
+    // only scanned once we have to register a module we have no snapshot for
     private ClassPath classPath;
-    private Set<ClassPath.Module> visited;
+    private Overrides classPathOverrides;
+    // the names of the modules registered so far, as the class path has one version of each
+    private Set<String> visited;
+    // the modules registered in the metamodel, when saving a snapshot
+    private List<ModuleGraphSnapshots.Module> registered;
 	private ClassLoader moduleClassLoader;
     
     public static Main instance() {
@@ -159,7 +171,7 @@ public class Main {
 
         }
 
-        private enum Type {
+        enum Type {
             CEYLON, JBOSS_MODULES, MAVEN, OSGi, UNKNOWN, JDK, JAVA9;
         }
         
@@ -233,6 +245,7 @@ public class Main {
             public final File jar;
             public final Type type;
             public final List<Dependency> dependencies = new LinkedList<Dependency>();
+            String filterSource;
 
             public Module(String name, String version, Type type, File jar) {
                 super(null, name, version);
@@ -317,23 +330,42 @@ public class Main {
                 return jar;
             }
 
-            public void setFilter(PathFilter filter) {
-                setFilterInternal(filter);
+            public void setFilter(String filter) throws IOException {
+                filterSource = filter;
+                setFilterInternal(PathFilterParser.parse(filter));
             }
         }
 
+        /**
+         * System property giving the number of threads to look into the jars of
+         * the class path with. Defaults to 1.
+         */
+        static final String PARALLELISM_PROPERTY = "ceylon.classpath.parallelism";
+        
         private List<File> potentialJars = new LinkedList<File>();
         private Map<String,Module> modules = new HashMap<String,Module>();
         private Overrides overrides;
+        private ClassPathIndex index;
+        private int parallelism = 1;
         private static DependencyResolver MavenResolver = Configuration.getMavenResolver();
         static{
             if(MavenResolver == null)
                 MavenResolver = MavenBackupDependencyResolver.INSTANCE;
         }
         
-        private static final Module NO_MODULE = new Module("$$$", "$$$", Type.UNKNOWN, null);
+        static final Module NO_MODULE = new Module("$$$", "$$$", Type.UNKNOWN, null);
+        
+        ClassPath(Overrides overrides, String overridesFile){
+            potentialJars = findPotentialJars();
+            this.overrides = overrides;
+            this.index = ClassPathIndex.getDefault(potentialJars, overridesFile);
+            this.parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 1);
+            initJars();
+        }
         
-        ClassPath(Overrides overrides){
+        // Lists the jar/car files of the class path, and of the module path on Java 9
+        static List<File> findPotentialJars() {
+            List<File> potentialJars = new LinkedList<File>();
             String classPath = System.getProperty("java.class.path");
             String[] classPathEntries = classPath.split(File.pathSeparator);
             for(String classPathEntry : classPathEntries){
@@ -349,17 +381,16 @@ public class Main {
                 	for(String moduleFolder : modulePathEntries){
                 		File folder = new File(moduleFolder);
                 		if(folder.isDirectory()){
-                			scanFolderForJars(folder);
+                			scanFolderForJars(folder, potentialJars);
                 		}
                 	}
                 }
 
             }
-            this.overrides = overrides;
-            initJars();
+            return potentialJars;
         }
         
-        private void scanFolderForJars(File folder) {
+        private static void scanFolderForJars(File folder, List<File> potentialJars) {
         	for(File file : folder.listFiles()){
         		if(file.isFile() 
         				&& (file.getName().endsWith(".car")
@@ -372,7 +403,14 @@ public class Main {
 
 		// for tests
         ClassPath(List<File> potentialJars){
+            this(potentialJars, null, 1);
+        }
+
+        // for tests
+        ClassPath(List<File> potentialJars, ClassPathIndex index, int parallelism){
             this.potentialJars = potentialJars;
+            this.index = index;
+            this.parallelism = parallelism;
             initJars();
         }
         
@@ -460,13 +498,109 @@ public class Main {
         // Pre-loads as much modules as possible by going over all potential jar/car files
         // in the class path and trying to determine which modules they contain
         private void initJars() {
-            searchJars(null, null);
+            List<File> jars = new ArrayList<File>(potentialJars);
+            List<FutureTask<Module>> results = scanJars(jars);
+            // now record them in class path order
+            Iterator<File> iterator = potentialJars.iterator();
+            for(FutureTask<Module> result : results){
+                File file = iterator.next();
+                Module module;
+                try {
+                    module = getScanResult(result);
+                } catch (IOException e) {
+                    // faulty jar
+                    iterator.remove();
+                    e.printStackTrace();
+                    System.err.println("Non-zip jar file in classpath: "+file+". Skipping it next time.");
+                    continue;
+                }
+                if(module != null){
+                    if (module != NO_MODULE) {
+                        // classpath does not allow more than one version of a module, and Maven modules may be missing
+                        // version info
+                        String key = module.name();
+                        modules.put(key, module);
+                    }
+                    iterator.remove();
+                }
+            }
+            if(index != null)
+                index.save(jars);
+        }
+        
+        // Looks into every jar once, possibly in parallel
+        private List<FutureTask<Module>> scanJars(List<File> jars) {
+            List<FutureTask<Module>> tasks = new ArrayList<FutureTask<Module>>(jars.size());
+            for(final File file : jars){
+                tasks.add(new FutureTask<Module>(new Callable<Module>(){
+                    @Override
+                    public Module call() throws IOException {
+                        return scanJar(file);
+                    }
+                }));
+            }
+            if(parallelism > 1 && tasks.size() > 1){
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), new ThreadFactory(){
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Ceylon class path scanner");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                try{
+                    for(FutureTask<Module> task : tasks)
+                        executor.execute(task);
+                }finally{
+                    executor.shutdown();
+                }
+            }else{
+                for(FutureTask<Module> task : tasks)
+                    task.run();
+            }
+            return tasks;
         }
         
-        // Goes over all the potential jar/car files in the class path and if a name and
-        // version were given tries to determine if any of them contain that module.
-        // If name and version are both `null` it will try to determine the module
-        // information from the jar/car file itself.
+        private Module scanJar(File file) throws IOException {
+            if(index != null && index.contains(file))
+                return index.get(file);
+            Module module = initJar(file);
+            if(index != null)
+                index.put(file, module);
+            return module;
+        }
+        
+        // The external descriptors initJar may read for the given jar, whether they exist or not
+        static List<File> getExternalDescriptors(File file) {
+            List<File> descriptors = new ArrayList<File>(3);
+            File folder = file.getParentFile();
+            descriptors.add(new File(folder, MODULE_XML));
+            descriptors.add(new File(folder, MODULE_PROPERTIES));
+            if(file.getName().endsWith(".jar"))
+                descriptors.add(new File(folder, file.getName().substring(0, file.getName().length()-4)+".pom"));
+            return descriptors;
+        }
+        
+        private static Module getScanResult(FutureTask<Module> result) throws IOException {
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof IOException)
+                    throw (IOException)cause;
+                if(cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                if(cause instanceof Error)
+                    throw (Error)cause;
+                throw new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        
+        // Goes over the potential jar/car files in the class path which initJars could
+        // not identify, and tries to determine if any of them contain that module.
         private Module searchJars(String name, String version) {
             if(overrides != null){
                 ArtifactContext ctx = new ArtifactContext(name, version);
@@ -485,11 +619,7 @@ public class Main {
             while(iterator.hasNext()){
                 File file = iterator.next();
                 try {
-                    if (name == null && version == null) {
-                        module = initJar(file);
-                    } else {
-                        module = loadJar(file, name, version);
-                    }
+                    module = loadJar(file, name, version);
                 } catch (IOException e) {
                     // faulty jar
                     iterator.remove();
@@ -498,26 +628,53 @@ public class Main {
                     continue;
                 }
                 if(module != null){
-                    if (module != NO_MODULE) {
-                        // classpath does not allow more than one version of a module, and Maven modules may be missing
-                        // version info
-                        String key = module.name();
-                        modules.put(key, module);
-                    }
+                    // classpath does not allow more than one version of a module, and Maven modules may be missing
+                    // version info
+                    String key = module.name();
+                    modules.put(key, module);
                     iterator.remove();
-                    if (name != null || version != null) {
-                        return module;
-                    }
+                    return module;
                 }
             }
             return null;
         }
         
+        // The descriptors initJar looks for, found in a single pass over the jar entries
+        private static class Descriptors {
+            final List<ZipEntry> moduleDescriptors = new LinkedList<ZipEntry>();
+            final List<ZipEntry> moduleXmls = new LinkedList<ZipEntry>();
+            final List<ZipEntry> moduleProperties = new LinkedList<ZipEntry>();
+            final List<ZipEntry> java9Modules = new LinkedList<ZipEntry>();
+            final List<ZipEntry> mavenDescriptors = new LinkedList<ZipEntry>();
+            
+            Descriptors(ZipFile zipFile) {
+                String moduleDescriptor = NamingBase.MODULE_DESCRIPTOR_CLASS_NAME+".class";
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (name.endsWith(moduleDescriptor))
+                        moduleDescriptors.add(entry);
+                    if (name.startsWith(METAINF_JBOSSMODULES)) {
+                        if (name.endsWith(MODULE_XML))
+                            moduleXmls.add(entry);
+                        if (name.endsWith(MODULE_PROPERTIES))
+                            moduleProperties.add(entry);
+                    }
+                    if (name.endsWith(JAVA9_MODULE))
+                        java9Modules.add(entry);
+                    if (name.startsWith(METAINF_MAVEN) && name.endsWith(POM_XML))
+                        mavenDescriptors.add(entry);
+                }
+            }
+        }
+        
         private Module initJar(File file) throws IOException {
             ZipFile zipFile = new ZipFile(file);
             try{
+                Descriptors descriptors = new Descriptors(zipFile);
                 // Try Ceylon module first
-                List<ZipEntry> moduleDescriptors = findEntries(zipFile, "", NamingBase.MODULE_DESCRIPTOR_CLASS_NAME+".class");
+                List<ZipEntry> moduleDescriptors = descriptors.moduleDescriptors;
                 if(moduleDescriptors.size() == 1) {
                     try {
                         return loadCeylonModuleCar(file, zipFile, moduleDescriptors.get(0), null, null);
@@ -527,14 +684,14 @@ public class Main {
                 }
                 
                 // Try JBoss modules next
-                List<ZipEntry> moduleXmls = findEntries(zipFile, METAINF_JBOSSMODULES, MODULE_XML);
+                List<ZipEntry> moduleXmls = descriptors.moduleXmls;
                 if(moduleXmls.size() == 1) {
                     ModuleSpec mod = moduleFromEntry(moduleXmls.get(0));
                     if (mod != null) {
                         return loadJBossModuleXmlJar(file, zipFile, moduleXmls.get(0), mod.getName(), mod.getVersion());
                     }
                 }
-                List<ZipEntry> moduleProperties = findEntries(zipFile, METAINF_JBOSSMODULES, MODULE_PROPERTIES);
+                List<ZipEntry> moduleProperties = descriptors.moduleProperties;
                 if(moduleProperties.size() == 1) {
                     ModuleSpec mod = moduleFromEntry(moduleProperties.get(0));
                     if (mod != null) {
@@ -560,13 +717,13 @@ public class Main {
                 }
 
                 // Java 9 module
-                List<ZipEntry> java9Module = findEntries(zipFile, "", JAVA9_MODULE);
+                List<ZipEntry> java9Module = descriptors.java9Modules;
                 if(java9Module.size() == 1) {
                 	return loadJava9ModuleJar(file, zipFile, java9Module.get(0), null, null);
                 }
 
                 // try Maven
-                List<ZipEntry> mavenDescriptors = findEntries(zipFile, METAINF_MAVEN, POM_XML);
+                List<ZipEntry> mavenDescriptors = descriptors.mavenDescriptors;
                 if(mavenDescriptors.size() == 1 && MavenResolver != null) {
                     Module mod = loadMavenJar(file, zipFile, mavenDescriptors.get(0), null, null);
                     return mod;
@@ -807,7 +964,7 @@ public class Main {
     				module.addDependency(dep.getName(), dep.getVersion(), dep.isOptional(), dep.isExport());
     			}
     			if(moduleInfo.getFilter() != null)
-    				module.setFilter(PathFilterParser.parse(moduleInfo.getFilter()));
+    				module.setFilter(moduleInfo.getFilter());
     			return module;
     		}
     		return null;
@@ -978,18 +1135,83 @@ public class Main {
         Metamodel.resetModuleManager(new OverridesRuntimeResolver(parsedOverrides));
         if(moduleClassLoader == null)
         	setupModuleClassLoader(module);
-        if (classPath == null) {
-            classPath = new ClassPath(parsedOverrides);
-            visited = new HashSet<ClassPath.Module>();
+        if(module.equals(com.redhat.ceylon.model.typechecker.model.Module.DEFAULT_MODULE_NAME))
+            version = null;
+        if (visited == null) {
+            visited = new HashSet<String>();
+            classPathOverrides = parsedOverrides;
+            ModuleGraphSnapshots snapshots = ModuleGraphSnapshots.getDefault();
+            String snapshotKey = null;
+            List<File> potentialJars = null;
+            if(snapshots != null){
+                potentialJars = ClassPath.findPotentialJars();
+                snapshotKey = getSnapshotKey(module, version, potentialJars);
+                if(registerFromSnapshot(snapshots.load(snapshotKey)))
+                    return;
+                registered = new LinkedList<ModuleGraphSnapshots.Module>();
+            }
             registerInMetamodel("ceylon.language", Versions.CEYLON_VERSION_NUMBER, false);
             registerInMetamodel("com.redhat.ceylon.common", Versions.CEYLON_VERSION_NUMBER, false);
             registerInMetamodel("com.redhat.ceylon.model", Versions.CEYLON_VERSION_NUMBER, false);
+            registerInMetamodel(module, version, false);
+            if(registered != null){
+                snapshots.save(snapshotKey, getSnapshotInputs(potentialJars), registered);
+                registered = null;
+            }
+            return;
         }
-        if(module.equals(com.redhat.ceylon.model.typechecker.model.Module.DEFAULT_MODULE_NAME))
-            version = null;
         registerInMetamodel(module, version, false);
     }
 
+    // The jars of the class and module paths are part of the key, so that
+    // adding one to a module path folder does not reuse an outdated snapshot
+    String getSnapshotKey(String module, String version, List<File> potentialJars) {
+        StringBuilder key = new StringBuilder("java-main\n");
+        key.append(module).append('/').append(version);
+        key.append("\nallow-missing-modules=").append(allowMissingModules);
+        key.append("\noverrides=").append(overrides != null ? new File(overrides).getAbsolutePath() : null);
+        key.append("\njava=").append(System.getProperty("java.version"));
+        key.append("\nclass-path=").append(System.getProperty("java.class.path"));
+        key.append("\nmodule-path=").append(System.getProperty("jdk.module.path"));
+        for(File jar : potentialJars)
+            key.append("\njar=").append(jar.getAbsolutePath());
+        return key.toString();
+    }
+
+    private List<File> getSnapshotInputs(List<File> potentialJars) {
+        List<File> inputs = new ArrayList<File>(potentialJars);
+        if(overrides != null)
+            inputs.add(new File(overrides));
+        return inputs;
+    }
+
+    // Registers the modules of a snapshot, if we have one and the class path did not change
+    private boolean registerFromSnapshot(List<ModuleGraphSnapshots.Module> snapshot) {
+        if(snapshot == null)
+            return false;
+        for(ModuleGraphSnapshots.Module module : snapshot){
+            visited.add(module.name());
+            Metamodel.loadModule(module.name(), module.version(), module, moduleClassLoader);
+        }
+        return true;
+    }
+
+    private ClassPath getClassPath() {
+        if(classPath == null)
+            classPath = new ClassPath(classPathOverrides, overrides);
+        return classPath;
+    }
+
+    // for tests
+    boolean isClassPathScanned() {
+        return classPath != null;
+    }
+
+    // for tests
+    boolean isRegistered(String name) {
+        return visited != null && visited.contains(name);
+    }
+
     private void setupModuleClassLoader(String module) {
     	if(JDKUtils.jdk.providesVersion(JDK.JDK9.version)){
     		try{
@@ -1037,25 +1259,43 @@ public class Main {
     }
     
     private void registerInMetamodel(String name, String version, boolean optional) {
+        // do not scan the class path for modules we registered from a snapshot
+        if(visited.contains(name))
+            return;
         ClassPath.Module module;
         try {
-            module = classPath.loadModule(name, version, allowMissingModules);
+            module = getClassPath().loadModule(name, version, allowMissingModules);
         } catch (com.redhat.ceylon.compiler.java.runtime.Main.ClassPath.ModuleNotFoundException e) {
             if(optional)
                 return;
             throw new RuntimeException(e);
         }
-        if(!visited.add(module))
+        if(!visited.add(module.name()))
             return;
         // skip JDK modules which are already in the metamodel
         if(module.type == ClassPath.Type.JDK)
             return;
         Metamodel.loadModule(name, version, module, moduleClassLoader);
+        if(registered != null)
+            recordRegistration(name, version, module);
         // also register its dependencies
         for(ClassPath.Dependency dep : module.dependencies)
             registerInMetamodel(dep.name(), dep.version(), dep.optional);
     }
 
+    private void recordRegistration(String name, String version, ClassPath.Module module) {
+        if(module.filter() != null){
+            // we cannot store filters, so do not save a snapshot at all
+            registered = null;
+            return;
+        }
+        ModuleGraphSnapshots.Module snapshotModule = new ModuleGraphSnapshots.Module(name, version, 
+                module.type(), module.jar, module.repositoryDisplayString());
+        for(ClassPath.Dependency dep : module.dependencies)
+            snapshotModule.addDependency(dep.name(), dep.version(), dep.importType());
+        registered.add(snapshotModule);
+    }
+
     /**
      * <p>
      * Main entry point, invoke with: <code>moduleSpec</code> <code>mainJavaClassName</code> <code>args*</code>.
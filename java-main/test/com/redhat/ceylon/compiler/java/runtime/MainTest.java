@@ -1,6 +1,7 @@
 package com.redhat.ceylon.compiler.java.runtime;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -26,11 +27,13 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import com.redhat.ceylon.cmr.impl.IOUtils;
+import com.redhat.ceylon.cmr.impl.ModuleGraphSnapshots;
 import com.redhat.ceylon.common.FileUtil;
 import com.redhat.ceylon.common.Versions;
 import com.redhat.ceylon.compiler.java.runtime.Main.ClassPath;
 import com.redhat.ceylon.compiler.java.runtime.Main.ClassPath.Module;
 import com.redhat.ceylon.compiler.java.runtime.Main.ClassPath.ModuleNotFoundException;
+import com.redhat.ceylon.model.cmr.ArtifactResultType;
 
 public class MainTest {
 
@@ -174,6 +177,100 @@ public class MainTest {
         
     }
 
+    @Test
+    public void testIndexedClassPath() throws IOException, ModuleNotFoundException{
+        File xmlJar = jar("module.xml", "META-INF/jbossmodules/foo/foo/1");
+        File osgiJar = jar("MANIFEST.MF", "META-INF");
+        File indexDir = File.createTempFile("ceylonlang-testmain-", "-index");
+        try{
+            indexDir.delete();
+            List<File> jars = Arrays.asList(xmlJar, osgiJar);
+            File indexFile = new File(indexDir, "index");
+            ClassPathIndex index = new ClassPathIndex(indexFile, null);
+            checkDependencies(new Main.ClassPath(new LinkedList<File>(jars), index, 2), osgiJar);
+            assertTrue(indexFile.isFile());
+
+            // now from the index
+            index = new ClassPathIndex(indexFile, null);
+            assertTrue(index.contains(xmlJar));
+            assertTrue(index.contains(osgiJar));
+            checkDependencies(new Main.ClassPath(new LinkedList<File>(jars), index, 1), osgiJar);
+
+            // changed jars are looked at again
+            assertTrue(xmlJar.setLastModified(xmlJar.lastModified() - 10000));
+            index = new ClassPathIndex(indexFile, null);
+            assertFalse(index.contains(xmlJar));
+            assertTrue(index.contains(osgiJar));
+            
+            // and the index is only valid for the same overrides
+            index = new ClassPathIndex(indexFile, new File(getCurrentPackagePath(), "module.xml"));
+            assertFalse(index.contains(osgiJar));
+        }finally{
+            xmlJar.delete();
+            osgiJar.delete();
+            FileUtil.delete(indexDir);
+        }
+    }
+
+    private void checkDependencies(ClassPath classPath, File expectedJar) throws ModuleNotFoundException {
+        Module module = classPath.loadModule("foo.foo", "1");
+        // the last one wins
+        assertEquals(expectedJar.getAbsoluteFile(), module.jar.getAbsoluteFile());
+        assertEquals(3, module.dependencies.size());
+        assertTrue(module.dependencies.contains(new ClassPath.Dependency("b.b", "2", false, true)));
+        assertTrue(module.dependencies.contains(new ClassPath.Dependency("c.c", "3", true, false)));
+    }
+
+    @Test
+    public void testSetupFromSnapshot() throws IOException{
+        File jar = jar("module.xml", "META-INF/jbossmodules/foo/foo/1");
+        File snapshotDir = File.createTempFile("ceylonlang-testmain-", "-snapshots");
+        String snapshotProperty = System.getProperty(ModuleGraphSnapshots.SNAPSHOT_DIR_PROPERTY);
+        try{
+            snapshotDir.delete();
+            System.setProperty(ModuleGraphSnapshots.SNAPSHOT_DIR_PROPERTY, snapshotDir.getPath());
+            Main main = Main.instance();
+            List<File> jars = ClassPath.findPotentialJars();
+            ModuleGraphSnapshots.Module module = new ModuleGraphSnapshots.Module("foo.foo", "1", ArtifactResultType.CEYLON, jar, null);
+            new ModuleGraphSnapshots(snapshotDir).save(main.getSnapshotKey("foo.foo", "1", jars), jars, 
+                    Arrays.asList(module));
+
+            main.setup("foo.foo", "1");
+            assertTrue(main.isRegistered("foo.foo"));
+            assertFalse(main.isClassPathScanned());
+            // registering it again does not need the class path
+            main.setup("foo.foo", "1");
+            assertFalse(main.isClassPathScanned());
+            // but other modules do, and still know what we registered
+            main.setup("java.base", "7");
+            assertTrue(main.isClassPathScanned());
+            assertTrue(main.isRegistered("java.base"));
+            assertTrue(main.isRegistered("foo.foo"));
+        }finally{
+            if(snapshotProperty != null)
+                System.setProperty(ModuleGraphSnapshots.SNAPSHOT_DIR_PROPERTY, snapshotProperty);
+            else
+                System.clearProperty(ModuleGraphSnapshots.SNAPSHOT_DIR_PROPERTY);
+            jar.delete();
+            FileUtil.delete(snapshotDir);
+        }
+    }
+
+    @Test
+    public void testSnapshotKeyListsJars() throws IOException{
+        File jar = jar("module.xml", "META-INF/jbossmodules/foo/foo/1");
+        try{
+            Main main = Main.instance();
+            List<File> jars = new ArrayList<File>();
+            String key = main.getSnapshotKey("foo.foo", "1", jars);
+            // such as a jar added to a module path folder
+            jars.add(jar);
+            assertFalse(key.equals(main.getSnapshotKey("foo.foo", "1", jars)));
+        }finally{
+            jar.delete();
+        }
+    }
+
     @Test
     public void testJdkDependencies() throws ModuleNotFoundException {
         ArrayList<File> jars = new ArrayList<File>(1);
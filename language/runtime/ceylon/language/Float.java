@@ -58,8 +58,44 @@ public final class Float
         throw Util.makeUnimplementedMixinAccessException();
     }
     
+    /**
+     * The system property giving the largest whole value 
+     * boxed by {@link #instance(double)} from a cache of 
+     * shared instances. The cached range starts at -128 
+     * and ends at 127 unless this property says otherwise. 
+     * Setting it below -128 disables the cache.
+     */
+    @Ignore
+    public static final java.lang.String CACHE_HIGH_PROPERTY = 
+            "ceylon.cache.float.high";
+    
+    private static final long CACHE_LOW = -128;
+    private static final long CACHE_MAX_SIZE = 1L << 24;
+    private static final Float[] CACHE = 
+            makeCache(Integer.cacheHigh(CACHE_HIGH_PROPERTY, 127L));
+    
+    private static Float[] makeCache(long high) {
+        long size = Math.min(high - CACHE_LOW + 1, CACHE_MAX_SIZE);
+        Float[] cache = new Float[(int) Math.max(size, 0)];
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new Float(CACHE_LOW + i);
+        }
+        return cache;
+    }
+    
     @Ignore
     public static Float instance(double d) {
+        // Float is not identifiable, so we can share instances
+        // of whole values, except for -0.0 which has to keep 
+        // its sign (NaN never compares equal to its cast)
+        long l = (long) d;
+        if (l == d) {
+            long index = l - CACHE_LOW;
+            if (index >= 0 && index < CACHE.length 
+                    && (l != 0 || Double.doubleToRawLongBits(d) == 0L)) {
+                return CACHE[(int) index];
+            }
+        }
         return new Float(d);
     }
     
@@ -83,8 +83,51 @@ public final class Integer
         throw Util.makeUnimplementedMixinAccessException();
     }
 
+    /**
+     * The system property giving the largest value boxed 
+     * by {@link #instance(long)} from a cache of shared 
+     * instances, much like {@link Long#valueOf(long)}. The 
+     * cached range starts at -128 and ends at 127 unless 
+     * this property says otherwise. Setting it below -128 
+     * disables the cache.
+     */
+    @Ignore
+    public static final java.lang.String CACHE_HIGH_PROPERTY = 
+            "ceylon.cache.integer.high";
+    
+    private static final long CACHE_LOW = -128;
+    // big enough for any sane use, small enough not to blow the heap
+    private static final long CACHE_MAX_SIZE = 1L << 24;
+    private static final Integer[] CACHE = 
+            makeCache(cacheHigh(CACHE_HIGH_PROPERTY, 127L));
+    
+    @Ignore
+    static long cacheHigh(java.lang.String property, long defaultHigh) {
+        try {
+            Long high = Long.getLong(property);
+            return high == null ? defaultHigh : high;
+        }
+        catch (SecurityException e) {
+            return defaultHigh;
+        }
+    }
+    
+    private static Integer[] makeCache(long high) {
+        long size = Math.min(high - CACHE_LOW + 1, CACHE_MAX_SIZE);
+        Integer[] cache = new Integer[(int) Math.max(size, 0)];
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new Integer(CACHE_LOW + i);
+        }
+        return cache;
+    }
+    
     @Ignore
     public static Integer instance(long l) {
+        // Integer is not identifiable, so we can share instances
+        long index = l - CACHE_LOW;
+        if (index >= 0 && index < CACHE.length) {
+            return CACHE[(int) index];
+        }
         return new Integer(l);
     }
 
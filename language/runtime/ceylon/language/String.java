@@ -4,6 +4,7 @@ import java.util.Locale;
 
 import com.redhat.ceylon.compiler.java.Util;
 import com.redhat.ceylon.compiler.java.language.AbstractCallable;
+import com.redhat.ceylon.compiler.java.language.CodePointIndex;
 import com.redhat.ceylon.compiler.java.language.StringTokens;
 import com.redhat.ceylon.compiler.java.metadata.Annotation;
 import com.redhat.ceylon.compiler.java.metadata.Annotations;
@@ -231,15 +232,12 @@ public final class String
     @Override
     @TypeInfo("ceylon.language::Integer")
     public long getSize() {
-        //TODO: should we cache this value in an instvar?
-        // But remember that we'll mostly be using the static verion
-        // of this method! So an instvar won't help much.
-        return value.codePointCount(0, value.length());
+        return getSize(value);
     }
 
     @Ignore
     public static long getSize(java.lang.String value) {
-        return value.codePointCount(0, value.length());
+        return CodePointIndex.size(value);
     }
 
     @Override
@@ -288,7 +286,7 @@ public final class String
         int index = Util.toInt(key);
         int codePoint;
         try {
-            int offset = value.offsetByCodePoints(value.length(), -index-1);
+            int offset = CodePointIndex.offsetFromEnd(value, index);
             codePoint = value.codePointAt(offset);
         }
         catch (IndexOutOfBoundsException e) {
@@ -308,7 +306,7 @@ public final class String
         int index = Util.toInt(key);
         int codePoint;
         try {
-            int offset = value.offsetByCodePoints(0, index);
+            int offset = CodePointIndex.offset(value, index);
             codePoint = value.codePointAt(offset);
         }
         catch (IndexOutOfBoundsException e) {
@@ -355,7 +353,7 @@ public final class String
     @SuppressWarnings({ "rawtypes", "unchecked" })
     public static Sequential<? extends ceylon.language.Integer> 
     getKeys(java.lang.String value) {
-        long size = value.codePointCount(0, value.length());
+        long size = CodePointIndex.size(value);
         if (size==0) {
             return (Sequential) empty_.get_();
         }
@@ -432,7 +430,7 @@ public final class String
         }
         int start;
         try {
-            start = value.offsetByCodePoints(0, (int)from);
+            start = CodePointIndex.offset(value, (int)from);
         }
         catch (IndexOutOfBoundsException e) {
             return false;
@@ -458,7 +456,7 @@ public final class String
         try {
             int offset;
             try {
-                offset = value.offsetByCodePoints(0, (int)index);
+                offset = CodePointIndex.offset(value, (int)index);
             }
             catch (IndexOutOfBoundsException e) {
                 return false;
@@ -508,7 +506,7 @@ public final class String
                     int offset;
                     {
                         try {
-                            offset = value.offsetByCodePoints(0, start);
+                            offset = CodePointIndex.offset(value, start);
                         }
                         catch (IndexOutOfBoundsException e) {
                             offset = value.length();
@@ -546,7 +544,7 @@ public final class String
                 int index = start;
                 int offset;
                 try {
-                    offset = value.offsetByCodePoints(0, start);
+                    offset = CodePointIndex.offset(value, start);
                 }
                 catch (IndexOutOfBoundsException e) {
                     return 0;
@@ -599,7 +597,7 @@ public final class String
             String string = (String) sublist;
             int offset;
             try {
-                offset = value.offsetByCodePoints(0, (int)from);
+                offset = CodePointIndex.offset(value, (int)from);
             }
             catch (IndexOutOfBoundsException e) {
                 return value.isEmpty();
@@ -636,7 +634,7 @@ public final class String
             try {
                 int offset;
                 try {
-                    offset = value.offsetByCodePoints(0, (int)index);
+                    offset = CodePointIndex.offset(value, (int)index);
                 }
                 catch (IndexOutOfBoundsException e) {
                     return sublist.getEmpty();
@@ -694,7 +692,7 @@ public final class String
                     int offset;
                     {
                         try {
-                            offset = value.offsetByCodePoints(0, start);
+                            offset = CodePointIndex.offset(value, start);
                         }
                         catch (IndexOutOfBoundsException e) {
                             offset = value.length();
@@ -724,7 +722,7 @@ public final class String
                 }
                 int offset;
                 try {
-                    offset = value.offsetByCodePoints(0, start);
+                    offset = CodePointIndex.offset(value, start);
                 }
                 catch (IndexOutOfBoundsException e) {
                     return 0;
@@ -775,7 +773,7 @@ public final class String
         }
         if (sublist instanceof String) {
             String string = (String) sublist;
-            int start = value.offsetByCodePoints(0, (int)from);
+            int start = CodePointIndex.offset(value, (int)from);
             int index = value.indexOf(string.value, start);
             if (index >= 0) {
                 return Integer.instance(from + 
@@ -880,7 +878,7 @@ public final class String
         }
         int start;
         try {
-            start = value.offsetByCodePoints(0, (int)from);
+            start = CodePointIndex.offset(value, (int)from);
         }
         catch (java.lang.IndexOutOfBoundsException e) {
             return null;
@@ -1094,7 +1092,7 @@ public final class String
     public boolean longerThan(@TypeInfo("ceylon.language::Integer")
     @Name("length") long length) {
         try {
-            value.offsetByCodePoints(0, Util.toInt(length+1));
+            CodePointIndex.offset(value, Util.toInt(length+1));
             return true;
         }
         catch (IndexOutOfBoundsException iobe) {
@@ -1106,7 +1104,7 @@ public final class String
     public static boolean longerThan(java.lang.String value, 
             long length) {
         try {
-            value.offsetByCodePoints(0, Util.toInt(length+1));
+            CodePointIndex.offset(value, Util.toInt(length+1));
             return true;
         }
         catch (IndexOutOfBoundsException iobe) {
@@ -1117,7 +1115,7 @@ public final class String
     public boolean shorterThan(@TypeInfo("ceylon.language::Integer")
     @Name("length") long length) {
         try {
-            value.offsetByCodePoints(0, Util.toInt(length));
+            CodePointIndex.offset(value, Util.toInt(length));
             return false;
         }
         catch (IndexOutOfBoundsException iobe) {
@@ -1129,7 +1127,7 @@ public final class String
     public static boolean shorterThan(java.lang.String value, 
             long length) {
         try {
-            value.offsetByCodePoints(0, Util.toInt(length));
+            CodePointIndex.offset(value, Util.toInt(length));
             return false;
         }
         catch (IndexOutOfBoundsException iobe) {
@@ -1262,7 +1260,7 @@ public final class String
         } else if (length >= getSize(value)) {
             return value;
         } else {
-            int offset = value.offsetByCodePoints(0, Util.toInt(length));
+            int offset = CodePointIndex.offset(value, Util.toInt(length));
             return value.substring(0, offset);
         }
     }
@@ -1275,13 +1273,14 @@ public final class String
     @Ignore
     public static java.lang.String terminal(java.lang.String value, 
             long length) {
+        long size = getSize(value);
         if (length <= 0) {
             return "";
-        } else if (length >= getSize(value)) {
+        } else if (length >= size) {
             return value;
         } else {
-            int offset = value.offsetByCodePoints(0, 
-                    Util.toInt(value.length()-length));
+            int offset = CodePointIndex.offset(value, 
+                    Util.toInt(size-length));
             return value.substring(offset, value.length());
         }
     }
@@ -1344,8 +1343,9 @@ public final class String
         else {
             resultLength = length;
         }
-        int start = value.offsetByCodePoints(0, Util.toInt(from));
-        int end = value.offsetByCodePoints(start, Util.toInt(resultLength));
+        int start = CodePointIndex.offset(value, Util.toInt(from));
+        int end = CodePointIndex.offset(value, start, 
+                Util.toInt(from), Util.toInt(resultLength));
         return value.substring(start, end);
     }
 
@@ -1396,7 +1396,7 @@ public final class String
         if (len == 0 || from >= len) {
             return "";
         }
-        int start = value.offsetByCodePoints(0, Util.toInt(from));
+        int start = CodePointIndex.offset(value, Util.toInt(from));
         return value.substring(start);
     }
     
@@ -1476,7 +1476,7 @@ public final class String
                     return false;
                 }
                 else {
-                    return value.offsetByCodePoints(0, index)<=to;
+                    return CodePointIndex.offset(value, index)<=to;
                 }
             }
         };
@@ -1500,7 +1500,7 @@ public final class String
                 else {
                     try {
                         start = 
-                                value.offsetByCodePoints(0, 
+                                CodePointIndex.offset(value, 
                                         Util.toInt(from));
                     }
                     catch (IndexOutOfBoundsException e) {
@@ -1598,7 +1598,7 @@ public final class String
         if (to >= len) {
             return value;
         }
-        int end = value.offsetByCodePoints(0, Util.toInt(to+1));
+        int end = CodePointIndex.offset(value, Util.toInt(to+1));
         return value.substring(0, end);
     }
     
@@ -1620,13 +1620,14 @@ public final class String
             return "";
         }
         long begin = from < 0 ? 0 : from;
-        int start = value.offsetByCodePoints(0, Util.toInt(begin));
+        int start = CodePointIndex.offset(value, Util.toInt(begin));
         java.lang.String result;
         if (to >= len) {
             result = value.substring(start);
         }
         else {
-            int end = value.offsetByCodePoints(start, Util.toInt(to+1 - begin));
+            int end = CodePointIndex.offset(value, start, 
+                    Util.toInt(begin), Util.toInt(to+1 - begin));
             result = value.substring(start, end);
         }
         return reverse ? getReversed(result) : result;
@@ -1897,7 +1898,7 @@ public final class String
         }
         else {
             int intIndex =
-                    value.offsetByCodePoints(0, 
+                    CodePointIndex.offset(value, 
                             Util.toInt(index));
             first = value.substring(0,intIndex);
             second = value.substring(intIndex);
@@ -2067,13 +2068,13 @@ public final class String
     @Override
     public String getRest() {
         return value.isEmpty() ? this :
-            instance(value.substring(value.offsetByCodePoints(0, 1)));
+            instance(value.substring(CodePointIndex.offset(value, 1)));
     }
 
     @Ignore
     public static java.lang.String getRest(java.lang.String value) {
         return value.isEmpty() ? "" :
-            value.substring(value.offsetByCodePoints(0, 1));
+            value.substring(CodePointIndex.offset(value, 1));
     }
     
     @Ignore
@@ -2922,7 +2923,7 @@ public final class String
         int dest = Util.toInt(destinationPosition);
         int[] array = (int[]) destination.toArray();
         try {
-            for (int index = value.offsetByCodePoints(0,src); 
+            for (int index = CodePointIndex.offset(value,src); 
                     count<length;) {
                 int codePoint = value.codePointAt(index);
                 array[count+dest] = codePoint;
@@ -0,0 +1,223 @@
+package com.redhat.ceylon.compiler.java.language;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Maps the code point indexes of a string to UTF-16
+ * offsets, for the static methods of
+ * {@link ceylon.language.String}, which mostly operate on
+ * unboxed {@link java.lang.String}s and so cannot cache
+ * anything in an instance.
+ *
+ * A long string is only indexed once offsets are looked up
+ * in it a second time: the first lookup just remembers the
+ * identity hash of the string, without allocating anything,
+ * and scans it as far as needed, so that one-shot
+ * operations, such as {@code longerThan()} or {@code rest},
+ * cost no more than a plain scan. Asking for the size only
+ * uses an existing index, and never builds one. Offsets before the first checkpoint are
+ * always found by a scan, since that is as cheap as using
+ * the index. The index holds the size of the string, and,
+ * if it contains surrogate pairs, the offset of every 64th
+ * code point. Further lookups on the same string are then
+ * O(1), so that an indexed loop over a string is no longer
+ * quadratic. The index of the few most recently used
+ * strings is kept, keyed by identity, without preventing
+ * them from being garbage collected.
+ */
+public final class CodePointIndex {
+
+    // strings shorter than this are just scanned every time
+    private static final int MIN_INDEXED_LENGTH = 64;
+
+    private static final int STRIDE_SHIFT = 6;
+    private static final int STRIDE = 1 << STRIDE_SHIFT;
+
+    // must be a power of two
+    private static final int SLOTS = 16;
+
+    // racy on purpose: an entry is immutable, and a lost or
+    // stale entry is only a cache miss
+    private static final Entry[] cache = new Entry[SLOTS];
+    
+    // the identity hash of the last string an offset was
+    // looked up in once, for each slot: a collision only
+    // indexes a string early
+    private static final int[] seen = new int[SLOTS];
+
+    private static final class Entry
+            extends WeakReference<java.lang.String> {
+        // the number of code points
+        final int size;
+        // the offset of every STRIDEth code point, or null
+        // when every code point is a single char
+        final int[] checkpoints;
+
+        Entry(java.lang.String string, int size,
+                int[] checkpoints) {
+            super(string);
+            this.size = size;
+            this.checkpoints = checkpoints;
+        }
+    }
+
+    private CodePointIndex() {}
+
+    /**
+     * The number of code points in the given string.
+     */
+    public static int size(java.lang.String value) {
+        int length = value.length();
+        if (length < MIN_INDEXED_LENGTH) {
+            return value.codePointCount(0, length);
+        }
+        Entry entry = lookup(value);
+        if (entry == null) {
+            return value.codePointCount(0, length);
+        }
+        return entry.size;
+    }
+
+    /**
+     * The UTF-16 offset of the code point at the given
+     * index, like {@code value.offsetByCodePoints(0, index)}.
+     *
+     * @throws IndexOutOfBoundsException if the index is
+     *         negative or greater than the size of the
+     *         string
+     */
+    public static int offset(java.lang.String value, int index) {
+        if (index < STRIDE 
+                || value.length() < MIN_INDEXED_LENGTH) {
+            return value.offsetByCodePoints(0, index);
+        }
+        Entry entry = indexIfSeen(value);
+        if (entry == null) {
+            return value.offsetByCodePoints(0, index);
+        }
+        if (index > entry.size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return offset(value, entry, index);
+    }
+
+    /**
+     * The UTF-16 offset of the code point {@code count}
+     * code points after the one at the given index, which
+     * is at the given offset. Unless the string is indexed,
+     * this only scans the code points in between.
+     *
+     * @throws IndexOutOfBoundsException if the resulting
+     *         index is greater than the size of the string
+     */
+    public static int offset(java.lang.String value, 
+            int offset, int index, int count) {
+        Entry entry = lookup(value);
+        if (entry != null) {
+            if (index + count > entry.size) {
+                throw new IndexOutOfBoundsException();
+            }
+            return offset(value, entry, index + count);
+        }
+        return value.offsetByCodePoints(offset, count);
+    }
+
+    /**
+     * The UTF-16 offset of the code point at the given
+     * index from the end of the string, like
+     * {@code value.offsetByCodePoints(value.length(), -index-1)}.
+     *
+     * @throws IndexOutOfBoundsException if the index is
+     *         negative or not less than the size of the 
+     *         string
+     */
+    public static int offsetFromEnd(java.lang.String value, 
+            int index) {
+        int length = value.length();
+        if (index < STRIDE 
+                || length < MIN_INDEXED_LENGTH) {
+            return value.offsetByCodePoints(length, -index-1);
+        }
+        Entry entry = indexIfSeen(value);
+        if (entry == null) {
+            return value.offsetByCodePoints(length, -index-1);
+        }
+        if (index >= entry.size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return offset(value, entry, entry.size-1-index);
+    }
+
+    /**
+     * Whether the given string is currently indexed.
+     */
+    static boolean isIndexed(java.lang.String value) {
+        return lookup(value) != null;
+    }
+
+    private static int offset(java.lang.String value, 
+            Entry entry, int index) {
+        int[] checkpoints = entry.checkpoints;
+        if (checkpoints == null) {
+            return index;
+        }
+        return value.offsetByCodePoints(
+                checkpoints[index >>> STRIDE_SHIFT],
+                index & (STRIDE-1));
+    }
+
+    /**
+     * The index of the given string if an offset was 
+     * already looked up in it, indexing it if needed, or
+     * null after remembering that one was.
+     */
+    private static Entry indexIfSeen(java.lang.String value) {
+        Entry entry = lookup(value);
+        if (entry != null) {
+            return entry;
+        }
+        int hash = System.identityHashCode(value);
+        int slot = hash & (SLOTS-1);
+        if (seen[slot] != hash) {
+            seen[slot] = hash;
+            return null;
+        }
+        return index(value);
+    }
+
+    private static Entry lookup(java.lang.String value) {
+        Entry entry = cache[slot(value)];
+        return entry == null || entry.get() != value ? 
+                null : entry;
+    }
+
+    private static void store(Entry entry) {
+        cache[slot(entry.get())] = entry;
+    }
+
+    private static int slot(java.lang.String value) {
+        return System.identityHashCode(value) & (SLOTS-1);
+    }
+
+    private static Entry index(java.lang.String value) {
+        int length = value.length();
+        int size = value.codePointCount(0, length);
+        int[] checkpoints;
+        if (size == length) {
+            checkpoints = null;
+        }
+        else {
+            checkpoints = new int[(size >>> STRIDE_SHIFT) + 1];
+            int offset = 0;
+            for (int index = 0; index <= size; index += STRIDE) {
+                checkpoints[index >>> STRIDE_SHIFT] = offset;
+                if (index + STRIDE <= size) {
+                    offset = value.offsetByCodePoints(offset, STRIDE);
+                }
+            }
+        }
+        Entry entry = new Entry(value, size, checkpoints);
+        store(entry);
+        return entry;
+    }
+}
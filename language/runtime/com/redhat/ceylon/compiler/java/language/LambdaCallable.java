@@ -0,0 +1,117 @@
+package com.redhat.ceylon.compiler.java.language;
+
+import com.redhat.ceylon.compiler.java.metadata.Ignore;
+import com.redhat.ceylon.compiler.java.runtime.model.TypeDescriptor;
+
+/**
+ * A {@link ceylon.language.Callable} which delegates to a Java lambda,
+ * so that the compiler does not have to generate an anonymous subclass
+ * of {@link AbstractCallable} for each function reference or anonymous
+ * function. It is only used for callables with a single fixed arity,
+ * when the compiler is asked to use lambdas.
+ *
+ * @param <Return>
+ */
+public final class LambdaCallable<Return> extends AbstractCallable<Return> {
+
+    public interface Call0 {
+        Object $call$();
+    }
+
+    public interface Call1 {
+        Object $call$(Object arg0);
+    }
+
+    public interface Call2 {
+        Object $call$(Object arg0, Object arg1);
+    }
+
+    public interface Call3 {
+        Object $call$(Object arg0, Object arg1, Object arg2);
+    }
+
+    private final Call0 call0;
+    private final Call1 call1;
+    private final Call2 call2;
+    private final Call3 call3;
+
+    public LambdaCallable(TypeDescriptor $reifiedReturn,
+            TypeDescriptor $reifiedArguments,
+            String string, short variadicParameterIndex, Call0 call) {
+        super($reifiedReturn, $reifiedArguments, string, variadicParameterIndex);
+        this.call0 = call;
+        this.call1 = null;
+        this.call2 = null;
+        this.call3 = null;
+    }
+
+    public LambdaCallable(TypeDescriptor $reifiedReturn,
+            TypeDescriptor $reifiedArguments,
+            String string, short variadicParameterIndex, Call1 call) {
+        super($reifiedReturn, $reifiedArguments, string, variadicParameterIndex);
+        this.call0 = null;
+        this.call1 = call;
+        this.call2 = null;
+        this.call3 = null;
+    }
+
+    public LambdaCallable(TypeDescriptor $reifiedReturn,
+            TypeDescriptor $reifiedArguments,
+            String string, short variadicParameterIndex, Call2 call) {
+        super($reifiedReturn, $reifiedArguments, string, variadicParameterIndex);
+        this.call0 = null;
+        this.call1 = null;
+        this.call2 = call;
+        this.call3 = null;
+    }
+
+    public LambdaCallable(TypeDescriptor $reifiedReturn,
+            TypeDescriptor $reifiedArguments,
+            String string, short variadicParameterIndex, Call3 call) {
+        super($reifiedReturn, $reifiedArguments, string, variadicParameterIndex);
+        this.call0 = null;
+        this.call1 = null;
+        this.call2 = null;
+        this.call3 = call;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    @Ignore
+    public Return $call$() {
+        if (call0 == null) {
+            return super.$call$();
+        }
+        return (Return)call0.$call$();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    @Ignore
+    public Return $call$(java.lang.Object arg0) {
+        if (call1 == null) {
+            return super.$call$(arg0);
+        }
+        return (Return)call1.$call$(arg0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    @Ignore
+    public Return $call$(java.lang.Object arg0, java.lang.Object arg1) {
+        if (call2 == null) {
+            return super.$call$(arg0, arg1);
+        }
+        return (Return)call2.$call$(arg0, arg1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    @Ignore
+    public Return $call$(java.lang.Object arg0, java.lang.Object arg1, java.lang.Object arg2) {
+        if (call3 == null) {
+            return super.$call$(arg0, arg1, arg2);
+        }
+        return (Return)call3.$call$(arg0, arg1, arg2);
+    }
+}
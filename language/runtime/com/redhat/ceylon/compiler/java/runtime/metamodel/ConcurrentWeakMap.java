@@ -0,0 +1,106 @@
+package com.redhat.ceylon.compiler.java.runtime.metamodel;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map which only holds its keys weakly, like
+ * a {@link java.util.WeakHashMap} which can be read without
+ * locking. Keys are compared with {@code equals()}, and an
+ * entry goes away once its key has been collected.
+ *
+ * As with a {@link java.util.WeakHashMap}, a value which
+ * strongly references its own key keeps the entry alive.
+ */
+class ConcurrentWeakMap<K,V> {
+
+    private static final class WeakKey<K> extends WeakReference<K> {
+        private final int hash;
+
+        WeakKey(K key, ReferenceQueue<? super K> queue) {
+            super(key, queue);
+            this.hash = key.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WeakKey)) {
+                return false;
+            }
+            Object key = get();
+            // a collected key is only equal to itself
+            return key != null && key.equals(((WeakKey<?>) obj).get());
+        }
+    }
+
+    /** Used for lookups only, never stored */
+    private static final class LookupKey<K> {
+        private final K key;
+
+        LookupKey(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof WeakKey
+                    && key.equals(((WeakKey<?>) obj).get());
+        }
+    }
+
+    private final ConcurrentHashMap<Object,V> map =
+            new ConcurrentHashMap<Object,V>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+    V get(K key) {
+        return map.get(new LookupKey<K>(key));
+    }
+
+    void put(K key, V value) {
+        expungeStaleEntries();
+        map.put(new WeakKey<K>(key, queue), value);
+    }
+
+    /**
+     * Associates the given value to the given key unless
+     * it already has one, and returns the value the key is
+     * associated to in the end.
+     */
+    V putIfAbsent(K key, V value) {
+        expungeStaleEntries();
+        V existing = map.putIfAbsent(new WeakKey<K>(key, queue), value);
+        return existing == null ? value : existing;
+    }
+
+    void clear() {
+        map.clear();
+        expungeStaleEntries();
+    }
+
+    int size() {
+        expungeStaleEntries();
+        return map.size();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends K> ref;
+        while ((ref = queue.poll()) != null) {
+            map.remove(ref);
+        }
+    }
+}
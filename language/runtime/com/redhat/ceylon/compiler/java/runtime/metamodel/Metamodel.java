@@ -6,14 +6,14 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.redhat.ceylon.compiler.java.Util;
 import com.redhat.ceylon.compiler.java.language.BooleanArray;
@@ -130,20 +130,27 @@ public class Metamodel {
 
     private static RuntimeModuleManager moduleManager;
     
-    // FIXME: this will need better thinking in terms of memory usage
-    private static Map<java.lang.Class, ceylon.language.meta.declaration.NestableDeclaration> classToDeclaration
-    = new HashMap<java.lang.Class, ceylon.language.meta.declaration.NestableDeclaration>();
+    // These are read without locking, but only written to while holding the model loader lock.
+    // Classes hold their own declaration, so that the classes of unloaded modules can be collected 
+    // along with it. A new ClassValue replaces it when the module manager is reset.
+    private static volatile ClassValue<AtomicReference<ceylon.language.meta.declaration.NestableDeclaration>> classToDeclaration
+        = newClassToDeclaration();
     
-    private static Map<com.redhat.ceylon.model.typechecker.model.Declaration, Object> typeCheckModelToRuntimeModel
-        = new HashMap<com.redhat.ceylon.model.typechecker.model.Declaration, Object>();
+    // The runtime metamodel objects reference their keys, so these hold them strongly until the
+    // module manager is reset.
+    private static final ConcurrentHashMap<com.redhat.ceylon.model.typechecker.model.Declaration, Object> typeCheckModelToRuntimeModel
+        = new ConcurrentHashMap<com.redhat.ceylon.model.typechecker.model.Declaration, Object>();
 
-    private static Map<com.redhat.ceylon.model.typechecker.model.Package, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.PackageImpl> typeCheckPackagesToRuntimeModel
-        = new HashMap<com.redhat.ceylon.model.typechecker.model.Package, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.PackageImpl>();
+    private static final ConcurrentHashMap<com.redhat.ceylon.model.typechecker.model.Package, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.PackageImpl> typeCheckPackagesToRuntimeModel
+        = new ConcurrentHashMap<com.redhat.ceylon.model.typechecker.model.Package, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.PackageImpl>();
 
-    private static Map<com.redhat.ceylon.model.typechecker.model.Module, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.ModuleImpl> typeCheckModulesToRuntimeModel
-        = new HashMap<com.redhat.ceylon.model.typechecker.model.Module, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.ModuleImpl>();
+    private static final ConcurrentHashMap<com.redhat.ceylon.model.typechecker.model.Module, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.ModuleImpl> typeCheckModulesToRuntimeModel
+        = new ConcurrentHashMap<com.redhat.ceylon.model.typechecker.model.Module, com.redhat.ceylon.compiler.java.runtime.metamodel.decl.ModuleImpl>();
 
-    private static Map<TypeDescriptor,Type> typeDescriptorToProducedType = new WeakHashMap<TypeDescriptor,Type>();
+    // Model types do not reference their descriptors, so this one can hold its keys weakly.
+    private static final ConcurrentWeakMap<TypeDescriptor,Type> typeDescriptorToProducedType = new ConcurrentWeakMap<TypeDescriptor,Type>();
+
+    private static final ReifiedTypeCache reifiedTypeCache = new ReifiedTypeCache();
 
     private static final TypeDescriptor TD_ClosedTypeOfAnything
         = TypeDescriptor.klass(ceylon.language.meta.model.Type.class, ceylon.language.Anything.$TypeDescriptor$);
@@ -178,11 +185,21 @@ public class Metamodel {
         moduleManager = new RuntimeModuleManager(runtimeResolver);
         moduleManager.initCoreModules(new Modules());
         moduleManager.prepareForTypeChecking();
-        classToDeclaration.clear();
+        classToDeclaration = newClassToDeclaration();
         typeCheckModelToRuntimeModel.clear();
         typeCheckModulesToRuntimeModel.clear();
         typeCheckPackagesToRuntimeModel.clear();
         typeDescriptorToProducedType.clear();
+        reifiedTypeCache.clear();
+    }
+    
+    private static ClassValue<AtomicReference<ceylon.language.meta.declaration.NestableDeclaration>> newClassToDeclaration() {
+        return new ClassValue<AtomicReference<ceylon.language.meta.declaration.NestableDeclaration>>(){
+            @Override
+            protected AtomicReference<ceylon.language.meta.declaration.NestableDeclaration> computeValue(java.lang.Class<?> klass) {
+                return new AtomicReference<ceylon.language.meta.declaration.NestableDeclaration>();
+            }
+        };
     }
     
     // This is only used in tests
@@ -305,6 +322,28 @@ public class Metamodel {
         return false;
     }
     
+    /**
+     * Tests whether instances of the given instance type are 
+     * of the given type. Testing against a non-generic class
+     * only needs a Java subclass check, but other tests need 
+     * the typechecker, so their results are cached.
+     */
+    private static boolean is(TypeDescriptor instanceType, TypeDescriptor type) {
+        if (type instanceof TypeDescriptor.Class
+                && !((TypeDescriptor.Class)type).isGeneric()
+                && instanceType instanceof TypeDescriptor.Class) {
+            return type.is(instanceType);
+        }
+        long generation = reifiedTypeCache.generation();
+        Boolean cached = reifiedTypeCache.get(instanceType, type);
+        if (cached != null) {
+            return cached.booleanValue();
+        }
+        boolean result = type.is(instanceType);
+        reifiedTypeCache.put(instanceType, type, result, generation);
+        return result;
+    }
+    
     /** Implementation of {@code is} operator */
     public static boolean isReified(java.lang.Object instance, TypeDescriptor type){
         if (instance == null) {
@@ -319,7 +358,7 @@ public class Metamodel {
             return true;
         }
         
-        boolean result = type.is(instanceType);
+        boolean result = is(instanceType, type);
         
         if (!result
                 && !(instance instanceof ReifiedType)// we lack reified types
@@ -349,7 +388,9 @@ public class Metamodel {
     }
 
     public static Type getProducedType(TypeDescriptor reifiedType) {
-        Type producedType;
+        Type producedType = typeDescriptorToProducedType.get(reifiedType);
+        if(producedType != null)
+            return producedType;
         synchronized(getLock()){
             producedType = typeDescriptorToProducedType.get(reifiedType);
             if(producedType == null){
@@ -368,6 +409,9 @@ public class Metamodel {
     }
     
     public static <R> R getOrCreateMetamodel(com.redhat.ceylon.model.typechecker.model.Declaration declaration){
+        Object existing = typeCheckModelToRuntimeModel.get(declaration);
+        if(existing != null)
+            return (R)existing;
         synchronized(getLock()){
             Object ret = typeCheckModelToRuntimeModel.get(declaration);
             if(ret == null){
@@ -444,6 +488,9 @@ public class Metamodel {
     }
 
     public static com.redhat.ceylon.compiler.java.runtime.metamodel.decl.PackageImpl getOrCreateMetamodel(com.redhat.ceylon.model.typechecker.model.Package declaration){
+        com.redhat.ceylon.compiler.java.runtime.metamodel.decl.PackageImpl existing = typeCheckPackagesToRuntimeModel.get(declaration);
+        if(existing != null)
+            return existing;
         synchronized(getLock()){
             com.redhat.ceylon.compiler.java.runtime.metamodel.decl.PackageImpl ret = typeCheckPackagesToRuntimeModel.get(declaration);
             if(ret == null){
@@ -464,6 +511,9 @@ public class Metamodel {
 
     private static com.redhat.ceylon.compiler.java.runtime.metamodel.decl.ModuleImpl getOrCreateMetamodel(com.redhat.ceylon.model.typechecker.model.Module declaration,
             Set<com.redhat.ceylon.model.typechecker.model.Module> visitedModules, boolean optional){
+        com.redhat.ceylon.compiler.java.runtime.metamodel.decl.ModuleImpl existing = typeCheckModulesToRuntimeModel.get(declaration);
+        if(existing != null)
+            return existing;
         synchronized(getLock()){
             com.redhat.ceylon.compiler.java.runtime.metamodel.decl.ModuleImpl ret = typeCheckModulesToRuntimeModel.get(declaration);
             if(ret == null){
@@ -1277,8 +1327,12 @@ public class Metamodel {
      * In theory this can only be used for ClassOrInterface or TypeAlias.
      */
     public static ceylon.language.meta.declaration.NestableDeclaration getOrCreateMetamodel(java.lang.Class<?> klass){
+        AtomicReference<ceylon.language.meta.declaration.NestableDeclaration> declaration = classToDeclaration.get(klass);
+        ceylon.language.meta.declaration.NestableDeclaration existing = declaration.get();
+        if(existing != null)
+            return existing;
         synchronized(getLock()){
-            ceylon.language.meta.declaration.NestableDeclaration result = classToDeclaration.get(klass);
+            ceylon.language.meta.declaration.NestableDeclaration result = declaration.get();
             if (result == null) {
                 // FIXME: is this really enough?
                 String typeName = klass.getName();
@@ -1287,7 +1341,7 @@ public class Metamodel {
                         (com.redhat.ceylon.model.typechecker.model.TypeDeclaration) 
                             moduleManager.getModelLoader().getDeclaration(module, typeName, DeclarationType.TYPE);
                 result = (ceylon.language.meta.declaration.NestableDeclaration) getOrCreateMetamodel(decl);
-                classToDeclaration.put(klass, result);
+                declaration.set(result);
             }
             return result;
         }
@@ -0,0 +1,102 @@
+package com.redhat.ceylon.compiler.java.runtime.metamodel;
+
+import com.redhat.ceylon.compiler.java.runtime.model.TypeDescriptor;
+import com.redhat.ceylon.model.typechecker.context.CacheStats;
+import com.redhat.ceylon.model.typechecker.context.ClockCache;
+
+/**
+ * Remembers the result of reified type tests, that is,
+ * whether instances of a given type descriptor are of
+ * another given type descriptor. Those tests otherwise
+ * need both descriptors to be turned into model types
+ * and run through the typechecker's subtyping algorithm.
+ *
+ * Descriptors are compared structurally, because compiled
+ * code creates fresh descriptors for most tests. They are
+ * held strongly, in the shared {@link ClockCache}, which
+ * holds at most a given number of entries.
+ */
+class ReifiedTypeCache {
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final class Key {
+        private final TypeDescriptor instanceType;
+        private final TypeDescriptor testedType;
+        private final int hash;
+
+        Key(TypeDescriptor instanceType,
+                TypeDescriptor testedType) {
+            this.instanceType = instanceType;
+            this.testedType = testedType;
+            this.hash = 31 * instanceType.hashCode()
+                    + testedType.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && instanceType.equals(other.instanceType)
+                    && testedType.equals(other.testedType);
+        }
+    }
+
+    private final ClockCache<Key,Boolean> results;
+
+    ReifiedTypeCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ReifiedTypeCache(int capacity) {
+        results = new ClockCache<Key,Boolean>(capacity);
+    }
+
+    /**
+     * The number of clears so far, to be read before
+     * running a test whose result is to be {@link #put}.
+     */
+    long generation() {
+        return results.generation();
+    }
+
+    /**
+     * Returns the cached result of testing whether instances
+     * of the given instance type are of the given tested
+     * type, or null if that was not tested yet.
+     */
+    Boolean get(TypeDescriptor instanceType,
+            TypeDescriptor testedType) {
+        return results.get(new Key(instanceType, testedType));
+    }
+
+    void put(TypeDescriptor instanceType,
+            TypeDescriptor testedType, boolean result,
+            long generation) {
+        results.put(new Key(instanceType, testedType), 
+                result, generation);
+    }
+
+    void clear() {
+        results.clear();
+    }
+
+    int size() {
+        return results.getStats().getSize();
+    }
+
+    CacheStats getStats() {
+        return results.getStats();
+    }
+}
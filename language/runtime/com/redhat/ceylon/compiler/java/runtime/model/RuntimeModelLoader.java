@@ -1,10 +1,10 @@
 package com.redhat.ceylon.compiler.java.runtime.model;
 
 import java.net.URI;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.redhat.ceylon.model.cmr.ArtifactResult;
 import com.redhat.ceylon.model.cmr.JDKUtils;
@@ -35,8 +35,9 @@ public class RuntimeModelLoader extends ReflectionModelLoader {
     public static final int MAX_JBOSS_MODULES_WAITS = 4;
     public static final int JBOSS_MODULES_TIMEOUT = 5000;
     
-    private Map<Module,ClassLoader> classLoaders = new HashMap<Module,ClassLoader>();
-    private Map<String, Module> moduleCache = new HashMap<String, Module>();
+    // read without the loader lock by class mirror lookups in concurrent mode
+    private Map<Module,ClassLoader> classLoaders = new ConcurrentHashMap<Module,ClassLoader>();
+    private Map<String, Module> moduleCache = new ConcurrentHashMap<String, Module>();
     private CachedTOCJars jars = new CachedTOCJars();
 
     public RuntimeModelLoader(ModuleManager moduleManager, Modules modules) {
@@ -126,7 +127,16 @@ public class RuntimeModelLoader extends ReflectionModelLoader {
     }
 
     public void addModuleClassLoader(Module module, ClassLoader classLoader) {
-        classLoaders.put(module, classLoader);
+        if(classLoader != null)
+            classLoaders.put(module, classLoader);
+        else
+            classLoaders.remove(module);
+    }
+
+    @Override
+    protected boolean isClassMirrorLookupThreadSafe() {
+        // class loaders are thread-safe, and so are our maps
+        return true;
     }
 
     @Override
@@ -5,7 +5,9 @@ import static java.lang.Double.NEGATIVE_INFINITY;
 import static java.lang.Double.NaN;
 import static java.lang.Double.POSITIVE_INFINITY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -280,4 +282,19 @@ public class FloatTest {
         }
     }
 
+
+    @Test
+    public void testInstanceCache() {
+        assertSame(Float.instance(0.0), Float.instance(0.0));
+        assertSame(Float.instance(1.0), Float.instance(1.0));
+        assertSame(Float.instance(-128.0), Float.instance(-128.0));
+        assertNotSame(Float.instance(0.5), Float.instance(0.5));
+        assertNotSame(Float.instance(0.0), Float.instance(-0.0));
+        assertEquals(Double.doubleToRawLongBits(-0.0), 
+                Double.doubleToRawLongBits(Float.instance(-0.0).doubleValue()));
+        assertTrue(Double.isNaN(Float.instance(NaN).doubleValue()));
+        assertEquals(POSITIVE_INFINITY, Float.instance(POSITIVE_INFINITY).doubleValue(), 0.0);
+        assertEquals(NEGATIVE_INFINITY, Float.instance(NEGATIVE_INFINITY).doubleValue(), 0.0);
+        assertEquals(0x1p63, Float.instance(0x1p63).doubleValue(), 0.0);
+    }
 }
@@ -1,6 +1,8 @@
 package ceylon.language;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import org.junit.Test;
@@ -28,4 +30,17 @@ public class IntegerTest {
             // Checking that this is thrown
         }
     }
+
+    @Test
+    public void testInstanceCache() {
+        assertSame(Integer.instance(0), Integer.instance(0));
+        assertSame(Integer.instance(-128), Integer.instance(-128));
+        assertSame(Integer.instance(127), Integer.instance(127));
+        assertSame(Integer.instance(41), Integer.instance(40).getSuccessor());
+        assertEquals(-128L, Integer.instance(-128).longValue());
+        assertEquals(127L, Integer.instance(127).longValue());
+        assertNotSame(Integer.instance(Long.MAX_VALUE), Integer.instance(Long.MAX_VALUE));
+        assertNotSame(Integer.instance(Long.MIN_VALUE), Integer.instance(Long.MIN_VALUE));
+        assertEquals(Integer.instance(Long.MIN_VALUE), Integer.instance(Long.MIN_VALUE));
+    }
 }
@@ -0,0 +1,87 @@
+package ceylon.language;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class StringTest {
+
+    private static java.lang.String repeat(java.lang.String s, int times) {
+        java.lang.StringBuilder sb = new java.lang.StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private void assertIndexing(java.lang.String value) {
+        int[] codePoints = new int[value.codePointCount(0, value.length())];
+        for (int i = 0, offset = 0; i < codePoints.length; i++) {
+            codePoints[i] = value.codePointAt(offset);
+            offset += java.lang.Character.charCount(codePoints[i]);
+        }
+        int size = codePoints.length;
+        assertEquals(size, String.getSize(value));
+        assertEquals(size, String.instance(value).getSize());
+        for (int i = 0; i < size; i++) {
+            assertEquals(codePoints[i],
+                    String.getFromFirst(value, i).intValue());
+            assertEquals(codePoints[size-1-i],
+                    String.getFromLast(value, i).intValue());
+        }
+        assertNull(String.getFromFirst(value, -1));
+        assertNull(String.getFromFirst(value, size));
+        assertNull(String.getFromLast(value, -1));
+        assertNull(String.getFromLast(value, size));
+        for (int from = 0; from < size; from += 7) {
+            for (int length = 0; from + length <= size + 3; length += 5) {
+                int end = Math.min(from + length, size);
+                java.lang.String expected =
+                        new java.lang.String(codePoints, from, end - from);
+                assertEquals(expected, String.measure(value, from, length));
+                if (length > 0) {
+                    assertEquals(expected, String.span(value, from, from + length - 1));
+                }
+            }
+            assertEquals(new java.lang.String(codePoints, from, size - from),
+                    String.spanFrom(value, from));
+            assertEquals(new java.lang.String(codePoints, 0, from),
+                    String.initial(value, from));
+            assertEquals(new java.lang.String(codePoints, size - from, from),
+                    String.terminal(value, from));
+        }
+    }
+
+    @Test
+    public void testIndexingShort() {
+        assertIndexing("");
+        assertIndexing("hello");
+        assertIndexing("h\ud83d\ude00llo");
+    }
+
+    @Test
+    public void testIndexingAscii() {
+        assertIndexing(repeat("hello world ", 50));
+    }
+
+    @Test
+    public void testIndexingSurrogates() {
+        assertIndexing(repeat("a\ud83d\ude00b\ud83c\udf89", 100));
+        assertIndexing(repeat("\ud83d\ude00", 200));
+        // unpaired surrogates count as a code point each
+        assertIndexing(repeat("a\ud83db\ude00", 100));
+    }
+
+    @Test
+    public void testIndexingInterleaved() {
+        java.lang.String first = repeat("x\ud83d\ude00", 100);
+        java.lang.String second = repeat("y", 300);
+        for (int i = 0; i < 100; i++) {
+            assertEquals('x', String.getFromFirst(first, 2*i).intValue());
+            assertEquals('y', String.getFromFirst(second, 2*i).intValue());
+        }
+        assertEquals(200, String.getSize(first));
+        assertEquals(300, String.getSize(second));
+    }
+}
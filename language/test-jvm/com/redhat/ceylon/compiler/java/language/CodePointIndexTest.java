@@ -0,0 +1,102 @@
+package com.redhat.ceylon.compiler.java.language;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CodePointIndexTest {
+
+    private static java.lang.String fresh(java.lang.String s, int times) {
+        java.lang.StringBuilder sb = new java.lang.StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testOneShotCallsDoNotIndex() {
+        java.lang.String value = fresh("a\uD834\uDD1E", 1000);
+        assertTrue(ceylon.language.String.longerThan(value, 1500));
+        assertFalse(CodePointIndex.isIndexed(value));
+
+        value = fresh("a\uD834\uDD1E", 1000);
+        assertEquals("\uD834\uDD1E" + fresh("a\uD834\uDD1E", 999), 
+                ceylon.language.String.getRest(value));
+        assertFalse(CodePointIndex.isIndexed(value));
+
+        value = fresh("a\uD834\uDD1E", 1000);
+        assertEquals("a\uD834\uDD1Ea", ceylon.language.String.span(value, 1000, 1002));
+        assertFalse(CodePointIndex.isIndexed(value));
+
+        value = fresh("a\uD834\uDD1E", 1000);
+        assertEquals("\uD834\uDD1E", ceylon.language.String.getFromLast(value, 100).toString());
+        assertFalse(CodePointIndex.isIndexed(value));
+
+        value = fresh("a\uD834\uDD1E", 1000);
+        assertEquals(fresh("a\uD834\uDD1E", 100), ceylon.language.String.terminal(value, 200));
+        assertFalse(CodePointIndex.isIndexed(value));
+
+        value = fresh("a\uD834\uDD1E", 1000);
+        assertEquals(2000, ceylon.language.String.getSize(value));
+        assertFalse(CodePointIndex.isIndexed(value));
+    }
+
+    @Test
+    public void testRepeatedCallsIndex() {
+        java.lang.String value = fresh("a\uD834\uDD1E", 1000);
+        for (int i = 0; i <= 2000; i++) {
+            assertEquals(value.offsetByCodePoints(0, i), 
+                    CodePointIndex.offset(value, i));
+        }
+        assertTrue(CodePointIndex.isIndexed(value));
+        assertEquals(2000, CodePointIndex.size(value));
+        try {
+            CodePointIndex.offset(value, 2001);
+            throw new AssertionError("expected an IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+
+        value = fresh("a\uD834\uDD1E", 1000);
+        assertEquals(1500, CodePointIndex.offset(value, 1000));
+        assertFalse(CodePointIndex.isIndexed(value));
+        assertEquals(1500, CodePointIndex.offset(value, 1000));
+        assertTrue(CodePointIndex.isIndexed(value));
+
+        // asking for the size never indexes
+        value = fresh("a\uD834\uDD1E", 1000);
+        assertEquals(2000, CodePointIndex.size(value));
+        assertEquals(2000, CodePointIndex.size(value));
+        assertFalse(CodePointIndex.isIndexed(value));
+
+        value = fresh("a\uD834\uDD1E", 1000);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(value.offsetByCodePoints(value.length(), -i-1), 
+                    CodePointIndex.offsetFromEnd(value, i));
+        }
+        assertTrue(CodePointIndex.isIndexed(value));
+    }
+
+    @Test
+    public void testBmpStringIndex() {
+        java.lang.String value = fresh("abc", 100);
+        assertEquals(250, CodePointIndex.offset(value, 250));
+        assertEquals(250, CodePointIndex.offset(value, 250));
+        // no surrogate pairs: the size is all the index needs
+        assertTrue(CodePointIndex.isIndexed(value));
+        assertEquals(300, CodePointIndex.size(value));
+        assertEquals(299, CodePointIndex.offsetFromEnd(value, 0));
+    }
+
+    @Test
+    public void testShortPrefixDoesNotIndex() {
+        java.lang.String value = fresh("a\uD834\uDD1E", 1000);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(3, CodePointIndex.offset(value, 2));
+        }
+        assertFalse(CodePointIndex.isIndexed(value));
+    }
+}
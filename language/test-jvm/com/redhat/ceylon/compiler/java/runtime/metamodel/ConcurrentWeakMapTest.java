@@ -0,0 +1,82 @@
+package com.redhat.ceylon.compiler.java.runtime.metamodel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ceylon.language.Sequence;
+import ceylon.language.String;
+
+import com.redhat.ceylon.compiler.java.runtime.model.TypeDescriptor;
+import com.redhat.ceylon.model.typechecker.model.Class;
+import com.redhat.ceylon.model.typechecker.model.Type;
+
+public class ConcurrentWeakMapTest {
+
+    @Test
+    public void testLookup(){
+        ConcurrentWeakMap<String,Integer> map = new ConcurrentWeakMap<String,Integer>();
+        String key = new String("a");
+        Assert.assertNull(map.get(key));
+        map.put(key, 1);
+        Assert.assertEquals(Integer.valueOf(1), map.get(key));
+        // keys are compared with equals()
+        Assert.assertEquals(Integer.valueOf(1), map.get(new String("a")));
+        Assert.assertEquals(Integer.valueOf(1), map.putIfAbsent(new String("a"), 2));
+        Assert.assertEquals(Integer.valueOf(3), map.putIfAbsent(new String("b"), 3));
+        map.clear();
+        Assert.assertNull(map.get(key));
+    }
+
+    @Test
+    public void testCollectedKeys() throws InterruptedException{
+        ConcurrentWeakMap<Object,Integer> map = new ConcurrentWeakMap<Object,Integer>();
+        Object kept = new Object();
+        map.put(kept, 0);
+        for (int i = 0; i < 100; i++) {
+            map.put(new Object(), i);
+        }
+        for (int i = 0; i < 50 && map.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(Integer.valueOf(0), map.get(kept));
+    }
+
+    @Test
+    public void testCollectedProducedTypes() throws InterruptedException{
+        // the shape of the cache of model types for type descriptors
+        ConcurrentWeakMap<TypeDescriptor,Type> map = new ConcurrentWeakMap<TypeDescriptor,Type>();
+        TypeDescriptor kept = TypeDescriptor.klass(Sequence.class, String.$TypeDescriptor$);
+        map.put(kept, new Class().getType());
+        TypeDescriptor nested = kept;
+        for (int i = 0; i < 20; i++) {
+            nested = TypeDescriptor.klass(Sequence.class, nested);
+            map.put(nested, new Class().getType());
+        }
+        Assert.assertEquals(21, map.size());
+        nested = null;
+        // model types do not keep their descriptors alive
+        for (int i = 0; i < 50 && map.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, map.size());
+        Assert.assertNotNull(map.get(TypeDescriptor.klass(Sequence.class, String.$TypeDescriptor$)));
+    }
+
+    @Test
+    public void testValueKeepsKeyAlive() throws InterruptedException{
+        ConcurrentWeakMap<Object,Object[]> map = new ConcurrentWeakMap<Object,Object[]>();
+        for (int i = 0; i < 10; i++) {
+            Object key = new Object();
+            map.put(key, new Object[] { key });
+        }
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // which is why the maps to runtime metamodel objects are not weak
+        Assert.assertEquals(10, map.size());
+    }
+}
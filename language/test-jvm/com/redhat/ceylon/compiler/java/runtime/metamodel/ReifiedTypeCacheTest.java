@@ -0,0 +1,102 @@
+package com.redhat.ceylon.compiler.java.runtime.metamodel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ceylon.language.Integer;
+import ceylon.language.List;
+import ceylon.language.Sequence;
+import ceylon.language.String;
+
+import com.redhat.ceylon.compiler.java.runtime.model.TypeDescriptor;
+import com.redhat.ceylon.model.typechecker.context.CacheStats;
+
+public class ReifiedTypeCacheTest {
+
+    @Test
+    public void testLookup(){
+        ReifiedTypeCache cache = new ReifiedTypeCache();
+        TypeDescriptor listOfStrings = TypeDescriptor.klass(List.class, String.$TypeDescriptor$);
+        TypeDescriptor sequenceOfStrings = TypeDescriptor.klass(Sequence.class, String.$TypeDescriptor$);
+        TypeDescriptor sequenceOfIntegers = TypeDescriptor.klass(Sequence.class, Integer.$TypeDescriptor$);
+        Assert.assertNull(cache.get(sequenceOfStrings, listOfStrings));
+        cache.put(sequenceOfStrings, listOfStrings, true, cache.generation());
+        cache.put(sequenceOfIntegers, listOfStrings, false, cache.generation());
+        Assert.assertEquals(Boolean.TRUE, cache.get(sequenceOfStrings, listOfStrings));
+        Assert.assertEquals(Boolean.FALSE, cache.get(sequenceOfIntegers, listOfStrings));
+        // descriptors are compared structurally
+        Assert.assertEquals(Boolean.TRUE, cache.get(
+                TypeDescriptor.klass(Sequence.class, String.$TypeDescriptor$),
+                TypeDescriptor.klass(List.class, String.$TypeDescriptor$)));
+        // the order matters
+        Assert.assertNull(cache.get(listOfStrings, sequenceOfStrings));
+        Assert.assertEquals(2, cache.size());
+        cache.clear();
+        Assert.assertNull(cache.get(sequenceOfStrings, listOfStrings));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testHitRateWithFreshDescriptors(){
+        ReifiedTypeCache cache = new ReifiedTypeCache();
+        // like compiled code, create fresh descriptors for every test
+        for (int i = 0; i < 1000; i++) {
+            TypeDescriptor instanceType = TypeDescriptor.klass(Sequence.class,
+                    i % 2 == 0 ? String.$TypeDescriptor$ : Integer.$TypeDescriptor$);
+            TypeDescriptor testedType = TypeDescriptor.klass(List.class, String.$TypeDescriptor$);
+            if (cache.get(instanceType, testedType) == null) {
+                cache.put(instanceType, testedType, i % 2 == 0, cache.generation());
+            }
+            if (i % 100 == 0) {
+                // fresh descriptors must survive collections
+                System.gc();
+            }
+        }
+        CacheStats stats = cache.getStats();
+        Assert.assertEquals(2, stats.getSize());
+        Assert.assertEquals(998, stats.getHits());
+        Assert.assertEquals(2, stats.getMisses());
+        Assert.assertTrue(stats.toString(), stats.getHitRate() > 0.99);
+    }
+
+    @Test
+    public void testCapacity(){
+        ReifiedTypeCache cache = new ReifiedTypeCache(2);
+        TypeDescriptor listOfStrings = TypeDescriptor.klass(List.class, String.$TypeDescriptor$);
+        TypeDescriptor a = TypeDescriptor.klass(Sequence.class, String.$TypeDescriptor$);
+        TypeDescriptor b = TypeDescriptor.klass(Sequence.class, Integer.$TypeDescriptor$);
+        TypeDescriptor c = TypeDescriptor.klass(Sequence.class, listOfStrings);
+        cache.put(a, listOfStrings, true, cache.generation());
+        cache.put(b, listOfStrings, false, cache.generation());
+        // a gets a second chance
+        Assert.assertEquals(Boolean.TRUE, cache.get(a, listOfStrings));
+        cache.put(c, listOfStrings, false, cache.generation());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(Boolean.TRUE, cache.get(a, listOfStrings));
+        Assert.assertNull(cache.get(b, listOfStrings));
+        Assert.assertEquals(Boolean.FALSE, cache.get(c, listOfStrings));
+        Assert.assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void testResultComputedBeforeClear(){
+        ReifiedTypeCache cache = new ReifiedTypeCache();
+        TypeDescriptor listOfStrings = TypeDescriptor.klass(List.class, String.$TypeDescriptor$);
+        TypeDescriptor sequenceOfStrings = TypeDescriptor.klass(Sequence.class, String.$TypeDescriptor$);
+        long generation = cache.generation();
+        // the module manager is reset while the test runs
+        cache.clear();
+        cache.put(sequenceOfStrings, listOfStrings, true, generation);
+        Assert.assertNull(cache.get(sequenceOfStrings, listOfStrings));
+    }
+
+    @Test
+    public void testZeroCapacity(){
+        ReifiedTypeCache cache = new ReifiedTypeCache(0);
+        TypeDescriptor listOfStrings = TypeDescriptor.klass(List.class, String.$TypeDescriptor$);
+        TypeDescriptor sequenceOfStrings = TypeDescriptor.klass(Sequence.class, String.$TypeDescriptor$);
+        cache.put(sequenceOfStrings, listOfStrings, true, cache.generation());
+        Assert.assertNull(cache.get(sequenceOfStrings, listOfStrings));
+        Assert.assertEquals(0, cache.size());
+    }
+}
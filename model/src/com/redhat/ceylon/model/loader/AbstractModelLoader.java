@@ -18,6 +18,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.redhat.ceylon.common.Backend;
 import com.redhat.ceylon.common.Backends;
@@ -99,6 +102,7 @@ import com.redhat.ceylon.model.typechecker.util.ModuleManager;
 public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader, DeclarationCompleter {
 
     public static final String JAVA_BASE_MODULE_NAME = "java.base";
+    public static final String CONCURRENT_PROPERTY = "ceylon.modelloader.concurrent";
     public static final String CEYLON_LANGUAGE = "ceylon.language";
     public static final String CEYLON_LANGUAGE_MODEL = "ceylon.language.meta.model";
     public static final String CEYLON_LANGUAGE_MODEL_DECLARATION = "ceylon.language.meta.declaration";
@@ -299,6 +303,28 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     protected boolean binaryCompatibilityErrorRaised = false;
     protected Timer timer;
     private Map<String,LazyPackage> modulelessPackages = new HashMap<String,LazyPackage>();
+    /**
+     * In concurrent mode, lookups which hit these caches do not take the loader lock. Everything
+     * which creates or completes a model still happens while holding it, so that completions 
+     * which depend on each other cannot deadlock. Entries are only published once they are fully 
+     * set up: the lazy models then complete themselves under the lock when first used.
+     * 
+     * Class mirror lookups do not touch the model, so when the subclass can look them up from 
+     * several threads, they do not take the loader lock either, but one lock out of a few 
+     * stripes, picked by class name.
+     */
+    private volatile boolean concurrent = Boolean.getBoolean(CONCURRENT_PROPERTY);
+    private final ConcurrentMap<String, ClassMirror> publishedClassMirrors = new ConcurrentHashMap<String, ClassMirror>();
+    private final Set<String> missingClassMirrors = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final int CLASS_MIRROR_LOCK_STRIPES = 16;
+    private static final ThreadLocal<Boolean> inStripedClassMirrorLookup = new ThreadLocal<Boolean>();
+    private final ReentrantLock[] classMirrorLocks = new ReentrantLock[CLASS_MIRROR_LOCK_STRIPES];
+    {
+        for(int i=0;i<classMirrorLocks.length;i++)
+            classMirrorLocks[i] = new ReentrantLock();
+    }
+    private final Map<String, LazyPackage> publishedPackages = new ConcurrentHashMap<String, LazyPackage>();
+    private final Map<String, Declaration> publishedDeclarations = new ConcurrentHashMap<String, Declaration>();
     private ParameterNameParser parameterNameParser = new ParameterNameParser(this);
     protected JdkProvider jdkProvider;
     
@@ -324,6 +350,31 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         return this;
     }
 
+    /**
+     * Enables or disables the concurrent mode, where looking up class mirrors, packages and 
+     * toplevel declarations which were already loaded does not take the loader lock. Defaults 
+     * to the value of the {@value #CONCURRENT_PROPERTY} system property.
+     */
+    public void setConcurrent(boolean concurrent){
+        synchronized(getLock()){
+            this.concurrent = concurrent;
+            if(!concurrent){
+                clearPublishedCaches();
+            }
+        }
+    }
+
+    public boolean isConcurrent(){
+        return concurrent;
+    }
+
+    private void clearPublishedCaches() {
+        publishedClassMirrors.clear();
+        missingClassMirrors.clear();
+        publishedPackages.clear();
+        publishedDeclarations.clear();
+    }
+
     /**
      * To be redefined by subclasses if they don't need local declarations.
      */
@@ -341,6 +392,15 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     public boolean searchAgain(ClassMirror cachedMirror, Module module, String name) {
         return false;
     }
+
+    /**
+     * To be redefined by subclasses whose {@link #lookupNewClassMirror(Module, String)} may be
+     * called from several threads at once. In concurrent mode, their class mirror lookups do not 
+     * take the loader lock. Defaults to false.
+     */
+    protected boolean isClassMirrorLookupThreadSafe() {
+        return false;
+    }
     
     public boolean searchAgain(Declaration cachedDeclaration, LazyPackage lazyPackage, String name) {
         return false;
@@ -355,19 +415,19 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
      * @return a ClassMirror for the specified class, or null if not found.
      */
     public final ClassMirror lookupClassMirror(Module module, String name) {
+        if(concurrent){
+            ClassMirror mirror = publishedClassMirrors.get(cacheKeyByModule(module, name));
+            if(mirror != null && !searchAgain(mirror, module, name))
+                return mirror;
+            if(isClassMirrorLookupThreadSafe())
+                return lookupClassMirrorStriped(module, name);
+        }
         synchronized(getLock()){
             timer.startIgnore(TIMER_MODEL_LOADER_CATEGORY);
             try{
+                String publishedKey = concurrent ? cacheKeyByModule(module, name) : null;
                 // Java array classes are not where we expect them
-                if (JAVA_LANG_OBJECT_ARRAY.equals(name)
-                        || JAVA_LANG_BOOLEAN_ARRAY.equals(name)
-                        || JAVA_LANG_BYTE_ARRAY.equals(name)
-                        || JAVA_LANG_SHORT_ARRAY.equals(name)
-                        || JAVA_LANG_INT_ARRAY.equals(name)
-                        || JAVA_LANG_LONG_ARRAY.equals(name)
-                        || JAVA_LANG_FLOAT_ARRAY.equals(name)
-                        || JAVA_LANG_DOUBLE_ARRAY.equals(name)
-                        || JAVA_LANG_CHAR_ARRAY.equals(name)) {
+                if (isJavaLangArray(name)) {
                     // turn them into their real class location (get rid of the "java.lang" prefix)
                     name = "com.redhat.ceylon.compiler.java.language" + name.substring(9);
                     module = getLanguageModule();
@@ -377,19 +437,92 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
                 if(classMirrorCache.containsKey(cacheKey)) {
                     ClassMirror cachedMirror = classMirrorCache.get(cacheKey);
                     if (! searchAgain(cachedMirror, module, name)) {
-                        return cachedMirror;
+                        return publishClassMirror(publishedKey, cachedMirror);
                     }
                 }
                 ClassMirror mirror = lookupNewClassMirror(module, name);
                 // we even cache null results
                 classMirrorCache.put(cacheKey, mirror);
-                return mirror;
+                return publishClassMirror(publishedKey, mirror);
             }finally{
                 timer.stopIgnore(TIMER_MODEL_LOADER_CATEGORY);
             }
         }
     }
 
+    private static boolean isJavaLangArray(String name) {
+        return JAVA_LANG_OBJECT_ARRAY.equals(name)
+                || JAVA_LANG_BOOLEAN_ARRAY.equals(name)
+                || JAVA_LANG_BYTE_ARRAY.equals(name)
+                || JAVA_LANG_SHORT_ARRAY.equals(name)
+                || JAVA_LANG_INT_ARRAY.equals(name)
+                || JAVA_LANG_LONG_ARRAY.equals(name)
+                || JAVA_LANG_FLOAT_ARRAY.equals(name)
+                || JAVA_LANG_DOUBLE_ARRAY.equals(name)
+                || JAVA_LANG_CHAR_ARRAY.equals(name);
+    }
+
+    /**
+     * Concurrent mode lookup of a class mirror which was not published yet, under the stripe 
+     * lock for its name. Only threads which hold no other loader lock wait for the stripe: the 
+     * others look the class up without it, so that we cannot deadlock. Both results and misses 
+     * are cached in the published caches.
+     */
+    private ClassMirror lookupClassMirrorStriped(Module module, String name) {
+        String publishedKey = cacheKeyByModule(module, name);
+        ReentrantLock lock = classMirrorLocks[(publishedKey.hashCode() & 0x7fffffff) % classMirrorLocks.length];
+        boolean nested = inStripedClassMirrorLookup.get() != null;
+        boolean locked;
+        if(nested || Thread.holdsLock(getLock())){
+            locked = lock.tryLock();
+        }else{
+            lock.lock();
+            locked = true;
+        }
+        try{
+            inStripedClassMirrorLookup.set(Boolean.TRUE);
+            // it may have been looked up while we waited for the lock
+            ClassMirror cachedMirror = publishedClassMirrors.get(publishedKey);
+            if(cachedMirror != null
+                    || missingClassMirrors.contains(publishedKey)){
+                if(!searchAgain(cachedMirror, module, name))
+                    return cachedMirror;
+            }
+            Module lookupModule = module;
+            String lookupName = name;
+            if(isJavaLangArray(name)){
+                lookupName = "com.redhat.ceylon.compiler.java.language" + name.substring(9);
+                lookupModule = getLanguageModule();
+            }
+            ClassMirror mirror = lookupNewClassMirror(lookupModule, lookupName);
+            if(mirror == null){
+                missingClassMirrors.add(publishedKey);
+                return null;
+            }
+            missingClassMirrors.remove(publishedKey);
+            if(cachedMirror != null){
+                // searched again on purpose
+                publishedClassMirrors.put(publishedKey, mirror);
+                return mirror;
+            }
+            // without the stripe lock another thread may have been quicker
+            ClassMirror existing = publishedClassMirrors.putIfAbsent(publishedKey, mirror);
+            return existing != null ? existing : mirror;
+        }finally{
+            if(!nested)
+                inStripedClassMirrorLookup.remove();
+            if(locked)
+                lock.unlock();
+        }
+    }
+
+    private ClassMirror publishClassMirror(String publishedKey, ClassMirror mirror) {
+        // we only publish what we found, misses always go through the lock
+        if(publishedKey != null && mirror != null)
+            publishedClassMirrors.put(publishedKey, mirror);
+        return mirror;
+    }
+
     protected String cacheKeyByModule(Module module, String name) {
         return getCacheKeyByModule(module, name);
     }
@@ -1632,7 +1765,18 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     }
 
     public Declaration convertToDeclaration(Module module, String typeName, DeclarationType declarationType)  {
-        return convertToDeclaration(module, null, typeName, declarationType);
+        if(!concurrent)
+            return convertToDeclaration(module, null, typeName, declarationType);
+        String key = cacheKeyByModule(module, typeName) + "/" + declarationType;
+        Declaration decl = publishedDeclarations.get(key);
+        if(decl == null){
+            decl = convertToDeclaration(module, null, typeName, declarationType);
+            // only publish it once it's been set up and the lock released,
+            // and never publish an error which a later lookup could resolve
+            if(decl != null && !(decl instanceof UnknownType))
+                publishedDeclarations.put(key, decl);
+        }
+        return decl;
     }
 
     private Declaration convertToDeclaration(Module module, Declaration container, String typeName, DeclarationType declarationType)  {
@@ -1745,6 +1889,11 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
     // Packages
     
     public LazyPackage findExistingPackage(Module module, String pkgName) {
+        if(concurrent){
+            LazyPackage pkg = findPublishedPackage(module, pkgName);
+            if(pkg != null)
+                return pkg;
+        }
         synchronized(getLock()){
             String quotedPkgName = JVMModuleUtil.quoteJavaKeywords(pkgName);
             LazyPackage pkg = findCachedPackage(module, quotedPkgName);
@@ -1778,12 +1927,27 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
         return null;
     }
 
+    private LazyPackage findPublishedPackage(Module module, String pkgName) {
+        if(module == null)
+            return null;
+        LazyPackage pkg = publishedPackages.get(cacheKeyByModule(module, pkgName));
+        // same check as findCachedPackage
+        if(pkg != null && module != null && pkg.getModule() != null && !module.equals(pkg.getModule()))
+            return null;
+        return pkg;
+    }
+
     public LazyPackage findOrCreatePackage(Module module, final String pkgName)  {
+        if(concurrent){
+            LazyPackage pkg = findPublishedPackage(module, pkgName);
+            if(pkg != null)
+                return pkg;
+        }
         synchronized(getLock()){
             String quotedPkgName = JVMModuleUtil.quoteJavaKeywords(pkgName);
             LazyPackage pkg = findCachedPackage(module, quotedPkgName);
             if(pkg != null)
-                return pkg;
+                return publishPackage(module, pkgName, pkg);
             // try to find it from the module, perhaps it already got created and we didn't catch it
             if(module instanceof LazyModule){
                 pkg = (LazyPackage) ((LazyModule) module).findPackageNoLazyLoading(pkgName);
@@ -1811,10 +1975,17 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             if(packageDescriptorsNeedLoading)
                 loadPackageDescriptor(pkg);
 
-            return pkg;
+            return publishPackage(module, pkgName, pkg);
         }
     }
 
+    private LazyPackage publishPackage(Module module, String pkgName, LazyPackage pkg) {
+        // only publish packages once they're bound to their module, and once their descriptor is loaded
+        if(concurrent && module != null && pkg.getModule() != null && packageDescriptorsNeedLoading)
+            publishedPackages.put(cacheKeyByModule(module, pkgName), pkg);
+        return pkg;
+    }
+
     public void loadPackageDescriptors()  {
         synchronized(getLock()){
             for(Package pkg : packagesByName.values()){
@@ -2947,6 +3118,9 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
                 continue;
             if(methodMirror.isStaticInit())
                 continue;
+            // the bodies of Java lambdas, which Ceylon names cannot clash with
+            if(isCeylon && methodMirror.getName().startsWith("lambda$"))
+                continue;
             if(isCeylon && methodMirror.isStatic()
                     && methodMirror.getAnnotation(CEYLON_ENUMERATED_ANNOTATION) == null)
                 continue;
@@ -5366,6 +5540,8 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
             for (String keyToRemove : keysToRemove) {
                 classMirrorCache.remove(keyToRemove);
             }
+            // these are cheap to repopulate
+            clearPublishedCaches();
         }
     }
 
@@ -5507,6 +5683,8 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
      */
     public void cacheModulelessPackages() {
         synchronized(getLock()){
+            // lookups may have published these packages under their old module
+            clearPublishedCaches();
             for(LazyPackage pkg : modulelessPackages.values()){
                 String quotedPkgName = JVMModuleUtil.quoteJavaKeywords(pkg.getQualifiedNameString());
                 if (pkg.getModule() != null) {
@@ -5537,6 +5715,8 @@ public abstract class AbstractModelLoader implements ModelCompleter, ModelLoader
                 defaultModulePackages.add(newPkg);
                 newPkg.setModule(defaultModule);
                 defaultPackage.setModule(null);
+                // forget whatever was published for the old default package
+                clearPublishedCaches();
             }
         }
     }
@@ -392,40 +392,31 @@ public class JvmBackendUtil {
     }
     
     public static SortedSet<String> listPackages(File jar, PathFilter pathFilter) throws IOException {
+        PackageIndexCache cache = PackageIndexCache.getDefault();
+        SortedSet<String> folders = cache != null
+                ? cache.getClassFolders(jar)
+                : PackageIndexCache.listClassFolders(jar);
         SortedSet<String> packages = new TreeSet<String>();
-        try(ZipFile zf = new ZipFile(jar)){
-            Enumeration<? extends ZipEntry> entries = zf.entries();
-            while(entries.hasMoreElements()){
-                ZipEntry entry = entries.nextElement();
-                if(entry.isDirectory())
-                    continue;
-                String pkg = getPackageForPath(entry.getName(), pathFilter);
-                if(pkg != null)
-                    packages.add(pkg);
-            }
+        for(String folder : folders){
+            String pkg = getPackageForFolder(folder, pathFilter);
+            if(pkg != null)
+                packages.add(pkg);
         }
         return packages;
     }
 
-    private static String getPackageForPath(String path, PathFilter pathFilter) {
-        if(definesPackage(path)){
-            int sep = path.lastIndexOf('/');
-            if(sep != -1)
-                path = path.substring(0, sep);
-            else
-                path = "";// default package
-            String pkg = path;
-            // make sure we unquote any package part
-            pkg = pkg.replace("$", "");
-            String pathQuery;
-            if(path.isEmpty())
-                pathQuery = pkg;
-            else
-                pathQuery = pkg+"/";
-            if(pathFilter == null || pathFilter.accept(pathQuery)){
-                pkg = pkg.replace('/', '.');
-                return pkg;
-            }
+    private static String getPackageForFolder(String path, PathFilter pathFilter) {
+        String pkg = path;
+        // make sure we unquote any package part
+        pkg = pkg.replace("$", "");
+        String pathQuery;
+        if(path.isEmpty())
+            pathQuery = pkg;
+        else
+            pathQuery = pkg+"/";
+        if(pathFilter == null || pathFilter.accept(pathQuery)){
+            pkg = pkg.replace('/', '.');
+            return pkg;
         }
         return null;
     }
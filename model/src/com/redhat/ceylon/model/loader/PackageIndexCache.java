@@ -0,0 +1,167 @@
+package com.redhat.ceylon.model.loader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.redhat.ceylon.common.IndexFileUtil;
+
+/**
+ * Keeps the list of folders containing classes of every jar
+ * or car we load the packages of, so that the next compiler
+ * invocations do not have to go over every entry of every
+ * dependency again.
+ *
+ * Entries are keyed by the SHA1 the repositories store next
+ * to each artifact in its {@code .sha1} file, so they are
+ * invalidated as soon as the artifact is replaced. Artifacts
+ * without a {@code .sha1} file are always read.
+ *
+ * The cache is off unless the {@value #CACHE_DIR_PROPERTY}
+ * system property is set: to {@code true} to keep it in
+ * {@code ~/.ceylon/index/packages}, or to another folder.
+ * Failing to use the cache is never an error.
+ *
+ * This only caches the package index: it is not a snapshot
+ * of the model of the dependency. Its declarations are
+ * still loaded from the class files, lazily, by the model
+ * loader.
+ */
+public class PackageIndexCache {
+
+    public static final String CACHE_DIR_PROPERTY = "ceylon.modelloader.packagecache";
+
+    private static final String FORMAT = "ceylon-package-index 1";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File cacheDir;
+
+    public PackageIndexCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Returns the cache configured by the system properties,
+     * or null if it is not enabled.
+     */
+    public static PackageIndexCache getDefault() {
+        File dir = IndexFileUtil.getIndexDir(CACHE_DIR_PROPERTY, "packages");
+        return dir != null ? new PackageIndexCache(dir) : null;
+    }
+
+    /**
+     * Returns the paths of the folders of the given jar which
+     * contain at least one class, such as {@code "foo/bar"},
+     * or {@code ""} for the default package.
+     */
+    public SortedSet<String> getClassFolders(File jar) throws IOException {
+        String sha1 = readSha1(jar);
+        File entry = sha1 != null ? getEntryFile(sha1) : null;
+        if (entry != null) {
+            SortedSet<String> folders = read(entry, jar.length());
+            if (folders != null)
+                return folders;
+        }
+        SortedSet<String> folders = listClassFolders(jar);
+        if (entry != null)
+            write(entry, jar.length(), folders);
+        return folders;
+    }
+
+    File getEntryFile(String sha1) {
+        return IndexFileUtil.getHashedFile(cacheDir, sha1);
+    }
+
+    static SortedSet<String> listClassFolders(File jar) throws IOException {
+        SortedSet<String> folders = new TreeSet<String>();
+        try(ZipFile zf = new ZipFile(jar)){
+            Enumeration<? extends ZipEntry> entries = zf.entries();
+            while(entries.hasMoreElements()){
+                ZipEntry entry = entries.nextElement();
+                if(entry.isDirectory()
+                        || !JvmBackendUtil.definesPackage(entry.getName()))
+                    continue;
+                String path = entry.getName();
+                int sep = path.lastIndexOf('/');
+                folders.add(sep != -1 ? path.substring(0, sep) : "");
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * Reads the SHA1 the repository stored next to the given
+     * artifact, or returns null if there is none.
+     */
+    static String readSha1(File artifact) {
+        File sha1File = new File(artifact.getPath() + ".sha1");
+        if (!sha1File.isFile())
+            return null;
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sha1File), UTF8))){
+            String line = reader.readLine();
+            if (line == null)
+                return null;
+            // Maven sometimes follows it with the file name
+            line = line.trim();
+            int space = line.indexOf(' ');
+            String sha1 = (space != -1 ? line.substring(0, space) : line).toLowerCase();
+            if (sha1.length() != 40)
+                return null;
+            for (int i = 0; i < sha1.length(); i++) {
+                if (Character.digit(sha1.charAt(i), 16) == -1)
+                    return null;
+            }
+            return sha1;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static SortedSet<String> read(File entry, long artifactLength) {
+        if (!entry.isFile())
+            return null;
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(entry), UTF8))){
+            // guard against an artifact replaced without its .sha1
+            if (!FORMAT.equals(reader.readLine())
+                    || !String.valueOf(artifactLength).equals(reader.readLine()))
+                return null;
+            SortedSet<String> folders = new TreeSet<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                folders.add(line);
+            }
+            return folders;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void write(File entry, final long artifactLength, final SortedSet<String> folders) {
+        IndexFileUtil.write(entry, new IndexFileUtil.Contents() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                Writer writer = new OutputStreamWriter(out, UTF8);
+                writer.write(FORMAT);
+                writer.write('\n');
+                writer.write(String.valueOf(artifactLength));
+                writer.write('\n');
+                for (String folder : folders) {
+                    writer.write(folder);
+                    writer.write('\n');
+                }
+                writer.flush();
+            }
+        });
+    }
+}
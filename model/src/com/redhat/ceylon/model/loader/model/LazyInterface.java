@@ -32,9 +32,9 @@ public class LazyInterface extends Interface implements LazyContainer {
     private Map<String,Declaration> localDeclarations;
     
     private boolean isLoaded = false;
-    private boolean isLoaded2 = false;
+    private volatile boolean isLoaded2 = false;
     private boolean isTypeParamsLoaded = false;
-    private boolean isTypeParamsLoaded2 = false;
+    private volatile boolean isTypeParamsLoaded2 = false;
     private boolean isAnnotationType = false;
     private boolean local;
     public ClassMirror companionClass;
@@ -24,9 +24,9 @@ public class LazyInterfaceAlias extends InterfaceAlias implements LazyContainer
     private ModelCompleter completer;
 
     private boolean isLoaded = false;
-    private boolean isLoaded2 = false;
+    private volatile boolean isLoaded2 = false;
     private boolean isTypeParamsLoaded = false;
-    private boolean isTypeParamsLoaded2 = false;
+    private volatile boolean isTypeParamsLoaded2 = false;
     private boolean local;
 
     @Override
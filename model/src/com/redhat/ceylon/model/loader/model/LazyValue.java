@@ -36,7 +36,7 @@ public class LazyValue extends Value implements LazyElement, LocalDeclarationCon
     private Map<String,Declaration> localDeclarations;
 
     private boolean isLoaded = false;
-    private boolean isLoaded2 = false;
+    private volatile boolean isLoaded2 = false;
 
     @Override
     protected Class<?> getModelClass() {
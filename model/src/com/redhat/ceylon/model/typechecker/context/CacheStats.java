@@ -0,0 +1,84 @@
+package com.redhat.ceylon.model.typechecker.context;
+
+/**
+ * A snapshot of the size and effectiveness of one of the
+ * model caches, such as the {@link TypeCache} or the 
+ * {@link SubtypeCache} of a module. Snapshots of several
+ * caches may be added together with {@link #plus}.
+ */
+public class CacheStats {
+    
+    public static final CacheStats EMPTY = 
+            new CacheStats(0, 0, 0, 0, 0);
+    
+    private final int size;
+    private final int capacity;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    
+    public CacheStats(int size, int capacity, 
+            long hits, long misses, long evictions) {
+        this.size = size;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+    
+    /**
+     * The number of entries currently held.
+     */
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * The maximum number of entries held.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public long getHits() {
+        return hits;
+    }
+    
+    public long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * The number of entries dropped to make room for new
+     * ones. Entries dropped because a declaration changed
+     * are not counted.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    /**
+     * The proportion of lookups that found an entry, or
+     * 0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+    
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(size + other.size, 
+                capacity + other.capacity, 
+                hits + other.hits, 
+                misses + other.misses, 
+                evictions + other.evictions);
+    }
+    
+    @Override
+    public String toString() {
+        return size + "/" + capacity + " entries, " 
+                + hits + " hits, " + misses + " misses (" 
+                + Math.round(getHitRate() * 100) + "% hit rate), " 
+                + evictions + " evictions";
+    }
+}
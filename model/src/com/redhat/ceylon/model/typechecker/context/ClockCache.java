@@ -0,0 +1,293 @@
+package com.redhat.ceylon.model.typechecker.context;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.NothingType;
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+
+/**
+ * A concurrent cache holding at most a given number of
+ * entries, which evicts using the CLOCK (second chance)
+ * approximation of LRU. Lookups are lock-free, and only
+ * mark the entry as recently used.
+ *
+ * Every entry remembers the types its value was computed
+ * from, so that {@link #clearForDeclaration} only drops the
+ * entries which depend on the declaration that changed. The
+ * declarations an entry depends on are only worked out by
+ * the first clear which needs them, since entries are put
+ * far more often than declarations change. The declarations
+ * of the language module are never taken into account,
+ * since nearly every entry depends on them: clearing one of
+ * those clears the whole cache.
+ *
+ * Callers read the {@link #generation()} before computing
+ * a value and pass it to {@link #put}, which drops values
+ * computed before a clear that ran concurrently.
+ * 
+ * Values which do not depend on any declaration, like the
+ * results of reified type tests at runtime, may be cached
+ * too.
+ */
+public class ClockCache<K,V> {
+
+    private static final class Entry<K,V> {
+        final K key;
+        final V value;
+        final TypeDeclaration declaration;
+        final Type[] types;
+        volatile boolean referenced;
+        // computed by the first clear which needs it
+        private volatile Set<TypeDeclaration> dependencies;
+
+        Entry(K key, V value, 
+                TypeDeclaration declaration, Type[] types) {
+            this.key = key;
+            this.value = value;
+            this.declaration = declaration;
+            this.types = types;
+        }
+
+        boolean dependsOn(TypeDeclaration dec) {
+            Set<TypeDeclaration> deps = dependencies;
+            if (deps == null) {
+                deps = dependencies(types);
+                if (declaration != null) {
+                    deps.add(declaration);
+                }
+                dependencies = deps;
+            }
+            return deps.contains(dec);
+        }
+    }
+
+    private static final Type[] NO_TYPES = new Type[0];
+
+    private final int capacity;
+    private final ConcurrentHashMap<K,Entry<K,V>> entries;
+    // incremented before every clear
+    private final AtomicLong generation = new AtomicLong();
+    // the clock hand goes round this queue, which may contain
+    // stale entries that were replaced or removed since
+    private final ConcurrentLinkedQueue<Entry<K,V>> clock =
+            new ConcurrentLinkedQueue<Entry<K,V>>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ClockCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<K,Entry<K,V>>(
+                Math.min(capacity, 1024));
+    }
+
+    public V get(K key) {
+        Entry<K,V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * The number of clears so far, to be read before 
+     * computing a value to {@link #put}.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a value which does not depend on any type
+     * declaration.
+     */
+    public void put(K key, V value, long generation) {
+        put(key, value, generation, null, NO_TYPES);
+    }
+
+    /**
+     * Caches a value computed from the given types, and 
+     * possibly also from the given declaration.
+     * 
+     * @param generation the {@link #generation()} read 
+     *        before the value was computed: if the cache 
+     *        was cleared since, the value is not kept
+     */
+    void put(K key, V value, long generation, 
+            TypeDeclaration declaration, Type... types) {
+        if (capacity <= 0 || 
+                generation != this.generation.get()) {
+            return;
+        }
+        Entry<K,V> entry = 
+                new Entry<K,V>(key, value, declaration, types);
+        entries.put(key, entry);
+        if (generation != this.generation.get()) {
+            // a clear started after the check above, and
+            // may have missed the new entry
+            entries.remove(key, entry);
+            return;
+        }
+        clock.offer(entry);
+        int queued = clockSize.incrementAndGet();
+        if (entries.size() > capacity || queued > 2 * capacity) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        // one thread evicts for everyone
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // at most two turns of the clock: one to clear
+            // the reference bits, and one to evict
+            int steps = 2 * clockSize.get() + 1;
+            while (steps-- > 0 && 
+                    (entries.size() > capacity
+                    || clockSize.get() > entries.size())) {
+                Entry<K,V> entry = clock.poll();
+                if (entry == null) {
+                    break;
+                }
+                clockSize.decrementAndGet();
+                if (entries.get(entry.key) != entry) {
+                    // stale: replaced or cleared since
+                    continue;
+                }
+                if (entries.size() <= capacity) {
+                    // only compacting the clock
+                    clock.offer(entry);
+                    clockSize.incrementAndGet();
+                }
+                else if (entry.referenced) {
+                    // second chance
+                    entry.referenced = false;
+                    clock.offer(entry);
+                    clockSize.incrementAndGet();
+                }
+                else if (entries.remove(entry.key, entry)) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * The declarations the given types depend on: their 
+     * own declarations, those of their type arguments and 
+     * qualifying types, and all their supertypes.
+     */
+    static Set<TypeDeclaration> dependencies(Type... types) {
+        Set<TypeDeclaration> declarations = 
+                new HashSet<TypeDeclaration>();
+        for (Type type: types) {
+            while (type!=null) {
+                type.collectDeclarations(declarations);
+                type = type.getQualifyingType();
+            }
+        }
+        Set<TypeDeclaration> dependencies = 
+                new HashSet<TypeDeclaration>();
+        for (TypeDeclaration dec: declarations) {
+            //Nothing has no supertypes
+            if (!(dec instanceof NothingType) &&
+                    !isLanguageModuleDeclaration(dec)) {
+                dependencies.add(dec);
+                //declarations created by the runtime
+                //may not belong to a unit yet
+                if (dec.getUnit()==null) {
+                    continue;
+                }
+                for (TypeDeclaration std: 
+                        dec.getSupertypeDeclarations()) {
+                    if (!isLanguageModuleDeclaration(std)) {
+                        dependencies.add(std);
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+    
+    static boolean isLanguageModuleDeclaration(
+            TypeDeclaration dec) {
+        Unit unit = dec.getUnit();
+        if (unit==null || unit.getPackage()==null) {
+            return false;
+        }
+        Module module = unit.getPackage().getModule();
+        return module!=null && module.isLanguageModule();
+    }
+
+    /**
+     * Drops every entry which depends on the given
+     * declaration. This goes through all the entries, 
+     * working out the dependencies of those which never
+     * went through a clear before.
+     */
+    void clearForDeclaration(TypeDeclaration dec) {
+        if (isLanguageModuleDeclaration(dec)) {
+            clear();
+            return;
+        }
+        generation.incrementAndGet();
+        for (Entry<K,V> entry: entries.values()) {
+            if (entry.dependsOn(dec)) {
+                entries.remove(entry.key, entry);
+            }
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+        clock.clear();
+        clockSize.set(0);
+    }
+
+    /**
+     * Drops every entry holding the given value.
+     */
+    void removeValue(V value) {
+        for (Entry<K,V> entry: entries.values()) {
+            if (entry.value==value) {
+                entries.remove(entry.key, entry);
+            }
+        }
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(entries.size(), capacity, 
+                hits.get(), misses.get(), evictions.get());
+    }
+}
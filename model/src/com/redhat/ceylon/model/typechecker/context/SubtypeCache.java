@@ -0,0 +1,137 @@
+package com.redhat.ceylon.model.typechecker.context;
+
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+
+/**
+ * Memoises the results of {@link Type#isSubtypeOf(Type)}
+ * and {@link Type#isExactly(Type)} for pairs of fully
+ * resolved types. There is one such cache per module, like 
+ * the {@link TypeCache}.
+ * 
+ * Each result depends on the declarations of the two types,
+ * their type arguments and qualifying types, and all their
+ * supertypes, so that clearing the cache for a declaration
+ * only forgets the results which could have changed. The declarations of the language module are not
+ * recorded, since nearly every result depends on them:
+ * clearing one of those clears the whole cache.
+ * 
+ * The number of entries is bounded by the system property
+ * {@code ceylon.cache.subtype.size}.
+ */
+public class SubtypeCache {
+    
+    public static final String SIZE_PROPERTY = 
+            "ceylon.cache.subtype.size";
+    
+    private static final int DEFAULT_SIZE = 16384;
+    
+    private static final int SIZE = 
+            Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE);
+    
+    private static final class TypePair {
+        private final Type type;
+        private final Type other;
+        private final boolean exactly;
+        private final int hash;
+        
+        TypePair(Type type, Type other, boolean exactly) {
+            this.type = type;
+            this.other = other;
+            this.exactly = exactly;
+            int h = type.hashCode();
+            h = 31*h + other.hashCode();
+            this.hash = exactly ? ~h : h;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this==obj) {
+                return true;
+            }
+            if (!(obj instanceof TypePair)) {
+                return false;
+            }
+            TypePair that = (TypePair) obj;
+            return hash==that.hash &&
+                    exactly==that.exactly &&
+                    type.equals(that.type) &&
+                    other.equals(that.other);
+        }
+    }
+    
+    private final ClockCache<TypePair,Boolean> results = 
+            new ClockCache<TypePair,Boolean>(SIZE);
+    
+    /**
+     * The cache which should hold the results of tests
+     * against the given type.
+     */
+    public static SubtypeCache forType(Type type) {
+        TypeDeclaration dec = type.getDeclaration();
+        if (dec==null) {
+            return null;
+        }
+        Unit unit = dec.getUnit();
+        return unit==null || unit.getPackage()==null ? 
+                null : unit.getSubtypeCache();
+    }
+    
+    /**
+     * The number of times this cache was cleared so far, 
+     * to be read before running a test whose result is to
+     * be put in the cache.
+     */
+    public long getGeneration() {
+        return results.generation();
+    }
+    
+    /**
+     * @return the cached result, or null if it is not known
+     */
+    public Boolean isSubtypeOf(Type type, Type other) {
+        return results.get(new TypePair(type, other, false));
+    }
+    
+    public void putSubtypeOf(Type type, Type other, 
+            boolean result, long generation) {
+        results.put(new TypePair(type, other, false), result, 
+                generation, null, type, other);
+    }
+    
+    /**
+     * @return the cached result, or null if it is not known
+     */
+    public Boolean isExactly(Type type, Type other) {
+        return results.get(new TypePair(type, other, true));
+    }
+    
+    public void putExactly(Type type, Type other, 
+            boolean result, long generation) {
+        results.put(new TypePair(type, other, true), result, 
+                generation, null, type, other);
+    }
+    
+    /**
+     * Forgets every result which depends on the given
+     * declaration.
+     */
+    public void clearForDeclaration(TypeDeclaration dec) {
+        results.clearForDeclaration(dec);
+    }
+    
+    public void clear() {
+        results.clear();
+    }
+    
+    public CacheStats getStats() {
+        return results.getStats();
+    }
+    
+}
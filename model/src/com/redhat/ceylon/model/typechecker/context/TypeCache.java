@@ -1,10 +1,6 @@
 package com.redhat.ceylon.model.typechecker.context;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 
 import com.redhat.ceylon.model.typechecker.model.Type;
 import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
@@ -78,78 +74,104 @@ public class TypeCache {
         return cie == null ? cachingEnabledByDefault : cie;
     }
     
-    // need a special value for null because ConcurrentHashMap does not support null
+    public static final String SIZE_PROPERTY = 
+            "ceylon.cache.supertype.size";
+    
+    private static final int DEFAULT_SIZE = 32768;
+    
+    private static final int SIZE = 
+            Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE);
+    
+    private static final class SupertypeKey {
+        private final Type type;
+        private final TypeDeclaration dec;
+        private final int hash;
+        
+        SupertypeKey(Type type, TypeDeclaration dec) {
+            this.type = type;
+            this.dec = dec;
+            this.hash = 31*type.hashCode() + dec.hashCode();
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this==obj) {
+                return true;
+            }
+            if (!(obj instanceof SupertypeKey)) {
+                return false;
+            }
+            SupertypeKey that = (SupertypeKey) obj;
+            return hash==that.hash &&
+                    dec.equals(that.dec) &&
+                    type.equals(that.type);
+        }
+    }
+    
+    // need a special value for null to tell it apart from a missing entry
     private final static Type NULL_VALUE = new UnknownType(null).getType();
-    // need ConcurrentHashMap even for the cache, otherwise get/put/containsKey can get info infinite loops
-    // on concurrent operations
-    private final Map<Type, Map<TypeDeclaration, Type>> superTypes = 
-            new ConcurrentHashMap<Type, Map<TypeDeclaration, Type>>();
+    // bounded, and registered against the declarations each supertype 
+    // depends on, so that editing a declaration only drops what it affects
+    private final ClockCache<SupertypeKey, Type> superTypes = 
+            new ClockCache<SupertypeKey, Type>(SIZE);
     
     public boolean containsKey(Type producedType, TypeDeclaration dec) {
-        Map<TypeDeclaration, Type> cache = superTypes.get(producedType);
-        if (cache == null) {
-            return false;
-        }
-        return cache.containsKey(dec);
+        return superTypes.containsKey(new SupertypeKey(producedType, dec));
     }
 
     public Type get(Type producedType, TypeDeclaration dec) {
-        Map<TypeDeclaration, Type> cache = superTypes.get(producedType);
-        if (cache == null) {
-            return null;
-        }
-        Type ret = cache.get(dec);
+        Type ret = superTypes.get(new SupertypeKey(producedType, dec));
         return ret == NULL_VALUE ? null : ret;
     }
 
-    public void put(Type producedType, TypeDeclaration dec, Type superType) {
-        Map<TypeDeclaration, Type> cache = superTypes.get(producedType);
-        if (cache == null) {
-            // need ConcurrentHashMap even for the cache, otherwise get/put/containsKey can get info infinite loops
-            // on concurrent operations
-            cache = new ConcurrentHashMap<TypeDeclaration, Type>();
-            superTypes.put(producedType, cache);
-        }
+    /**
+     * The number of times this cache was cleared so far, 
+     * to be read before looking for a supertype to 
+     * {@link #put}.
+     */
+    public long getGeneration() {
+        return superTypes.generation();
+    }
+
+    /**
+     * Caches the supertype of the given type for the given 
+     * declaration, unless the cache was cleared since the
+     * given generation was read.
+     */
+    public void put(Type producedType, TypeDeclaration dec, Type superType, 
+            long generation) {
         if (superType == null) {
             superType = NULL_VALUE;
         }
-        cache.put(dec, superType);
+        superTypes.put(new SupertypeKey(producedType, dec), superType, 
+                generation, dec, producedType);
     }
 
     public void clear(){
         superTypes.clear();
     }
 
+    /**
+     * Drops the supertypes which depend on the given declaration,
+     * or all of them if it belongs to the language module.
+     */
     public void clearForDeclaration(TypeDeclaration decl) {
-        // clear the whole cache for now, unless I can figure out exactly what to
-        // clear
-        clear();
+        superTypes.clearForDeclaration(decl);
     }
     
     public void clearNullValues() {
-        List<Type> cachesToremove = new LinkedList<Type>();
-        for (Map.Entry<Type, Map<TypeDeclaration, Type>> entry: 
-                superTypes.entrySet()) {
-            Map<TypeDeclaration, Type> cache = entry.getValue();
-            if (cache == null) {
-                cachesToremove.add(entry.getKey());
-            }
-            else {
-                List<TypeDeclaration> valuesToremove = 
-                        new LinkedList<TypeDeclaration>();
-                for (Map.Entry<TypeDeclaration, Type> cacheEntry: 
-                        cache.entrySet()) {
-                    if (cacheEntry.getValue() == NULL_VALUE) {
-                        valuesToremove.add(cacheEntry.getKey());
-                    }
-                }
-                for (TypeDeclaration toRemove: valuesToremove) {
-                    cache.remove(toRemove);
-                }
-            }
-        }
-        for (Type toRemove: cachesToremove) {
-            superTypes.remove(toRemove);
-        }
+        superTypes.removeValue(NULL_VALUE);
+    }
+    
+    /**
+     * The current size, hit rate and evictions of this cache.
+     */
+    public CacheStats getStats() {
+        return superTypes.getStats();
     }
 }
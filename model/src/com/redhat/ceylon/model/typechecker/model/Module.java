@@ -15,6 +15,7 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import com.redhat.ceylon.common.Backends;
+import com.redhat.ceylon.model.typechecker.context.SubtypeCache;
 import com.redhat.ceylon.model.typechecker.context.TypeCache;
 
 public class Module 
@@ -40,6 +41,7 @@ public class Module
     private Unit unit;
     private String nameAsString;
     private TypeCache cache = new TypeCache();
+    private SubtypeCache subtypeCache = new SubtypeCache();
     private String signature;
     private List<ModuleImport> overridenImports = null;
     private Backends nativeBackends = Backends.ANY;
@@ -365,11 +367,19 @@ public class Module
         return cache;
     }
 
+    public SubtypeCache getSubtypeCache(){
+        return subtypeCache;
+    }
+
     public void clearCache(TypeDeclaration declaration) {
         TypeCache cache = getCache();
         if (cache != null){
             cache.clearForDeclaration(declaration);
         }
+        SubtypeCache subtypeCache = getSubtypeCache();
+        if (subtypeCache != null){
+            subtypeCache.clearForDeclaration(declaration);
+        }
         // FIXME: propagate to modules that import this module transitively
         // Done in the IDE JDTModule
     }
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.redhat.ceylon.model.loader.model.FunctionOrValueInterface;
+import com.redhat.ceylon.model.typechecker.context.SubtypeCache;
 import com.redhat.ceylon.model.typechecker.context.TypeCache;
 import com.redhat.ceylon.model.typechecker.model.UnknownType.ErrorReporter;
 import com.redhat.ceylon.model.typechecker.util.TypePrinter;
@@ -97,11 +98,13 @@ public class Type extends Reference {
                     new HashMap<TypeParameter,SiteVariance>();
         }
         varianceOverrides.put(param, variance);
+        cacheableSubtypeTest = 0;
     }
     
     public void setVarianceOverrides(
             Map<TypeParameter,SiteVariance> varianceOverrides) {
         this.varianceOverrides = varianceOverrides;
+        cacheableSubtypeTest = 0;
     }
     
     Type() {}
@@ -113,6 +116,7 @@ public class Type extends Reference {
     
     void setDeclaration(TypeDeclaration declaration) {
         this.declaration = declaration;
+        cacheableSubtypeTest = 0;
     }
     
     /**
@@ -134,6 +138,7 @@ public class Type extends Reference {
     
     public void setTypeConstructor(boolean typeConstructor) {
         this.typeConstructor = typeConstructor;
+        cacheableSubtypeTest = 0;
     }
     
     public void setTypeConstructorParameter
@@ -163,10 +168,24 @@ public class Type extends Reference {
      * given type? 
      */
     public boolean isExactly(Type type) {
-        return type!=null && 
-                resolveAliases()
-                    .isExactlyInternal(
-                            type.resolveAliases());
+        if (type==null) {
+            return false;
+        }
+        Type self = resolveAliases();
+        Type other = type.resolveAliases();
+        SubtypeCache cache = 
+                subtypeCacheFor(self, other);
+        if (cache!=null) {
+            long generation = cache.getGeneration();
+            Boolean result = cache.isExactly(self, other);
+            if (result==null) {
+                result = self.isExactlyInternal(other);
+                cache.putExactly(self, other, result, 
+                        generation);
+            }
+            return result;
+        }
+        return self.isExactlyInternal(other);
     }
     
     private boolean isExactlyInternal(Type type) {
@@ -544,10 +563,64 @@ public class Type extends Reference {
      * Is this type a subtype of the given type? 
      */
     public boolean isSubtypeOf(Type type) {
-        return type!=null && 
-                resolveAliases()
-                    .isSubtypeOfInternal(
-                            type.resolveAliases());
+        if (type==null) {
+            return false;
+        }
+        Type self = resolveAliases();
+        Type other = type.resolveAliases();
+        SubtypeCache cache = 
+                subtypeCacheFor(self, other);
+        if (cache!=null) {
+            long generation = cache.getGeneration();
+            Boolean result = cache.isSubtypeOf(self, other);
+            if (result==null) {
+                result = self.isSubtypeOfInternal(other);
+                cache.putSubtypeOf(self, other, result, 
+                        generation);
+            }
+            return result;
+        }
+        return self.isSubtypeOfInternal(other);
+    }
+    
+    /**
+     * The cache for results of subtype tests of the given
+     * type against the other given type, or null if the
+     * result may not be cached. Both types must already
+     * have their aliases resolved.
+     */
+    private static SubtypeCache subtypeCacheFor(Type type, 
+            Type other) {
+        if (TypeCache.isEnabled() && 
+                type.canCacheSubtypeTest() && 
+                other.canCacheSubtypeTest()) {
+            return SubtypeCache.forType(other);
+        }
+        else {
+            return null;
+        }
+    }
+    
+    private int cacheableSubtypeTest;
+    
+    /**
+     * Whether the results of subtype tests involving this
+     * type may be cached. Computed once, since it has to be
+     * known for every test, and recomputed only if one of
+     * the setters it depends on is called.
+     */
+    private boolean canCacheSubtypeTest() {
+        if (cacheableSubtypeTest==0) {
+            cacheableSubtypeTest = 
+                    !isRaw() &&
+                    !isTypeConstructor() &&
+                    !containsUnknowns() &&
+                    !involvesTypeParameters() &&
+                    !hasUnderlyingType() && 
+                    collectVarianceOverrides().isEmpty() ?
+                            1 : -1;
+        }
+        return cacheableSubtypeTest>0;
     }
 
     /**
@@ -1455,6 +1528,13 @@ public class Type extends Reference {
             }
         }
         
+        TypeCache cache = null;
+        long generation = 0;
+        if (canCache) {
+            cache = dec.getUnit().getCache();
+            generation = cache.getGeneration();
+        }
+        
         Type superType;
         if (isSimpleSupertypeLookup(dec)) {
             //fast!
@@ -1471,8 +1551,8 @@ public class Type extends Reference {
         }
         
         if (canCache) {
-            TypeCache cache = dec.getUnit().getCache();
-            cache.put(this, dec, superType == null ? NullType : superType);
+            cache.put(this, dec, superType == null ? NullType : superType, 
+                    generation);
         }
         return superType;
     }
@@ -3439,6 +3519,7 @@ public class Type extends Reference {
     
     public void setUnderlyingType(String underlyingType) {
         this.underlyingType = underlyingType;
+        cacheableSubtypeTest = 0;
         // if we have a resolvedAliases cache, update it too
         if (resolvedAliases != null && 
             resolvedAliases != this) {
@@ -3577,6 +3658,7 @@ public class Type extends Reference {
 
     public void setRaw(boolean isRaw) {
         this.isRaw = isRaw;
+        cacheableSubtypeTest = 0;
         // if we have a resolvedAliases cache, update it too
         if (resolvedAliases != null && 
             resolvedAliases != this) {
@@ -1070,7 +1070,7 @@ public abstract class TypeDeclaration extends Declaration
         List<TypeDeclaration> results = 
                 new ArrayList<TypeDeclaration>(
                         getSatisfiedTypes().size()+2);
-        results.add(unit.getAnythingDeclaration());
+        results.add(getUnit().getAnythingDeclaration());
         collectSupertypeDeclarations(results);
 //        results = unmodifiableList(results);
         return results;
@@ -26,6 +26,7 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import com.redhat.ceylon.common.Backends;
+import com.redhat.ceylon.model.typechecker.context.SubtypeCache;
 import com.redhat.ceylon.model.typechecker.context.TypeCache;
 
 public class Unit {
@@ -2404,6 +2405,11 @@ public class Unit {
         Module module = getPackage().getModule();
         return module != null ? module.getCache() : null;
     }
+    
+    public SubtypeCache getSubtypeCache() {
+        Module module = getPackage().getModule();
+        return module != null ? module.getSubtypeCache() : null;
+    }
 
     public Backends getSupportedBackends() {
         return supportedBackends;
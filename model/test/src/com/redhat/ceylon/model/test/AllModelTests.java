@@ -4,12 +4,20 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.redhat.ceylon.model.test.loader.PackageIndexCacheTest;
 import com.redhat.ceylon.model.test.loader.impl.reflect.CachedTOCJarsTest;
+import com.redhat.ceylon.model.typechecker.context.ClockCacheTest;
+import com.redhat.ceylon.model.typechecker.context.SubtypeCacheTest;
+import com.redhat.ceylon.model.typechecker.context.TypeCacheTest;
 
 @RunWith(Suite.class) 
 @SuiteClasses({
     CachedTOCJarsTest.class,
-    ClassFileUtilTest.class
+    ClassFileUtilTest.class,
+    ClockCacheTest.class,
+    PackageIndexCacheTest.class,
+    SubtypeCacheTest.class,
+    TypeCacheTest.class
 })
 public class AllModelTests {
 }
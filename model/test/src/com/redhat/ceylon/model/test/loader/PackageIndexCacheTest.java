@@ -0,0 +1,90 @@
+package com.redhat.ceylon.model.test.loader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.common.FileUtil;
+import com.redhat.ceylon.model.loader.PackageIndexCache;
+
+public class PackageIndexCacheTest {
+
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    @Test
+    public void testCache() throws IOException {
+        File dir = FileUtil.makeTempDir("package-index");
+        try {
+            File jar = new File(dir, "test.jar");
+            writeJar(jar, "Top.class", "a/b/C.class", "a/b/D.class", "a/e/", "a/F.txt", "module-info.class");
+            PackageIndexCache cache = new PackageIndexCache(new File(dir, "cache"));
+            // no .sha1 file: not cached
+            Assert.assertEquals(new TreeSet<String>(Arrays.asList("", "a/b")), cache.getClassFolders(jar));
+            Assert.assertFalse(new File(dir, "cache").exists());
+
+            write(new File(jar.getPath() + ".sha1"), SHA1.toUpperCase() + "  test.jar\n");
+            Assert.assertEquals(new TreeSet<String>(Arrays.asList("", "a/b")), cache.getClassFolders(jar));
+            File entry = new File(new File(new File(dir, "cache"), "01"), SHA1);
+            Assert.assertTrue(entry.isFile());
+
+            // the next lookup only reads the cache
+            write(entry, "ceylon-package-index 1\n" + jar.length() + "\nx/y\n");
+            Assert.assertEquals(new TreeSet<String>(Arrays.asList("x/y")), cache.getClassFolders(jar));
+
+            // an artifact replaced without its .sha1 is read again
+            writeJar(jar, "a/b/C.class", "g/H.class");
+            Assert.assertEquals(new TreeSet<String>(Arrays.asList("a/b", "g")), cache.getClassFolders(jar));
+
+            // as is an artifact with another sha1
+            write(new File(jar.getPath() + ".sha1"), SHA1.replace('0', 'f'));
+            writeJar(jar, "i/J.class");
+            Assert.assertEquals(new TreeSet<String>(Arrays.asList("i")), cache.getClassFolders(jar));
+        } finally {
+            FileUtil.delete(dir);
+        }
+    }
+
+    @Test
+    public void testOptIn() {
+        String old = System.getProperty(PackageIndexCache.CACHE_DIR_PROPERTY);
+        try {
+            System.clearProperty(PackageIndexCache.CACHE_DIR_PROPERTY);
+            Assert.assertNull(PackageIndexCache.getDefault());
+            System.setProperty(PackageIndexCache.CACHE_DIR_PROPERTY, "false");
+            Assert.assertNull(PackageIndexCache.getDefault());
+            System.setProperty(PackageIndexCache.CACHE_DIR_PROPERTY, "true");
+            Assert.assertNotNull(PackageIndexCache.getDefault());
+            System.setProperty(PackageIndexCache.CACHE_DIR_PROPERTY, "/tmp/package-index");
+            Assert.assertNotNull(PackageIndexCache.getDefault());
+        } finally {
+            if (old != null)
+                System.setProperty(PackageIndexCache.CACHE_DIR_PROPERTY, old);
+            else
+                System.clearProperty(PackageIndexCache.CACHE_DIR_PROPERTY);
+        }
+    }
+
+    private static void writeJar(File jar, String... entries) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(contents);
+        }
+    }
+}
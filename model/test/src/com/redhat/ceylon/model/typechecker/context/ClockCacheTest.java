@@ -0,0 +1,189 @@
+package com.redhat.ceylon.model.typechecker.context;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.model.typechecker.model.Class;
+import com.redhat.ceylon.model.typechecker.model.Module;
+import com.redhat.ceylon.model.typechecker.model.Package;
+import com.redhat.ceylon.model.typechecker.model.Type;
+import com.redhat.ceylon.model.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.model.typechecker.model.Unit;
+
+public class ClockCacheTest {
+
+    private static final Class ANYTHING = declaration("Anything", null, "ceylon", "language");
+
+    static Class declaration(String name) {
+        return declaration(name, ANYTHING, "test");
+    }
+
+    static Class languageModuleDeclaration(String name) {
+        return declaration(name, ANYTHING, "ceylon", "language");
+    }
+
+    private static Class declaration(String name, final Class anything, String... moduleName) {
+        Module module = new Module();
+        module.setName(Arrays.asList(moduleName));
+        Package pkg = new Package();
+        pkg.setName(Arrays.asList(moduleName));
+        pkg.setModule(module);
+        Unit unit = new Unit() {
+            @Override
+            public Class getAnythingDeclaration() {
+                return anything;
+            }
+        };
+        unit.setPackage(pkg);
+        Class dec = new Class();
+        dec.setName(name);
+        dec.setContainer(pkg);
+        dec.setUnit(unit);
+        return dec;
+    }
+
+    private static void put(ClockCache<String,String> cache, String key, TypeDeclaration... dependencies) {
+        Type[] types = new Type[dependencies.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = dependencies[i].getType();
+        }
+        cache.put(key, key.toUpperCase(), cache.generation(), null, types);
+    }
+
+    @Test
+    public void testCapacity() {
+        ClockCache<String,String> cache = new ClockCache<String,String>(4);
+        for (int i = 0; i < 10; i++) {
+            put(cache, "k" + i);
+            Assert.assertTrue(cache.getStats().getSize() <= 4);
+        }
+        CacheStats stats = cache.getStats();
+        Assert.assertEquals(4, stats.getSize());
+        Assert.assertEquals(4, stats.getCapacity());
+        Assert.assertEquals(6, stats.getEvictions());
+        // the most recent entry is always kept
+        Assert.assertEquals("K9", cache.get("k9"));
+    }
+
+    @Test
+    public void testZeroCapacity() {
+        ClockCache<String,String> cache = new ClockCache<String,String>(0);
+        put(cache, "a");
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    public void testEvictionOrder() {
+        ClockCache<String,String> cache = new ClockCache<String,String>(3);
+        put(cache, "a");
+        put(cache, "b");
+        put(cache, "c");
+        // a gets a second chance, so the oldest entry not used since is evicted
+        Assert.assertEquals("A", cache.get("a"));
+        put(cache, "d");
+        Assert.assertFalse(cache.containsKey("b"));
+        Assert.assertTrue(cache.containsKey("a"));
+        Assert.assertTrue(cache.containsKey("c"));
+        Assert.assertTrue(cache.containsKey("d"));
+        // a went to the back of the clock, so c is next
+        put(cache, "e");
+        Assert.assertFalse(cache.containsKey("c"));
+        Assert.assertTrue(cache.containsKey("a"));
+        Assert.assertTrue(cache.containsKey("d"));
+        Assert.assertTrue(cache.containsKey("e"));
+        Assert.assertEquals(2, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void testReplaceDoesNotEvict() {
+        ClockCache<String,String> cache = new ClockCache<String,String>(2);
+        for (int i = 0; i < 10; i++) {
+            cache.put("a", "A" + i, cache.generation());
+        }
+        put(cache, "b");
+        Assert.assertEquals("A9", cache.get("a"));
+        Assert.assertEquals("B", cache.get("b"));
+        Assert.assertEquals(0, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void testClearForDeclaration() {
+        Class x = declaration("X");
+        Class y = declaration("Y");
+        ClockCache<String,String> cache = new ClockCache<String,String>(10);
+        put(cache, "x", x);
+        put(cache, "y", y);
+        put(cache, "xy", x, y);
+        put(cache, "none");
+        cache.clearForDeclaration(x);
+        Assert.assertFalse(cache.containsKey("x"));
+        Assert.assertFalse(cache.containsKey("xy"));
+        Assert.assertTrue(cache.containsKey("y"));
+        Assert.assertTrue(cache.containsKey("none"));
+        // the dependencies of replaced entries are forgotten
+        put(cache, "y", x);
+        cache.clearForDeclaration(y);
+        Assert.assertTrue(cache.containsKey("y"));
+        cache.clearForDeclaration(x);
+        Assert.assertFalse(cache.containsKey("y"));
+        Assert.assertTrue(cache.containsKey("none"));
+    }
+
+    @Test
+    public void testClearForSupertypeDeclaration() {
+        Class x = declaration("X");
+        Class y = declaration("Y");
+        y.setExtendedType(x.getType());
+        ClockCache<String,String> cache = new ClockCache<String,String>(10);
+        put(cache, "y", y);
+        cache.put("x-declaration", "X", cache.generation(), x);
+        // the dependencies are worked out by the first clear
+        cache.clearForDeclaration(declaration("Z"));
+        Assert.assertTrue(cache.containsKey("y"));
+        Assert.assertTrue(cache.containsKey("x-declaration"));
+        cache.clearForDeclaration(x);
+        Assert.assertFalse(cache.containsKey("y"));
+        Assert.assertFalse(cache.containsKey("x-declaration"));
+    }
+
+    @Test
+    public void testPutAfterClear() {
+        Class x = declaration("X");
+        ClockCache<String,String> cache = new ClockCache<String,String>(10);
+        long generation = cache.generation();
+        cache.clearForDeclaration(x);
+        // computed before the clear, so possibly stale
+        cache.put("x", "X", generation, null, x.getType());
+        Assert.assertFalse(cache.containsKey("x"));
+        generation = cache.generation();
+        cache.clear();
+        cache.put("none", "NONE", generation);
+        Assert.assertFalse(cache.containsKey("none"));
+        put(cache, "x", x);
+        Assert.assertTrue(cache.containsKey("x"));
+    }
+
+    @Test
+    public void testClearForLanguageModuleDeclaration() {
+        ClockCache<String,String> cache = new ClockCache<String,String>(10);
+        put(cache, "x", declaration("X"));
+        put(cache, "none");
+        cache.clearForDeclaration(languageModuleDeclaration("Anything"));
+        Assert.assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    public void testStats() {
+        ClockCache<String,String> cache = new ClockCache<String,String>(10);
+        put(cache, "a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        CacheStats stats = cache.getStats();
+        Assert.assertEquals(2, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+    }
+}
@@ -0,0 +1,59 @@
+package com.redhat.ceylon.model.typechecker.context;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.model.typechecker.model.Class;
+import com.redhat.ceylon.model.typechecker.model.Type;
+
+public class SubtypeCacheTest {
+
+    @Test
+    public void testClearForDeclaration() {
+        Class x = ClockCacheTest.declaration("X");
+        Class y = ClockCacheTest.declaration("Y");
+        Class z = ClockCacheTest.declaration("Z");
+        Class w = ClockCacheTest.declaration("W");
+        w.setExtendedType(x.getType());
+        Type xt = x.getType();
+        Type yt = y.getType();
+        Type zt = z.getType();
+        SubtypeCache cache = new SubtypeCache();
+        cache.putSubtypeOf(xt, yt, true, cache.getGeneration());
+        cache.putExactly(xt, yt, false, cache.getGeneration());
+        cache.putSubtypeOf(zt, zt, true, cache.getGeneration());
+        cache.putSubtypeOf(w.getType(), zt, false, cache.getGeneration());
+        Assert.assertEquals(Boolean.TRUE, cache.isSubtypeOf(xt, yt));
+        Assert.assertEquals(Boolean.FALSE, cache.isExactly(xt, yt));
+        Assert.assertNull(cache.isSubtypeOf(yt, xt));
+
+        // only the results involving Y are forgotten
+        cache.clearForDeclaration(y);
+        Assert.assertNull(cache.isSubtypeOf(xt, yt));
+        Assert.assertNull(cache.isExactly(xt, yt));
+        Assert.assertEquals(Boolean.TRUE, cache.isSubtypeOf(zt, zt));
+        Assert.assertEquals(Boolean.FALSE, cache.isSubtypeOf(w.getType(), zt));
+
+        // and clearing X forgets the results about its subtypes
+        cache.clearForDeclaration(x);
+        Assert.assertNull(cache.isSubtypeOf(w.getType(), zt));
+        Assert.assertEquals(Boolean.TRUE, cache.isSubtypeOf(zt, zt));
+
+        cache.clearForDeclaration(ClockCacheTest.languageModuleDeclaration("Anything"));
+        Assert.assertNull(cache.isSubtypeOf(zt, zt));
+    }
+
+    @Test
+    public void testResultComputedBeforeClear() {
+        Class x = ClockCacheTest.declaration("X");
+        Class y = ClockCacheTest.declaration("Y");
+        SubtypeCache cache = new SubtypeCache();
+        long generation = cache.getGeneration();
+        // Y changes while the test runs
+        cache.clearForDeclaration(y);
+        cache.putSubtypeOf(x.getType(), y.getType(), true, generation);
+        Assert.assertNull(cache.isSubtypeOf(x.getType(), y.getType()));
+        cache.putSubtypeOf(x.getType(), y.getType(), true, cache.getGeneration());
+        Assert.assertEquals(Boolean.TRUE, cache.isSubtypeOf(x.getType(), y.getType()));
+    }
+}
@@ -0,0 +1,33 @@
+package com.redhat.ceylon.model.typechecker.context;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.ceylon.model.typechecker.model.Class;
+
+public class TypeCacheTest {
+
+    @Test
+    public void testClearForDeclaration() {
+        Class x = ClockCacheTest.declaration("X");
+        Class y = ClockCacheTest.declaration("Y");
+        Class z = ClockCacheTest.declaration("Z");
+        TypeCache cache = new TypeCache();
+        cache.put(x.getType(), y, y.getType(), cache.getGeneration());
+        cache.put(z.getType(), x, null, cache.getGeneration());
+        cache.put(z.getType(), z, z.getType(), cache.getGeneration());
+        Assert.assertTrue(cache.containsKey(x.getType(), y));
+        Assert.assertNull(cache.get(z.getType(), x));
+
+        // the requested supertype declaration is a dependency
+        cache.clearForDeclaration(y);
+        Assert.assertFalse(cache.containsKey(x.getType(), y));
+        Assert.assertTrue(cache.containsKey(z.getType(), x));
+
+        cache.clearNullValues();
+        Assert.assertFalse(cache.containsKey(z.getType(), x));
+        Assert.assertEquals(z.getType(), cache.get(z.getType(), z));
+        cache.clearForDeclaration(z);
+        Assert.assertFalse(cache.containsKey(z.getType(), z));
+    }
+}
@@ -1,9 +1,14 @@
 package com.redhat.ceylon.module.loader;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -14,10 +19,13 @@ import com.redhat.ceylon.cmr.api.OverridesRuntimeResolver;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.cmr.ceylon.CeylonUtils;
 import com.redhat.ceylon.cmr.impl.FlatRepository;
+import com.redhat.ceylon.cmr.impl.ModuleGraphSnapshots;
+import com.redhat.ceylon.cmr.impl.PrefetchingArtifactResolver;
 import com.redhat.ceylon.common.ModuleUtil;
 import com.redhat.ceylon.compiler.java.runtime.metamodel.Metamodel;
 import com.redhat.ceylon.model.cmr.ArtifactResult;
 import com.redhat.ceylon.model.cmr.ImportType;
+import com.redhat.ceylon.model.cmr.RepositoryException;
 import com.redhat.ceylon.model.loader.JdkProvider;
 import com.redhat.ceylon.module.loader.ModuleGraph.Module;
 
@@ -28,6 +36,10 @@ public abstract class BaseModuleLoaderImpl implements ModuleLoader {
     
     private Map<String, ModuleLoaderContext> contexts = new HashMap<String, ModuleLoaderContext>();
     protected boolean verbose;
+    
+    private ModuleGraphSnapshots snapshots;
+    private String snapshotConfiguration;
+    private List<File> snapshotInputs = Collections.emptyList();
 
     abstract class ModuleLoaderContext {
         final String module;
@@ -37,36 +49,60 @@ public abstract class BaseModuleLoaderImpl implements ModuleLoader {
         
         ClassLoader moduleClassLoader;
         
+        // resolves the dependencies ahead of time, if enabled
+        final PrefetchingArtifactResolver resolver = PrefetchingArtifactResolver.create(repositoryManager, 
+                new PrefetchingArtifactResolver.DependencyMapper(){
+                    @Override
+                    public ArtifactContext getArtifactContext(ArtifactResult dependency) {
+                        return ModuleLoaderContext.this.getArtifactContext(dependency.name(), dependency.version());
+                    }
+                });
+        
         ModuleLoaderContext(String module, String version) throws ModuleNotFoundException {
             this.module = module;
             this.modver = version;
-            initialise();
+            try{
+                initialise();
+            }finally{
+                if(resolver != null)
+                    resolver.shutdown();
+            }
         }
 
         abstract void initialise() throws ModuleNotFoundException;
         
-        void loadModule(String name, String version, boolean optional, boolean inCurrentClassLoader, ModuleGraph.Module dependent) 
-        		throws IOException, ModuleNotFoundException  {
-        	
+        /**
+         * Returns the artifact to load for the given module, once
+         * overrides are applied, or null if it should not be loaded.
+         */
+        private ArtifactContext getArtifactContext(String name, String version) {
             ArtifactContext artifactContext = new ArtifactContext(name, version, ArtifactContext.CAR, ArtifactContext.JAR);
             Overrides overrides = repositoryManager.getOverrides();
             if(overrides != null){
                 if(overrides.isRemoved(artifactContext))
-                    return;
+                    return null;
                 ArtifactContext replacement = overrides.replace(artifactContext);
                 if(replacement != null){
                     artifactContext = replacement;
-                    name = replacement.getName();
-                    version = replacement.getVersion();
                 }
                 if(overrides.isVersionOverridden(artifactContext)){
-                    version = overrides.getVersionOverride(artifactContext);
-                    artifactContext.setVersion(version);
+                    artifactContext.setVersion(overrides.getVersionOverride(artifactContext));
                 }
             }
             // skip JDK modules
-            if(jdkProvider.isJDKModule(name))
+            if(jdkProvider.isJDKModule(artifactContext.getName()))
+                return null;
+            return artifactContext;
+        }
+        
+        void loadModule(String name, String version, boolean optional, boolean inCurrentClassLoader, ModuleGraph.Module dependent) 
+        		throws IOException, ModuleNotFoundException  {
+        	
+            ArtifactContext artifactContext = getArtifactContext(name, version);
+            if(artifactContext == null)
                 return;
+            name = artifactContext.getName();
+            version = artifactContext.getVersion();
             ModuleGraph.Module loadedModule = moduleGraph.findModule(name);
             if(loadedModule != null){
                 String loadedVersion = loadedModule.version;
@@ -99,7 +135,15 @@ public abstract class BaseModuleLoaderImpl implements ModuleLoader {
             }
             if(verbose)
                 log("Resolving "+name+"/"+version);
-            ArtifactResult result = repositoryManager.getArtifactResult(artifactContext);
+            ArtifactResult result;
+            List<ArtifactResult> dependencies = null;
+            if(resolver != null){
+                PrefetchingArtifactResolver.Resolution resolution = resolver.resolve(artifactContext);
+                result = resolution.getArtifact();
+                dependencies = resolution.getDependencies();
+            }else{
+                result = repositoryManager.getArtifactResult(artifactContext);
+            }
             if(!optional
                     && (result == null || result.artifact() == null || !result.artifact().exists())){
                 throw new ModuleNotFoundException("Could not find module: "+ModuleUtil.makeModuleName(name, version));
@@ -119,7 +163,9 @@ public abstract class BaseModuleLoaderImpl implements ModuleLoader {
                 if(inCurrentClassLoader || result.repository() instanceof FlatRepository){
                     mod.inCurrentClassLoader = true;
                 }
-                for(ArtifactResult dep : result.dependencies()){
+                if(dependencies == null)
+                    dependencies = result.dependencies();
+                for(ArtifactResult dep : dependencies){
                     // stop if we get removed at any point
                     if(mod.replaced)
                         break;
@@ -128,6 +174,95 @@ public abstract class BaseModuleLoaderImpl implements ModuleLoader {
             }
         }
 
+        String getSnapshotKey() {
+            StringBuilder key = new StringBuilder(ModuleUtil.makeModuleName(module, modver));
+            for(String repository : repositoryManager.getRepositoriesDisplayString()){
+                key.append('\n').append(repository);
+            }
+            key.append('\n').append(snapshotConfiguration);
+            return key.toString();
+        }
+        
+        /**
+         * Rebuilds the module graph from the snapshot of a previous
+         * run, if there is an up to date one.
+         */
+        boolean loadSnapshot() {
+            if(snapshots == null)
+                return false;
+            List<ModuleGraphSnapshots.Module> snapshot = snapshots.load(getSnapshotKey());
+            if(snapshot == null)
+                return false;
+            if(verbose)
+                log("Reusing the module graph resolved for "+ModuleUtil.makeModuleName(module, modver));
+            Map<ModuleGraphSnapshots.Module, ModuleGraph.Module> modules = new HashMap<ModuleGraphSnapshots.Module, ModuleGraph.Module>();
+            for(ModuleGraphSnapshots.Module snapshotModule : snapshot){
+                ModuleGraph.Module mod;
+                if(snapshotModule.isRoot())
+                    mod = moduleGraph.addRoot(snapshotModule.name(), snapshotModule.version());
+                else
+                    mod = moduleGraph.newModule(snapshotModule.name(), snapshotModule.version());
+                if(snapshotModule.artifact() != null)
+                    mod.artifact = snapshotModule;
+                mod.inCurrentClassLoader = snapshotModule.isLocal();
+                modules.put(snapshotModule, mod);
+            }
+            for(ModuleGraphSnapshots.Module snapshotModule : snapshot){
+                for(ModuleGraphSnapshots.Module dependency : snapshotModule.getEdges()){
+                    modules.get(snapshotModule).addDependency(modules.get(dependency));
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Saves a snapshot of the module graph for the next runs,
+         * unless it uses module filters, which we cannot store.
+         */
+        void saveSnapshot() {
+            if(snapshots == null)
+                return;
+            final Map<ModuleGraph.Module, ModuleGraphSnapshots.Module> modules = new LinkedHashMap<ModuleGraph.Module, ModuleGraphSnapshots.Module>();
+            try{
+                moduleGraph.visit(new ModuleGraph.Visitor(){
+                    @Override
+                    public void visit(Module module) {
+                        modules.put(module, toSnapshotModule(module));
+                    }
+                });
+            }catch(IllegalStateException | RepositoryException x){
+                if(verbose)
+                    log("Not saving a snapshot of the module graph: "+x.getMessage());
+                return;
+            }
+            for(Map.Entry<ModuleGraph.Module, ModuleGraphSnapshots.Module> entry : modules.entrySet()){
+                ModuleGraphSnapshots.Module snapshotModule = entry.getValue();
+                snapshotModule.setRoot(moduleGraph.roots.contains(entry.getKey()));
+                for(ModuleGraph.Module dependency : entry.getKey().dependencies){
+                    snapshotModule.addEdge(modules.get(dependency));
+                }
+            }
+            snapshots.save(getSnapshotKey(), snapshotInputs, new ArrayList<ModuleGraphSnapshots.Module>(modules.values()));
+        }
+        
+        private ModuleGraphSnapshots.Module toSnapshotModule(ModuleGraph.Module module) {
+            ArtifactResult artifact = module.artifact;
+            ModuleGraphSnapshots.Module snapshotModule;
+            if(artifact != null){
+                if(artifact.filter() != null)
+                    throw new IllegalStateException("module "+module+" has a filter");
+                snapshotModule = new ModuleGraphSnapshots.Module(module.name, module.version, 
+                        artifact.type(), artifact.artifact(), artifact.repositoryDisplayString());
+                for(ArtifactResult dep : artifact.dependencies()){
+                    snapshotModule.addDependency(dep.name(), dep.version(), dep.importType());
+                }
+            }else{
+                snapshotModule = new ModuleGraphSnapshots.Module(module.name, module.version, null, null, null);
+            }
+            snapshotModule.setLocal(module.inCurrentClassLoader);
+            return snapshotModule;
+        }
+
         private void addDependency(Module from, Module to) {
             if(from != null)
                 from.addDependency(to);
@@ -233,6 +368,21 @@ public abstract class BaseModuleLoaderImpl implements ModuleLoader {
         return ctx.moduleClassLoader;
     }
     
+    /**
+     * Reuses the module graphs resolved by previous runs with the
+     * same configuration, as long as none of their files changed.
+     * 
+     * @param configuration describes every option which affects
+     * module resolution, besides the repositories
+     * @param inputs the files which affect module resolution, such
+     * as overrides files
+     */
+    public void setSnapshots(ModuleGraphSnapshots snapshots, String configuration, List<File> inputs) {
+        this.snapshots = snapshots;
+        this.snapshotConfiguration = configuration;
+        this.snapshotInputs = inputs;
+    }
+    
     abstract ModuleLoaderContext createModuleLoaderContext(String name, String version) throws ModuleNotFoundException;
     
     public void cleanup() {
@@ -41,11 +41,25 @@ public class FlatpathModuleLoader extends BaseModuleLoaderImpl {
 
         @Override
         void initialise() throws ModuleNotFoundException {
-            preloadModules();
+            if(!loadSnapshot()){
+                preloadModules();
+                saveSnapshot();
+            }
             moduleClassLoader = setupClassLoader();
             initialiseMetamodel();
         }
 
+        @Override
+        String getSnapshotKey() {
+            StringBuilder key = new StringBuilder(super.getSnapshotKey());
+            if(extraModules != null){
+                for(Entry<String,String> entry : extraModules.entrySet()){
+                    key.append('\n').append(entry.getKey()).append('/').append(entry.getValue());
+                }
+            }
+            return key.toString();
+        }
+
         private void preloadModules() throws ModuleNotFoundException {
             try {
                 loadModule(module, modver, false, false, null);
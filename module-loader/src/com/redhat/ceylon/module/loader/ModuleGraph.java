@@ -104,6 +104,10 @@ public class ModuleGraph {
         return mod;
     }
 
+    public Module newModule(String module, String version){
+        return new Module(module, version);
+    }
+
     public Module findModule(String module){
         Set<String> visited = new HashSet<String>();
         return findModule(module, visited, roots);
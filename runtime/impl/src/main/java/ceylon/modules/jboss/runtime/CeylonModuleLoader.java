@@ -45,6 +45,7 @@ import org.jboss.modules.filter.PathFilters;
 import com.redhat.ceylon.cmr.api.ArtifactContext;
 import com.redhat.ceylon.cmr.api.ModuleDependencyInfo;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.cmr.impl.PrefetchingArtifactResolver;
 import com.redhat.ceylon.common.Constants;
 import com.redhat.ceylon.common.Versions;
 import com.redhat.ceylon.model.cmr.ArtifactResult;
@@ -217,6 +218,8 @@ public class CeylonModuleLoader extends ModuleLoader
     }
 
     private RepositoryManager repository;
+    // resolves the dependencies of the modules ahead of time, if enabled
+    private PrefetchingArtifactResolver resolver;
     private Map<ModuleIdentifier, List<DependencySpec>> dependencies = new ConcurrentHashMap<>();
     private Graph<ModuleIdentifier, ModuleIdentifier, Boolean> graph = new Graph<>();
     private boolean exportMavenImports = false;
@@ -229,6 +232,16 @@ public class CeylonModuleLoader extends ModuleLoader
             throw new IllegalArgumentException("Null repository adapter");
         this.repository = repository;
         this.exportMavenImports = autoExportMavenDependencies;
+        this.resolver = PrefetchingArtifactResolver.create(repository, new PrefetchingArtifactResolver.DependencyMapper() {
+            @Override
+            public ArtifactContext getArtifactContext(ArtifactResult dependency) {
+                // skip JDK modules
+                if (JDK_MODULE_NAMES.contains(dependency.name()))
+                    return null;
+                // JBoss Modules asks for the module once overridden
+                return createArtifactContext(findOverride(createModuleIdentifier(dependency)));
+            }
+        });
         // initialise runtime modules
         init();
     }
@@ -314,9 +327,21 @@ public class CeylonModuleLoader extends ModuleLoader
     }
 
     protected ArtifactResult findArtifact(ModuleIdentifier mi) {
-        final ArtifactContext context = new ArtifactContext(mi.getName(), mi.getSlot(), ArtifactContext.CAR, ArtifactContext.JAR);
+        final ArtifactContext context = createArtifactContext(mi);
+        if (resolver != null)
+            return resolver.resolve(context).getArtifact();
         return repository.getArtifactResult(context);
     }
+
+    private List<ArtifactResult> findDependencies(ModuleIdentifier mi, ArtifactResult artifact) {
+        if (resolver != null)
+            return resolver.resolve(createArtifactContext(mi)).getDependencies();
+        return artifact.dependencies();
+    }
+
+    private static ArtifactContext createArtifactContext(ModuleIdentifier mi) {
+        return new ArtifactContext(mi.getName(), mi.getSlot(), ArtifactContext.CAR, ArtifactContext.JAR);
+    }
     
     protected ModuleIdentifier findOverride(ModuleIdentifier mi) {
         final ArtifactContext context = new ArtifactContext(mi.getName(), mi.getSlot(), ArtifactContext.CAR, ArtifactContext.JAR);
@@ -386,7 +411,7 @@ public class CeylonModuleLoader extends ModuleLoader
 
             if (isDefault == false) {
                 Node<ArtifactResult> root = new Node<>();
-                for (ArtifactResult i : artifact.dependencies()) {
+                for (ArtifactResult i : findDependencies(moduleIdentifier, artifact)) {
                     final String name = i.name();
 
                     // route logging to JBoss LogManager
@@ -1,11 +1,15 @@
 package com.redhat.ceylon.compiler.java.runtime.tools.impl;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 
 import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.cmr.ceylon.CeylonUtils;
+import com.redhat.ceylon.cmr.impl.ModuleGraphSnapshots;
 import com.redhat.ceylon.common.JVMModuleUtil;
 import com.redhat.ceylon.compiler.java.Util;
 import com.redhat.ceylon.compiler.java.runtime.tools.JavaRunner;
@@ -40,6 +44,18 @@ public class JavaRunnerImpl implements JavaRunner {
         }
         
         moduleLoader = new FlatpathModuleLoader(repositoryManager, delegateClassLoader, options.getExtraModules(), options.isVerbose("cmr"));
+        ModuleGraphSnapshots snapshots = ModuleGraphSnapshots.getDefault();
+        if(snapshots != null){
+            File overrides = options.getOverrides() != null ? new File(options.getOverrides()).getAbsoluteFile() : null;
+            String configuration = "offline="+options.isOffline()
+                    +",overrides="+overrides
+                    +",downgrade-dist="+options.isDowngradeDist()
+                    +",java="+System.getProperty("java.version");
+            List<File> inputs = overrides != null 
+                    ? Collections.singletonList(overrides)
+                    : Collections.<File>emptyList();
+            moduleLoader.setSnapshots(snapshots, configuration, inputs);
+        }
         try {
             moduleClassLoader = moduleLoader.loadModule(module, version);
         } catch (ModuleNotFoundException e) {
@@ -33,6 +33,7 @@ import org.junit.Test;
 import org.junit.rules.TestName;
 
 import com.redhat.ceylon.cmr.impl.IOUtils;
+import com.redhat.ceylon.cmr.impl.ModuleGraphSnapshots;
 import com.redhat.ceylon.common.FileUtil;
 import com.redhat.ceylon.compiler.java.runtime.launcher.ToolsTestRunner;
 import com.redhat.ceylon.compiler.java.runtime.tools.Backend;
@@ -268,7 +269,10 @@ public class ToolsTest {
         // depend on compilation
         testJavaCompiler_();
         testCompiler(CeylonToolProvider.getCompiler(Backend.Java), "modules.extra", "1");
-        
+        runJavaRunner();
+    }
+
+    private void runJavaRunner() {
         RunnerOptions options = new RunnerOptions();
         options.setSystemRepository("flat:"+FlatSystemRepo);
         options.addUserRepository("flat:"+FlatRepoLib);
@@ -284,6 +288,49 @@ public class ToolsTest {
         runner.cleanup();
     }
 
+    @Test
+    public void testJavaRunnerWithSnapshots() throws Exception{
+        runInNewJVM();
+    }
+    
+    @SuppressWarnings("unused")
+    private void testJavaRunnerWithSnapshots_() throws IOException{
+        // depend on compilation
+        testJavaCompiler_();
+        testCompiler(CeylonToolProvider.getCompiler(Backend.Java), "modules.extra", "1");
+        
+        File snapshotDir = new File(BuildToolsBuildDir, "snapshots");
+        FileUtil.delete(snapshotDir);
+        System.setProperty(ModuleGraphSnapshots.SNAPSHOT_DIR_PROPERTY, snapshotDir.getPath());
+        try{
+            // the first run saves the module graph
+            runJavaRunner();
+            List<File> snapshots = listFiles(snapshotDir);
+            Assert.assertEquals(1, snapshots.size());
+            File snapshot = snapshots.get(0);
+            Assert.assertTrue(snapshot.setLastModified(1000));
+            
+            // the second one loads it rather than saving it again
+            runJavaRunner();
+            Assert.assertEquals(snapshots, listFiles(snapshotDir));
+            Assert.assertEquals(1000, snapshot.lastModified());
+        }finally{
+            System.clearProperty(ModuleGraphSnapshots.SNAPSHOT_DIR_PROPERTY);
+        }
+    }
+
+    private static List<File> listFiles(File dir) throws IOException {
+        final List<File> files = new LinkedList<File>();
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>(){
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                files.add(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
     private void testCompiler(Compiler compiler, String module, String expectedVersion) throws IOException {
         testCompiler(compiler, module, expectedVersion, false);
     }
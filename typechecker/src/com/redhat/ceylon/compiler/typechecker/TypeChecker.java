@@ -6,6 +6,8 @@ import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.common.Versions;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleValidator;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
+import com.redhat.ceylon.compiler.typechecker.context.PhaseExecutor;
+import com.redhat.ceylon.compiler.typechecker.context.PhaseExecutor.Phase;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.io.VFS;
@@ -35,6 +37,7 @@ public class TypeChecker {
     private final boolean verifyDependencies;
     private final AssertionVisitor assertionVisitor;
     private final StatisticsVisitor statsVisitor;
+    private final PhaseExecutor phaseExecutor;
 
     TypeChecker(VFS vfs, 
             List<VirtualFile> srcDirectories, 
@@ -45,9 +48,11 @@ public class TypeChecker {
             boolean verbose, boolean statistics,
             List<String> moduleFilters, 
             List<VirtualFile> srcFiles, 
-            String encoding) {
+            String encoding,
+            int jobs) {
         long start = System.nanoTime();
         this.verbose = verbose;
+        this.phaseExecutor = PhaseExecutor.forJobs(jobs);
         this.statistics = statistics;
         this.context = new Context(repositoryManager, vfs);
         this.phasedUnits = 
@@ -59,6 +64,7 @@ public class TypeChecker {
         phasedUnits.setSourceFiles(srcFiles);
         phasedUnits.setModuleFilters(moduleFilters);
         phasedUnits.setEncoding(encoding);
+        phasedUnits.setJobs(jobs);
         phasedUnits.parseUnits(srcDirectories);
         long time = System.nanoTime()-start;
         if(statistics)
@@ -192,24 +198,8 @@ public class TypeChecker {
 
     protected void executePhases(
             List<PhasedUnit> listOfUnits) {
-        for (PhasedUnit pu : listOfUnits) {
-            pu.validateTree();
-            pu.scanDeclarations();
-        }
-        for (PhasedUnit pu : listOfUnits) {
-            pu.scanTypeDeclarations();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            pu.validateRefinement();
-        }
-        for (PhasedUnit pu : listOfUnits) {
-            pu.analyseTypes();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            pu.analyseFlow();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            pu.analyseUsage();
+        for (Phase phase: PhaseExecutor.TYPECHECKING_PHASES) {
+            phaseExecutor.executePhase(listOfUnits, phase);
         }
     }
     
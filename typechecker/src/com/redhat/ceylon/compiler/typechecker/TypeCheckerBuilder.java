@@ -43,6 +43,7 @@ public class TypeCheckerBuilder {
     private ModuleManagerFactory moduleManagerFactory;
     private RepositoryManager repositoryManager;
     private List<String> moduleFilters = new ArrayList<String>();
+    private int jobs = 1;
 
     public TypeCheckerBuilder(VFS vfs) {
         this.vfs = vfs != null ? vfs : new VFS();
@@ -150,6 +151,17 @@ public class TypeCheckerBuilder {
         return this;
     }
 
+    /**
+     * Sets the number of threads used to parse the source
+     * files and to run each typechecking phase over the 
+     * units. The phases themselves still run one after the
+     * other. Defaults to 1, which typechecks sequentially.
+     */
+    public TypeCheckerBuilder jobs(int jobs) {
+        this.jobs = jobs;
+        return this;
+    }
+
     public TypeChecker getTypeChecker() {
         if (repositoryManager == null) {
             repositoryManager = CeylonUtils.repoManager()
@@ -157,7 +169,7 @@ public class TypeCheckerBuilder {
                     .buildManager();
         }
         return new TypeChecker(vfs, srcDirectories, repositoryManager, verifyDependencies, assertionVisitor,
-                moduleManagerFactory, verbose, statistics, moduleFilters, srcFiles, encoding);
+                moduleManagerFactory, verbose, statistics, moduleFilters, srcFiles, encoding, jobs);
     }
 
 }
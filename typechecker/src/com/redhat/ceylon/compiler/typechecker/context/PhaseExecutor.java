@@ -0,0 +1,317 @@
+package com.redhat.ceylon.compiler.typechecker.context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.redhat.ceylon.model.typechecker.model.Package;
+
+/**
+ * Runs one typechecking phase over a list of units, either
+ * sequentially on the calling thread, or on at most the
+ * requested number of threads of a single shared
+ * {@link ForkJoinPool} when more than one job is requested.
+ *
+ * Every call is a phase barrier: it only returns once the
+ * phase has completed for every unit. Errors are attached
+ * to the tree of each unit, so the reported diagnostics do
+ * not depend on the scheduling.
+ */
+public class PhaseExecutor {
+
+    /**
+     * A single typechecking phase applied to one unit.
+     */
+    public static abstract class Phase {
+        public abstract void run(PhasedUnit pu);
+        
+        /**
+         * Whether the units of the same package must be
+         * handled by the same task, in their original
+         * order, as needed by the phases which add 
+         * declarations to the package scope.
+         */
+        public boolean isByPackage() {
+            return false;
+        }
+    }
+    
+    /**
+     * The typechecking phases, in the order they must be
+     * run over all the units.
+     */
+    public static final List<Phase> TYPECHECKING_PHASES = 
+            Collections.unmodifiableList(Arrays.<Phase>asList(
+        new Phase() {
+            @Override
+            public void run(PhasedUnit pu) {
+                pu.validateTree();
+                pu.scanDeclarations();
+            }
+            @Override
+            public boolean isByPackage() {
+                return true;
+            }
+        },
+        new Phase() {
+            @Override
+            public void run(PhasedUnit pu) {
+                pu.scanTypeDeclarations();
+            }
+            @Override
+            public boolean isByPackage() {
+                return true;
+            }
+        },
+        new Phase() {
+            @Override
+            public void run(PhasedUnit pu) {
+                pu.validateRefinement();
+            }
+        },
+        new Phase() {
+            @Override
+            public void run(PhasedUnit pu) {
+                pu.analyseTypes();
+            }
+        },
+        new Phase() {
+            @Override
+            public void run(PhasedUnit pu) {
+                pu.analyseFlow();
+            }
+        },
+        new Phase() {
+            @Override
+            public void run(PhasedUnit pu) {
+                pu.analyseUsage();
+            }
+        }));
+
+    private static final PhaseExecutor SEQUENTIAL =
+            new PhaseExecutor(1);
+
+    /**
+     * The pool is sized for the machine and never shut
+     * down: its worker threads are daemon threads, which
+     * terminate once they are idle. Each executor limits
+     * itself to its number of jobs.
+     */
+    private static class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    private final int jobs;
+
+    private PhaseExecutor(int jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Returns an executor running on the given number of
+     * jobs. A value of 1 or less yields the sequential
+     * executor. All parallel executors share a single pool,
+     * so the typechecker and the compiler backends do not
+     * oversubscribe the machine, and an executor never runs
+     * more tasks at a time than its number of jobs, nor
+     * than the number of processors.
+     */
+    public static PhaseExecutor forJobs(int jobs) {
+        if (jobs <= 1) {
+            return SEQUENTIAL;
+        }
+        return new PhaseExecutor(jobs);
+    }
+
+    public boolean isParallel() {
+        return jobs > 1;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Runs the given phase for every unit, grouping the
+     * units by package if the phase requires it.
+     */
+    public void executePhase(List<? extends PhasedUnit> units,
+            Phase phase) {
+        if (phase.isByPackage()) {
+            executeByPackage(units, phase);
+        }
+        else {
+            execute(units, phase);
+        }
+    }
+
+    /**
+     * Runs the given phase for every unit and waits for
+     * all of them to complete. If the phase fails for any
+     * unit, the exception is rethrown on the calling
+     * thread.
+     */
+    public void execute(List<? extends PhasedUnit> units,
+            Phase phase) {
+        if (!isParallel() || units.size() <= 1) {
+            runSequentially(units, phase);
+        }
+        else {
+            runGroups(groupByUnit(units), phase);
+        }
+    }
+
+    /**
+     * Like {@link #execute(List, Phase)}, but units of the
+     * same package are always handled by the same task, in
+     * their original order. This is needed by the phases 
+     * which add declarations to the package scope.
+     */
+    public void executeByPackage(List<? extends PhasedUnit> units,
+            Phase phase) {
+        if (!isParallel() || units.size() <= 1) {
+            runSequentially(units, phase);
+        }
+        else {
+            runGroups(groupByPackage(units), phase);
+        }
+    }
+
+    /**
+     * Runs independent tasks, such as parsing source files,
+     * and returns their results in the order of the tasks,
+     * whatever order they completed in. If a task fails,
+     * its exception is rethrown on the calling thread.
+     */
+    public <T> List<T> invokeAll(final List<? extends Callable<T>> tasks) 
+            throws Exception {
+        final List<T> results = new ArrayList<T>(tasks.size());
+        if (!isParallel() || tasks.size() <= 1) {
+            for (Callable<T> task: tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        final Object[] values = new Object[tasks.size()];
+        final Exception[] failure = new Exception[1];
+        runInLanes(tasks.size(), new Work() {
+            @Override
+            public void run(int index) {
+                try {
+                    values[index] = tasks.get(index).call();
+                }
+                catch (RuntimeException e) {
+                    throw e;
+                }
+                catch (Exception e) {
+                    synchronized (failure) {
+                        if (failure[0] == null) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (Object value: values) {
+            @SuppressWarnings("unchecked")
+            T result = (T) value;
+            results.add(result);
+        }
+        return results;
+    }
+
+    private void runGroups(final List<List<PhasedUnit>> groups,
+            final Phase phase) {
+        runInLanes(groups.size(), new Work() {
+            @Override
+            public void run(int index) {
+                runSequentially(groups.get(index), phase);
+            }
+        });
+    }
+
+    private static abstract class Work {
+        abstract void run(int index);
+    }
+
+    /**
+     * Runs the work items from 0 to count-1 on at most as
+     * many tasks of the shared pool as this executor has
+     * jobs, each task taking the next item until there is
+     * none left, and waits for all of them.
+     */
+    private void runInLanes(final int count, final Work work) {
+        final AtomicInteger next = new AtomicInteger();
+        int lanes = Math.min(jobs, count);
+        final List<ForkJoinTask<?>> tasks = 
+                new ArrayList<ForkJoinTask<?>>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            tasks.add(ForkJoinTask.adapt(new Runnable() {
+                @Override
+                public void run() {
+                    int index;
+                    while ((index = next.getAndIncrement()) < count) {
+                        work.run(index);
+                    }
+                }
+            }));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        }
+        else {
+            SharedPool.POOL.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    private static void runSequentially(
+            List<? extends PhasedUnit> units, Phase phase) {
+        for (PhasedUnit pu: units) {
+            phase.run(pu);
+        }
+    }
+
+    private static List<List<PhasedUnit>> groupByUnit(
+            List<? extends PhasedUnit> units) {
+        List<List<PhasedUnit>> groups =
+                new ArrayList<List<PhasedUnit>>(units.size());
+        for (PhasedUnit pu: units) {
+            groups.add(Collections.<PhasedUnit>singletonList(pu));
+        }
+        return groups;
+    }
+
+    private static List<List<PhasedUnit>> groupByPackage(
+            List<? extends PhasedUnit> units) {
+        Map<Package, List<PhasedUnit>> groups =
+                new LinkedHashMap<Package, List<PhasedUnit>>();
+        for (PhasedUnit pu: units) {
+            Package pkg = pu.getPackage();
+            List<PhasedUnit> group = groups.get(pkg);
+            if (group == null) {
+                group = new ArrayList<PhasedUnit>();
+                groups.put(pkg, group);
+            }
+            group.add(pu);
+        }
+        return new ArrayList<List<PhasedUnit>>(groups.values());
+    }
+}
@@ -1,20 +1,19 @@
 package com.redhat.ceylon.compiler.typechecker.context;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CommonToken;
-import org.antlr.runtime.CommonTokenStream;
 
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleSourceMapper;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
-import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
-import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
 import com.redhat.ceylon.compiler.typechecker.parser.LexError;
 import com.redhat.ceylon.compiler.typechecker.parser.ParseError;
+import com.redhat.ceylon.compiler.typechecker.parser.ParsedSource;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
 import com.redhat.ceylon.model.typechecker.model.Module;
@@ -34,6 +33,8 @@ public class PhasedUnits extends PhasedUnitMap<PhasedUnit, PhasedUnit> {
     private List<String> moduleFilters;
     private Set<VirtualFile> sourceFiles  = new HashSet<VirtualFile>();
     private String encoding;
+    private PhaseExecutor executor = PhaseExecutor.forJobs(1);
+    private List<PendingUnit> pendingUnits;
 
     public PhasedUnits(Context context) {
         this.context = context;
@@ -78,9 +79,53 @@ public class PhasedUnits extends PhasedUnitMap<PhasedUnit, PhasedUnit> {
         return moduleSourceMapper;
     }
 
+    /**
+     * Sets the number of threads used to lex and parse the 
+     * source files in {@link #parseUnits(List)}. The units
+     * are still registered in the order in which the files
+     * are found.
+     */
+    public void setJobs(int jobs) {
+        this.executor = PhaseExecutor.forJobs(jobs);
+    }
+
     public void parseUnits(List<VirtualFile> srcDirectories) {
-        for (VirtualFile file : srcDirectories) {
-            parseUnit(file, file);
+        if (executor.isParallel()) {
+            pendingUnits = new ArrayList<PendingUnit>();
+        }
+        try {
+            for (VirtualFile file : srcDirectories) {
+                parseUnit(file, file);
+            }
+            if (pendingUnits != null) {
+                parsePendingUnits();
+            }
+        }
+        finally {
+            pendingUnits = null;
+        }
+    }
+
+    private void parsePendingUnits() {
+        List<ParseTask> tasks = 
+                new ArrayList<ParseTask>(pendingUnits.size());
+        for (PendingUnit pending : pendingUnits) {
+            tasks.add(new ParseTask(pending.file, getEncoding()));
+        }
+        List<ParsedSource> results;
+        try {
+            results = executor.invokeAll(tasks);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new RuntimeException("Error while parsing the source files", e);
+        }
+        for (int i = 0; i < results.size(); i++) {
+            PendingUnit pending = pendingUnits.get(i);
+            addParsedUnit(pending.file, pending.srcDir, pending.pkg, 
+                    results.get(i));
         }
     }
 
@@ -114,33 +159,68 @@ public class PhasedUnits extends PhasedUnitMap<PhasedUnit, PhasedUnit> {
 
     protected void parseFile(VirtualFile file, VirtualFile srcDir) throws Exception {
         if (file.getName().endsWith(".ceylon") && (sourceFiles.isEmpty() || sourceFiles.contains(file))) {
+            Package pkg = moduleSourceMapper.getCurrentPackage();
+            if (pendingUnits != null) {
+                // parsed later on, all at once
+                pendingUnits.add(new PendingUnit(file, srcDir, pkg));
+            }
+            else {
+                //System.out.println("Parsing " + file.getName());
+                ParsedSource parsed = new ParseTask(file, getEncoding()).call();
+                addParsedUnit(file, srcDir, pkg, parsed);
+            }
+        }
+    }
 
-            //System.out.println("Parsing " + file.getName());
-            CeylonLexer lexer = new CeylonLexer(new ANTLRInputStream(file.getInputStream(), getEncoding()));
-            CommonTokenStream tokenStream = new CommonTokenStream(lexer);
-            CeylonParser parser = new CeylonParser(tokenStream);
-            Tree.CompilationUnit cu = parser.compilationUnit();
-            List<CommonToken> tokens = new ArrayList<CommonToken>(tokenStream.getTokens().size()); 
-            tokens.addAll(tokenStream.getTokens());
-            PhasedUnit phasedUnit = new PhasedUnit(file, srcDir, cu, 
-                    moduleSourceMapper.getCurrentPackage(), moduleManager, moduleSourceMapper,
-                    context, tokens);
-            addPhasedUnit(file, phasedUnit);
+    private void addParsedUnit(VirtualFile file, VirtualFile srcDir, 
+            Package pkg, ParsedSource parsed) {
+        Tree.CompilationUnit cu = parsed.getCompilationUnit();
+        PhasedUnit phasedUnit = new PhasedUnit(file, srcDir, cu, 
+                pkg, moduleManager, moduleSourceMapper,
+                context, parsed.getTokens());
+        addPhasedUnit(file, phasedUnit);
 
-            List<LexError> lexerErrors = lexer.getErrors();
-            for (LexError le : lexerErrors) {
-                //System.out.println("Lexer error in " + file.getName() + ": " + le.getMessage());
-                cu.addLexError(le);
-            }
-            lexerErrors.clear();
+        for (LexError le : parsed.getLexErrors()) {
+            //System.out.println("Lexer error in " + file.getName() + ": " + le.getMessage());
+            cu.addLexError(le);
+        }
 
-            List<ParseError> parserErrors = parser.getErrors();
-            for (ParseError pe : parserErrors) {
-                //System.out.println("Parser error in " + file.getName() + ": " + pe.getMessage());
-                cu.addParseError(pe);
-            }
-            parserErrors.clear();
+        for (ParseError pe : parsed.getParseErrors()) {
+            //System.out.println("Parser error in " + file.getName() + ": " + pe.getMessage());
+            cu.addParseError(pe);
+        }
+    }
 
+    private static class PendingUnit {
+        final VirtualFile file;
+        final VirtualFile srcDir;
+        final Package pkg;
+
+        PendingUnit(VirtualFile file, VirtualFile srcDir, Package pkg) {
+            this.file = file;
+            this.srcDir = srcDir;
+            this.pkg = pkg;
+        }
+    }
+
+    private static class ParseTask implements Callable<ParsedSource> {
+        private final VirtualFile file;
+        private final String encoding;
+
+        ParseTask(VirtualFile file, String encoding) {
+            this.file = file;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public ParsedSource call() throws Exception {
+            InputStream is = file.getInputStream();
+            try {
+                return ParsedSource.parse(new ANTLRInputStream(is, encoding));
+            }
+            finally {
+                is.close();
+            }
         }
     }
 
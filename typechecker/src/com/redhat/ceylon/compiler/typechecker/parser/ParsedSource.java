@@ -0,0 +1,69 @@
+package com.redhat.ceylon.compiler.typechecker.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+
+/**
+ * The result of lexing and parsing a single source file.
+ * Parsing does not touch the model or any other state
+ * shared between files, so it can be done on any thread,
+ * and the result registered later on.
+ */
+public class ParsedSource {
+
+    private final Tree.CompilationUnit compilationUnit;
+    private final List<CommonToken> tokens;
+    private final List<LexError> lexErrors;
+    private final List<ParseError> parseErrors;
+
+    private ParsedSource(Tree.CompilationUnit compilationUnit,
+            List<CommonToken> tokens,
+            List<LexError> lexErrors,
+            List<ParseError> parseErrors) {
+        this.compilationUnit = compilationUnit;
+        this.tokens = tokens;
+        this.lexErrors = lexErrors;
+        this.parseErrors = parseErrors;
+    }
+
+    public static ParsedSource parse(CharStream input)
+            throws RecognitionException {
+        CeylonLexer lexer = new CeylonLexer(input);
+        CommonTokenStream tokenStream = new CommonTokenStream(lexer);
+        CeylonParser parser = new CeylonParser(tokenStream);
+        Tree.CompilationUnit cu = parser.compilationUnit();
+        List<Token> streamTokens = tokenStream.getTokens();
+        List<CommonToken> tokens =
+                new ArrayList<CommonToken>(streamTokens.size());
+        for (Token token: streamTokens) {
+            tokens.add((CommonToken) token);
+        }
+        return new ParsedSource(cu, tokens,
+                new ArrayList<LexError>(lexer.getErrors()),
+                new ArrayList<ParseError>(parser.getErrors()));
+    }
+
+    public Tree.CompilationUnit getCompilationUnit() {
+        return compilationUnit;
+    }
+
+    public List<CommonToken> getTokens() {
+        return tokens;
+    }
+
+    public List<LexError> getLexErrors() {
+        return lexErrors;
+    }
+
+    public List<ParseError> getParseErrors() {
+        return parseErrors;
+    }
+}
@@ -3,12 +3,18 @@ import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.cmr.ceylon.CeylonUtils;
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.TypeCheckerBuilder;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.io.ClosableVirtualFile;
 import com.redhat.ceylon.compiler.typechecker.io.cmr.impl.LeakingLogger;
+import com.redhat.ceylon.compiler.typechecker.tree.Message;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.model.typechecker.model.Module;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Some hack before a proper unit test harness is put in place
@@ -62,6 +68,18 @@ public class MainForTest {
         if ( !"0.2".equals( module.getVersion() ) ) {
             throw new RuntimeException("Unable to extract module version");
         }
+        List<String> sequentialMessages = collectMessages(typeChecker);
+        typeChecker = new TypeCheckerBuilder()
+                .verbose(false)
+                .addSrcDirectory( new File("test/main") )
+                .setRepositoryManager(repositoryManager)
+                .jobs(4)
+                .getTypeChecker();
+        typeChecker.process(true);
+        if ( !sequentialMessages.equals( collectMessages(typeChecker) ) ) {
+            throw new RuntimeException(
+                    "Parallel typechecking reported different messages than sequential typechecking");
+        }
         typeChecker = new TypeCheckerBuilder()
                 .verbose(false)
                 .addSrcDirectory( new File("test/main/capture") )
@@ -97,4 +115,23 @@ public class MainForTest {
         latestZippedLanguageSourceFile.close();
         System.out.println("Tests took " + ( (System.nanoTime()-start) / 1000000 ) + " ms");
     }
+
+    private static List<String> collectMessages(TypeChecker typeChecker) {
+        final List<String> messages = new ArrayList<String>();
+        for (final PhasedUnit pu: 
+                typeChecker.getPhasedUnits().getPhasedUnits()) {
+            pu.getCompilationUnit().visit(new Visitor() {
+                @Override
+                public void visitAny(Node that) {
+                    for (Message message: that.getErrors()) {
+                        messages.add(pu.getPathRelativeToSrcDir() + ":" + 
+                                message.getLine() + ": " + 
+                                message.getMessage());
+                    }
+                    super.visitAny(that);
+                }
+            });
+        }
+        return messages;
+    }
 }